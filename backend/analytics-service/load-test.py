@@ -0,0 +1,223 @@
+#!/usr/bin/env python3
+"""
+Load test for the servlet services: thread-pool vs virtual-thread mode.
+
+Holds --streams SSE streams open, then fires GET requests at increasing concurrency
+levels and reports p50/p99/max latency and errors per level. "Max concurrency" is the
+highest level with no errors and p99 under --p99-limit-ms.
+
+Run once per mode against the same data, then compare:
+
+    mvn spring-boot:run                                     # thread-pool mode
+    python3 load-test.py --label platform --out platform.json
+
+    SPRING_THREADS_VIRTUAL_ENABLED=true mvn spring-boot:run # JDK 21+
+    python3 load-test.py --label virtual --out virtual.json
+
+    python3 load-test.py --compare platform.json virtual.json
+
+For progress-service use --service progress (port 8082).
+Requires: Python 3.8+ standard library only.
+"""
+
+import argparse
+import asyncio
+import json
+import math
+import resource
+import time
+from urllib.parse import urlparse
+
+SERVICES = {
+    "analytics": {
+        "base_url": "http://localhost:8083",
+        "request_path": "/analytics/users/{user}",
+        "stream_path": "/analytics/stream?userId={user}",
+    },
+    "progress": {
+        "base_url": "http://localhost:8082",
+        "request_path": "/progress/users/{user}/courses/courseB",
+        "stream_path": "/progress/stream?userId={user}",
+    },
+}
+
+
+async def http_get(host, port, path, timeout):
+    """GET with Connection: close; returns the status code."""
+    async def run():
+        reader, writer = await asyncio.open_connection(host, port)
+        try:
+            writer.write(f"GET {path} HTTP/1.1\r\nHost: {host}:{port}\r\nConnection: close\r\n\r\n".encode())
+            await writer.drain()
+            status_line = await reader.readline()
+            await reader.read()
+            return int(status_line.split()[1])
+        finally:
+            writer.close()
+    return await asyncio.wait_for(run(), timeout)
+
+
+async def hold_stream(host, port, path, opened, state):
+    """Open one SSE stream and keep reading it until cancelled."""
+    writer = None
+    try:
+        reader, writer = await asyncio.open_connection(host, port)
+        writer.write(f"GET {path} HTTP/1.1\r\nHost: {host}:{port}\r\nAccept: text/event-stream\r\n\r\n".encode())
+        await writer.drain()
+        status_line = await reader.readline()
+        status = int(status_line.split()[1]) if status_line else 0
+        if status != 200:
+            state["rejected"] += 1
+            return
+        state["open"] += 1
+        opened.set()
+        while await reader.readline():
+            pass
+        state["open"] -= 1
+        state["closed"] += 1
+    except asyncio.CancelledError:
+        raise
+    except Exception:
+        state["failed"] += 1
+    finally:
+        opened.set()
+        if writer is not None:
+            writer.close()
+
+
+def percentile(sorted_values, p):
+    if not sorted_values:
+        return 0.0
+    index = max(0, math.ceil(p / 100 * len(sorted_values)) - 1)
+    return sorted_values[index]
+
+
+async def run_level(host, port, request_path, users, concurrency, requests, timeout):
+    latencies = []
+    errors = 0
+    counter = iter(range(requests))
+
+    async def worker():
+        nonlocal errors
+        for i in counter:
+            path = request_path.format(user=f"load-user-{i % users}")
+            start = time.perf_counter()
+            try:
+                status = await http_get(host, port, path, timeout)
+                if status >= 400 and status != 404:
+                    errors += 1
+            except Exception:
+                errors += 1
+            latencies.append((time.perf_counter() - start) * 1000)
+
+    start = time.perf_counter()
+    await asyncio.gather(*(worker() for _ in range(concurrency)))
+    elapsed = time.perf_counter() - start
+    latencies.sort()
+    return {
+        "concurrency": concurrency,
+        "requests": requests,
+        "errors": errors,
+        "p50_ms": round(percentile(latencies, 50), 1),
+        "p99_ms": round(percentile(latencies, 99), 1),
+        "max_ms": round(latencies[-1] if latencies else 0, 1),
+        "rps": round(requests / elapsed, 1),
+    }
+
+
+async def load_test(args):
+    service = SERVICES[args.service]
+    url = urlparse(args.base_url or service["base_url"])
+    host, port = url.hostname, url.port or 80
+
+    state = {"open": 0, "rejected": 0, "failed": 0, "closed": 0}
+    streams = []
+    for i in range(args.streams):
+        opened = asyncio.Event()
+        path = service["stream_path"].format(user=f"load-user-{i % args.users}")
+        streams.append(asyncio.create_task(hold_stream(host, port, path, opened, state)))
+        await opened.wait()
+    print(f"SSE streams: open={state['open']} rejected={state['rejected']} failed={state['failed']}")
+
+    levels = []
+    max_concurrency = 0
+    print(f"{'concurrency':>11} {'requests':>8} {'errors':>6} {'p50 ms':>8} {'p99 ms':>8} {'max ms':>8} {'req/s':>8}")
+    for concurrency in args.levels:
+        result = await run_level(host, port, service["request_path"], args.users, concurrency,
+                                 max(args.requests_per_level, concurrency), args.timeout)
+        levels.append(result)
+        print(f"{result['concurrency']:>11} {result['requests']:>8} {result['errors']:>6} {result['p50_ms']:>8} "
+              f"{result['p99_ms']:>8} {result['max_ms']:>8} {result['rps']:>8}")
+        if result["errors"] == 0 and result["p99_ms"] <= args.p99_limit_ms:
+            max_concurrency = concurrency
+
+    streams_open = state["open"]
+    for task in streams:
+        task.cancel()
+    await asyncio.gather(*streams, return_exceptions=True)
+
+    print(f"Max concurrency (no errors, p99 <= {args.p99_limit_ms} ms): {max_concurrency}")
+    return {
+        "label": args.label,
+        "service": args.service,
+        "streams_requested": args.streams,
+        "streams_open": streams_open,
+        "streams_rejected": state["rejected"],
+        "p99_limit_ms": args.p99_limit_ms,
+        "max_concurrency": max_concurrency,
+        "levels": levels,
+    }
+
+
+def compare(paths):
+    runs = []
+    for path in paths:
+        with open(path) as f:
+            runs.append(json.load(f))
+    labels = [run["label"] for run in runs]
+    print("p99 ms by concurrency (errors in brackets)")
+    print(f"{'concurrency':>11} " + " ".join(f"{label:>16}" for label in labels))
+    concurrencies = sorted({level["concurrency"] for run in runs for level in run["levels"]})
+    for concurrency in concurrencies:
+        cells = []
+        for run in runs:
+            level = next((l for l in run["levels"] if l["concurrency"] == concurrency), None)
+            cells.append(f"{level['p99_ms']} [{level['errors']}]" if level else "-")
+        print(f"{concurrency:>11} " + " ".join(f"{cell:>16}" for cell in cells))
+    print(f"{'max conc.':>11} " + " ".join(f"{run['max_concurrency']:>16}" for run in runs))
+    print(f"{'SSE open':>11} " + " ".join(f"{run['streams_open']:>16}" for run in runs))
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--service", choices=SERVICES, default="analytics")
+    parser.add_argument("--base-url", help="defaults to the service's local port")
+    parser.add_argument("--label", default="run")
+    parser.add_argument("--streams", type=int, default=1000, help="SSE streams held open during the run")
+    parser.add_argument("--users", type=int, default=1000, help="distinct user ids for requests and streams")
+    parser.add_argument("--levels", type=lambda s: [int(x) for x in s.split(",")],
+                        default=[50, 100, 200, 400, 800, 1600], help="comma-separated request concurrency levels")
+    parser.add_argument("--requests-per-level", type=int, default=5000)
+    parser.add_argument("--timeout", type=float, default=10.0, help="per-request timeout in seconds")
+    parser.add_argument("--p99-limit-ms", type=float, default=500.0)
+    parser.add_argument("--out", help="write the results as JSON")
+    parser.add_argument("--compare", nargs="+", metavar="RESULT", help="compare JSON results of earlier runs")
+    args = parser.parse_args()
+
+    if args.compare:
+        compare(args.compare)
+        return
+
+    # Every stream and in-flight request is a socket
+    soft, hard = resource.getrlimit(resource.RLIMIT_NOFILE)
+    resource.setrlimit(resource.RLIMIT_NOFILE, (hard, hard))
+
+    result = asyncio.run(load_test(args))
+    if args.out:
+        with open(args.out, "w") as f:
+            json.dump(result, f, indent=2)
+        print(f"Results written to {args.out}")
+
+
+if __name__ == "__main__":
+    main()
@@ -6,6 +6,7 @@ Install: pip install kafka-python
 """
 
 import json
+import uuid
 from kafka import KafkaProducer
 from datetime import datetime
 
@@ -41,6 +42,7 @@ def main():
     
     # Event 1: LESSON_STARTED
     lesson_started = {
+        "eventId": str(uuid.uuid4()),
         "eventType": "LESSON_STARTED",
         "userId": "user123",
         "pathId": "pathA",
@@ -58,6 +60,7 @@ def main():
     
     # Event 2: LESSON_COMPLETED
     lesson_completed = {
+        "eventId": str(uuid.uuid4()),
         "eventType": "LESSON_COMPLETED",
         "userId": "user123",
         "pathId": "pathA",
@@ -1,28 +1,160 @@
 package com.orbit.analytics.config;
 
 import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.service.AnalyticsDeltaBatch;
+import com.orbit.analytics.service.AnalyticsRebuildTarget;
+import com.orbit.analytics.service.AnalyticsService;
+import com.orbit.common.service.ConsumerGroupControl;
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.KeyGeneration;
+import com.orbit.common.service.KeyOrderedLanes;
+import com.orbit.common.service.ReplayRebuildService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@Slf4j
 public class KafkaConsumerConfig {
 
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${analytics.consumer.parallel.lanes:8}")
+    private int parallelLanes;
+
+    @Value("${analytics.consumer.parallel.drain-timeout-ms:10000}")
+    private long parallelDrainTimeoutMs;
+
+    @Value("${analytics.dedup.enabled:true}")
+    private boolean dedupEnabled;
+
+    @Value("${analytics.dedup.rotation-ms:300000}")
+    private long dedupRotationMs;
+
+    @Value("${analytics.dedup.generations:3}")
+    private int dedupGenerations;
+
+    @Value("${analytics.dedup.expected-per-generation:1000000}")
+    private long dedupExpectedPerGeneration;
+
+    @Value("${analytics.dedup.fpp:0.01}")
+    private double dedupFpp;
+
+    @Value("${analytics.dedup.flush-interval-ms:100}")
+    private long dedupFlushIntervalMs;
+
+    @Value("${analytics.consumer.batch.max-records:500}")
+    private int batchMaxRecords;
+
+    @Value("${analytics.consumer.batch.max-wait-ms:500}")
+    private int batchMaxWaitMs;
+
+    @Value("${analytics.consumer.batch.fetch-min-bytes:1}")
+    private int batchFetchMinBytes;
+
+    @Value("${analytics.consumer.batch.retry.max-retries:5}")
+    private int batchMaxRetries;
+
+    @Value("${analytics.consumer.batch.retry.initial-interval-ms:500}")
+    private long batchRetryInitialIntervalMs;
+
+    @Value("${analytics.consumer.batch.retry.max-interval-ms:10000}")
+    private long batchRetryMaxIntervalMs;
+
+    @Bean
+    public ConsumerFactory<String, LearningEvent> consumerFactory(MeterRegistry meterRegistry) {
+        return newConsumerFactory(baseConsumerProps(), meterRegistry);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, LearningEvent> kafkaListenerContainerFactory(EventDeduplicator eventDeduplicator,
+            AnalyticsService analyticsService, Environment environment, MeterRegistry meterRegistry) {
+        ConcurrentKafkaListenerContainerFactory<String, LearningEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory(meterRegistry));
+        // Per-record commits as with RECORD, but only once the record's counters are persisted
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(
+                rebalanceListener(eventDeduplicator, analyticsService, () -> { }));
+        useVirtualThreads(factory, environment);
+        return factory;
+    }
+
+    /**
+     * Batch listener: each poll (up to max-records, waiting up to max-wait-ms for fetch-min-bytes)
+     * is delivered as one list and acknowledged once after the whole list is persisted. A failed poll
+     * is redelivered to the listener with exponential backoff; once retries are exhausted its records
+     * are logged and skipped.
+     */
     @Bean
-    public ConsumerFactory<String, LearningEvent> consumerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, LearningEvent> batchKafkaListenerContainerFactory(EventDeduplicator eventDeduplicator,
+            AnalyticsService analyticsService, Environment environment, MeterRegistry meterRegistry) {
+        Map<String, Object> configProps = baseConsumerProps();
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batchMaxRecords);
+        configProps.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, batchMaxWaitMs);
+        configProps.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, batchFetchMinBytes);
+
+        ConcurrentKafkaListenerContainerFactory<String, LearningEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(newConsumerFactory(configProps, meterRegistry));
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(
+                rebalanceListener(eventDeduplicator, analyticsService, () -> { }));
+        factory.setCommonErrorHandler(batchErrorHandler());
+        useVirtualThreads(factory, environment);
+        return factory;
+    }
+
+    private DefaultErrorHandler batchErrorHandler() {
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(batchMaxRetries);
+        backOff.setInitialInterval(batchRetryInitialIntervalMs);
+        backOff.setMaxInterval(batchRetryMaxIntervalMs);
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(backOff);
+        // A skipped poll is committed by the next acknowledged one, which waits for coalesced writes
+        errorHandler.setAckAfterHandle(false);
+        return errorHandler;
+    }
+
+    /**
+     * Consumer factory that publishes the Kafka client metrics (records-lag-max, fetch latency, ...)
+     * to Micrometer, tagged by client id, topic and partition.
+     */
+    private static ConsumerFactory<String, LearningEvent> newConsumerFactory(Map<String, Object> configProps, MeterRegistry meterRegistry) {
+        DefaultKafkaConsumerFactory<String, LearningEvent> factory = new DefaultKafkaConsumerFactory<>(configProps,
+                new StringDeserializer(), new JsonDeserializer<>(LearningEvent.class));
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
+    }
+
+    private Map<String, Object> baseConsumerProps() {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, "analytics-service-group");
@@ -33,15 +165,99 @@ public class KafkaConsumerConfig {
         configProps.put(JsonDeserializer.VALUE_DEFAULT_TYPE, LearningEvent.class.getName());
         configProps.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 30000);
         configProps.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 10000);
-        return new DefaultKafkaConsumerFactory<>(configProps, new StringDeserializer(), new JsonDeserializer<>(LearningEvent.class));
+        return configProps;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "analytics.consumer.parallel.enabled", havingValue = "true")
+    public KeyOrderedLanes consumerLanes(Environment environment) {
+        return new KeyOrderedLanes("analytics-consumer", parallelLanes, Threading.VIRTUAL.isActive(environment));
+    }
+
+    @Bean
+    public EventDeduplicator eventDeduplicator(RedisTemplate<String, String> redisTemplate) {
+        return new EventDeduplicator("analytics", redisTemplate, new EventDeduplicator.Settings(dedupEnabled, dedupRotationMs,
+                dedupGenerations, dedupExpectedPerGeneration, dedupFpp, dedupFlushIntervalMs));
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, LearningEvent> kafkaListenerContainerFactory() {
+    public ConsumerGroupControl consumerGroupControl(KafkaAdmin kafkaAdmin, KafkaListenerEndpointRegistry listenerEndpointRegistry,
+            RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+            ObjectProvider<KeyOrderedLanes> consumerLanes, AnalyticsService analyticsService) {
+        return new ConsumerGroupControl("analytics", kafkaAdmin, listenerEndpointRegistry, redisTemplate, listenerContainer,
+                consumerLanes, parallelDrainTimeoutMs, analyticsService::flushPendingCounters);
+    }
+
+    /**
+     * Replay rebuild (POST /analytics/internal/rebuild) into a new key generation.
+     */
+    @Bean
+    public ReplayRebuildService<LearningEvent, AnalyticsDeltaBatch> replayRebuildService(ConsumerFactory<String, LearningEvent> consumerFactory,
+            ConsumerGroupControl consumerGroupControl, KeyGeneration keyGeneration, AnalyticsRebuildTarget rebuildTarget,
+            @Value("${analytics.rebuild.parallelism:8}") int parallelism,
+            @Value("${analytics.rebuild.load-batch-size:1000}") int loadBatchSize,
+            @Value("${analytics.rebuild.pause-settle-ms:2000}") long pauseSettleMs,
+            @Value("${analytics.rebuild.catch-up-timeout-ms:300000}") long catchUpTimeoutMs,
+            @Value("${analytics.rebuild.dedup-window:10000}") int dedupWindow) {
+        return new ReplayRebuildService<>("analytics", consumerFactory, consumerGroupControl, keyGeneration, rebuildTarget,
+                LearningEvent::getEventId, new ReplayRebuildService.Settings(parallelism, loadBatchSize, pauseSettleMs, catchUpTimeoutMs,
+                dedupWindow));
+    }
+
+    /**
+     * Parallel listener: records are handed to {@link KeyOrderedLanes} and acknowledged out of order
+     * as they finish. The container commits only up to the lowest offset below which every record is
+     * acknowledged, and holds back the next poll until the current one is fully acknowledged.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "analytics.consumer.parallel.enabled", havingValue = "true")
+    public ConcurrentKafkaListenerContainerFactory<String, LearningEvent> parallelKafkaListenerContainerFactory(
+            EventDeduplicator eventDeduplicator, AnalyticsService analyticsService, KeyOrderedLanes consumerLanes,
+            Environment environment, MeterRegistry meterRegistry) {
         ConcurrentKafkaListenerContainerFactory<String, LearningEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(consumerFactory());
-        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+        factory.setConsumerFactory(consumerFactory(meterRegistry));
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        // Let in-flight records finish before the flush, so their offsets and ids are handed over
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener(eventDeduplicator,
+                analyticsService, () -> consumerLanes.awaitIdle(parallelDrainTimeoutMs)));
+        useVirtualThreads(factory, environment);
         return factory;
     }
-}
 
+    /**
+     * Before revoked offsets are committed: drain in-flight work, flush coalesced counters so their
+     * deferred acks and dedup marks run, then hand the dedup ids to Redis for the next owner.
+     */
+    private static ConsumerAwareRebalanceListener rebalanceListener(EventDeduplicator eventDeduplicator,
+            AnalyticsService analyticsService, Runnable drain) {
+        return new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                drain.run();
+                try {
+                    analyticsService.flushPendingCounters();
+                } catch (RuntimeException e) {
+                    // Unacknowledged records are redelivered to the next owner
+                    log.warn("Could not flush coalesced counters before revoking {}", partitions, e);
+                }
+                eventDeduplicator.onPartitionsRevokedBeforeCommit(consumer, partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                eventDeduplicator.onPartitionsAssigned(consumer, partitions);
+            }
+        };
+    }
+
+    /**
+     * With spring.threads.virtual.enabled on JDK 21+, run listener containers on virtual threads
+     * (Boot only does this for the factory it auto-configures).
+     */
+    private static void useVirtualThreads(ConcurrentKafkaListenerContainerFactory<?, ?> factory, Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            factory.getContainerProperties().setListenerTaskExecutor(new VirtualThreadTaskExecutor("analytics-kafka-"));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.orbit.analytics.config;
+
+import com.orbit.analytics.service.AnalyticsEventStreamService;
+import com.orbit.analytics.service.AnalyticsService;
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.HotPathMetrics;
+import com.orbit.common.service.KeyOrderedLanes;
+import com.orbit.common.service.NearCache;
+import com.orbit.common.service.ServiceMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hot path meters, and the counters the services already keep for their {@code /internal}
+ * endpoints exposed as meters (see {@link ServiceMetrics}).
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public HotPathMetrics hotPathMetrics(MeterRegistry registry) {
+        return new HotPathMetrics(registry);
+    }
+
+    @Bean
+    public MeterBinder nearCacheMetrics(NearCache nearCache) {
+        return ServiceMetrics.nearCache(nearCache);
+    }
+
+    @Bean
+    public MeterBinder sseMetrics(AnalyticsEventStreamService streamService) {
+        return ServiceMetrics.sse(streamService::getStats);
+    }
+
+    @Bean
+    public MeterBinder consumerMetrics(EventDeduplicator eventDeduplicator, ObjectProvider<KeyOrderedLanes> consumerLanes) {
+        return ServiceMetrics.consumer(eventDeduplicator, consumerLanes::getIfAvailable);
+    }
+
+    @Bean
+    public MeterBinder coalescingMetrics(AnalyticsService analyticsService) {
+        return registry -> {
+            if (analyticsService.getCoalescingStats().isEnabled()) {
+                Gauge.builder("orbit.coalescing.pending", analyticsService, service -> service.getCoalescingStats().getPendingEvents())
+                        .register(registry);
+                Gauge.builder("orbit.coalescing.buffered", analyticsService, service -> service.getCoalescingStats().getBufferedEvents())
+                        .register(registry);
+                FunctionCounter.builder("orbit.coalescing.blocked.adds", analyticsService,
+                        service -> service.getCoalescingStats().getBlockedAdds()).register(registry);
+                FunctionCounter.builder("orbit.coalescing.flushes", analyticsService, service -> service.getCoalescingStats().getFlushes())
+                        .register(registry);
+                FunctionCounter.builder("orbit.coalescing.key.writes.saved", analyticsService,
+                        service -> service.getCoalescingStats().getKeyWritesSaved()).register(registry);
+            }
+        };
+    }
+}
@@ -2,10 +2,19 @@ package com.orbit.analytics.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.orbit.analytics.model.CourseAnalytics;
+import com.orbit.analytics.model.UserAnalytics;
+import com.orbit.analytics.service.AnalyticsValueCodecs;
+import com.orbit.common.service.KeyGeneration;
+import com.orbit.common.service.NearCache;
+import com.orbit.common.service.ValueCodec;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -17,9 +26,59 @@ public class RedisConfig {
         template.setConnectionFactory(connectionFactory);
         template.setKeySerializer(new StringRedisSerializer());
         template.setValueSerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(new StringRedisSerializer());
         return template;
     }
 
+    /**
+     * Raw byte values, for stored aggregates and their apicache copies (see {@link ValueCodec}).
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> binaryRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    @Bean
+    public ValueCodec<UserAnalytics> userAnalyticsCodec(@Value("${analytics.storage.value-codec:json}") String format,
+                                                        ObjectMapper objectMapper) {
+        return AnalyticsValueCodecs.userAnalytics(ValueCodec.Format.of(format), objectMapper);
+    }
+
+    @Bean
+    public ValueCodec<CourseAnalytics> courseAnalyticsCodec(@Value("${analytics.storage.value-codec:json}") String format,
+                                                            ObjectMapper objectMapper) {
+        return AnalyticsValueCodecs.courseAnalytics(ValueCodec.Format.of(format), objectMapper);
+    }
+
+    @Bean
+    public NearCache nearCache(RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                               @Value("${cache.analytics.l1.enabled:true}") boolean enabled,
+                               @Value("${cache.analytics.l1.max-size:10000}") long maxSize,
+                               @Value("${cache.analytics.l1.ttl-seconds:30}") long ttlSeconds) {
+        return new NearCache("analytics", redisTemplate, listenerContainer, enabled, maxSize, ttlSeconds);
+    }
+
+    /**
+     * Generation of the hash-mode counter keys ({@code analytics:hash:}, see {@link KeyGeneration}).
+     */
+    @Bean
+    public KeyGeneration keyGeneration(RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                                       NearCache nearCache) {
+        return new KeyGeneration("analytics", "analytics:hash:", redisTemplate, listenerContainer, nearCache);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
     @Bean
     public ObjectMapper objectMapper() {
         ObjectMapper mapper = new ObjectMapper();
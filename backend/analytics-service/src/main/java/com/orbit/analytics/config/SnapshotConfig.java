@@ -0,0 +1,34 @@
+package com.orbit.analytics.config;
+
+import com.orbit.common.service.ConsumerGroupControl;
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.KeyGeneration;
+import com.orbit.common.service.SnapshotService;
+import com.orbit.common.service.WriteFence;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+
+@Configuration
+public class SnapshotConfig {
+
+    @Bean
+    public WriteFence writeFence() {
+        return new WriteFence();
+    }
+
+    /**
+     * API caches are rebuilt on demand and trending summaries belong to the instances that wrote them.
+     */
+    @Bean
+    public SnapshotService snapshotService(RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                                           ConsumerGroupControl consumerGroupControl, EventDeduplicator eventDeduplicator,
+                                           WriteFence writeFence, KeyGeneration keyGeneration, Environment environment) {
+        return new SnapshotService("analytics", redisTemplate, listenerContainer, consumerGroupControl, eventDeduplicator, writeFence,
+                SnapshotService.Settings.from(environment, "analytics"), List.of("analytics:apicache:", "analytics:trending:"), keyGeneration::reload);
+    }
+}
@@ -0,0 +1,71 @@
+package com.orbit.analytics.consumer;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.service.AnalyticsService;
+import com.orbit.common.service.EventDeduplicator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch variant of {@link LearningEventConsumer}: one poll is processed and acknowledged as a unit,
+ * once its counters are persisted. Failures propagate to the container's error handler, which
+ * retries the whole poll with backoff before giving up on it.
+ */
+@Component
+@ConditionalOnProperty(name = "analytics.consumer.batch.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class LearningEventBatchConsumer {
+
+    private final AnalyticsService analyticsService;
+    private final EventDeduplicator eventDeduplicator;
+    private static final String TOPIC = "learning-events";
+
+    @KafkaListener(topics = TOPIC, groupId = "analytics-service-group", containerFactory = "batchKafkaListenerContainerFactory")
+    public void consumeLearningEvents(List<LearningEvent> events,
+                                      @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions,
+                                      @Header(KafkaHeaders.OFFSET) List<Long> offsets,
+                                      Acknowledgment acknowledgment) {
+        log.debug("Consumed learning event batch: size={}", events.size());
+        List<LearningEvent> fresh = new ArrayList<>(events.size());
+        List<String> freshIds = new ArrayList<>(events.size());
+        List<Integer> freshPartitions = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            LearningEvent event = events.get(i);
+            if (event == null) {
+                continue;
+            }
+            String eventId = EventDeduplicator.idOf(event.getEventId(), partitions.get(i), offsets.get(i));
+            // Claimed, so a copy later in this poll or in a poll before the coalesced mark is dropped
+            if (!eventDeduplicator.claim(eventId, partitions.get(i))) {
+                log.debug("Skipping redelivered event: eventId={}", eventId);
+                continue;
+            }
+            fresh.add(event);
+            freshIds.add(eventId);
+            freshPartitions.add(partitions.get(i));
+        }
+        // Coalesced increments are persisted later; mark and commit only once they are
+        try {
+            analyticsService.processBatch(fresh, () -> {
+                for (int i = 0; i < freshIds.size(); i++) {
+                    eventDeduplicator.markProcessed(freshIds.get(i), freshPartitions.get(i));
+                }
+                acknowledgment.acknowledge();
+            });
+        } catch (RuntimeException e) {
+            // The error handler retries the poll, which must find these ids unclaimed
+            freshIds.forEach(eventDeduplicator::release);
+            throw e;
+        }
+    }
+}
@@ -2,29 +2,57 @@ package com.orbit.analytics.consumer;
 
 import com.orbit.analytics.event.LearningEvent;
 import com.orbit.analytics.service.AnalyticsService;
+import com.orbit.common.service.EventDeduplicator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 @Component
+@ConditionalOnProperty(name = "analytics.consumer.batch.enabled", havingValue = "false", matchIfMissing = true)
+@ConditionalOnProperty(name = "analytics.consumer.parallel.enabled", havingValue = "false", matchIfMissing = true)
 @RequiredArgsConstructor
 @Slf4j
 public class LearningEventConsumer {
 
     private final AnalyticsService analyticsService;
+    private final EventDeduplicator eventDeduplicator;
     private static final String TOPIC = "learning-events";
 
     @KafkaListener(topics = TOPIC, groupId = "analytics-service-group", containerFactory = "kafkaListenerContainerFactory")
-    public void consumeLearningEvent(LearningEvent event) {
+    public void consumeLearningEvent(LearningEvent event,
+                                     @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                                     @Header(KafkaHeaders.OFFSET) long offset,
+                                     Acknowledgment acknowledgment) {
         try {
             log.info("Consumed learning event: eventType={}, userId={}, courseId={}, lessonId={}", 
                     event.getEventType(), event.getUserId(), event.getCourseId(), event.getLessonId());
-            analyticsService.processEvent(event);
+            String eventId = EventDeduplicator.idOf(event.getEventId(), partition, offset);
+            // Claimed rather than checked: a copy arriving before the coalesced mark is dropped too
+            if (!eventDeduplicator.claim(eventId, partition)) {
+                log.debug("Skipping redelivered event: eventId={}", eventId);
+                analyticsService.afterPendingWrites(acknowledgment::acknowledge);
+                return;
+            }
+            // Coalesced increments are persisted later; mark and commit only once they are
+            try {
+                analyticsService.processEvent(event, () -> {
+                    eventDeduplicator.markProcessed(eventId, partition);
+                    acknowledgment.acknowledge();
+                });
+            } catch (RuntimeException e) {
+                eventDeduplicator.release(eventId);
+                throw e;
+            }
             log.debug("Analytics updated for event: {}", event);
         } catch (Exception e) {
             log.error("Failed to process learning event: {}", event, e);
             // Don't throw - allow processing to continue for other events
+            analyticsService.afterPendingWrites(acknowledgment::acknowledge);
         }
     }
 }
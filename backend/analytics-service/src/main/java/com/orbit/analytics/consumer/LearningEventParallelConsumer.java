@@ -0,0 +1,69 @@
+package com.orbit.analytics.consumer;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.service.AnalyticsService;
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.KeyOrderedLanes;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+/**
+ * Parallel variant of {@link LearningEventConsumer}: records of one partition are spread over
+ * {@link KeyOrderedLanes} by userId, so one user's events stay in order while unrelated users are
+ * processed concurrently. Course aggregates are safe across lanes (atomic increments in hash mode,
+ * per-course locking in json mode). Each record is acknowledged when its lane finishes it, or with
+ * coalescing enabled when the flush that persists it completes.
+ */
+@Component
+@ConditionalOnProperty(name = "analytics.consumer.parallel.enabled", havingValue = "true")
+@ConditionalOnProperty(name = "analytics.consumer.batch.enabled", havingValue = "false", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class LearningEventParallelConsumer {
+
+    private final AnalyticsService analyticsService;
+    private final EventDeduplicator eventDeduplicator;
+    private final KeyOrderedLanes consumerLanes;
+    private static final String TOPIC = "learning-events";
+
+    @KafkaListener(topics = TOPIC, groupId = "analytics-service-group", containerFactory = "parallelKafkaListenerContainerFactory")
+    public void consumeLearningEvent(LearningEvent event,
+                                     @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                                     @Header(KafkaHeaders.OFFSET) long offset,
+                                     Acknowledgment acknowledgment) {
+        consumerLanes.submit(event.getUserId(), () -> {
+            try {
+                log.debug("Consumed learning event: eventType={}, userId={}, courseId={}, lessonId={}",
+                        event.getEventType(), event.getUserId(), event.getCourseId(), event.getLessonId());
+                // With coalescing the mark waits for the flush, so the claim is what drops a copy
+                // redelivered before it
+                String eventId = EventDeduplicator.idOf(event.getEventId(), partition, offset);
+                if (!eventDeduplicator.claim(eventId, partition)) {
+                    log.debug("Skipping redelivered event: eventId={}", eventId);
+                    analyticsService.afterPendingWrites(acknowledgment::acknowledge);
+                    return;
+                }
+                try {
+                    // With coalescing the ack waits for the flush that persists this event
+                    analyticsService.processEvent(event, () -> {
+                        eventDeduplicator.markProcessed(eventId, partition);
+                        acknowledgment.acknowledge();
+                    });
+                } catch (RuntimeException e) {
+                    eventDeduplicator.release(eventId);
+                    throw e;
+                }
+            } catch (Exception e) {
+                log.error("Failed to process learning event: {}", event, e);
+                // Don't throw - allow processing to continue for other events
+                analyticsService.afterPendingWrites(acknowledgment::acknowledge);
+            }
+        });
+    }
+}
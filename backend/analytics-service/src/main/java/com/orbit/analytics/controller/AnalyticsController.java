@@ -1,35 +1,85 @@
 package com.orbit.analytics.controller;
 
+import com.orbit.analytics.model.ActiveUserCounts;
+import com.orbit.analytics.model.BatchLookupRequest;
+import com.orbit.analytics.model.CoalescingStats;
+import com.orbit.analytics.model.CohortRetention;
+import com.orbit.analytics.model.CompletionTimeStats;
 import com.orbit.analytics.model.CourseAnalytics;
+import com.orbit.analytics.model.CourseFunnel;
 import com.orbit.analytics.model.PlatformAnalytics;
+import com.orbit.analytics.model.TimeWindowSeries;
+import com.orbit.analytics.model.TrendingItem;
 import com.orbit.analytics.model.UserAnalytics;
+import com.orbit.analytics.model.WindowResolution;
+import com.orbit.analytics.service.ActiveUserService;
 import com.orbit.analytics.service.AnalyticsEventStreamService;
 import com.orbit.analytics.service.AnalyticsService;
+import com.orbit.analytics.service.CompletionTimeService;
+import com.orbit.analytics.service.LessonFunnelService;
+import com.orbit.analytics.service.RetentionService;
+import com.orbit.analytics.service.TimeWindowService;
+import com.orbit.analytics.service.TrendingService;
+import com.orbit.common.model.DedupStats;
+import com.orbit.common.model.NearCacheStats;
+import com.orbit.common.model.RebuildStatus;
+import com.orbit.common.model.SseStats;
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.ReplayRebuildService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDate;
+import java.util.List;
+
 @RestController
 @RequestMapping("/analytics")
 @RequiredArgsConstructor
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+
+    @Value("${analytics.batch.max-ids:1000}")
+    private int batchMaxIds;
     private final AnalyticsEventStreamService analyticsEventStreamService;
+    private final TimeWindowService timeWindowService;
+    private final ActiveUserService activeUserService;
+    private final LessonFunnelService lessonFunnelService;
+    private final TrendingService trendingService;
+    private final CompletionTimeService completionTimeService;
+    private final RetentionService retentionService;
+    private final ReplayRebuildService<?, ?> replayRebuildService;
+    private final EventDeduplicator eventDeduplicator;
 
     /**
      * Server-Sent Events stream for analytics updates. Read-only; REST remains source of truth.
-     * Client should refetch from REST when analytics_updated is received.
+     * mode=notify (default): client should refetch from REST when analytics_updated is received.
+     * mode=data: analytics_data events carry the counters and a version id; on reconnect the
+     * browser's Last-Event-ID replays missed events, and a resync event means reload from REST.
+     * 503 when this instance is at its connection limit.
      */
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamAnalytics(@RequestParam String userId) {
-        return analyticsEventStreamService.subscribe(userId);
+    public ResponseEntity<SseEmitter> streamAnalytics(@RequestParam String userId,
+                                                      @RequestParam(defaultValue = "notify") String mode,
+                                                      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = analyticsEventStreamService.subscribe(userId, "data".equalsIgnoreCase(mode), lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
     }
 
     @GetMapping("/users/{userId}")
@@ -41,6 +91,43 @@ public class AnalyticsController {
         return ResponseEntity.ok(analytics);
     }
 
+    /**
+     * Rolling window counts for a user: the last {@code last} buckets at the given resolution.
+     */
+    @GetMapping("/users/{userId}/windows")
+    public ResponseEntity<TimeWindowSeries> getUserWindows(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "HOUR") WindowResolution resolution,
+            @RequestParam(defaultValue = "24") int last) {
+        if (last < 1 || last > timeWindowService.maxBuckets(resolution)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(timeWindowService.getUserWindows(userId, resolution, last));
+    }
+
+    /**
+     * Bulk user lookup: a few Redis round trips regardless of how many ids are requested.
+     * Unknown ids are omitted from the response.
+     */
+    @PostMapping("/users:batch")
+    public ResponseEntity<List<UserAnalytics>> getUserAnalyticsBatch(@RequestBody BatchLookupRequest request) {
+        if (!isValidBatch(request)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(analyticsService.getUserAnalyticsBatch(request.getIds()));
+    }
+
+    /**
+     * Bulk course lookup; see {@link #getUserAnalyticsBatch(BatchLookupRequest)}.
+     */
+    @PostMapping("/courses:batch")
+    public ResponseEntity<List<CourseAnalytics>> getCourseAnalyticsBatch(@RequestBody BatchLookupRequest request) {
+        if (!isValidBatch(request)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(analyticsService.getCourseAnalyticsBatch(request.getIds()));
+    }
+
     @GetMapping("/courses/{courseId}")
     public ResponseEntity<CourseAnalytics> getCourseAnalytics(@PathVariable String courseId) {
         CourseAnalytics analytics = analyticsService.getCourseAnalytics(courseId);
@@ -50,10 +137,152 @@ public class AnalyticsController {
         return ResponseEntity.ok(analytics);
     }
 
+    /**
+     * Rolling window counts for a course: the last {@code last} buckets at the given resolution.
+     */
+    @GetMapping("/courses/{courseId}/windows")
+    public ResponseEntity<TimeWindowSeries> getCourseWindows(
+            @PathVariable String courseId,
+            @RequestParam(defaultValue = "HOUR") WindowResolution resolution,
+            @RequestParam(defaultValue = "24") int last) {
+        if (last < 1 || last > timeWindowService.maxBuckets(resolution)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(timeWindowService.getCourseWindows(courseId, resolution, last));
+    }
+
+    /**
+     * Per-lesson funnel for a course: starts, completions and drop-off per lesson in lesson order.
+     */
+    @GetMapping("/courses/{courseId}/funnel")
+    public ResponseEntity<CourseFunnel> getCourseFunnel(@PathVariable String courseId) {
+        CourseFunnel funnel = lessonFunnelService.getCourseFunnel(courseId);
+        if (funnel.getSteps().isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(funnel);
+    }
+
+    /**
+     * Start-to-complete time percentiles across all lessons of a course.
+     */
+    @GetMapping("/courses/{courseId}/completion-time")
+    public ResponseEntity<CompletionTimeStats> getCourseCompletionTime(@PathVariable String courseId) {
+        CompletionTimeStats stats = completionTimeService.getCourseStats(courseId);
+        if (stats == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Start-to-complete time percentiles for one lesson.
+     */
+    @GetMapping("/courses/{courseId}/lessons/{lessonId}/completion-time")
+    public ResponseEntity<CompletionTimeStats> getLessonCompletionTime(
+            @PathVariable String courseId,
+            @PathVariable String lessonId) {
+        CompletionTimeStats stats = completionTimeService.getLessonStats(courseId, lessonId);
+        if (stats == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Approximate daily/weekly/monthly distinct learners for a course (HyperLogLog).
+     */
+    @GetMapping("/courses/{courseId}/active-users")
+    public ResponseEntity<ActiveUserCounts> getCourseActiveUsers(@PathVariable String courseId) {
+        return ResponseEntity.ok(activeUserService.getCourseActiveUsers(courseId));
+    }
+
+    /**
+     * Most active courses (or paths with type=path) right now, by time-decayed event count.
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<List<TrendingItem>> getTrending(
+            @RequestParam(defaultValue = "10") int k,
+            @RequestParam(defaultValue = TrendingService.TYPE_COURSE) String type) {
+        if (k < 1 || !(TrendingService.TYPE_COURSE.equals(type) || TrendingService.TYPE_PATH.equals(type))) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(trendingService.getTrending(type, k));
+    }
+
+    /**
+     * Weekly retention of the signup cohort containing {@code cohort} (any date in the week) for
+     * {@code weeks} weeks, or without {@code cohort}, the matrix of the last {@code weeks} cohorts.
+     */
+    @GetMapping("/retention")
+    public ResponseEntity<List<CohortRetention>> getRetention(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate cohort,
+            @RequestParam(defaultValue = "12") int weeks) {
+        if (weeks < 1 || weeks > retentionService.maxWeeks()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(retentionService.getRetention(cohort, weeks));
+    }
+
+    /**
+     * Coalescing window state: how long increments may stay unflushed and how many key writes were saved.
+     */
+    @GetMapping("/internal/coalescing")
+    public ResponseEntity<CoalescingStats> getCoalescingStats() {
+        return ResponseEntity.ok(analyticsService.getCoalescingStats());
+    }
+
+    /**
+     * In-process L1 cache state: size, hit rate, evictions and L1/L2 latencies.
+     */
+    @GetMapping("/internal/cache")
+    public ResponseEntity<NearCacheStats> getCacheStats() {
+        return ResponseEntity.ok(analyticsService.getNearCacheStats());
+    }
+
+    /**
+     * Redelivery filter state: checks, dropped duplicates, Bloom false positives and average check time.
+     */
+    @GetMapping("/internal/dedup")
+    public ResponseEntity<DedupStats> getDedupStats() {
+        return ResponseEntity.ok(eventDeduplicator.getStats());
+    }
+
+    /**
+     * This instance's SSE fan-out: local connections, relay traffic and lag, delivery and replay counts.
+     */
+    @GetMapping("/internal/sse")
+    public ResponseEntity<SseStats> getSseStats() {
+        return ResponseEntity.ok(analyticsEventStreamService.getStats());
+    }
+
+    /**
+     * Start rebuilding the hash-mode counters from the full event log (409 if one is running, or
+     * with phase UNSUPPORTED if storage mode is json). Poll GET for progress.
+     */
+    @PostMapping("/internal/rebuild")
+    public ResponseEntity<RebuildStatus> startRebuild() {
+        if (!replayRebuildService.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(replayRebuildService.getStatus());
+        }
+        return ResponseEntity.accepted().body(replayRebuildService.getStatus());
+    }
+
+    /**
+     * Rebuild phase, per-partition offsets, events read and throughput.
+     */
+    @GetMapping("/internal/rebuild")
+    public ResponseEntity<RebuildStatus> getRebuildStatus() {
+        return ResponseEntity.ok(replayRebuildService.getStatus());
+    }
+
     @GetMapping("/platform/overview")
     public ResponseEntity<PlatformAnalytics> getPlatformOverview() {
         PlatformAnalytics analytics = analyticsService.getPlatformAnalytics();
         return ResponseEntity.ok(analytics);
     }
-}
 
+    private boolean isValidBatch(BatchLookupRequest request) {
+        return request != null && request.getIds() != null && request.getIds().size() <= batchMaxIds;
+    }
+}
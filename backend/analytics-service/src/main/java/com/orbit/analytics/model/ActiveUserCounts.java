@@ -0,0 +1,17 @@
+package com.orbit.analytics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Approximate distinct active users (HyperLogLog, ~0.81% standard error).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActiveUserCounts {
+    private Long dailyActiveUsers;
+    private Long weeklyActiveUsers;
+    private Long monthlyActiveUsers;
+}
@@ -0,0 +1,24 @@
+package com.orbit.analytics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CoalescingStats {
+    private boolean enabled;
+    private long flushIntervalMs;
+    private long maxPendingEvents;
+    private long pendingEvents;
+    private long maxBufferedEvents;
+    private long bufferedEvents;
+    private long blockedAdds;
+    private long oldestPendingAgeMs;
+    private long maxObservedStalenessMs;
+    private long eventsAccepted;
+    private long flushes;
+    private long keyWritesIssued;
+    private long keyWritesSaved;
+}
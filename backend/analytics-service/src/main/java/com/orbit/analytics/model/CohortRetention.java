@@ -0,0 +1,22 @@
+package com.orbit.analytics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Users first seen in the week starting {@code cohortWeek} (Monday, UTC) and how many of them were
+ * active in each following week: index 0 is the cohort week itself.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CohortRetention {
+    private LocalDate cohortWeek;
+    private Long users;
+    private List<Long> activeUsers;
+    private List<Double> retention;
+}
@@ -0,0 +1,15 @@
+package com.orbit.analytics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CourseFunnel {
+    private String courseId;
+    private List<LessonFunnelStep> steps;
+}
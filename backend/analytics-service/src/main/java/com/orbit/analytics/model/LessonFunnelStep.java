@@ -0,0 +1,18 @@
+package com.orbit.analytics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LessonFunnelStep {
+    private String lessonId;
+    private Long starts;
+    private Long completions;
+    private Long dropOffCount;
+    private Double completionRate;
+    // Starts of this lesson relative to starts of the first lesson in the funnel
+    private Double reachRate;
+}
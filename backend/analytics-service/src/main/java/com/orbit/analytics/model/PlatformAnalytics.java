@@ -10,5 +10,14 @@ import lombok.NoArgsConstructor;
 public class PlatformAnalytics {
     private Long totalEventsProcessed;
     private Long totalLessonCompletions;
-}
 
+    // Approximate distinct active users (HyperLogLog, ~0.81% standard error)
+    private Long dailyActiveUsers;
+    private Long weeklyActiveUsers;
+    private Long monthlyActiveUsers;
+
+    public PlatformAnalytics(Long totalEventsProcessed, Long totalLessonCompletions) {
+        this.totalEventsProcessed = totalEventsProcessed;
+        this.totalLessonCompletions = totalLessonCompletions;
+    }
+}
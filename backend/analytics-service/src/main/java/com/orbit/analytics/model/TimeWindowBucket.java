@@ -0,0 +1,16 @@
+package com.orbit.analytics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeWindowBucket {
+    private Instant start;
+    private Long lessonStarts;
+    private Long lessonCompletions;
+}
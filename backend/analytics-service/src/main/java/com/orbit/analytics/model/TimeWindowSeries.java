@@ -0,0 +1,21 @@
+package com.orbit.analytics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TimeWindowSeries {
+    private String id;
+    private WindowResolution resolution;
+    private Instant from;
+    private Instant to;
+    private Long totalLessonStarts;
+    private Long totalLessonCompletions;
+    private List<TimeWindowBucket> buckets;
+}
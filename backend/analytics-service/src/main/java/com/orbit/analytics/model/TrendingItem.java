@@ -0,0 +1,14 @@
+package com.orbit.analytics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendingItem {
+    private String id;
+    // Exponentially time-decayed event count (half-life analytics.trending.half-life-seconds)
+    private Double score;
+}
@@ -0,0 +1,15 @@
+package com.orbit.analytics.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum WindowResolution {
+    MINUTE("m", 60),
+    HOUR("h", 3600),
+    DAY("d", 86400);
+
+    private final String fieldPrefix;
+    private final long bucketSeconds;
+}
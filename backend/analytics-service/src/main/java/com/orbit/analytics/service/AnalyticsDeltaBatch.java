@@ -0,0 +1,102 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counter deltas folded from a group of events, keyed by user and course.
+ * Applied to the hash store in one script call instead of one round trip per event.
+ */
+@Getter
+public class AnalyticsDeltaBatch {
+
+    // Positive for batches the hash store must apply at most once (see AnalyticsHashStore#applyBatch)
+    private final long sequence;
+    private final Map<String, UserDelta> users = new LinkedHashMap<>();
+    private final Map<String, CourseDelta> courses = new LinkedHashMap<>();
+    private long platformEvents;
+    private long platformCompletions;
+
+    public AnalyticsDeltaBatch() {
+        this(0);
+    }
+
+    /**
+     * @param sequence increasing per writer; a batch is not applied again once one at or above
+     *                 its sequence has been
+     */
+    public AnalyticsDeltaBatch(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public void add(LearningEvent event) {
+        if (event.getEventType() == null) {
+            return;
+        }
+        long started = event.getEventType() == LearningEventType.LESSON_STARTED ? 1 : 0;
+        long completed = event.getEventType() == LearningEventType.LESSON_COMPLETED ? 1 : 0;
+
+        addUser(event.getUserId(), started, completed, event.getOccurredAt());
+        if (event.getCourseId() != null) {
+            addCourse(event.getCourseId(), started, completed);
+        }
+        addPlatform(1, completed);
+    }
+
+    public void addUser(String userId, long started, long completed, Instant lastActiveAt) {
+        UserDelta user = users.computeIfAbsent(userId, k -> new UserDelta());
+        user.started += started;
+        user.completed += completed;
+        // Newest event time wins, so an out-of-order event in the batch cannot move lastActiveAt back
+        user.lastActiveAt = newer(user.lastActiveAt, lastActiveAt);
+    }
+
+    public void addCourse(String courseId, long starts, long completions) {
+        CourseDelta course = courses.computeIfAbsent(courseId, k -> new CourseDelta());
+        course.starts += starts;
+        course.completions += completions;
+    }
+
+    public void addPlatform(long events, long completions) {
+        platformEvents += events;
+        platformCompletions += completions;
+    }
+
+    /**
+     * Add another batch into this one; the later lastActiveAt wins for users present in both.
+     */
+    public void merge(AnalyticsDeltaBatch other) {
+        other.users.forEach((userId, delta) -> addUser(userId, delta.started, delta.completed, delta.lastActiveAt));
+        other.courses.forEach((courseId, delta) -> addCourse(courseId, delta.starts, delta.completions));
+        addPlatform(other.platformEvents, other.platformCompletions);
+    }
+
+    private static Instant newer(Instant current, Instant candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        return candidate != null && candidate.isAfter(current) ? candidate : current;
+    }
+
+    public boolean isEmpty() {
+        return platformEvents == 0;
+    }
+
+    @Getter
+    public static class UserDelta {
+        private long started;
+        private long completed;
+        private Instant lastActiveAt;
+    }
+
+    @Getter
+    public static class CourseDelta {
+        private long starts;
+        private long completions;
+    }
+}
@@ -0,0 +1,402 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import com.orbit.analytics.model.CoalescingStats;
+import com.orbit.common.service.WriteFence;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces analytics increments in memory and flushes them as one {@link AnalyticsDeltaBatch}
+ * every flush interval or once max pending events have accumulated, whichever comes first.
+ * The raw events of the window are handed to the event sinks first, so per-event side aggregates
+ * (windows, HLLs, funnels, ...) are written once per flush rather than once per event.
+ * Platform counters use {@link LongAdder}s; user and course accumulators are updated in place
+ * under the ConcurrentHashMap bin of their key, so unrelated keys never contend. Adds share a read
+ * lock; a flush takes the write lock only while it detaches the window, so it never takes an
+ * event without the increments it added.
+ * <p>
+ * Callers defer offset commits and dedup marks with {@link #afterFlush(Runnable)}; those actions
+ * run only once the increments added before them are persisted, so events still held in memory
+ * when the JVM dies are redelivered rather than lost. Writes and actions of one flush run in one
+ * {@link WriteFence} section, so a snapshot sees either both or neither. {@link #close()} flushes
+ * on shutdown.
+ * <p>
+ * Events stay buffered until a flush persists them, including across failed flushes. Once max
+ * buffered events are held (Redis down or too slow), {@link #add} blocks its caller until a flush
+ * frees room, which stops the listener from polling more.
+ */
+@Slf4j
+public class AnalyticsDeltaCoalescer implements AutoCloseable {
+
+    private final long flushIntervalMs;
+    private final long maxPendingEvents;
+    private final long maxBufferedEvents;
+    private final List<Consumer<List<LearningEvent>>> eventSinks;
+    private final Consumer<AnalyticsDeltaBatch> sink;
+    private final WriteFence writeFence;
+
+    private final Map<String, UserAccumulator> users = new ConcurrentHashMap<>();
+    private final Map<String, CourseAccumulator> courses = new ConcurrentHashMap<>();
+    private final LongAdder platformEvents = new LongAdder();
+    private final LongAdder platformCompletions = new LongAdder();
+    private final ConcurrentLinkedQueue<Pending> events = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Runnable> afterFlush = new ConcurrentLinkedQueue<>();
+    // Per event sink, the events it failed to record, handed to it again before newer ones; with
+    // the batches not yet persisted (oldest first) and the actions of a failed flush, guarded by flushLock
+    private final List<List<LearningEvent>> retryEvents;
+    private final List<AnalyticsDeltaBatch> retryBatches = new ArrayList<>();
+    private final List<Runnable> retryAfterFlush = new ArrayList<>();
+    private long batchSequence;
+    // Events taken by flushes that have not all succeeded yet, guarded by flushLock
+    private long unpersistedEvents;
+    // Read: add. Write: detaching the window in a flush.
+    private final ReentrantReadWriteLock windowLock = new ReentrantReadWriteLock();
+
+    private final AtomicLong pendingEvents = new AtomicLong();
+    // Added and not yet persisted: the window plus every failed flush's events
+    private final AtomicLong bufferedEvents = new AtomicLong();
+    private final ReentrantLock capacityLock = new ReentrantLock();
+    private final Condition capacityFreed = capacityLock.newCondition();
+    private volatile boolean closed;
+    private final AtomicLong oldestPendingAtMs = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder eventsAccepted = new LongAdder();
+    private final LongAdder blockedAdds = new LongAdder();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong keyWritesIssued = new AtomicLong();
+    private final AtomicLong keyWritesSaved = new AtomicLong();
+    private final AtomicLong maxObservedStalenessMs = new AtomicLong();
+
+    /**
+     * @param maxBufferedEvents events held before {@link #add} blocks; at least max pending events
+     */
+    public AnalyticsDeltaCoalescer(long flushIntervalMs, long maxPendingEvents, long maxBufferedEvents,
+                                   List<Consumer<List<LearningEvent>>> eventSinks, Consumer<AnalyticsDeltaBatch> sink,
+                                   WriteFence writeFence) {
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxPendingEvents = maxPendingEvents;
+        this.maxBufferedEvents = Math.max(maxBufferedEvents, maxPendingEvents);
+        this.eventSinks = List.copyOf(eventSinks);
+        this.retryEvents = new ArrayList<>(eventSinks.size());
+        eventSinks.forEach(eventSink -> retryEvents.add(new ArrayList<>()));
+        this.sink = sink;
+        this.writeFence = writeFence;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "analytics-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffer {@code event}; {@code onFlushed} (may be null) runs after the flush that persists it,
+     * never a later one, so a snapshot never sees the event's writes without its dedup mark.
+     * Blocks while max buffered events are held and not yet persisted. Call it outside any
+     * {@link WriteFence} section: the flush it waits for takes one.
+     */
+    public void add(LearningEvent event, Runnable onFlushed) {
+        awaitCapacity();
+        long pending = 0;
+        windowLock.readLock().lock();
+        try {
+            if (event.getEventType() != null) {
+                accumulate(event);
+                eventsAccepted.increment();
+                oldestPendingAtMs.compareAndSet(0, System.currentTimeMillis());
+                pending = pendingEvents.incrementAndGet();
+            }
+            events.add(new Pending(event, onFlushed));
+            bufferedEvents.incrementAndGet();
+        } finally {
+            windowLock.readLock().unlock();
+        }
+        if (pending >= maxPendingEvents && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Wait until a flush brings the buffered events under the cap. Waiters re-check every flush
+     * interval, and give up on close so shutdown is never held by a stalled Redis.
+     */
+    private void awaitCapacity() {
+        if (bufferedEvents.get() < maxBufferedEvents || closed) {
+            return;
+        }
+        blockedAdds.increment();
+        capacityLock.lock();
+        try {
+            while (bufferedEvents.get() >= maxBufferedEvents && !closed) {
+                capacityFreed.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            capacityLock.unlock();
+        }
+    }
+
+    private void releaseCapacity(long persisted) {
+        bufferedEvents.addAndGet(-persisted);
+        capacityLock.lock();
+        try {
+            capacityFreed.signalAll();
+        } finally {
+            capacityLock.unlock();
+        }
+    }
+
+    private void accumulate(LearningEvent event) {
+        long started = event.getEventType() == LearningEventType.LESSON_STARTED ? 1 : 0;
+        long completed = event.getEventType() == LearningEventType.LESSON_COMPLETED ? 1 : 0;
+
+        users.compute(event.getUserId(), (k, acc) -> {
+            UserAccumulator a = acc != null ? acc : new UserAccumulator();
+            a.started += started;
+            a.completed += completed;
+            a.lastActiveAt = newer(a.lastActiveAt, event.getOccurredAt());
+            return a;
+        });
+        if (event.getCourseId() != null) {
+            courses.compute(event.getCourseId(), (k, acc) -> {
+                CourseAccumulator a = acc != null ? acc : new CourseAccumulator();
+                a.starts += started;
+                a.completions += completed;
+                return a;
+            });
+        }
+        platformEvents.increment();
+        platformCompletions.add(completed);
+    }
+
+    /**
+     * Run {@code action} after every increment added before this call has been persisted, in
+     * registration order. Actions of a failed flush are kept and run after the next successful one.
+     */
+    public void afterFlush(Runnable action) {
+        afterFlush.add(action);
+    }
+
+    /**
+     * Detach the window, hand its events to every event sink and its increments as one batch to the
+     * sink. Adds are held off only while the window is detached, so every event taken comes with
+     * all of its increments and its action runs after they are persisted. Deferred actions are taken
+     * in the same step: an action registered after its event was added finds that event in this
+     * flush or an earlier one, never a later one.
+     * <p>
+     * A failing event sink gets its events again on the next flush; sinks that succeeded do not, so
+     * no side aggregate is recorded twice. A failing batch is kept as it is and retried before newer
+     * ones, in sequence order, so the sink can recognize one it already applied. The actions wait
+     * for a flush in which nothing failed.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            writeFence.write(this::flushLocked);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLocked() {
+        flushRequested.set(false);
+        List<Runnable> actions = new ArrayList<>(retryAfterFlush);
+        retryAfterFlush.clear();
+        List<LearningEvent> flushed = new ArrayList<>();
+        AnalyticsDeltaBatch batch = new AnalyticsDeltaBatch(++batchSequence);
+        long windowStart;
+        windowLock.writeLock().lock();
+        try {
+            windowStart = detach(actions, flushed, batch);
+        } finally {
+            windowLock.writeLock().unlock();
+        }
+        unpersistedEvents += flushed.size();
+
+        RuntimeException failure = null;
+        for (int i = 0; i < eventSinks.size(); i++) {
+            List<LearningEvent> retry = retryEvents.get(i);
+            retry.addAll(flushed);
+            if (retry.isEmpty()) {
+                continue;
+            }
+            try {
+                eventSinks.get(i).accept(retry);
+                retry.clear();
+            } catch (RuntimeException e) {
+                failure = collect(failure, e);
+            }
+        }
+        if (!batch.isEmpty()) {
+            retryBatches.add(batch);
+        }
+        Iterator<AnalyticsDeltaBatch> retry = retryBatches.iterator();
+        while (retry.hasNext()) {
+            AnalyticsDeltaBatch next = retry.next();
+            try {
+                sink.accept(next);
+            } catch (RuntimeException e) {
+                // Newer batches wait, so batches are applied in sequence order
+                failure = collect(failure, e);
+                break;
+            }
+            retry.remove();
+            recordApplied(next);
+        }
+        if (failure != null) {
+            retryAfterFlush.addAll(actions);
+            throw failure;
+        }
+        releaseCapacity(unpersistedEvents);
+        unpersistedEvents = 0;
+        runAll(actions);
+        if (windowStart > 0) {
+            maxObservedStalenessMs.accumulateAndGet(System.currentTimeMillis() - windowStart, Math::max);
+        }
+    }
+
+    private void recordApplied(AnalyticsDeltaBatch batch) {
+        // Without coalescing every event writes its user, course and platform key once
+        long uncoalesced = batch.getPlatformEvents();
+        for (AnalyticsDeltaBatch.UserDelta delta : batch.getUsers().values()) {
+            uncoalesced += delta.getStarted() + delta.getCompleted();
+        }
+        for (AnalyticsDeltaBatch.CourseDelta delta : batch.getCourses().values()) {
+            uncoalesced += delta.getStarts() + delta.getCompletions();
+        }
+        long issued = batch.getUsers().size() + batch.getCourses().size() + 1L;
+        flushes.incrementAndGet();
+        keyWritesIssued.addAndGet(issued);
+        keyWritesSaved.addAndGet(Math.max(0, uncoalesced - issued));
+        log.debug("Flushed coalesced analytics: sequence={}, events={}, users={}, courses={}",
+                batch.getSequence(), batch.getPlatformEvents(), batch.getUsers().size(), batch.getCourses().size());
+    }
+
+    /**
+     * Take the deferred actions, the pending events with their actions and the accumulators.
+     * Runs under the window write lock, so no add is half done.
+     *
+     * @return when the oldest detached event was added, 0 if none was
+     */
+    private long detach(List<Runnable> actions, List<LearningEvent> flushed, AnalyticsDeltaBatch batch) {
+        Runnable action;
+        while ((action = afterFlush.poll()) != null) {
+            actions.add(action);
+        }
+        Pending pending;
+        while ((pending = events.poll()) != null) {
+            flushed.add(pending.event());
+            if (pending.onFlushed() != null) {
+                actions.add(pending.onFlushed());
+            }
+        }
+        pendingEvents.set(0);
+        users.forEach((userId, acc) -> batch.addUser(userId, acc.started, acc.completed, acc.lastActiveAt));
+        users.clear();
+        courses.forEach((courseId, acc) -> batch.addCourse(courseId, acc.starts, acc.completions));
+        courses.clear();
+        batch.addPlatform(platformEvents.sumThenReset(), platformCompletions.sumThenReset());
+        return oldestPendingAtMs.getAndSet(0);
+    }
+
+    private static RuntimeException collect(RuntimeException failure, RuntimeException e) {
+        if (failure == null) {
+            return e;
+        }
+        failure.addSuppressed(e);
+        return failure;
+    }
+
+    private static Instant newer(Instant current, Instant candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        return candidate != null && candidate.isAfter(current) ? candidate : current;
+    }
+
+    private static void runAll(List<Runnable> actions) {
+        for (Runnable action : actions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log.warn("Post-flush action failed", e);
+            }
+        }
+    }
+
+    public CoalescingStats getStats() {
+        long windowStart = oldestPendingAtMs.get();
+        return new CoalescingStats(
+                true,
+                flushIntervalMs,
+                maxPendingEvents,
+                pendingEvents.get(),
+                maxBufferedEvents,
+                bufferedEvents.get(),
+                blockedAdds.sum(),
+                windowStart > 0 ? System.currentTimeMillis() - windowStart : 0,
+                maxObservedStalenessMs.get(),
+                eventsAccepted.sum(),
+                flushes.get(),
+                keyWritesIssued.get(),
+                keyWritesSaved.get());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to flush coalesced analytics", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        releaseCapacity(0);
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    private record Pending(LearningEvent event, Runnable onFlushed) {
+    }
+
+    private static class UserAccumulator {
+        private long started;
+        private long completed;
+        private Instant lastActiveAt;
+    }
+
+    private static class CourseAccumulator {
+        private long starts;
+        private long completions;
+    }
+}
@@ -1,66 +1,176 @@
 package com.orbit.analytics.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orbit.analytics.model.UserAnalytics;
+import com.orbit.common.model.SseStats;
+import com.orbit.common.service.HotPathMetrics;
+import com.orbit.common.service.SseBroadcaster;
+import com.orbit.common.service.SseConnectionManager;
+import com.orbit.common.service.SseRelay;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Server-Sent Events for analytics updates. Read-only stream; REST remains source of truth.
  * Notifies subscribers when analytics for a user have changed (after event consumption).
+ * Notifications are debounced per user and sent off the consumer thread by {@link SseBroadcaster}.
+ * <p>
+ * In data mode the stream carries the user's counters as written instead, with a version id,
+ * so clients need no REST refetch; see {@link SseBroadcaster} for Last-Event-ID replay.
+ * <p>
+ * With the relay enabled, updates reach subscribers connected to any instance, whichever
+ * instance consumed the event; see {@link SseRelay}.
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class AnalyticsEventStreamService {
 
-    private static final long SSE_TIMEOUT_MS = 5 * 60 * 1000; // 5 minutes
+    private static final SseBroadcaster.Message CONNECTED = new SseBroadcaster.Message(null, "connected", "analytics");
 
-    private final Map<String, CopyOnWriteArrayList<SseEmitter>> emittersByUserId = new ConcurrentHashMap<>();
+    private static final String RELAY_CHANNEL_PREFIX = "analytics:sse:";
 
-    public SseEmitter subscribe(String userId) {
-        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MS);
-        emittersByUserId.computeIfAbsent(userId, k -> new CopyOnWriteArrayList<>()).add(emitter);
+    private final ObjectMapper objectMapper;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Environment environment;
+    private final HotPathMetrics metrics;
 
-        emitter.onCompletion(() -> remove(userId, emitter));
-        emitter.onTimeout(() -> remove(userId, emitter));
-        emitter.onError((e) -> remove(userId, emitter));
+    @Value("${analytics.sse.debounce-ms:250}")
+    private long debounceMs;
 
-        try {
-            emitter.send(SseEmitter.event().name("connected").data("analytics"));
-        } catch (IOException e) {
-            log.debug("Failed to send initial SSE event", e);
-            remove(userId, emitter);
+    @Value("${analytics.sse.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Value("${analytics.sse.sender-threads:4}")
+    private int senderThreads;
+
+    /**
+     * Maximum stream lifetime; clients reconnect (with Last-Event-ID in data mode).
+     */
+    @Value("${analytics.sse.timeout-ms:3600000}")
+    private long timeoutMs;
+
+    @Value("${analytics.sse.max-connections:100000}")
+    private int maxConnections;
+
+    @Value("${analytics.sse.max-connections-per-user:8}")
+    private int maxConnectionsPerUser;
+
+    @Value("${analytics.sse.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${analytics.sse.stall-timeout-ms:30000}")
+    private long stallTimeoutMs;
+
+    @Value("${analytics.sse.wheel-tick-ms:100}")
+    private long wheelTickMs;
+
+    @Value("${analytics.sse.replay-size:32}")
+    private int replaySize;
+
+    @Value("${analytics.sse.replay-ttl-ms:300000}")
+    private long replayTtlMs;
+
+    @Value("${analytics.sse.replay-max-users:100000}")
+    private long replayMaxUsers;
+
+    @Value("${analytics.sse.relay.enabled:true}")
+    private boolean relayEnabled;
+
+    @Value("${analytics.sse.relay.shards:64}")
+    private int relayShards;
+
+    private SseBroadcaster<UserAnalytics> broadcaster;
+    private SseRelay<UserAnalytics> relay;
+
+    @PostConstruct
+    void init() {
+        SseConnectionManager.Settings connectionSettings = new SseConnectionManager.Settings(queueCapacity, senderThreads,
+                maxConnections, maxConnectionsPerUser, heartbeatIntervalMs, stallTimeoutMs, wheelTickMs,
+                Threading.VIRTUAL.isActive(environment));
+        broadcaster = new SseBroadcaster<>("analytics", debounceMs, connectionSettings,
+                replaySize, replayTtlMs, replayMaxUsers,
+                userId -> new SseBroadcaster.Message(null, "analytics_updated",
+                        "{\"type\":\"analytics_updated\",\"userId\":\"" + userId + "\"}"),
+                "analytics_data", (older, newer) -> newer, this::dataPayload);
+        broadcaster.timeFanOutWith(metrics.sseFanOut());
+        if (relayEnabled) {
+            relay = new SseRelay<>(RELAY_CHANNEL_PREFIX, relayShards, redisTemplate, listenerContainer,
+                    objectMapper, UserAnalytics.class, broadcaster::deliver);
+            broadcaster.relayThrough(relay);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        log.info("Analytics SSE: requested={}, queued={}, skippedBackedUp={}, replayed={}, resyncs={}",
+                broadcaster.requestedCount(), broadcaster.queuedCount(), broadcaster.skippedBackedUpCount(),
+                broadcaster.replayedCount(), broadcaster.resyncCount());
+        broadcaster.close();
+        if (relay != null) {
+            relay.close();
         }
-        return emitter;
+    }
+
+    public SseEmitter subscribe(String userId) {
+        return subscribe(userId, false, null);
+    }
+
+    /**
+     * @param data        stream {@code analytics_data} events with the counters instead of notifications
+     * @param lastEventId the client's {@code Last-Event-ID} header on reconnect, if any
+     * @return the stream, or null when this instance is at {@code analytics.sse.max-connections}
+     */
+    public SseEmitter subscribe(String userId, boolean data, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        return broadcaster.register(userId, emitter, data, lastEventId, CONNECTED) ? emitter : null;
     }
 
     /**
      * Notify subscribers that analytics for this user were updated (call after event processing).
+     * Never blocks: repeated calls within the debounce window become one event.
+     *
+     * @param analytics the user's counters as just written
      */
-    public void pushAnalyticsUpdated(String userId) {
-        CopyOnWriteArrayList<SseEmitter> emitters = emittersByUserId.get(userId);
-        if (emitters == null || emitters.isEmpty()) return;
-        String payload = "{\"type\":\"analytics_updated\",\"userId\":\"" + userId + "\"}";
-        emitters.forEach(emitter -> {
-            try {
-                emitter.send(SseEmitter.event().name("analytics_updated").data(payload));
-            } catch (IOException e) {
-                remove(userId, emitter);
-            }
-        });
+    public void pushAnalyticsUpdated(UserAnalytics analytics) {
+        broadcaster.markDirty(analytics.getUserId(), analytics);
     }
 
-    private void remove(String userId, SseEmitter emitter) {
-        CopyOnWriteArrayList<SseEmitter> list = emittersByUserId.get(userId);
-        if (list != null) {
-            list.remove(emitter);
-            if (list.isEmpty()) {
-                emittersByUserId.remove(userId);
-            }
+    public SseStats getStats() {
+        SseStats stats = broadcaster.stats();
+        if (relay != null) {
+            relay.addStats(stats);
+        }
+        return stats;
+    }
+
+    private String dataPayload(UserAnalytics analytics, long version) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "analytics_data");
+        payload.put("version", version);
+        payload.put("userId", analytics.getUserId());
+        payload.put("lessonsStartedCount", analytics.getLessonsStartedCount());
+        payload.put("lessonsCompletedCount", analytics.getLessonsCompletedCount());
+        payload.put("lastActiveAt", analytics.getLastActiveAt());
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
         }
     }
 }
@@ -0,0 +1,345 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import com.orbit.analytics.model.CourseAnalytics;
+import com.orbit.analytics.model.PlatformAnalytics;
+import com.orbit.analytics.model.UserAnalytics;
+import com.orbit.common.service.KeyGeneration;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Hash-backed analytics storage (analytics.storage.mode=hash).
+ * Counters live in Redis hashes and are changed server-side with HINCRBY, so concurrent
+ * consumers never lose increments and each event costs a single script round trip.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AnalyticsHashStore {
+
+    // Appended to the active generation's prefix, see KeyGeneration
+    static final String USER_HASH_KEY = "user:";
+    static final String COURSE_HASH_KEY = "course:";
+    static final String PLATFORM_HASH_KEY = "platform";
+
+    static final String FIELD_LESSONS_STARTED = "lessonsStartedCount";
+    static final String FIELD_LESSONS_COMPLETED = "lessonsCompletedCount";
+    static final String FIELD_LAST_ACTIVE_AT = "lastActiveAt";
+    // Epoch millis of lastActiveAt, compared by the scripts so the field only moves forward
+    static final String FIELD_LAST_ACTIVE_AT_MS = "lastActiveAtMs";
+    static final String FIELD_TOTAL_STARTS = "totalLessonStarts";
+    static final String FIELD_TOTAL_COMPLETIONS = "totalLessonCompletions";
+    static final String FIELD_TOTAL_EVENTS = PlatformCounterShards.FIELD_TOTAL_EVENTS;
+
+    private static final int SCAN_COUNT = 500;
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> APPLY_EVENT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/analytics-apply-event.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> APPLY_BATCH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/analytics-apply-batch.lua"), List.class);
+    // Per-process key of the last applied batch sequence; it only has to outlive one retry
+    private static final String APPLIED_SEQUENCE_KEY_PREFIX = "analytics:hash:applied:";
+    private static final long APPLIED_SEQUENCE_TTL_SECONDS = 86_400;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final PlatformCounterShards platformCounterShards;
+    private final KeyGeneration keyGeneration;
+    private final String appliedSequenceKey = APPLIED_SEQUENCE_KEY_PREFIX + UUID.randomUUID();
+
+    /**
+     * Apply one event to user, course and platform shard counters and drop the given cache keys,
+     * all inside one Lua script call.
+     *
+     * @param userCacheKey   apicache key for the user
+     * @param courseCacheKey apicache key for the course, ignored when the event has no course
+     * @return the user's counters after the event
+     */
+    public UserAnalytics applyEvent(LearningEvent event, String userCacheKey, String courseCacheKey) {
+        long started = event.getEventType() == LearningEventType.LESSON_STARTED ? 1 : 0;
+        long completed = event.getEventType() == LearningEventType.LESSON_COMPLETED ? 1 : 0;
+
+        List<String> keys = new ArrayList<>(5);
+        String prefix = keyGeneration.keyPrefix();
+        keys.add(prefix + USER_HASH_KEY + event.getUserId());
+        keys.add(platformCounterShards.currentShardKey(prefix + PLATFORM_HASH_KEY));
+        keys.add(userCacheKey);
+        if (event.getCourseId() != null) {
+            keys.add(prefix + COURSE_HASH_KEY + event.getCourseId());
+            keys.add(courseCacheKey);
+        }
+        Instant occurredAt = event.getOccurredAt();
+
+        List<?> counters = redisTemplate.execute(APPLY_EVENT_SCRIPT, keys,
+                Long.toString(started), Long.toString(completed),
+                occurredAt != null ? occurredAt.toString() : "",
+                occurredAt != null ? Long.toString(occurredAt.toEpochMilli()) : "");
+        log.debug("Applied event to analytics hashes: userId={}, courseId={}", event.getUserId(), event.getCourseId());
+        return new UserAnalytics(event.getUserId(), toLong(counters.get(0)), toLong(counters.get(1)),
+                toInstant(counters.size() > 2 ? counters.get(2) : null));
+    }
+
+    /**
+     * Apply folded deltas for many events in one script call: one HINCRBY per touched field,
+     * lastActiveAt moved forward only, then a DEL of all affected apicache keys. Platform deltas go
+     * to the caller's shard. The call is atomic, so a failure leaves either all of the batch or none
+     * of it; a batch with a sequence is applied at most once, so retrying one whose reply was lost
+     * does not count it twice.
+     *
+     * @return each touched user's counters after the batch, by user id
+     */
+    public Map<String, UserAnalytics> applyBatch(AnalyticsDeltaBatch batch, Collection<String> cacheKeys) {
+        return applyBatch(batch, cacheKeys, keyGeneration.keyPrefix());
+    }
+
+    /**
+     * Same as {@link #applyBatch(AnalyticsDeltaBatch, Collection)} against an explicit generation prefix.
+     */
+    public Map<String, UserAnalytics> applyBatch(AnalyticsDeltaBatch batch, Collection<String> cacheKeys, String prefix) {
+        if (batch.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, AnalyticsDeltaBatch.UserDelta> users = batch.getUsers();
+        Map<String, AnalyticsDeltaBatch.CourseDelta> courses = batch.getCourses();
+        List<String> keys = new ArrayList<>(users.size() + courses.size() + cacheKeys.size() + 2);
+        List<String> args = new ArrayList<>(6 + users.size() * 4 + courses.size() * 2);
+        keys.add(appliedSequenceKey);
+        args.add(Long.toString(batch.getSequence()));
+        args.add(Long.toString(APPLIED_SEQUENCE_TTL_SECONDS));
+        args.add(Integer.toString(users.size()));
+        args.add(Integer.toString(courses.size()));
+        args.add(Long.toString(batch.getPlatformEvents()));
+        args.add(Long.toString(batch.getPlatformCompletions()));
+        users.forEach((userId, delta) -> {
+            keys.add(prefix + USER_HASH_KEY + userId);
+            Instant lastActiveAt = delta.getLastActiveAt();
+            args.add(Long.toString(delta.getStarted()));
+            args.add(Long.toString(delta.getCompleted()));
+            args.add(lastActiveAt != null ? lastActiveAt.toString() : "");
+            args.add(lastActiveAt != null ? Long.toString(lastActiveAt.toEpochMilli()) : "");
+        });
+        courses.forEach((courseId, delta) -> {
+            keys.add(prefix + COURSE_HASH_KEY + courseId);
+            args.add(Long.toString(delta.getStarts()));
+            args.add(Long.toString(delta.getCompletions()));
+        });
+        keys.add(platformCounterShards.currentShardKey(prefix + PLATFORM_HASH_KEY));
+        keys.addAll(cacheKeys);
+
+        List<?> results = redisTemplate.execute(APPLY_BATCH_SCRIPT, keys, args.toArray());
+        log.debug("Applied batch to analytics hashes: sequence={}, events={}, users={}, courses={}",
+                batch.getSequence(), batch.getPlatformEvents(), users.size(), courses.size());
+        Map<String, UserAnalytics> counters = new LinkedHashMap<>();
+        int index = 0;
+        for (String userId : users.keySet()) {
+            List<?> fields = (List<?>) results.get(index++);
+            counters.put(userId, new UserAnalytics(userId, counter(fields.get(0)), counter(fields.get(1)), toInstant(fields.get(2))));
+        }
+        return counters;
+    }
+
+    /**
+     * Write absolute values for a rebuilt state into {@code prefix}, {@code chunkSize} keys per pipeline.
+     * Platform totals go to the base platform hash of that generation.
+     *
+     * @return number of hashes written
+     */
+    public int loadSnapshot(AnalyticsDeltaBatch state, String prefix, int chunkSize) {
+        List<Map.Entry<String, Map<String, String>>> rows = new ArrayList<>();
+        state.getUsers().forEach((userId, delta) -> {
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put(FIELD_LESSONS_STARTED, Long.toString(delta.getStarted()));
+            fields.put(FIELD_LESSONS_COMPLETED, Long.toString(delta.getCompleted()));
+            if (delta.getLastActiveAt() != null) {
+                fields.put(FIELD_LAST_ACTIVE_AT, delta.getLastActiveAt().toString());
+                fields.put(FIELD_LAST_ACTIVE_AT_MS, Long.toString(delta.getLastActiveAt().toEpochMilli()));
+            }
+            rows.add(Map.entry(prefix + USER_HASH_KEY + userId, fields));
+        });
+        state.getCourses().forEach((courseId, delta) -> {
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put(FIELD_TOTAL_STARTS, Long.toString(delta.getStarts()));
+            fields.put(FIELD_TOTAL_COMPLETIONS, Long.toString(delta.getCompletions()));
+            rows.add(Map.entry(prefix + COURSE_HASH_KEY + courseId, fields));
+        });
+        Map<String, String> platform = new LinkedHashMap<>();
+        platform.put(FIELD_TOTAL_EVENTS, Long.toString(state.getPlatformEvents()));
+        platform.put(FIELD_TOTAL_COMPLETIONS, Long.toString(state.getPlatformCompletions()));
+        rows.add(Map.entry(prefix + PLATFORM_HASH_KEY, platform));
+
+        for (int from = 0; from < rows.size(); from += chunkSize) {
+            List<Map.Entry<String, Map<String, String>>> chunk = rows.subList(from, Math.min(rows.size(), from + chunkSize));
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    chunk.forEach(row -> {
+                        operations.delete(row.getKey());
+                        operations.opsForHash().putAll(row.getKey(), row.getValue());
+                    });
+                    return null;
+                }
+            });
+        }
+        return rows.size();
+    }
+
+    /**
+     * Remove every user, course and platform hash of a generation (SCAN + UNLINK, never KEYS).
+     *
+     * @return number of keys removed
+     */
+    public long deleteGeneration(String prefix) {
+        long removed = 0;
+        for (String pattern : List.of(prefix + USER_HASH_KEY + "*", prefix + COURSE_HASH_KEY + "*", prefix + PLATFORM_HASH_KEY + "*")) {
+            removed += unlinkMatching(pattern);
+        }
+        return removed;
+    }
+
+    long unlinkMatching(String pattern) {
+        long removed = 0;
+        List<String> chunk = new ArrayList<>(SCAN_COUNT);
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build())) {
+            while (cursor.hasNext()) {
+                chunk.add(cursor.next());
+                if (chunk.size() == SCAN_COUNT) {
+                    removed += unlink(chunk);
+                }
+            }
+        }
+        return removed + unlink(chunk);
+    }
+
+    private long unlink(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        Long removed = redisTemplate.unlink(keys);
+        keys.clear();
+        return removed != null ? removed : 0;
+    }
+
+    public UserAnalytics readUser(String userId) {
+        Map<String, String> fields = entries(keyGeneration.keyPrefix() + USER_HASH_KEY + userId);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        String lastActiveAt = fields.get(FIELD_LAST_ACTIVE_AT);
+        return new UserAnalytics(
+                userId,
+                longField(fields, FIELD_LESSONS_STARTED),
+                longField(fields, FIELD_LESSONS_COMPLETED),
+                lastActiveAt != null ? Instant.parse(lastActiveAt) : null);
+    }
+
+    public CourseAnalytics readCourse(String courseId) {
+        Map<String, String> fields = entries(keyGeneration.keyPrefix() + COURSE_HASH_KEY + courseId);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        long starts = longField(fields, FIELD_TOTAL_STARTS);
+        long completions = longField(fields, FIELD_TOTAL_COMPLETIONS);
+        // Drop-off count = total starts - total completions, derived on read
+        return new CourseAnalytics(courseId, starts, completions, Math.max(0L, starts - completions));
+    }
+
+    /**
+     * Read many user hashes with one pipelined HGETALL per key; absent users are omitted.
+     */
+    public Map<String, UserAnalytics> readUsers(List<String> userIds) {
+        List<Map<String, String>> results = entriesPipelined(keyGeneration.keyPrefix() + USER_HASH_KEY, userIds);
+        Map<String, UserAnalytics> found = new LinkedHashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            Map<String, String> fields = results.get(i);
+            if (!fields.isEmpty()) {
+                String lastActiveAt = fields.get(FIELD_LAST_ACTIVE_AT);
+                found.put(userIds.get(i), new UserAnalytics(
+                        userIds.get(i),
+                        longField(fields, FIELD_LESSONS_STARTED),
+                        longField(fields, FIELD_LESSONS_COMPLETED),
+                        lastActiveAt != null ? Instant.parse(lastActiveAt) : null));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Read many course hashes with one pipelined HGETALL per key; absent courses are omitted.
+     */
+    public Map<String, CourseAnalytics> readCourses(List<String> courseIds) {
+        List<Map<String, String>> results = entriesPipelined(keyGeneration.keyPrefix() + COURSE_HASH_KEY, courseIds);
+        Map<String, CourseAnalytics> found = new LinkedHashMap<>();
+        for (int i = 0; i < courseIds.size(); i++) {
+            Map<String, String> fields = results.get(i);
+            if (!fields.isEmpty()) {
+                long starts = longField(fields, FIELD_TOTAL_STARTS);
+                long completions = longField(fields, FIELD_TOTAL_COMPLETIONS);
+                found.put(courseIds.get(i), new CourseAnalytics(courseIds.get(i), starts, completions, Math.max(0L, starts - completions)));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Sum of all platform shards plus the pre-sharding platform hash.
+     */
+    public PlatformAnalytics readPlatform() {
+        return platformCounterShards.sum(keyGeneration.keyPrefix() + PLATFORM_HASH_KEY, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, String>> entriesPipelined(String prefix, List<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                ids.forEach(id -> operations.opsForHash().entries(prefix + id));
+                return null;
+            }
+        });
+        return results.stream().map(result -> (Map<String, String>) result).toList();
+    }
+
+    private Map<String, String> entries(String key) {
+        return redisTemplate.<String, String>opsForHash().entries(key);
+    }
+
+    private static long longField(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        return value != null ? Long.parseLong(value) : 0L;
+    }
+
+    private static Instant toInstant(Object reply) {
+        return reply != null ? Instant.parse(String.valueOf(reply)) : null;
+    }
+
+    private static long counter(Object reply) {
+        return reply != null ? toLong(reply) : 0L;
+    }
+
+    private static long toLong(Object reply) {
+        return reply instanceof Number number ? number.longValue() : Long.parseLong(String.valueOf(reply));
+    }
+}
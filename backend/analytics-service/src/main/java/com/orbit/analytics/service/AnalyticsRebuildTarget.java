@@ -0,0 +1,68 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.common.service.ReplayRebuildService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Replay rebuild of the hash-mode counters. Only the user/course/platform counters are rebuilt;
+ * windows, active users, funnels, completion times and trending keep their current state. In json
+ * mode the stored values have no key generations to switch, so a rebuild is refused.
+ */
+@Component
+@RequiredArgsConstructor
+public class AnalyticsRebuildTarget implements ReplayRebuildService.Target<LearningEvent, AnalyticsDeltaBatch> {
+
+    private static final String APICACHE_PATTERN = "analytics:apicache:*";
+    private static final String JSON_MODE_ERROR = "Replay rebuild loads hash-mode key generations; with analytics.storage.mode=json "
+            + "rebuild by resetting the consumer group to the earliest offset";
+
+    private final AnalyticsService analyticsService;
+    private final AnalyticsHashStore analyticsHashStore;
+
+    @Override
+    public String unsupportedReason() {
+        return analyticsService.isHashMode() ? null : JSON_MODE_ERROR;
+    }
+
+    @Override
+    public AnalyticsDeltaBatch newState() {
+        return new AnalyticsDeltaBatch();
+    }
+
+    @Override
+    public void add(AnalyticsDeltaBatch state, LearningEvent event) {
+        state.add(event);
+    }
+
+    @Override
+    public void merge(AnalyticsDeltaBatch state, AnalyticsDeltaBatch other) {
+        state.merge(other);
+    }
+
+    @Override
+    public long load(AnalyticsDeltaBatch state, String prefix, int batchSize) {
+        return analyticsHashStore.loadSnapshot(state, prefix, batchSize);
+    }
+
+    /**
+     * Counters are deltas, so the gap is added with HINCRBY on top of the loaded totals.
+     */
+    @Override
+    public void applyGap(AnalyticsDeltaBatch state, AnalyticsDeltaBatch gap, String prefix, int batchSize) {
+        analyticsHashStore.applyBatch(gap, List.of(), prefix);
+    }
+
+    @Override
+    public long deleteGeneration(String prefix) {
+        return analyticsHashStore.deleteGeneration(prefix);
+    }
+
+    @Override
+    public void purgeApiCache() {
+        analyticsHashStore.unlinkMatching(APICACHE_PATTERN);
+    }
+}
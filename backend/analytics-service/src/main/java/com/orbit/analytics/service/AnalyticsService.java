@@ -4,16 +4,38 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.orbit.analytics.event.LearningEvent;
 import com.orbit.analytics.event.LearningEventType;
+import com.orbit.analytics.model.ActiveUserCounts;
+import com.orbit.analytics.model.CoalescingStats;
 import com.orbit.analytics.model.CourseAnalytics;
 import com.orbit.analytics.model.PlatformAnalytics;
 import com.orbit.analytics.model.UserAnalytics;
+import com.orbit.common.model.NearCacheStats;
+import com.orbit.common.service.HotPathMetrics;
+import com.orbit.common.service.NearCache;
+import com.orbit.common.service.ValueCodec;
+import com.orbit.common.service.WriteFence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
@@ -21,12 +43,55 @@ import java.util.concurrent.TimeUnit;
 public class AnalyticsService {
 
     private final RedisTemplate<String, String> redisTemplate;
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
+    private final ValueCodec<UserAnalytics> userAnalyticsCodec;
+    private final ValueCodec<CourseAnalytics> courseAnalyticsCodec;
+    private final HotPathMetrics metrics;
     private final ObjectMapper objectMapper;
     private final AnalyticsEventStreamService analyticsEventStreamService;
+    private final AnalyticsHashStore analyticsHashStore;
+    private final PlatformCounterShards platformCounterShards;
+    private final NearCache nearCache;
+    private final TimeWindowService timeWindowService;
+    private final ActiveUserService activeUserService;
+    private final LessonFunnelService lessonFunnelService;
+    private final TrendingService trendingService;
+    private final CompletionTimeService completionTimeService;
+    private final RetentionService retentionService;
+    private final WriteFence writeFence;
 
     @Value("${cache.analytics.ttl-seconds:60}")
     private long cacheTtlSeconds;
 
+    @Value("${cache.analytics.platform-ttl-seconds:5}")
+    private long platformCacheTtlSeconds;
+
+    /**
+     * json: read-modify-write JSON values (default). hash: atomic hash counters, one script call per event.
+     */
+    @Value("${analytics.storage.mode:json}")
+    private String storageMode;
+
+    @Value("${analytics.coalescing.enabled:false}")
+    private boolean coalescingEnabled;
+
+    @Value("${analytics.coalescing.flush-interval-ms:1000}")
+    private long coalescingFlushIntervalMs;
+
+    @Value("${analytics.coalescing.max-pending-events:10000}")
+    private long coalescingMaxPendingEvents;
+
+    @Value("${analytics.coalescing.max-buffered-events:100000}")
+    private long coalescingMaxBufferedEvents;
+
+    private AnalyticsDeltaCoalescer coalescer;
+
+    /**
+     * Json-mode course values are read-modify-write while parallel consumer lanes are keyed by user,
+     * so writes to one course are serialized on a lock stripe.
+     */
+    private final StripedLocks courseLocks = new StripedLocks(64);
+
     private static final String USER_ANALYTICS_KEY_PREFIX = "analytics:user:";
     private static final String COURSE_ANALYTICS_KEY_PREFIX = "analytics:course:";
     private static final String PLATFORM_ANALYTICS_KEY = "analytics:platform";
@@ -34,8 +99,97 @@ public class AnalyticsService {
     private static final String CACHE_PREFIX_COURSE = "analytics:apicache:course:";
     private static final String CACHE_PLATFORM = "analytics:apicache:platform";
 
+    @PostConstruct
+    void initCoalescer() {
+        if (coalescingEnabled && isHashMode()) {
+            coalescer = new AnalyticsDeltaCoalescer(coalescingFlushIntervalMs, coalescingMaxPendingEvents,
+                    coalescingMaxBufferedEvents, sideAggregateSinks(), this::writeDeltaBatch, writeFence);
+            log.info("Analytics delta coalescing enabled: flushIntervalMs={}, maxPendingEvents={}, maxBufferedEvents={}",
+                    coalescingFlushIntervalMs, coalescingMaxPendingEvents, coalescingMaxBufferedEvents);
+        } else if (coalescingEnabled) {
+            log.warn("Analytics delta coalescing requires analytics.storage.mode=hash; coalescing disabled");
+        }
+    }
+
+    @PreDestroy
+    void flushCoalescer() {
+        if (coalescer != null) {
+            coalescer.close();
+        }
+    }
+
+    /**
+     * Push out increments still held by the coalescing window (no-op when coalescing is off).
+     */
+    public void flushPendingCounters() {
+        if (coalescer != null) {
+            coalescer.flush();
+        }
+    }
+
+    /**
+     * Run {@code action} once every event processed so far is persisted: immediately without
+     * coalescing, otherwise after the flush that writes them. Consumers acknowledge skipped and
+     * failed events here, behind the events before them.
+     */
+    public void afterPendingWrites(Runnable action) {
+        if (coalescer != null) {
+            coalescer.afterFlush(action);
+        } else {
+            action.run();
+        }
+    }
+
     public void processEvent(LearningEvent event) {
-        if (event.getEventType() == LearningEventType.LESSON_STARTED) {
+        processEvent(event, () -> { });
+    }
+
+    /**
+     * Apply one event, then run {@code onPersisted} (dedup mark, offset commit) inside the same
+     * {@link WriteFence} section, so a snapshot never holds the writes without the mark. With
+     * coalescing the event is only buffered: side aggregates and counters are written together at
+     * the next flush, which runs {@code onPersisted}, so the consumer thread makes no Redis calls
+     * here and a crash before the flush redelivers the event instead of losing it.
+     */
+    public void processEvent(LearningEvent event, Runnable onPersisted) {
+        metrics.eventProcessing().record(() -> {
+            if (coalescer != null) {
+                coalescer.add(event, onPersisted);
+                return;
+            }
+            writeFence.write(() -> {
+                recordSideAggregates(List.of(event));
+                applyCounters(event);
+                onPersisted.run();
+            });
+        });
+    }
+
+    /**
+     * Windows, active users, funnels, trending, completion times and retention: each service
+     * folds the events into one write.
+     */
+    private void recordSideAggregates(List<LearningEvent> events) {
+        sideAggregateSinks().forEach(sink -> sink.accept(events));
+    }
+
+    /**
+     * The side aggregates as separate sinks, so the coalescer retries only the ones that failed.
+     */
+    private List<Consumer<List<LearningEvent>>> sideAggregateSinks() {
+        return List.of(
+                timeWindowService::record,
+                activeUserService::record,
+                lessonFunnelService::record,
+                trendingService::record,
+                completionTimeService::record,
+                retentionService::record);
+    }
+
+    private void applyCounters(LearningEvent event) {
+        if (isHashMode()) {
+            processEventAtomically(event);
+        } else if (event.getEventType() == LearningEventType.LESSON_STARTED) {
             processLessonStarted(event);
         } else if (event.getEventType() == LearningEventType.LESSON_COMPLETED) {
             processLessonCompleted(event);
@@ -43,36 +197,122 @@ public class AnalyticsService {
     }
 
     private void processLessonStarted(LearningEvent event) {
-        updateUserAnalyticsOnStart(event);
-        updateCourseAnalyticsOnStart(event);
+        UserAnalytics user = updateUserAnalyticsOnStart(event);
+        courseLocks.run(event.getCourseId(), () -> updateCourseAnalyticsOnStart(event));
         updatePlatformAnalytics(event);
         invalidateCacheForEvent(event);
+        metrics.recordFreshness(event.getOccurredAt());
+        analyticsEventStreamService.pushAnalyticsUpdated(user);
     }
 
     private void processLessonCompleted(LearningEvent event) {
-        updateUserAnalyticsOnComplete(event);
-        updateCourseAnalyticsOnComplete(event);
+        UserAnalytics user = updateUserAnalyticsOnComplete(event);
+        courseLocks.run(event.getCourseId(), () -> updateCourseAnalyticsOnComplete(event));
         updatePlatformAnalytics(event);
         invalidateCacheForEvent(event);
+        metrics.recordFreshness(event.getOccurredAt());
+        analyticsEventStreamService.pushAnalyticsUpdated(user);
+    }
+
+    public void processBatch(List<LearningEvent> events) {
+        processBatch(events, () -> { });
+    }
+
+    /**
+     * Process one poll worth of events, then run {@code onPersisted} as {@link #processEvent} does.
+     * In hash mode the events are folded into per-user and per-course deltas and written in one
+     * pipeline; in json mode each event is applied in order. With coalescing the events join the
+     * current window like single events do.
+     */
+    public void processBatch(List<LearningEvent> events, Runnable onPersisted) {
+        metrics.batchProcessing().record(() -> {
+            if (coalescer != null) {
+                for (int i = 0; i < events.size(); i++) {
+                    coalescer.add(events.get(i), i == events.size() - 1 ? onPersisted : null);
+                }
+                if (events.isEmpty()) {
+                    coalescer.afterFlush(onPersisted);
+                }
+                return;
+            }
+            writeFence.write(() -> {
+                recordSideAggregates(events);
+                if (!isHashMode()) {
+                    events.forEach(this::applyCounters);
+                } else {
+                    AnalyticsDeltaBatch batch = new AnalyticsDeltaBatch();
+                    events.forEach(batch::add);
+                    writeDeltaBatch(batch);
+                }
+                onPersisted.run();
+            });
+        });
+    }
+
+    /**
+     * Time/size-window coalescing state; disabled stats when coalescing is off.
+     */
+    public CoalescingStats getCoalescingStats() {
+        if (coalescer == null) {
+            return new CoalescingStats(false, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        return coalescer.getStats();
+    }
+
+    private void writeDeltaBatch(AnalyticsDeltaBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<String> cacheKeys = new LinkedHashSet<>();
+        batch.getUsers().keySet().forEach(userId -> cacheKeys.add(CACHE_PREFIX_USER + userId));
+        batch.getCourses().keySet().forEach(courseId -> cacheKeys.add(CACHE_PREFIX_COURSE + courseId));
+        Map<String, UserAnalytics> users = metrics.redis("hash.apply-batch", () -> analyticsHashStore.applyBatch(batch, cacheKeys));
+        nearCache.publishInvalidation(cacheKeys);
+        // Deltas keep each user's newest event time, so older events folded into the same write are not sampled
+        batch.getUsers().values().forEach(user -> metrics.recordFreshness(user.getLastActiveAt()));
+        users.values().forEach(analyticsEventStreamService::pushAnalyticsUpdated);
+    }
+
+    /**
+     * Hash mode: counters and cache invalidation are applied server-side in one round trip.
+     */
+    private void processEventAtomically(LearningEvent event) {
+        if (event.getEventType() == null) {
+            return;
+        }
+        UserAnalytics user = metrics.redis("hash.apply-event", () -> analyticsHashStore.applyEvent(event,
+                CACHE_PREFIX_USER + event.getUserId(),
+                CACHE_PREFIX_COURSE + event.getCourseId()));
+        if (event.getCourseId() != null) {
+            nearCache.publishInvalidation(CACHE_PREFIX_USER + event.getUserId(), CACHE_PREFIX_COURSE + event.getCourseId());
+        } else {
+            nearCache.publishInvalidation(CACHE_PREFIX_USER + event.getUserId());
+        }
+        metrics.recordFreshness(event.getOccurredAt());
+        analyticsEventStreamService.pushAnalyticsUpdated(user);
+    }
+
+    public boolean isHashMode() {
+        return "hash".equalsIgnoreCase(storageMode);
     }
 
     /**
-     * Invalidate read-through cache for affected keys (event-driven invalidation).
+     * Invalidate in-process caches for affected keys (event-driven invalidation). Json mode keeps no
+     * Redis apicache copies, and the platform cache is left to expire on its short TTL.
      */
     private void invalidateCacheForEvent(LearningEvent event) {
-        redisTemplate.delete(CACHE_PREFIX_USER + event.getUserId());
         if (event.getCourseId() != null) {
-            redisTemplate.delete(CACHE_PREFIX_COURSE + event.getCourseId());
+            nearCache.publishInvalidation(CACHE_PREFIX_USER + event.getUserId(), CACHE_PREFIX_COURSE + event.getCourseId());
+        } else {
+            nearCache.publishInvalidation(CACHE_PREFIX_USER + event.getUserId());
         }
-        redisTemplate.delete(CACHE_PLATFORM);
         log.debug("Invalidated analytics cache for userId={}, courseId={}", event.getUserId(), event.getCourseId());
-        analyticsEventStreamService.pushAnalyticsUpdated(event.getUserId());
     }
 
-    private void updateUserAnalyticsOnStart(LearningEvent event) {
+    private UserAnalytics updateUserAnalyticsOnStart(LearningEvent event) {
         String userId = event.getUserId();
         
-        UserAnalytics analytics = getUserAnalytics(userId);
+        UserAnalytics analytics = loadUserAnalytics(userId);
         if (analytics == null) {
             analytics = new UserAnalytics(userId, 0L, 0L, null);
         }
@@ -81,12 +321,13 @@ public class AnalyticsService {
         analytics.setLastActiveAt(event.getOccurredAt());
         
         saveUserAnalytics(analytics);
+        return analytics;
     }
 
-    private void updateUserAnalyticsOnComplete(LearningEvent event) {
+    private UserAnalytics updateUserAnalyticsOnComplete(LearningEvent event) {
         String userId = event.getUserId();
         
-        UserAnalytics analytics = getUserAnalytics(userId);
+        UserAnalytics analytics = loadUserAnalytics(userId);
         if (analytics == null) {
             analytics = new UserAnalytics(userId, 0L, 0L, null);
         }
@@ -95,6 +336,7 @@ public class AnalyticsService {
         analytics.setLastActiveAt(event.getOccurredAt());
         
         saveUserAnalytics(analytics);
+        return analytics;
     }
 
     private void updateCourseAnalyticsOnStart(LearningEvent event) {
@@ -103,7 +345,7 @@ public class AnalyticsService {
         }
         
         String courseId = event.getCourseId();
-        CourseAnalytics analytics = getCourseAnalytics(courseId);
+        CourseAnalytics analytics = loadCourseAnalytics(courseId);
         if (analytics == null) {
             analytics = new CourseAnalytics(courseId, 0L, 0L, 0L);
         }
@@ -122,7 +364,7 @@ public class AnalyticsService {
         }
         
         String courseId = event.getCourseId();
-        CourseAnalytics analytics = getCourseAnalytics(courseId);
+        CourseAnalytics analytics = loadCourseAnalytics(courseId);
         if (analytics == null) {
             analytics = new CourseAnalytics(courseId, 0L, 0L, 0L);
         }
@@ -136,18 +378,8 @@ public class AnalyticsService {
     }
 
     private void updatePlatformAnalytics(LearningEvent event) {
-        PlatformAnalytics analytics = getPlatformAnalytics();
-        if (analytics == null) {
-            analytics = new PlatformAnalytics(0L, 0L);
-        }
-        
-        analytics.setTotalEventsProcessed(analytics.getTotalEventsProcessed() + 1);
-        
-        if (event.getEventType() == LearningEventType.LESSON_COMPLETED) {
-            analytics.setTotalLessonCompletions(analytics.getTotalLessonCompletions() + 1);
-        }
-        
-        savePlatformAnalytics(analytics);
+        long completions = event.getEventType() == LearningEventType.LESSON_COMPLETED ? 1 : 0;
+        metrics.redis("platform.increment", () -> platformCounterShards.increment(PLATFORM_ANALYTICS_KEY, 1, completions));
     }
 
     private void recalculateCourseDropOff(CourseAnalytics analytics) {
@@ -159,9 +391,9 @@ public class AnalyticsService {
     private void saveUserAnalytics(UserAnalytics analytics) {
         try {
             String key = USER_ANALYTICS_KEY_PREFIX + analytics.getUserId();
-            String value = objectMapper.writeValueAsString(analytics);
-            redisTemplate.opsForValue().set(key, value);
-        } catch (JsonProcessingException e) {
+            byte[] value = userAnalyticsCodec.encode(analytics);
+            metrics.redis("user.set", () -> binaryRedisTemplate.opsForValue().set(key, value));
+        } catch (IOException e) {
             log.error("Failed to save user analytics for userId: {}", analytics.getUserId(), e);
         }
     }
@@ -169,66 +401,204 @@ public class AnalyticsService {
     private void saveCourseAnalytics(CourseAnalytics analytics) {
         try {
             String key = COURSE_ANALYTICS_KEY_PREFIX + analytics.getCourseId();
-            String value = objectMapper.writeValueAsString(analytics);
-            redisTemplate.opsForValue().set(key, value);
-        } catch (JsonProcessingException e) {
+            byte[] value = courseAnalyticsCodec.encode(analytics);
+            metrics.redis("course.set", () -> binaryRedisTemplate.opsForValue().set(key, value));
+        } catch (IOException e) {
             log.error("Failed to save course analytics for courseId: {}", analytics.getCourseId(), e);
         }
     }
 
-    private void savePlatformAnalytics(PlatformAnalytics analytics) {
+    /**
+     * Read path: in-process L1, then the stored value (json) or the Redis apicache and hashes (hash).
+     * Do not mutate the result.
+     */
+    public UserAnalytics getUserAnalytics(String userId) {
+        return nearCache.get(CACHE_PREFIX_USER + userId, UserAnalytics.class, () -> loadUserAnalytics(userId));
+    }
+
+    /**
+     * Read path: in-process L1, then the stored value (json) or the Redis apicache and hashes (hash).
+     * Do not mutate the result.
+     */
+    public CourseAnalytics getCourseAnalytics(String courseId) {
+        return nearCache.get(CACHE_PREFIX_COURSE + courseId, CourseAnalytics.class, () -> loadCourseAnalytics(courseId));
+    }
+
+    /**
+     * Bulk read: L1 hits, then one MGET of the stored values (json), or one MGET over the apicache
+     * keys, one pipelined HGETALL round for the misses and one pipelined cache fill (hash).
+     * Unknown ids are omitted.
+     */
+    public List<UserAnalytics> getUserAnalyticsBatch(List<String> userIds) {
+        return getBatch(userIds, CACHE_PREFIX_USER, UserAnalytics.class, userAnalyticsCodec,
+                misses -> isHashMode()
+                        ? metrics.redis("hash.read-users", () -> analyticsHashStore.readUsers(misses))
+                        : readStored(misses, USER_ANALYTICS_KEY_PREFIX, userAnalyticsCodec));
+    }
+
+    /**
+     * Bulk read for courses; see {@link #getUserAnalyticsBatch(List)}.
+     */
+    public List<CourseAnalytics> getCourseAnalyticsBatch(List<String> courseIds) {
+        return getBatch(courseIds, CACHE_PREFIX_COURSE, CourseAnalytics.class, courseAnalyticsCodec,
+                misses -> isHashMode()
+                        ? metrics.redis("hash.read-courses", () -> analyticsHashStore.readCourses(misses))
+                        : readStored(misses, COURSE_ANALYTICS_KEY_PREFIX, courseAnalyticsCodec));
+    }
+
+    private <T> List<T> getBatch(List<String> ids, String cachePrefix, Class<T> type, ValueCodec<T> codec,
+                                 Function<List<String>, Map<String, T>> storageLoader) {
+        List<String> distinct = ids.stream().distinct().toList();
+        Map<String, T> found = new HashMap<>();
+
+        List<String> l1Misses = new ArrayList<>();
+        for (String id : distinct) {
+            T local = nearCache.peek(cachePrefix + id, type);
+            if (local != null) {
+                found.put(id, local);
+            } else {
+                l1Misses.add(id);
+            }
+        }
+
+        // Json mode reads the stored values directly; an apicache copy would be the same bytes
+        List<String> cacheMisses = l1Misses;
+        if (isHashMode() && !l1Misses.isEmpty()) {
+            cacheMisses = new ArrayList<>();
+            List<String> cacheKeys = l1Misses.stream().map(id -> cachePrefix + id).toList();
+            List<byte[]> cached = metrics.redis("apicache.mget", () -> binaryRedisTemplate.opsForValue().multiGet(cacheKeys));
+            for (int i = 0; i < l1Misses.size(); i++) {
+                T value = cached != null ? decode(cached.get(i), codec) : null;
+                metrics.apicacheLookup(value != null);
+                if (value != null) {
+                    found.put(l1Misses.get(i), value);
+                } else {
+                    cacheMisses.add(l1Misses.get(i));
+                }
+            }
+        }
+
+        if (!cacheMisses.isEmpty()) {
+            Map<String, T> loaded = storageLoader.apply(cacheMisses);
+            found.putAll(loaded);
+            if (isHashMode()) {
+                fillCache(cachePrefix, loaded, codec);
+            }
+        }
+        log.debug("Batch analytics read: requested={}, l1Hits={}, apicacheHits={}, loaded={}",
+                distinct.size(), distinct.size() - l1Misses.size(), l1Misses.size() - cacheMisses.size(), cacheMisses.size());
+        return distinct.stream().map(found::get).filter(Objects::nonNull).toList();
+    }
+
+    private <T> Map<String, T> readStored(List<String> ids, String keyPrefix, ValueCodec<T> codec) {
+        List<String> keys = ids.stream().map(id -> keyPrefix + id).toList();
+        List<byte[]> values = metrics.redis("stored.mget", () -> binaryRedisTemplate.opsForValue().multiGet(keys));
+        Map<String, T> found = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size() && values != null; i++) {
+            T value = decode(values.get(i), codec);
+            if (value != null) {
+                found.put(ids.get(i), value);
+            }
+        }
+        return found;
+    }
+
+    private <T> void fillCache(String cachePrefix, Map<String, T> values, ValueCodec<T> codec) {
+        if (values.isEmpty()) {
+            return;
+        }
+        metrics.redis("apicache.fill", () -> binaryRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                values.forEach((id, value) -> {
+                    try {
+                        operations.opsForValue().set(cachePrefix + id, codec.encode(value), cacheTtlSeconds, TimeUnit.SECONDS);
+                    } catch (IOException e) {
+                        log.warn("Failed to serialize analytics for cache: {}", id, e);
+                    }
+                });
+                return null;
+            }
+        }));
+    }
+
+    private <T> T decode(byte[] value, ValueCodec<T> codec) {
         try {
-            String value = objectMapper.writeValueAsString(analytics);
-            redisTemplate.opsForValue().set(PLATFORM_ANALYTICS_KEY, value);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to save platform analytics", e);
+            return codec.decode(value);
+        } catch (IOException e) {
+            log.warn("Failed to decode stored analytics value", e);
+            return null;
         }
     }
 
-    public UserAnalytics getUserAnalytics(String userId) {
+    public NearCacheStats getNearCacheStats() {
+        return nearCache.getStats();
+    }
+
+    private UserAnalytics loadUserAnalytics(String userId) {
         try {
+            if (!isHashMode()) {
+                // The stored value is what an apicache copy would hold, one GET away
+                return userAnalyticsCodec.decode(metrics.redis("user.get", () -> binaryRedisTemplate.opsForValue().get(USER_ANALYTICS_KEY_PREFIX + userId)));
+            }
             String cacheKey = CACHE_PREFIX_USER + userId;
-            String cached = redisTemplate.opsForValue().get(cacheKey);
+            byte[] cached = metrics.redis("apicache.get", () -> binaryRedisTemplate.opsForValue().get(cacheKey));
+            metrics.apicacheLookup(cached != null);
             if (cached != null) {
                 log.debug("Analytics cache hit: {}", cacheKey);
-                return objectMapper.readValue(cached, UserAnalytics.class);
+                return userAnalyticsCodec.decode(cached);
             }
-            String key = USER_ANALYTICS_KEY_PREFIX + userId;
-            String value = redisTemplate.opsForValue().get(key);
-            if (value == null) {
-                return null;
+            UserAnalytics result = metrics.redis("hash.read-user", () -> analyticsHashStore.readUser(userId));
+            if (result != null) {
+                byte[] value = userAnalyticsCodec.encode(result);
+                metrics.redis("apicache.set", () -> binaryRedisTemplate.opsForValue().set(cacheKey, value, cacheTtlSeconds, TimeUnit.SECONDS));
             }
-            UserAnalytics result = objectMapper.readValue(value, UserAnalytics.class);
-            redisTemplate.opsForValue().set(cacheKey, value, cacheTtlSeconds, TimeUnit.SECONDS);
             return result;
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Failed to get user analytics for userId: {}", userId, e);
             return null;
         }
     }
 
-    public CourseAnalytics getCourseAnalytics(String courseId) {
+    private CourseAnalytics loadCourseAnalytics(String courseId) {
         try {
+            if (!isHashMode()) {
+                return courseAnalyticsCodec.decode(metrics.redis("course.get", () -> binaryRedisTemplate.opsForValue().get(COURSE_ANALYTICS_KEY_PREFIX + courseId)));
+            }
             String cacheKey = CACHE_PREFIX_COURSE + courseId;
-            String cached = redisTemplate.opsForValue().get(cacheKey);
+            byte[] cached = metrics.redis("apicache.get", () -> binaryRedisTemplate.opsForValue().get(cacheKey));
+            metrics.apicacheLookup(cached != null);
             if (cached != null) {
                 log.debug("Analytics cache hit: {}", cacheKey);
-                return objectMapper.readValue(cached, CourseAnalytics.class);
+                return courseAnalyticsCodec.decode(cached);
             }
-            String key = COURSE_ANALYTICS_KEY_PREFIX + courseId;
-            String value = redisTemplate.opsForValue().get(key);
-            if (value == null) {
-                return null;
+            CourseAnalytics result = metrics.redis("hash.read-course", () -> analyticsHashStore.readCourse(courseId));
+            if (result != null) {
+                byte[] value = courseAnalyticsCodec.encode(result);
+                metrics.redis("apicache.set", () -> binaryRedisTemplate.opsForValue().set(cacheKey, value, cacheTtlSeconds, TimeUnit.SECONDS));
             }
-            CourseAnalytics result = objectMapper.readValue(value, CourseAnalytics.class);
-            redisTemplate.opsForValue().set(cacheKey, value, cacheTtlSeconds, TimeUnit.SECONDS);
             return result;
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Failed to get course analytics for courseId: {}", courseId, e);
             return null;
         }
     }
 
+    /**
+     * Sum of the platform shards plus the pre-sharding JSON total, if one is still stored.
+     */
+    private PlatformAnalytics readShardedPlatformAnalytics() throws JsonProcessingException {
+        PlatformAnalytics result = platformCounterShards.sum(PLATFORM_ANALYTICS_KEY, false);
+        String legacy = redisTemplate.opsForValue().get(PLATFORM_ANALYTICS_KEY);
+        if (legacy != null) {
+            PlatformAnalytics base = objectMapper.readValue(legacy, PlatformAnalytics.class);
+            result.setTotalEventsProcessed(result.getTotalEventsProcessed() + base.getTotalEventsProcessed());
+            result.setTotalLessonCompletions(result.getTotalLessonCompletions() + base.getTotalLessonCompletions());
+        }
+        return result;
+    }
+
     public PlatformAnalytics getPlatformAnalytics() {
         try {
             String cached = redisTemplate.opsForValue().get(CACHE_PLATFORM);
@@ -236,12 +606,15 @@ public class AnalyticsService {
                 log.debug("Analytics cache hit: {}", CACHE_PLATFORM);
                 return objectMapper.readValue(cached, PlatformAnalytics.class);
             }
-            String value = redisTemplate.opsForValue().get(PLATFORM_ANALYTICS_KEY);
-            if (value == null) {
-                return new PlatformAnalytics(0L, 0L);
-            }
-            PlatformAnalytics result = objectMapper.readValue(value, PlatformAnalytics.class);
-            redisTemplate.opsForValue().set(CACHE_PLATFORM, value, cacheTtlSeconds, TimeUnit.SECONDS);
+            PlatformAnalytics result = isHashMode()
+                    ? analyticsHashStore.readPlatform()
+                    : readShardedPlatformAnalytics();
+            ActiveUserCounts activeUsers = activeUserService.getPlatformActiveUsers();
+            result.setDailyActiveUsers(activeUsers.getDailyActiveUsers());
+            result.setWeeklyActiveUsers(activeUsers.getWeeklyActiveUsers());
+            result.setMonthlyActiveUsers(activeUsers.getMonthlyActiveUsers());
+            // Short TTL: writers no longer invalidate the platform cache
+            redisTemplate.opsForValue().set(CACHE_PLATFORM, objectMapper.writeValueAsString(result), platformCacheTtlSeconds, TimeUnit.SECONDS);
             return result;
         } catch (JsonProcessingException e) {
             log.error("Failed to get platform analytics", e);
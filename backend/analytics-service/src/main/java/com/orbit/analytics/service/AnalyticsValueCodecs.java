@@ -0,0 +1,68 @@
+package com.orbit.analytics.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orbit.analytics.model.CourseAnalytics;
+import com.orbit.analytics.model.UserAnalytics;
+import com.orbit.common.service.ValueCodec;
+
+import java.io.IOException;
+
+/**
+ * {@link ValueCodec} layouts of the stored user and course aggregates
+ * ({@code analytics.storage.value-codec}).
+ */
+public final class AnalyticsValueCodecs {
+
+    private AnalyticsValueCodecs() {
+    }
+
+    public static ValueCodec<UserAnalytics> userAnalytics(ValueCodec.Format format, ObjectMapper objectMapper) {
+        return ValueCodec.of(UserAnalytics.class, USER_ANALYTICS, format, objectMapper);
+    }
+
+    public static ValueCodec<CourseAnalytics> courseAnalytics(ValueCodec.Format format, ObjectMapper objectMapper) {
+        return ValueCodec.of(CourseAnalytics.class, COURSE_ANALYTICS, format, objectMapper);
+    }
+
+    private static final ValueCodec.Layout<UserAnalytics> USER_ANALYTICS = new ValueCodec.Layout<>() {
+        @Override
+        public void write(UserAnalytics value, ValueCodec.Writer out) {
+            out.presence(value.getUserId(), value.getLessonsStartedCount(), value.getLessonsCompletedCount(), value.getLastActiveAt());
+            out.string(value.getUserId());
+            out.varLong(value.getLessonsStartedCount());
+            out.varLong(value.getLessonsCompletedCount());
+            out.instant(value.getLastActiveAt());
+        }
+
+        @Override
+        public UserAnalytics read(ValueCodec.Reader in) throws IOException {
+            int present = in.presence();
+            return new UserAnalytics(
+                    (present & 1) != 0 ? in.string() : null,
+                    (present & 2) != 0 ? in.varLong() : null,
+                    (present & 4) != 0 ? in.varLong() : null,
+                    (present & 8) != 0 ? in.instant() : null);
+        }
+    };
+
+    private static final ValueCodec.Layout<CourseAnalytics> COURSE_ANALYTICS = new ValueCodec.Layout<>() {
+        @Override
+        public void write(CourseAnalytics value, ValueCodec.Writer out) {
+            out.presence(value.getCourseId(), value.getTotalLessonStarts(), value.getTotalLessonCompletions(), value.getDropOffCount());
+            out.string(value.getCourseId());
+            out.varLong(value.getTotalLessonStarts());
+            out.varLong(value.getTotalLessonCompletions());
+            out.varLong(value.getDropOffCount());
+        }
+
+        @Override
+        public CourseAnalytics read(ValueCodec.Reader in) throws IOException {
+            int present = in.presence();
+            return new CourseAnalytics(
+                    (present & 1) != 0 ? in.string() : null,
+                    (present & 2) != 0 ? in.varLong() : null,
+                    (present & 4) != 0 ? in.varLong() : null,
+                    (present & 8) != 0 ? in.varLong() : null);
+        }
+    };
+}
@@ -0,0 +1,175 @@
+package com.orbit.analytics.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import com.orbit.analytics.model.CompletionTimeStats;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Start-to-complete durations per course and per lesson. Starts wait in a bounded, expiring
+ * in-memory table keyed by (user, course, lesson); the matching completion records the duration
+ * into a log-bucketed histogram stored as a Redis hash (field = bucket index, value = count).
+ * Buckets grow by {@link #GROWTH} so any percentile is within ~5% of the true value; a histogram
+ * spanning one second to a month needs ~160 fields at most. Because buckets are fixed and
+ * updated with HINCRBY, instances merge into the same histogram without coordination.
+ * Matching assumes a user's events are consumed by one instance (events keyed by user).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CompletionTimeService {
+
+    private static final String COURSE_HISTOGRAM_KEY_PREFIX = "analytics:latency:course:";
+    private static final String LESSON_HISTOGRAM_KEY_PREFIX = "analytics:latency:lesson:";
+    private static final double GROWTH = 1.1;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Value("${analytics.completion-time.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analytics.completion-time.pending-max-size:200000}")
+    private long pendingMaxSize;
+
+    @Value("${analytics.completion-time.pending-ttl-hours:48}")
+    private long pendingTtlHours;
+
+    private Cache<String, Instant> pendingStarts;
+
+    @PostConstruct
+    void init() {
+        pendingStarts = Caffeine.newBuilder()
+                .maximumSize(pendingMaxSize)
+                .expireAfterWrite(Duration.ofHours(pendingTtlHours))
+                .build();
+    }
+
+    /**
+     * Match starts to completions and add the resulting durations to the histograms in one pipeline.
+     * Matched starts are dropped only once the pipeline succeeded, so a failed call retried with
+     * the same events records the same durations.
+     */
+    public void record(List<LearningEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, Long>> deltasByKey = new LinkedHashMap<>();
+        // Starts as seen by this call: started here, or null once a completion here matched them
+        Map<String, Instant> starts = new HashMap<>();
+        Map<String, Instant> matched = new HashMap<>();
+        for (LearningEvent event : events) {
+            if (event.getCourseId() == null || event.getLessonId() == null || event.getOccurredAt() == null) {
+                continue;
+            }
+            String pendingKey = event.getUserId() + "|" + event.getCourseId() + "|" + event.getLessonId();
+            if (event.getEventType() == LearningEventType.LESSON_STARTED) {
+                pendingStarts.put(pendingKey, event.getOccurredAt());
+                starts.put(pendingKey, event.getOccurredAt());
+            } else if (event.getEventType() == LearningEventType.LESSON_COMPLETED) {
+                Instant startedAt = starts.containsKey(pendingKey) ? starts.get(pendingKey) : pendingStarts.getIfPresent(pendingKey);
+                starts.put(pendingKey, null);
+                if (startedAt == null || startedAt.isAfter(event.getOccurredAt())) {
+                    continue;
+                }
+                matched.put(pendingKey, startedAt);
+                String bucket = Integer.toString(bucketIndex(Duration.between(startedAt, event.getOccurredAt()).toMillis()));
+                deltasByKey.computeIfAbsent(COURSE_HISTOGRAM_KEY_PREFIX + event.getCourseId(), k -> new LinkedHashMap<>())
+                        .merge(bucket, 1L, Long::sum);
+                deltasByKey.computeIfAbsent(lessonKey(event.getCourseId(), event.getLessonId()), k -> new LinkedHashMap<>())
+                        .merge(bucket, 1L, Long::sum);
+            }
+        }
+        if (!deltasByKey.isEmpty()) {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    HashOperations<String, String, String> hashOps = operations.opsForHash();
+                    deltasByKey.forEach((key, buckets) -> buckets.forEach((bucket, delta) -> hashOps.increment(key, bucket, delta)));
+                    return null;
+                }
+            });
+        }
+        // A start that arrived after its match stays pending
+        matched.forEach((pendingKey, startedAt) -> pendingStarts.asMap().remove(pendingKey, startedAt));
+    }
+
+    public CompletionTimeStats getCourseStats(String courseId) {
+        return stats(COURSE_HISTOGRAM_KEY_PREFIX + courseId, courseId, null);
+    }
+
+    public CompletionTimeStats getLessonStats(String courseId, String lessonId) {
+        return stats(lessonKey(courseId, lessonId), courseId, lessonId);
+    }
+
+    private CompletionTimeStats stats(String key, String courseId, String lessonId) {
+        Map<String, String> fields = redisTemplate.<String, String>opsForHash().entries(key);
+        if (fields.isEmpty()) {
+            return null;
+        }
+        TreeMap<Integer, Long> histogram = new TreeMap<>();
+        long total = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            long count = Long.parseLong(field.getValue());
+            histogram.put(Integer.parseInt(field.getKey()), count);
+            total += count;
+        }
+        return new CompletionTimeStats(courseId, lessonId, total,
+                percentile(histogram, total, 0.50),
+                percentile(histogram, total, 0.90),
+                percentile(histogram, total, 0.99));
+    }
+
+    private static double percentile(TreeMap<Integer, Long> histogram, long total, double quantile) {
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (Map.Entry<Integer, Long> bucket : histogram.entrySet()) {
+            seen += bucket.getValue();
+            if (seen >= rank) {
+                return bucketMidpointMillis(bucket.getKey()) / 1000.0;
+            }
+        }
+        return bucketMidpointMillis(histogram.lastKey()) / 1000.0;
+    }
+
+    /**
+     * Bucket 0 holds durations under one second; bucket i covers [GROWTH^(i-1), GROWTH^i) seconds.
+     */
+    static int bucketIndex(long durationMillis) {
+        if (durationMillis < 1000) {
+            return 0;
+        }
+        return 1 + (int) Math.floor(Math.log(durationMillis / 1000.0) / LOG_GROWTH);
+    }
+
+    static double bucketMidpointMillis(int index) {
+        if (index == 0) {
+            return 500.0;
+        }
+        // Geometric midpoint of [GROWTH^(i-1), GROWTH^i) seconds
+        return Math.pow(GROWTH, index - 0.5) * 1000.0;
+    }
+
+    private static String lessonKey(String courseId, String lessonId) {
+        return LESSON_HISTOGRAM_KEY_PREFIX + courseId + ":" + lessonId;
+    }
+}
@@ -0,0 +1,148 @@
+package com.orbit.analytics.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy-hitter summary over exponentially time-decayed counts. Holds at most
+ * {@code capacity} items no matter how many distinct ids are seen; an unseen id replaces the
+ * current minimum and inherits its score, so scores are upper bounds with error at most the
+ * smallest tracked score. Decay uses forward decay (weights grow as exp(lambda * (t - landmark)))
+ * so recording never rewrites other entries; the landmark is moved before weights overflow.
+ * <p>
+ * Entries sit in an indexed min-heap on their stored weight, so finding and replacing the minimum
+ * is O(log capacity). Not thread-safe; {@link StripedTopK} gives each thread its own summary.
+ */
+class DecayingTopK {
+
+    private static final double MAX_EXPONENT = 50.0;
+
+    private final int capacity;
+    private final double lambda;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Entry[] heap;
+    private int size;
+    private long landmarkMs;
+
+    DecayingTopK(int capacity, double halfLifeSeconds, long nowMs) {
+        this.capacity = capacity;
+        this.lambda = Math.log(2) / (halfLifeSeconds * 1000.0);
+        this.heap = new Entry[capacity];
+        this.landmarkMs = nowMs;
+    }
+
+    void add(String id, long nowMs) {
+        if (capacity == 0) {
+            return;
+        }
+        double exponent = lambda * (nowMs - landmarkMs);
+        if (exponent > MAX_EXPONENT) {
+            rebase(nowMs);
+            exponent = 0;
+        }
+        double weight = Math.exp(exponent);
+        Entry entry = entries.get(id);
+        if (entry != null) {
+            entry.score += weight;
+            siftDown(entry.index);
+            return;
+        }
+        if (size < capacity) {
+            entry = new Entry(id, weight);
+            entries.put(id, entry);
+            entry.index = size;
+            heap[size++] = entry;
+            siftUp(entry.index);
+            return;
+        }
+        // The root is the minimum: the new id takes its slot and inherits its score
+        Entry min = heap[0];
+        entries.remove(min.id);
+        min.id = id;
+        min.score += weight;
+        entries.put(id, min);
+        siftDown(0);
+    }
+
+    /**
+     * Current decayed scores, i.e. stored weights scaled to "now".
+     */
+    Map<String, Double> snapshot(long nowMs) {
+        double scale = Math.exp(-lambda * (nowMs - landmarkMs));
+        Map<String, Double> result = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            result.put(heap[i].id, heap[i].score * scale);
+        }
+        return result;
+    }
+
+    private void rebase(long nowMs) {
+        // Scaling every score by the same factor keeps the heap order; dropping entries does not
+        double scale = Math.exp(-lambda * (nowMs - landmarkMs));
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Entry entry = heap[i];
+            entry.score *= scale;
+            if (entry.score < 1e-9) {
+                entries.remove(entry.id);
+            } else {
+                entry.index = kept;
+                heap[kept++] = entry;
+            }
+        }
+        for (int i = kept; i < size; i++) {
+            heap[i] = null;
+        }
+        size = kept;
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        landmarkMs = nowMs;
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].score <= entry.score) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(entry, index);
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].score < heap[child].score) {
+                child++;
+            }
+            if (entry.score <= heap[child].score) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(entry, index);
+    }
+
+    private void place(Entry entry, int index) {
+        heap[index] = entry;
+        entry.index = index;
+    }
+
+    private static final class Entry {
+        private String id;
+        private double score;
+        private int index;
+
+        private Entry(String id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import com.orbit.analytics.model.CourseFunnel;
+import com.orbit.analytics.model.LessonFunnelStep;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-lesson start/completion counters, one compact hash per course
+ * (fields {@code <lessonId>:s} and {@code <lessonId>:c}), so a whole course funnel is one HGETALL.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LessonFunnelService {
+
+    private static final String FUNNEL_KEY_PREFIX = "analytics:funnel:course:";
+    private static final String STARTS_SUFFIX = ":s";
+    private static final String COMPLETIONS_SUFFIX = ":c";
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Value("${analytics.funnel.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Fold events into per-course, per-lesson field deltas and apply them in one pipeline.
+     */
+    public void record(List<LearningEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        Map<String, Map<String, Long>> deltasByKey = new LinkedHashMap<>();
+        for (LearningEvent event : events) {
+            if (event.getCourseId() == null || event.getLessonId() == null || event.getEventType() == null) {
+                continue;
+            }
+            String field = event.getLessonId()
+                    + (event.getEventType() == LearningEventType.LESSON_STARTED ? STARTS_SUFFIX : COMPLETIONS_SUFFIX);
+            deltasByKey.computeIfAbsent(FUNNEL_KEY_PREFIX + event.getCourseId(), k -> new LinkedHashMap<>())
+                    .merge(field, 1L, Long::sum);
+        }
+        if (deltasByKey.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                HashOperations<String, String, String> hashOps = operations.opsForHash();
+                deltasByKey.forEach((key, fields) -> fields.forEach((field, delta) -> hashOps.increment(key, field, delta)));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Lessons in natural id order (so "lesson-2" precedes "lesson-10") with completion and drop-off per step.
+     */
+    public CourseFunnel getCourseFunnel(String courseId) {
+        Map<String, String> fields = redisTemplate.<String, String>opsForHash().entries(FUNNEL_KEY_PREFIX + courseId);
+        Map<String, long[]> lessons = new TreeMap<>(NATURAL_ORDER);
+        fields.forEach((field, value) -> {
+            int split = field.lastIndexOf(':');
+            long[] counts = lessons.computeIfAbsent(field.substring(0, split), k -> new long[2]);
+            counts[field.endsWith(STARTS_SUFFIX) ? 0 : 1] = Long.parseLong(value);
+        });
+
+        List<LessonFunnelStep> steps = new ArrayList<>(lessons.size());
+        long firstStarts = -1;
+        for (Map.Entry<String, long[]> lesson : lessons.entrySet()) {
+            long starts = lesson.getValue()[0];
+            long completions = lesson.getValue()[1];
+            if (firstStarts < 0) {
+                firstStarts = starts;
+            }
+            steps.add(new LessonFunnelStep(
+                    lesson.getKey(),
+                    starts,
+                    completions,
+                    Math.max(0L, starts - completions),
+                    starts > 0 ? Math.min(1.0, (double) completions / starts) : 0.0,
+                    firstStarts > 0 ? (double) starts / firstStarts : 0.0));
+        }
+        return new CourseFunnel(courseId, steps);
+    }
+
+    /**
+     * Compares digit runs numerically and everything else lexicographically.
+     */
+    private static final Comparator<String> NATURAL_ORDER = (a, b) -> {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                int si = i;
+                int sj = j;
+                while (i < a.length() && Character.isDigit(a.charAt(i))) i++;
+                while (j < b.length() && Character.isDigit(b.charAt(j))) j++;
+                String na = a.substring(si, i).replaceFirst("^0+(?!$)", "");
+                String nb = b.substring(sj, j).replaceFirst("^0+(?!$)", "");
+                int cmp = na.length() != nb.length() ? Integer.compare(na.length(), nb.length()) : na.compareTo(nb);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            } else {
+                if (ca != cb) {
+                    return Character.compare(ca, cb);
+                }
+                i++;
+                j++;
+            }
+        }
+        int cmp = Integer.compare(a.length() - i, b.length() - j);
+        return cmp != 0 ? cmp : a.compareTo(b);
+    };
+}
@@ -0,0 +1,115 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.model.PlatformAnalytics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Platform totals striped over N sub-counter hashes ({base}:shard:{i}) so that no single key
+ * takes every write in the system. Each consumer thread is pinned to one shard (assigned
+ * round-robin from a random per-instance offset). Reads sum every possible shard up to
+ * {@link #MAX_SHARDS}, so totals stay complete while instances run with different shard counts
+ * or after the count is lowered.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PlatformCounterShards {
+
+    static final String FIELD_TOTAL_EVENTS = "totalEventsProcessed";
+    static final String FIELD_TOTAL_COMPLETIONS = "totalLessonCompletions";
+
+    /** Upper bound on analytics.platform.shards; reads cover all of these. */
+    static final int MAX_SHARDS = 64;
+
+    private static final String SHARD_SEPARATOR = ":shard:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Value("${analytics.platform.shards:16}")
+    private int shardCount;
+
+    private final AtomicInteger nextShard = new AtomicInteger(ThreadLocalRandom.current().nextInt(1024));
+    private final ThreadLocal<Integer> threadShard = ThreadLocal.withInitial(
+            () -> Math.floorMod(nextShard.getAndIncrement(), shardCount));
+
+    @PostConstruct
+    void validate() {
+        if (shardCount < 1 || shardCount > MAX_SHARDS) {
+            throw new IllegalStateException("analytics.platform.shards must be between 1 and " + MAX_SHARDS
+                    + ", was " + shardCount);
+        }
+    }
+
+    /**
+     * Shard key owned by the calling consumer thread.
+     */
+    public String currentShardKey(String baseKey) {
+        return baseKey + SHARD_SEPARATOR + threadShard.get();
+    }
+
+    /**
+     * Increment the calling thread's shard in one pipelined round trip.
+     */
+    public void increment(String baseKey, long events, long completions) {
+        String key = currentShardKey(baseKey);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                HashOperations<String, String, String> hashOps = operations.opsForHash();
+                hashOps.increment(key, FIELD_TOTAL_EVENTS, events);
+                hashOps.increment(key, FIELD_TOTAL_COMPLETIONS, completions);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Sum every shard of {@code baseKey} (and {@code baseKey} itself, if it is a pre-sharding hash)
+     * using one pipelined round trip. Shards beyond this instance's count are read too: another
+     * instance, or an earlier deployment, may have written them.
+     */
+    public PlatformAnalytics sum(String baseKey, boolean includeBaseHash) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                HashOperations<String, String, String> hashOps = operations.opsForHash();
+                for (int i = 0; i < MAX_SHARDS; i++) {
+                    hashOps.entries(baseKey + SHARD_SEPARATOR + i);
+                }
+                if (includeBaseHash) {
+                    hashOps.entries(baseKey);
+                }
+                return null;
+            }
+        });
+        long events = 0;
+        long completions = 0;
+        for (Object result : results) {
+            if (result instanceof Map<?, ?> fields) {
+                events += longField(fields, FIELD_TOTAL_EVENTS);
+                completions += longField(fields, FIELD_TOTAL_COMPLETIONS);
+            }
+        }
+        return new PlatformAnalytics(events, completions);
+    }
+
+    private static long longField(Map<?, ?> fields, String name) {
+        Object value = fields.get(name);
+        return value != null ? Long.parseLong(value.toString()) : 0L;
+    }
+}
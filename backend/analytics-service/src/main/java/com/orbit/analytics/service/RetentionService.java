@@ -0,0 +1,489 @@
+package com.orbit.analytics.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.model.CohortRetention;
+import com.orbit.common.service.WriteFence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Weekly retention by signup cohort from per-day bitmaps of active users.
+ * <p>
+ * Every user gets a dense integer id on first sight and joins the cohort of the week of its
+ * earliest event in that batch; one Lua script allocates the id and sets the user's bit in the
+ * cohort bitmap, so instances racing on a user agree on both, and users first seen late
+ * (backfills, replays) still land in the week their events belong to. A user's cohort is fixed at
+ * allocation: an even older event processed later does not move it. Each UTC day (event time)
+ * keeps a bitmap of the ids active that day. Day and cohort bitmaps are Redis bitmaps (SETBIT)
+ * while open and are compacted after {@code open-days} into serialized Roaring bitmaps, read
+ * without deserializing (containers are decoded on access) and cached, so a year's cohort matrix
+ * is a few hundred bitmap ORs and AND cardinalities.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RetentionService {
+
+    private static final String IDS_KEY = "analytics:retention:ids";
+    private static final String NEXT_ID_KEY = "analytics:retention:next-id";
+    private static final String COHORT_KEY_PREFIX = "analytics:retention:cohort:";
+    private static final String DAY_KEY_PREFIX = "analytics:retention:day:";
+    private static final String COMPACTED_SUFFIX = ":roaring";
+    private static final String COMPACT_LOCK_SUFFIX = ":compact-lock";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ALLOCATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/analytics-retention-allocate.lua"), List.class);
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/analytics-release-lock.lua"), Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
+    private final WriteFence writeFence;
+
+    @Value("${analytics.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analytics.retention.retention-days:400}")
+    private long retentionDays;
+
+    @Value("${analytics.retention.open-days:2}")
+    private long openDays;
+
+    @Value("${analytics.retention.compact-interval-ms:3600000}")
+    private long compactIntervalMs;
+
+    @Value("${analytics.retention.compact-lock-ms:60000}")
+    private long compactLockMs;
+
+    @Value("${analytics.retention.id-cache-size:200000}")
+    private long idCacheSize;
+
+    @Value("${analytics.retention.cache-days:400}")
+    private long cacheDays;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private Cache<String, Integer> ids;
+    private Cache<String, ImmutableRoaringBitmap> compactedBitmaps;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init() {
+        ids = Caffeine.newBuilder().maximumSize(idCacheSize).build();
+        // Expiring picks up late events compacted into an already cached day or cohort
+        compactedBitmaps = Caffeine.newBuilder()
+                .maximumSize(cacheDays + cacheDays / 7 + 1)
+                .expireAfterWrite(Duration.ofMillis(compactIntervalMs))
+                .build();
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "analytics-retention");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::compactQuietly, compactIntervalMs, compactIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Mark the users of these events active on their event day: one SETBIT per distinct user and day,
+     * in one pipeline. Users seen for the first time get an id first.
+     */
+    public void record(List<LearningEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> userIds = resolveIds(events);
+        Map<String, Set<Integer>> idsByKey = new LinkedHashMap<>();
+        for (LearningEvent event : events) {
+            Integer id = userIds.get(event.getUserId());
+            if (id != null) {
+                idsByKey.computeIfAbsent(dayKey(day(occurredAt(event))), k -> new LinkedHashSet<>()).add(id);
+            }
+        }
+        if (idsByKey.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                idsByKey.forEach((key, dayIds) -> {
+                    dayIds.forEach(id -> operations.opsForValue().setBit(key, id, true));
+                    operations.expire(key, retentionDays, TimeUnit.DAYS);
+                });
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Retention of one cohort for {@code weeks} weeks, or with {@code cohort} null, of each of the
+     * last {@code weeks} cohorts up to the current week. Weeks start on Monday (UTC).
+     */
+    public List<CohortRetention> getRetention(LocalDate cohort, int weeks) {
+        LocalDate thisWeek = week(day(Instant.now()));
+        List<LocalDate> cohortWeeks = new ArrayList<>();
+        if (cohort != null) {
+            cohortWeeks.add(week(cohort));
+        } else {
+            for (int i = weeks - 1; i >= 0; i--) {
+                cohortWeeks.add(thisWeek.minusWeeks(i));
+            }
+        }
+
+        Set<LocalDate> activeWeeks = new TreeSet<>();
+        for (LocalDate cohortWeek : cohortWeeks) {
+            for (int k = 0; k < weeks && !cohortWeek.plusWeeks(k).isAfter(thisWeek); k++) {
+                activeWeeks.add(cohortWeek.plusWeeks(k));
+            }
+        }
+        Map<LocalDate, ImmutableRoaringBitmap> activeByWeek = activeByWeek(activeWeeks);
+        Map<LocalDate, ImmutableRoaringBitmap> cohorts = cohorts(cohortWeeks);
+
+        List<CohortRetention> result = new ArrayList<>(cohortWeeks.size());
+        for (LocalDate cohortWeek : cohortWeeks) {
+            ImmutableRoaringBitmap members = cohorts.get(cohortWeek);
+            long users = members.getLongCardinality();
+            List<Long> active = new ArrayList<>();
+            List<Double> retention = new ArrayList<>();
+            for (int k = 0; k < weeks && !cohortWeek.plusWeeks(k).isAfter(thisWeek); k++) {
+                long count = users == 0 ? 0 : ImmutableRoaringBitmap.andCardinality(members, activeByWeek.get(cohortWeek.plusWeeks(k)));
+                active.add(count);
+                retention.add(users == 0 ? 0.0 : (double) count / users);
+            }
+            result.add(new CohortRetention(cohortWeek, users, active, retention));
+        }
+        return result;
+    }
+
+    /** Longest retention curve the stored days cover. */
+    public int maxWeeks() {
+        return (int) (retentionDays / 7);
+    }
+
+    /**
+     * Fold every day older than {@code open-days}, and every cohort week ended that long ago, that
+     * still has a Redis bitmap into its compacted Roaring value. Each key is compacted under a
+     * per-key lock (SET NX with a {@code compact-lock-ms} lease), so two instances never merge into
+     * the same compacted value at once. The bitmap is renamed first, so SETBITs for late events start
+     * a new one, compacted on the next run.
+     */
+    void compact() {
+        LocalDate today = day(Instant.now());
+        LocalDate oldest = today.minusDays(retentionDays);
+        Map<String, LocalDate> expireAfter = new LinkedHashMap<>();
+        for (LocalDate day = today.minusDays(openDays); !day.isBefore(oldest); day = day.minusDays(1)) {
+            expireAfter.put(dayKey(day), day.plusDays(retentionDays));
+        }
+        for (LocalDate week = week(today.minusDays(7 + openDays)); !week.plusDays(7).isBefore(oldest); week = week.minusWeeks(1)) {
+            expireAfter.put(cohortKey(week), week.plusDays(retentionDays));
+        }
+        List<String> keys = new ArrayList<>(expireAfter.keySet());
+        List<Object> exists = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                keys.forEach(operations::hasKey);
+                return null;
+            }
+        });
+        AtomicInteger compacted = new AtomicInteger();
+        for (int i = 0; i < keys.size(); i++) {
+            if (!Boolean.TRUE.equals(exists.get(i))) {
+                continue;
+            }
+            String key = keys.get(i);
+            // Fenced, so a snapshot never catches a bitmap under its claimed name
+            writeFence.write(() -> {
+                if (compactBitmap(key, expireAfter.get(key))) {
+                    compacted.incrementAndGet();
+                }
+            });
+        }
+        if (compacted.get() > 0) {
+            log.info("Compacted {} retention bitmaps", compacted.get());
+        }
+    }
+
+    /**
+     * @return false when another instance holds the key's lock or has already taken its bitmap
+     */
+    private boolean compactBitmap(String key, LocalDate expireAfter) {
+        String lock = key + COMPACT_LOCK_SUFFIX;
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lock, instanceId, Duration.ofMillis(compactLockMs)))) {
+            return false;
+        }
+        try {
+            return mergeIntoCompacted(key, expireAfter);
+        } finally {
+            redisTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(lock), instanceId);
+        }
+    }
+
+    /**
+     * Read-OR-write of the compacted value; only run while holding the key's compaction lock.
+     */
+    private boolean mergeIntoCompacted(String key, LocalDate expireAfter) {
+        String claimed = key + ":compacting:" + instanceId;
+        try {
+            redisTemplate.rename(key, claimed);
+        } catch (DataAccessException e) {
+            // Compacted by another instance since the EXISTS check
+            return false;
+        }
+        byte[] raw = binaryRedisTemplate.opsForValue().get(claimed);
+        byte[] existing = binaryRedisTemplate.opsForValue().get(key + COMPACTED_SUFFIX);
+        MutableRoaringBitmap bitmap = raw != null ? fromRedisBitmap(raw) : new MutableRoaringBitmap();
+        if (existing != null) {
+            bitmap.or(new ImmutableRoaringBitmap(ByteBuffer.wrap(existing)));
+        }
+        bitmap.runOptimize();
+        Duration ttl = Duration.between(Instant.now(), expireAfter.atStartOfDay(ZoneOffset.UTC));
+        if (!ttl.isNegative() && !ttl.isZero()) {
+            ByteBuffer serialized = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+            bitmap.serialize(serialized);
+            binaryRedisTemplate.opsForValue().set(key + COMPACTED_SUFFIX, serialized.array(), ttl);
+        }
+        redisTemplate.delete(claimed);
+        compactedBitmaps.invalidate(key);
+        return true;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            log.warn("Retention bitmap compaction failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Ids of these events' users from the local cache, then one script call that returns stored ids
+     * and allocates new users into the cohort of their earliest event in the batch.
+     */
+    private Map<String, Integer> resolveIds(List<LearningEvent> events) {
+        Map<String, Integer> resolved = new HashMap<>();
+        Map<String, Instant> missing = new LinkedHashMap<>();
+        for (LearningEvent event : events) {
+            String userId = event.getUserId();
+            if (userId == null || resolved.containsKey(userId)) {
+                continue;
+            }
+            Integer id = ids.getIfPresent(userId);
+            if (id != null) {
+                resolved.put(userId, id);
+            } else {
+                missing.merge(userId, occurredAt(event), (a, b) -> a.isBefore(b) ? a : b);
+            }
+        }
+        if (missing.isEmpty()) {
+            return resolved;
+        }
+        List<String> keys = new ArrayList<>(missing.size() + 2);
+        keys.add(IDS_KEY);
+        keys.add(NEXT_ID_KEY);
+        List<String> args = new ArrayList<>(missing.size() + 1);
+        args.add(Long.toString(TimeUnit.DAYS.toSeconds(retentionDays)));
+        missing.forEach((userId, firstSeen) -> {
+            keys.add(cohortKey(week(day(firstSeen))));
+            args.add(userId);
+        });
+        List<?> allocated = redisTemplate.execute(ALLOCATE_SCRIPT, keys, args.toArray());
+        int i = 0;
+        for (String userId : missing.keySet()) {
+            long id = ((Number) allocated.get(i++)).longValue();
+            if (id > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Retention user id space exhausted");
+            }
+            ids.put(userId, (int) id);
+            resolved.put(userId, (int) id);
+        }
+        return resolved;
+    }
+
+    /**
+     * Members of each cohort week; closed weeks are cached once compacted.
+     */
+    private Map<LocalDate, ImmutableRoaringBitmap> cohorts(List<LocalDate> weeks) {
+        LocalDate today = day(Instant.now());
+        Set<String> closed = new HashSet<>();
+        for (LocalDate week : weeks) {
+            if (!week.plusDays(7 + openDays).isAfter(today)) {
+                closed.add(cohortKey(week));
+            }
+        }
+        Map<String, ImmutableRoaringBitmap> bitmaps = loadBitmaps(weeks.stream().map(RetentionService::cohortKey).toList(), closed);
+        Map<LocalDate, ImmutableRoaringBitmap> result = new HashMap<>();
+        for (LocalDate week : weeks) {
+            result.put(week, bitmaps.getOrDefault(cohortKey(week), new MutableRoaringBitmap()));
+        }
+        return result;
+    }
+
+    /**
+     * Users active in each week: the OR of its days.
+     */
+    private Map<LocalDate, ImmutableRoaringBitmap> activeByWeek(Set<LocalDate> weeks) {
+        LocalDate today = day(Instant.now());
+        List<String> keys = new ArrayList<>();
+        Set<String> closed = new HashSet<>();
+        for (LocalDate week : weeks) {
+            for (int d = 0; d < 7; d++) {
+                LocalDate day = week.plusDays(d);
+                if (day.isAfter(today) || day.isBefore(today.minusDays(retentionDays))) {
+                    continue;
+                }
+                keys.add(dayKey(day));
+                if (!day.isAfter(today.minusDays(openDays))) {
+                    closed.add(dayKey(day));
+                }
+            }
+        }
+        Map<String, ImmutableRoaringBitmap> days = loadBitmaps(keys, closed);
+
+        Map<LocalDate, ImmutableRoaringBitmap> result = new HashMap<>();
+        for (LocalDate week : weeks) {
+            List<ImmutableRoaringBitmap> weekDays = new ArrayList<>(7);
+            for (int d = 0; d < 7; d++) {
+                ImmutableRoaringBitmap day = days.get(dayKey(week.plusDays(d)));
+                if (day != null) {
+                    weekDays.add(day);
+                }
+            }
+            result.put(week, BufferFastAggregation.or(weekDays.iterator()));
+        }
+        return result;
+    }
+
+    /**
+     * Each key's open Redis bitmap OR'ed with its compacted value; keys not cached are fetched in one
+     * pipeline. A compacted value is cached only for {@code closed} keys without an open bitmap, since
+     * open keys still take regular writes. Keys with neither value are absent from the result.
+     */
+    private Map<String, ImmutableRoaringBitmap> loadBitmaps(List<String> keys, Set<String> closed) {
+        Map<String, ImmutableRoaringBitmap> result = new HashMap<>();
+        List<String> toLoad = new ArrayList<>();
+        for (String key : keys) {
+            ImmutableRoaringBitmap cached = compactedBitmaps.getIfPresent(key);
+            if (cached != null) {
+                result.put(key, cached);
+            } else {
+                toLoad.add(key);
+            }
+        }
+        if (toLoad.isEmpty()) {
+            return result;
+        }
+        List<Object> values = binaryRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                toLoad.forEach(key -> {
+                    operations.opsForValue().get(key);
+                    operations.opsForValue().get(key + COMPACTED_SUFFIX);
+                });
+                return null;
+            }
+        });
+        for (int i = 0; i < toLoad.size(); i++) {
+            String key = toLoad.get(i);
+            byte[] raw = (byte[]) values.get(2 * i);
+            byte[] compacted = (byte[]) values.get(2 * i + 1);
+            ImmutableRoaringBitmap stored = compacted != null ? new ImmutableRoaringBitmap(ByteBuffer.wrap(compacted)) : null;
+            if (raw == null) {
+                if (stored != null) {
+                    result.put(key, stored);
+                    if (closed.contains(key)) {
+                        compactedBitmaps.put(key, stored);
+                    }
+                }
+            } else {
+                MutableRoaringBitmap open = fromRedisBitmap(raw);
+                if (stored != null) {
+                    open.or(stored);
+                }
+                result.put(key, open);
+            }
+        }
+        return result;
+    }
+
+    /** Redis bitmaps are big-endian within each byte: offset 0 is the high bit of byte 0. */
+    static MutableRoaringBitmap fromRedisBitmap(byte[] bytes) {
+        MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+        for (int i = 0; i < bytes.length; i++) {
+            int bits = bytes[i] & 0xFF;
+            while (bits != 0) {
+                int bit = Integer.numberOfLeadingZeros(bits) - 24;
+                bitmap.add(i * 8 + bit);
+                bits &= ~(0x80 >>> bit);
+            }
+        }
+        return bitmap;
+    }
+
+    private static String dayKey(LocalDate day) {
+        return DAY_KEY_PREFIX + day;
+    }
+
+    private static String cohortKey(LocalDate week) {
+        return COHORT_KEY_PREFIX + week;
+    }
+
+    private static Instant occurredAt(LearningEvent event) {
+        return event.getOccurredAt() != null ? event.getOccurredAt() : Instant.now();
+    }
+
+    private static LocalDate day(Instant instant) {
+        return LocalDate.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    private static LocalDate week(LocalDate day) {
+        return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+}
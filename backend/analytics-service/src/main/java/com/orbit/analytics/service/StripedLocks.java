@@ -0,0 +1,40 @@
+package com.orbit.analytics.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by hash of key: updates to one key never overlap, updates to keys
+ * on different stripes run concurrently, and memory stays bounded however many keys there are.
+ */
+final class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    StripedLocks(int stripes) {
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Run {@code update} holding the stripe of {@code key}; a null key takes no lock.
+     */
+    void run(String key, Runnable update) {
+        if (key == null) {
+            update.run();
+            return;
+        }
+        ReentrantLock lock = locks[stripe(key)];
+        lock.lock();
+        try {
+            update.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int stripe(String key) {
+        return Math.floorMod(key.hashCode(), locks.length);
+    }
+}
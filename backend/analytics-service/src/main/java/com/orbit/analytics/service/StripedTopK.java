@@ -0,0 +1,68 @@
+package com.orbit.analytics.service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@link DecayingTopK} split into stripes picked by the recording thread, so consumer and lane
+ * threads each lock their own summary instead of queuing on one. A thread takes its stripe's lock
+ * once per batch. {@link #snapshot} sums the stripes' scores, like reads merge instances, and keeps
+ * the {@code capacity} highest.
+ */
+class StripedTopK {
+
+    private final int capacity;
+    private final DecayingTopK[] stripes;
+
+    StripedTopK(int stripes, int capacity, double halfLifeSeconds, long nowMs) {
+        this.capacity = capacity;
+        this.stripes = new DecayingTopK[Math.max(1, stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new DecayingTopK(capacity, halfLifeSeconds, nowMs);
+        }
+    }
+
+    /**
+     * Record the non-null ids among {@code items}, all under one stripe lock.
+     */
+    <T> void addAll(List<T> items, Function<T, String> id, long nowMs) {
+        DecayingTopK stripe = stripes[stripe()];
+        synchronized (stripe) {
+            for (T item : items) {
+                String value = id.apply(item);
+                if (value != null) {
+                    stripe.add(value, nowMs);
+                }
+            }
+        }
+    }
+
+    Map<String, Double> snapshot(long nowMs) {
+        Map<String, Double> merged = new HashMap<>();
+        for (DecayingTopK stripe : stripes) {
+            Map<String, Double> scores;
+            synchronized (stripe) {
+                scores = stripe.snapshot(nowMs);
+            }
+            scores.forEach((id, score) -> merged.merge(id, score, Double::sum));
+        }
+        if (merged.size() <= capacity) {
+            return merged;
+        }
+        return merged.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(capacity)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    @SuppressWarnings("deprecation")
+    private int stripe() {
+        // Thread.threadId() needs Java 19; getId() is the same value
+        long threadId = Thread.currentThread().getId();
+        return (int) Math.floorMod(threadId * 0x9E3779B97F4A7C15L >>> 32, (long) stripes.length);
+    }
+}
@@ -0,0 +1,153 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import com.orbit.analytics.model.TimeWindowBucket;
+import com.orbit.analytics.model.TimeWindowSeries;
+import com.orbit.analytics.model.WindowResolution;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolling time-window counters per user and per course. Each entity has one Redis hash holding
+ * fixed-size ring buffers of per-minute, per-hour and per-day slots; slots are recycled as time
+ * moves on and the hash expires once the day ring has gone stale, so storage never grows.
+ * Buckets use event time, so replays land in the buckets they originally belonged to
+ * (or are dropped once their slot has been reused).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TimeWindowService {
+
+    private static final String USER_WINDOW_KEY_PREFIX = "analytics:window:user:";
+    private static final String COURSE_WINDOW_KEY_PREFIX = "analytics:window:course:";
+
+    private static final RedisScript<Long> INCREMENT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/analytics-window-increment.lua"), Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Value("${analytics.windows.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analytics.windows.minute-slots:60}")
+    private int minuteSlots;
+
+    @Value("${analytics.windows.hour-slots:48}")
+    private int hourSlots;
+
+    @Value("${analytics.windows.day-slots:90}")
+    private int daySlots;
+
+    /**
+     * Fold events into per-entity, per-minute deltas and apply them with one EVALSHA.
+     */
+    public void record(List<LearningEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        Map<String, long[]> deltas = new LinkedHashMap<>();
+        for (LearningEvent event : events) {
+            if (event.getEventType() == null) {
+                continue;
+            }
+            long minute = epochSeconds(event) / WindowResolution.MINUTE.getBucketSeconds();
+            int index = event.getEventType() == LearningEventType.LESSON_STARTED ? 0 : 1;
+            deltas.computeIfAbsent(USER_WINDOW_KEY_PREFIX + event.getUserId() + "|" + minute, k -> new long[2])[index]++;
+            if (event.getCourseId() != null) {
+                deltas.computeIfAbsent(COURSE_WINDOW_KEY_PREFIX + event.getCourseId() + "|" + minute, k -> new long[2])[index]++;
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(deltas.size());
+        List<String> args = new ArrayList<>(4 + deltas.size() * 5);
+        args.add(Long.toString(daySlots * WindowResolution.DAY.getBucketSeconds()));
+        args.add(Integer.toString(minuteSlots));
+        args.add(Integer.toString(hourSlots));
+        args.add(Integer.toString(daySlots));
+        deltas.forEach((composite, delta) -> {
+            int split = composite.lastIndexOf('|');
+            long minute = Long.parseLong(composite.substring(split + 1));
+            long epochSecond = minute * WindowResolution.MINUTE.getBucketSeconds();
+            keys.add(composite.substring(0, split));
+            args.add(Long.toString(delta[0]));
+            args.add(Long.toString(delta[1]));
+            args.add(Long.toString(minute));
+            args.add(Long.toString(epochSecond / WindowResolution.HOUR.getBucketSeconds()));
+            args.add(Long.toString(epochSecond / WindowResolution.DAY.getBucketSeconds()));
+        });
+        // One key may appear once per distinct minute; the script applies them in order
+        redisTemplate.execute(INCREMENT_SCRIPT, keys, args.toArray());
+    }
+
+    public TimeWindowSeries getUserWindows(String userId, WindowResolution resolution, int last) {
+        return readSeries(USER_WINDOW_KEY_PREFIX + userId, userId, resolution, last);
+    }
+
+    public TimeWindowSeries getCourseWindows(String courseId, WindowResolution resolution, int last) {
+        return readSeries(COURSE_WINDOW_KEY_PREFIX + courseId, courseId, resolution, last);
+    }
+
+    public int maxBuckets(WindowResolution resolution) {
+        return switch (resolution) {
+            case MINUTE -> minuteSlots;
+            case HOUR -> hourSlots;
+            case DAY -> daySlots;
+        };
+    }
+
+    /**
+     * One HGETALL, then O(last) slot lookups; slots still holding an older bucket count as zero.
+     */
+    private TimeWindowSeries readSeries(String key, String id, WindowResolution resolution, int last) {
+        Map<String, String> slots = redisTemplate.<String, String>opsForHash().entries(key);
+        int slotCount = maxBuckets(resolution);
+        long current = Instant.now().getEpochSecond() / resolution.getBucketSeconds();
+
+        List<TimeWindowBucket> buckets = new ArrayList<>(last);
+        long totalStarts = 0;
+        long totalCompletions = 0;
+        for (long bucket = current - last + 1; bucket <= current; bucket++) {
+            long starts = 0;
+            long completions = 0;
+            String value = slots.get(resolution.getFieldPrefix() + ":" + Math.floorMod(bucket, slotCount));
+            if (value != null) {
+                String[] parts = value.split(":");
+                if (Long.parseLong(parts[0]) == bucket) {
+                    starts = Long.parseLong(parts[1]);
+                    completions = Long.parseLong(parts[2]);
+                }
+            }
+            totalStarts += starts;
+            totalCompletions += completions;
+            buckets.add(new TimeWindowBucket(bucketStart(bucket, resolution), starts, completions));
+        }
+        return new TimeWindowSeries(id, resolution,
+                bucketStart(current - last + 1, resolution),
+                bucketStart(current + 1, resolution),
+                totalStarts, totalCompletions, buckets);
+    }
+
+    private static Instant bucketStart(long bucket, WindowResolution resolution) {
+        return Instant.ofEpochSecond(bucket * resolution.getBucketSeconds());
+    }
+
+    private static long epochSeconds(LearningEvent event) {
+        Instant at = event.getOccurredAt() != null ? event.getOccurredAt() : Instant.now();
+        return at.getEpochSecond();
+    }
+}
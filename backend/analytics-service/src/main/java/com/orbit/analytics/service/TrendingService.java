@@ -0,0 +1,190 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.model.TrendingItem;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trending courses and paths. Each instance keeps a bounded {@link StripedTopK} per dimension
+ * fed from the consumer path and periodically publishes it to a per-instance Redis hash
+ * (expiring if the instance goes away). Reads merge the published summaries of all live
+ * instances, so memory is O(capacity x instances) regardless of how many courses exist.
+ * Liveness is a separate per-instance heartbeat key refreshed on every publish: a summary can be
+ * empty for one type while its instance is alive, so only an expired heartbeat drops an instance.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TrendingService {
+
+    public static final String TYPE_COURSE = "course";
+    public static final String TYPE_PATH = "path";
+
+    private static final String INSTANCES_KEY = "analytics:trending:instances";
+    private static final String SUMMARY_KEY_PREFIX = "analytics:trending:";
+    private static final String HEARTBEAT_KEY_PREFIX = "analytics:trending:heartbeat:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Value("${analytics.trending.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analytics.trending.capacity:256}")
+    private int capacity;
+
+    @Value("${analytics.trending.half-life-seconds:3600}")
+    private double halfLifeSeconds;
+
+    @Value("${analytics.trending.publish-interval-ms:5000}")
+    private long publishIntervalMs;
+
+    @Value("${analytics.trending.stripes:8}")
+    private int stripes;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private StripedTopK courses;
+    private StripedTopK paths;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init() {
+        long now = System.currentTimeMillis();
+        courses = new StripedTopK(stripes, capacity, halfLifeSeconds, now);
+        paths = new StripedTopK(stripes, capacity, halfLifeSeconds, now);
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "analytics-trending");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::publishQuietly, publishIntervalMs, publishIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void record(List<LearningEvent> events) {
+        if (!enabled) {
+            return;
+        }
+        // Processing time, not event time: trending means "active right now"
+        long now = System.currentTimeMillis();
+        courses.addAll(events, LearningEvent::getCourseId, now);
+        paths.addAll(events, LearningEvent::getPathId, now);
+    }
+
+    /**
+     * Top {@code k} ids of the given type across all live instances, highest decayed score first.
+     */
+    public List<TrendingItem> getTrending(String type, int k) {
+        Set<String> instances = redisTemplate.opsForSet().members(INSTANCES_KEY);
+        if (instances == null || instances.isEmpty()) {
+            return List.of();
+        }
+        List<String> instanceList = new ArrayList<>(instances);
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                instanceList.forEach(instance -> {
+                    operations.opsForHash().entries(summaryKey(type, instance));
+                    operations.hasKey(heartbeatKey(instance));
+                });
+                return null;
+            }
+        });
+
+        Map<String, Double> merged = new HashMap<>();
+        List<Object> gone = new ArrayList<>();
+        for (int i = 0; i < instanceList.size(); i++) {
+            if (results.get(2 * i) instanceof Map<?, ?> summary) {
+                summary.forEach((id, score) -> merged.merge(id.toString(), Double.parseDouble(score.toString()), Double::sum));
+            }
+            if (!Boolean.TRUE.equals(results.get(2 * i + 1))) {
+                // Heartbeat expired: the instance is gone and its summaries have expired with it
+                gone.add(instanceList.get(i));
+            }
+        }
+        if (!gone.isEmpty()) {
+            redisTemplate.opsForSet().remove(INSTANCES_KEY, gone.toArray());
+        }
+        return merged.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(k)
+                .map(entry -> new TrendingItem(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    private void publish() {
+        long now = System.currentTimeMillis();
+        Map<String, String> courseScores = toStrings(courses.snapshot(now));
+        Map<String, String> pathScores = toStrings(paths.snapshot(now));
+        long ttlMs = publishIntervalMs * 3;
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                replace(operations, summaryKey(TYPE_COURSE, instanceId), courseScores, ttlMs);
+                replace(operations, summaryKey(TYPE_PATH, instanceId), pathScores, ttlMs);
+                operations.opsForValue().set(heartbeatKey(instanceId), Long.toString(now), ttlMs, TimeUnit.MILLISECONDS);
+                operations.opsForSet().add(INSTANCES_KEY, instanceId);
+                return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void replace(RedisOperations operations, String key, Map<String, String> scores, long ttlMs) {
+        operations.delete(key);
+        if (!scores.isEmpty()) {
+            operations.opsForHash().putAll(key, scores);
+            operations.expire(key, ttlMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publishQuietly() {
+        try {
+            publish();
+        } catch (Exception e) {
+            log.warn("Failed to publish trending summary", e);
+        }
+    }
+
+    private static String summaryKey(String type, String instance) {
+        return SUMMARY_KEY_PREFIX + type + ":" + instance;
+    }
+
+    private static String heartbeatKey(String instance) {
+        return HEARTBEAT_KEY_PREFIX + instance;
+    }
+
+    private static Map<String, String> toStrings(Map<String, Double> scores) {
+        Map<String, String> result = new HashMap<>(scores.size());
+        scores.forEach((id, score) -> result.put(id, Double.toString(score)));
+        return result;
+    }
+}
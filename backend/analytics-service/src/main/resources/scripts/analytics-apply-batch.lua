@@ -0,0 +1,60 @@
+-- Applies folded counter deltas for many events atomically: user and course HINCRBYs, platform shard
+-- HINCRBYs, lastActiveAt moved forward (never back, never removed) and the apicache keys dropped.
+-- A sequenced batch is applied at most once per writer: KEYS[1] holds the writer's last applied
+-- sequence, and a batch at or below it (a retry whose first attempt ran but whose reply was lost)
+-- only drops the cache keys and reads the counters.
+-- KEYS[1] writer's applied-sequence key, then nUsers user hashes, nCourses course hashes,
+--   the platform shard hash, then the apicache keys
+-- ARGV[1] batch sequence (0 = unsequenced, always applied), ARGV[2] applied-sequence ttl seconds,
+--   ARGV[3] nUsers, ARGV[4] nCourses, ARGV[5] platform events delta, ARGV[6] platform completions delta,
+--   then per user: started delta, completed delta, lastActiveAt (ISO-8601), lastActiveAt epoch millis
+--   (both empty if unknown), then per course: starts delta, completions delta
+-- Returns per user {lessonsStartedCount, lessonsCompletedCount, lastActiveAt} after the batch
+local sequence = tonumber(ARGV[1])
+local users = tonumber(ARGV[3])
+local courses = tonumber(ARGV[4])
+local platformKey = KEYS[2 + users + courses]
+
+local apply = true
+if sequence > 0 then
+    local applied = tonumber(redis.call('GET', KEYS[1]))
+    if applied and applied >= sequence then
+        apply = false
+    else
+        redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2])
+    end
+end
+
+if apply then
+    for i = 1, users do
+        local key = KEYS[1 + i]
+        local base = 6 + (i - 1) * 4
+        redis.call('HINCRBY', key, 'lessonsStartedCount', ARGV[base + 1])
+        redis.call('HINCRBY', key, 'lessonsCompletedCount', ARGV[base + 2])
+        local millis = ARGV[base + 4]
+        if millis ~= '' then
+            local stored = tonumber(redis.call('HGET', key, 'lastActiveAtMs'))
+            if not stored or tonumber(millis) > stored then
+                redis.call('HSET', key, 'lastActiveAt', ARGV[base + 3], 'lastActiveAtMs', millis)
+            end
+        end
+    end
+    for i = 1, courses do
+        local key = KEYS[1 + users + i]
+        local base = 6 + users * 4 + (i - 1) * 2
+        redis.call('HINCRBY', key, 'totalLessonStarts', ARGV[base + 1])
+        redis.call('HINCRBY', key, 'totalLessonCompletions', ARGV[base + 2])
+    end
+    redis.call('HINCRBY', platformKey, 'totalEventsProcessed', ARGV[5])
+    redis.call('HINCRBY', platformKey, 'totalLessonCompletions', ARGV[6])
+end
+
+for i = 3 + users + courses, #KEYS do
+    redis.call('DEL', KEYS[i])
+end
+
+local result = {}
+for i = 1, users do
+    result[i] = redis.call('HMGET', KEYS[1 + i], 'lessonsStartedCount', 'lessonsCompletedCount', 'lastActiveAt')
+end
+return result
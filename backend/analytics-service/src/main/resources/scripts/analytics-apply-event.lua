@@ -0,0 +1,32 @@
+-- Applies one learning event to the hash-backed analytics counters atomically.
+-- KEYS[1] user hash, KEYS[2] platform shard hash, KEYS[3] user apicache,
+-- KEYS[4] course hash (optional), KEYS[5] course apicache (optional)
+-- ARGV[1] started delta, ARGV[2] completed delta,
+-- ARGV[3] lastActiveAt (ISO-8601), ARGV[4] lastActiveAt epoch millis; both empty if unknown
+-- lastActiveAt only moves forward: it is written when newer than the stored lastActiveAtMs and
+-- never removed, so redelivered, late or untimestamped events leave it alone.
+-- Returns the user's new {lessonsStartedCount, lessonsCompletedCount, lastActiveAt}
+local started = tonumber(ARGV[1])
+local completed = tonumber(ARGV[2])
+
+local userStarted = redis.call('HINCRBY', KEYS[1], 'lessonsStartedCount', started)
+local userCompleted = redis.call('HINCRBY', KEYS[1], 'lessonsCompletedCount', completed)
+if ARGV[4] ~= '' then
+    local stored = tonumber(redis.call('HGET', KEYS[1], 'lastActiveAtMs'))
+    if not stored or tonumber(ARGV[4]) > stored then
+        redis.call('HSET', KEYS[1], 'lastActiveAt', ARGV[3], 'lastActiveAtMs', ARGV[4])
+    end
+end
+
+redis.call('HINCRBY', KEYS[2], 'totalEventsProcessed', 1)
+redis.call('HINCRBY', KEYS[2], 'totalLessonCompletions', completed)
+
+redis.call('DEL', KEYS[3])
+
+if #KEYS >= 5 then
+    redis.call('HINCRBY', KEYS[4], 'totalLessonStarts', started)
+    redis.call('HINCRBY', KEYS[4], 'totalLessonCompletions', completed)
+    redis.call('DEL', KEYS[5])
+end
+
+return {userStarted, userCompleted, redis.call('HGET', KEYS[1], 'lastActiveAt')}
@@ -0,0 +1,9 @@
+-- Deletes a lock key only while it still holds the caller's token, so a holder whose lease ran out
+-- never removes the next holder's lock.
+-- KEYS[1] lock key
+-- ARGV[1] holder token
+-- Returns 1 if the lock was released, 0 otherwise
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
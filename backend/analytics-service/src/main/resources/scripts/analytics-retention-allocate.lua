@@ -0,0 +1,18 @@
+-- Resolves retention ids for users, allocating a dense id to each user seen for the first time and
+-- adding it to its cohort bitmap in the same step, so concurrent instances agree on both.
+-- KEYS[1] user id hash, KEYS[2] id counter, KEYS[2 + i] cohort bitmap for user i
+-- ARGV[1] cohort bitmap ttl seconds, ARGV[1 + i] user i
+-- Returns the id of each user, in order.
+local ids = {}
+for i = 1, #ARGV - 1 do
+    local user = ARGV[1 + i]
+    local id = redis.call('HGET', KEYS[1], user)
+    if not id then
+        id = redis.call('INCR', KEYS[2])
+        redis.call('HSET', KEYS[1], user, id)
+        redis.call('SETBIT', KEYS[2 + i], id, 1)
+        redis.call('EXPIRE', KEYS[2 + i], tonumber(ARGV[1]))
+    end
+    ids[i] = tonumber(id)
+end
+return ids
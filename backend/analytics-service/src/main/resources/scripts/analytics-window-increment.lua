@@ -0,0 +1,38 @@
+-- Increments per-minute, per-hour and per-day ring buffer slots in any number of window hashes.
+-- Each slot field "<res>:<bucket % slots>" holds "<bucket>:<starts>:<completions>"; a slot holding an
+-- older bucket is reset on reuse, an increment for a bucket older than the slot's is dropped.
+-- KEYS[i] window hash
+-- ARGV[1] ttl seconds, ARGV[2] minute slots, ARGV[3] hour slots, ARGV[4] day slots, then per key
+-- five values: started delta, completed delta, minute bucket, hour bucket, day bucket
+local ttl = tonumber(ARGV[1])
+local minuteSlots = tonumber(ARGV[2])
+local hourSlots = tonumber(ARGV[3])
+local daySlots = tonumber(ARGV[4])
+
+local function bump(key, res, bucket, slots, started, completed)
+    local field = res .. ':' .. (bucket % slots)
+    local starts, completions = 0, 0
+    local current = redis.call('HGET', key, field)
+    if current then
+        local b, s, c = string.match(current, '(%d+):(%d+):(%d+)')
+        b = tonumber(b)
+        if b > bucket then
+            return
+        end
+        if b == bucket then
+            starts, completions = tonumber(s), tonumber(c)
+        end
+    end
+    redis.call('HSET', key, field, bucket .. ':' .. (starts + started) .. ':' .. (completions + completed))
+end
+
+for i, key in ipairs(KEYS) do
+    local base = 4 + (i - 1) * 5
+    local started = tonumber(ARGV[base + 1])
+    local completed = tonumber(ARGV[base + 2])
+    bump(key, 'm', tonumber(ARGV[base + 3]), minuteSlots, started, completed)
+    bump(key, 'h', tonumber(ARGV[base + 4]), hourSlots, started, completed)
+    bump(key, 'd', tonumber(ARGV[base + 5]), daySlots, started, completed)
+    redis.call('EXPIRE', key, ttl)
+end
+return #KEYS
@@ -0,0 +1,189 @@
+package com.orbit.analytics.config;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.service.AnalyticsService;
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.KeyOrderedLanes;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.listener.AcknowledgingMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The parallel listener acknowledges records out of order from its lanes; the group's committed
+ * offset must never pass a record that has not finished, and per-user order must hold.
+ */
+class ParallelListenerAckTest {
+
+    private static final String TOPIC = "learning-events";
+    private static final String GROUP = "analytics-service-group";
+    private static final int LANES = 4;
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+    private static EmbeddedKafkaBroker broker;
+
+    @BeforeAll
+    static void startBroker() {
+        broker = new EmbeddedKafkaKraftBroker(1, 1, TOPIC);
+        broker.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        broker.destroy();
+    }
+
+    @Test
+    void commitsOnlyUpToTheOldestUnfinishedRecord() throws Exception {
+        KeyOrderedLanes lanes = new KeyOrderedLanes("test-consumer", LANES, false);
+        ConcurrentMessageListenerContainer<String, LearningEvent> container = container(lanes);
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        Set<Long> finished = ConcurrentHashMap.newKeySet();
+        Map<String, List<String>> orderByUser = new ConcurrentHashMap<>();
+        container.setupMessageListener((AcknowledgingMessageListener<String, LearningEvent>) (record, acknowledgment) ->
+                lanes.submit(record.value().getUserId(), () -> {
+                    if ("slow-user".equals(record.value().getUserId())) {
+                        await(releaseSlow);
+                    }
+                    orderByUser.computeIfAbsent(record.value().getUserId(), user -> new ArrayList<>())
+                            .add(record.value().getLessonId());
+                    finished.add(record.offset());
+                    acknowledgment.acknowledge();
+                }));
+
+        // Offset 0 blocks its lane; offsets 1-9 belong to three users on other lanes and finish first
+        List<String> users = usersOffLaneOf("slow-user", 3);
+        try (KafkaProducer<String, String> producer = producer()) {
+            producer.send(new ProducerRecord<>(TOPIC, 0, null, event("slow-user", "lesson-0")));
+            for (int i = 1; i < 10; i++) {
+                producer.send(new ProducerRecord<>(TOPIC, 0, null, event(users.get(i % users.size()), "lesson-" + i)));
+            }
+            producer.flush();
+        }
+        container.start();
+        try {
+            ContainerTestUtils.waitForAssignment(container, 1);
+            awaitTrue(() -> finished.size() == 9, 15_000);
+            // Several poll cycles with nine acks pending: none may be committed past offset 0
+            Thread.sleep(1_000);
+            assertThat(committed()).isNull();
+
+            releaseSlow.countDown();
+            awaitTrue(() -> Long.valueOf(10).equals(committedQuietly()), 15_000);
+            assertThat(finished).hasSize(10);
+            for (String user : users) {
+                List<String> lessons = orderByUser.get(user);
+                assertThat(lessons).as(user).hasSize(3);
+                assertThat(lessons).as(user).isSortedAccordingTo((a, b) ->
+                        Integer.compare(lessonNumber(a), lessonNumber(b)));
+            }
+        } finally {
+            releaseSlow.countDown();
+            container.stop();
+            lanes.close();
+        }
+    }
+
+    private static ConcurrentMessageListenerContainer<String, LearningEvent> container(KeyOrderedLanes lanes) {
+        KafkaConsumerConfig config = new KafkaConsumerConfig();
+        ReflectionTestUtils.setField(config, "bootstrapServers", broker.getBrokersAsString());
+        ReflectionTestUtils.setField(config, "parallelDrainTimeoutMs", 5_000L);
+        EventDeduplicator deduplicator = new EventDeduplicator("analytics", null,
+                new EventDeduplicator.Settings(false, 60_000, 1, 1_000, 0.01, 100));
+        ConcurrentKafkaListenerContainerFactory<String, LearningEvent> factory = config.parallelKafkaListenerContainerFactory(
+                deduplicator, mock(AnalyticsService.class), lanes, new MockEnvironment(), new SimpleMeterRegistry());
+        ConcurrentMessageListenerContainer<String, LearningEvent> container = factory.createContainer(TOPIC);
+        // Acks from the lanes are committed on the consumer thread's next loop; keep the loop short
+        container.getContainerProperties().setPollTimeout(100);
+        return container;
+    }
+
+    private static List<String> usersOffLaneOf(String key, int count) {
+        int lane = Math.floorMod(key.hashCode(), LANES);
+        List<String> users = new ArrayList<>();
+        for (int i = 0; users.size() < count; i++) {
+            String candidate = "user-" + i;
+            if (Math.floorMod(candidate.hashCode(), LANES) != lane) {
+                users.add(candidate);
+            }
+        }
+        return users;
+    }
+
+    private static KafkaProducer<String, String> producer() {
+        return new KafkaProducer<>(Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                // One batch, so all ten records arrive in the first poll
+                ProducerConfig.LINGER_MS_CONFIG, 1_000,
+                ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class));
+    }
+
+    private static String event(String userId, String lessonId) {
+        return "{\"eventType\":\"LESSON_STARTED\",\"userId\":\"" + userId + "\",\"courseId\":\"course-1\",\"lessonId\":\"" + lessonId + "\"}";
+    }
+
+    private static Long committed() throws Exception {
+        try (AdminClient admin = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            OffsetAndMetadata offset = admin.listConsumerGroupOffsets(GROUP).partitionsToOffsetAndMetadata()
+                    .get(10, TimeUnit.SECONDS).get(PARTITION);
+            return offset != null ? offset.offset() : null;
+        }
+    }
+
+    private static int lessonNumber(String lessonId) {
+        return Integer.parseInt(lessonId.substring("lesson-".length()));
+    }
+
+    private static Long committedQuietly() {
+        try {
+            return committed();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, long timeoutMs) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met within %d ms", timeoutMs).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import com.orbit.common.service.WriteFence;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AnalyticsDeltaCoalescerTest {
+
+    // Long enough that only the test flushes
+    private static final long FLUSH_INTERVAL_MS = 60_000;
+
+    /**
+     * An event's action is its offset commit and dedup mark; running it before the event's
+     * increments are persisted loses them if the JVM dies before the next flush.
+     */
+    @Test
+    void noActionRunsBeforeItsIncrementsArePersisted() throws Exception {
+        Map<String, AtomicLong> persisted = new ConcurrentHashMap<>();
+        Consumer<AnalyticsDeltaBatch> sink = batch -> batch.getUsers().forEach((userId, delta) ->
+                persisted.computeIfAbsent(userId, k -> new AtomicLong()).addAndGet(delta.getStarted()));
+        int threads = 4;
+        int eventsPerThread = 20_000;
+        AtomicInteger early = new AtomicInteger();
+        AtomicInteger ran = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+        try (AnalyticsDeltaCoalescer coalescer = new AnalyticsDeltaCoalescer(FLUSH_INTERVAL_MS, Long.MAX_VALUE, Long.MAX_VALUE,
+                List.of(), sink, new WriteFence())) {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicBoolean adding = new AtomicBoolean(true);
+            List<Future<?>> adders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String userId = "user-" + t;
+                adders.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 1; i <= eventsPerThread; i++) {
+                        long sequence = i;
+                        // One thread per user: event i is persisted once the user's total reaches i
+                        coalescer.add(started(userId), () -> {
+                            AtomicLong total = persisted.get(userId);
+                            if (total == null || total.get() < sequence) {
+                                early.incrementAndGet();
+                            }
+                            ran.incrementAndGet();
+                        });
+                    }
+                    return null;
+                }));
+            }
+            Future<?> flusher = pool.submit(() -> {
+                start.await();
+                while (adding.get()) {
+                    coalescer.flush();
+                }
+                return null;
+            });
+            start.countDown();
+            for (Future<?> adder : adders) {
+                adder.get(60, TimeUnit.SECONDS);
+            }
+            adding.set(false);
+            flusher.get(60, TimeUnit.SECONDS);
+            coalescer.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(early.get()).isZero();
+        assertThat(ran.get()).isEqualTo(threads * eventsPerThread);
+        for (int t = 0; t < threads; t++) {
+            assertThat(persisted.get("user-" + t).get()).isEqualTo(eventsPerThread);
+        }
+    }
+
+    @Test
+    void onlyTheFailedEventSinkIsRetried() {
+        List<LearningEvent> windows = new CopyOnWriteArrayList<>();
+        List<LearningEvent> funnels = new CopyOnWriteArrayList<>();
+        AtomicBoolean funnelsDown = new AtomicBoolean(true);
+        Consumer<List<LearningEvent>> funnelSink = events -> {
+            if (funnelsDown.get()) {
+                throw new IllegalStateException("funnels unavailable");
+            }
+            funnels.addAll(events);
+        };
+        AtomicLong persistedStarts = new AtomicLong();
+        AtomicInteger ran = new AtomicInteger();
+
+        try (AnalyticsDeltaCoalescer coalescer = new AnalyticsDeltaCoalescer(FLUSH_INTERVAL_MS, Long.MAX_VALUE, Long.MAX_VALUE,
+                List.of(windows::addAll, funnelSink),
+                batch -> persistedStarts.addAndGet(batch.getUsers().values().stream()
+                        .mapToLong(AnalyticsDeltaBatch.UserDelta::getStarted).sum()),
+                new WriteFence())) {
+            for (int i = 0; i < 3; i++) {
+                coalescer.add(started("user-" + i), ran::incrementAndGet);
+            }
+
+            assertThatThrownBy(coalescer::flush).isInstanceOf(IllegalStateException.class);
+            assertThat(windows).hasSize(3);
+            assertThat(funnels).isEmpty();
+            assertThat(persistedStarts.get()).isEqualTo(3);
+            assertThat(ran.get()).isZero();
+
+            funnelsDown.set(false);
+            coalescer.flush();
+            assertThat(windows).hasSize(3);
+            assertThat(funnels).hasSize(3);
+            assertThat(persistedStarts.get()).isEqualTo(3);
+            assertThat(ran.get()).isEqualTo(3);
+        }
+    }
+
+    /**
+     * Redis applied the first attempt but its reply was lost; merging the batch back into the
+     * window would count it twice.
+     */
+    @Test
+    void aBatchWhoseReplyWasLostIsNotAppliedTwice() {
+        AtomicLong appliedSequence = new AtomicLong();
+        AtomicLong persistedStarts = new AtomicLong();
+        AtomicBoolean loseReply = new AtomicBoolean(true);
+        Consumer<AnalyticsDeltaBatch> sink = batch -> {
+            // What the apply-batch script does with the writer's applied sequence
+            if (batch.getSequence() > appliedSequence.get()) {
+                appliedSequence.set(batch.getSequence());
+                persistedStarts.addAndGet(batch.getUsers().values().stream()
+                        .mapToLong(AnalyticsDeltaBatch.UserDelta::getStarted).sum());
+            }
+            if (loseReply.getAndSet(false)) {
+                throw new IllegalStateException("connection reset");
+            }
+        };
+        AtomicInteger ran = new AtomicInteger();
+
+        try (AnalyticsDeltaCoalescer coalescer = new AnalyticsDeltaCoalescer(FLUSH_INTERVAL_MS, Long.MAX_VALUE, Long.MAX_VALUE,
+                List.of(), sink, new WriteFence())) {
+            for (int i = 0; i < 3; i++) {
+                coalescer.add(started("user-" + i), ran::incrementAndGet);
+            }
+            assertThatThrownBy(coalescer::flush).isInstanceOf(IllegalStateException.class);
+            assertThat(ran.get()).isZero();
+
+            coalescer.add(started("user-0"), ran::incrementAndGet);
+            coalescer.flush();
+            assertThat(persistedStarts.get()).isEqualTo(4);
+            assertThat(ran.get()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void addBlocksAtTheBufferCapUntilAFlushSucceeds() throws Exception {
+        AtomicBoolean redisDown = new AtomicBoolean(true);
+        AtomicLong persistedStarts = new AtomicLong();
+        Consumer<AnalyticsDeltaBatch> sink = batch -> {
+            if (redisDown.get()) {
+                throw new IllegalStateException("redis unavailable");
+            }
+            persistedStarts.addAndGet(batch.getUsers().values().stream()
+                    .mapToLong(AnalyticsDeltaBatch.UserDelta::getStarted).sum());
+        };
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try (AnalyticsDeltaCoalescer coalescer = new AnalyticsDeltaCoalescer(FLUSH_INTERVAL_MS, 2, 2,
+                List.of(), sink, new WriteFence())) {
+            coalescer.add(started("user-0"), null);
+            coalescer.add(started("user-1"), null);
+            assertThatThrownBy(coalescer::flush).isInstanceOf(IllegalStateException.class);
+
+            Future<?> third = pool.submit(() -> coalescer.add(started("user-2"), null));
+            Thread.sleep(200);
+            assertThat(third).isNotDone();
+            assertThat(coalescer.getStats().getBufferedEvents()).isEqualTo(2);
+            assertThat(coalescer.getStats().getBlockedAdds()).isEqualTo(1);
+
+            redisDown.set(false);
+            coalescer.flush();
+            third.get(10, TimeUnit.SECONDS);
+            coalescer.flush();
+            assertThat(persistedStarts.get()).isEqualTo(3);
+            assertThat(coalescer.getStats().getBufferedEvents()).isZero();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static LearningEvent started(String userId) {
+        return new LearningEvent(null, LearningEventType.LESSON_STARTED, userId, "path-1", "course-1", "lesson-1", Instant.now());
+    }
+}
@@ -0,0 +1,55 @@
+package com.orbit.analytics.service;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CompletionTimeServiceTest {
+
+    private static final Instant STARTED = Instant.parse("2026-01-01T10:00:00Z");
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aFailedWriteKeepsTheStartForTheRetry() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenThrow(new IllegalStateException("redis unavailable"))
+                .thenReturn(List.of());
+        CompletionTimeService service = newService(redisTemplate);
+        service.record(List.of(event(LearningEventType.LESSON_STARTED, STARTED)));
+
+        List<LearningEvent> completion = List.of(event(LearningEventType.LESSON_COMPLETED, STARTED.plusSeconds(90)));
+        assertThatThrownBy(() -> service.record(completion)).isInstanceOf(IllegalStateException.class);
+        service.record(completion);
+        // Matched again on the retry; once written, the start is gone
+        service.record(completion);
+
+        verify(redisTemplate, times(2)).executePipelined(any(SessionCallback.class));
+    }
+
+    private static CompletionTimeService newService(RedisTemplate<String, String> redisTemplate) {
+        CompletionTimeService service = new CompletionTimeService(redisTemplate);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "pendingMaxSize", 1_000L);
+        ReflectionTestUtils.setField(service, "pendingTtlHours", 1L);
+        service.init();
+        return service;
+    }
+
+    private static LearningEvent event(LearningEventType type, Instant occurredAt) {
+        return new LearningEvent(null, type, "user-1", "path-1", "course-1", "lesson-1", occurredAt);
+    }
+}
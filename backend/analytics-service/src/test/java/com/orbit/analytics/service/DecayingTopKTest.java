@@ -0,0 +1,134 @@
+package com.orbit.analytics.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DecayingTopKTest {
+
+    private static final double HALF_LIFE_SECONDS = 3600;
+
+    @Test
+    void evictionMatchesALinearScanForTheMinimum() {
+        int capacity = 16;
+        long now = 1_000_000;
+        DecayingTopK topK = new DecayingTopK(capacity, HALF_LIFE_SECONDS, now);
+        LinearSpaceSaving expected = new LinearSpaceSaving(capacity, HALF_LIFE_SECONDS, now);
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            // Skewed ids; distinct add times make equal minimum scores unlikely, so both evict the same id
+            String id = "course-" + (int) Math.floor(Math.pow(random.nextDouble(), 3) * 200);
+            now += 1 + random.nextInt(50);
+            topK.add(id, now);
+            expected.add(id, now);
+        }
+
+        Map<String, Double> actual = topK.snapshot(now);
+        Map<String, Double> reference = expected.snapshot(now);
+        assertThat(actual).hasSize(capacity);
+        assertThat(sum(actual)).isCloseTo(sum(reference), within(1e-6 * sum(reference)));
+        assertThat(top(actual, 5)).isEqualTo(top(reference, 5));
+    }
+
+    @Test
+    void rebaseKeepsTheHeapUsable() {
+        long now = 0;
+        // One-second half-life: 50 / ln 2 seconds without an add forces a rebase
+        DecayingTopK topK = new DecayingTopK(4, 1, now);
+        for (String id : List.of("a", "b", "c", "d")) {
+            topK.add(id, now);
+        }
+        now += 200_000;
+        topK.add("e", now);
+        topK.add("e", now);
+        topK.add("f", now);
+
+        Map<String, Double> scores = topK.snapshot(now);
+        assertThat(scores).containsOnlyKeys("e", "f");
+        assertThat(scores.get("e")).isCloseTo(2.0, within(1e-9));
+        assertThat(scores.get("f")).isCloseTo(1.0, within(1e-9));
+    }
+
+    @Test
+    void stripesFromManyThreadsAddUp() throws Exception {
+        long now = 1_000_000;
+        StripedTopK striped = new StripedTopK(4, 64, HALF_LIFE_SECONDS, now);
+        int threads = 8;
+        int batches = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int b = 0; b < batches; b++) {
+                        striped.addAll(List.of("hot", "hot", "warm"), id -> id, now);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<String, Double> scores = striped.snapshot(now);
+        assertThat(scores.get("hot")).isCloseTo(2.0 * threads * batches, within(1e-6));
+        assertThat(scores.get("warm")).isCloseTo((double) threads * batches, within(1e-6));
+    }
+
+    private static double sum(Map<String, Double> scores) {
+        return scores.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    private static List<String> top(Map<String, Double> scores, int k) {
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(k)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /** The previous O(capacity) eviction, as the reference. */
+    private static final class LinearSpaceSaving {
+        private final int capacity;
+        private final double lambda;
+        private final long landmarkMs;
+        private final Map<String, Double> scores = new HashMap<>();
+
+        LinearSpaceSaving(int capacity, double halfLifeSeconds, long nowMs) {
+            this.capacity = capacity;
+            this.lambda = Math.log(2) / (halfLifeSeconds * 1000.0);
+            this.landmarkMs = nowMs;
+        }
+
+        void add(String id, long nowMs) {
+            double weight = Math.exp(lambda * (nowMs - landmarkMs));
+            if (scores.containsKey(id) || scores.size() < capacity) {
+                scores.merge(id, weight, Double::sum);
+                return;
+            }
+            Map.Entry<String, Double> min = scores.entrySet().stream().min(Map.Entry.comparingByValue()).orElseThrow();
+            scores.remove(min.getKey());
+            scores.put(id, min.getValue() + weight);
+        }
+
+        Map<String, Double> snapshot(long nowMs) {
+            double scale = Math.exp(-lambda * (nowMs - landmarkMs));
+            Map<String, Double> result = new HashMap<>();
+            scores.forEach((id, score) -> result.put(id, score * scale));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.orbit.analytics.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedLocksTest {
+
+    private final StripedLocks locks = new StripedLocks(64);
+
+    /**
+     * The json-mode course update is a read-modify-write; lanes keyed by user apply events of one
+     * course from several threads at once.
+     */
+    @Test
+    void readModifyWritesOfOneKeyAreNotLost() throws Exception {
+        List<String> courses = List.of("course-1", "course-2", "course-3");
+        Map<String, Long> stored = new HashMap<>();
+        courses.forEach(course -> stored.put(course, 0L));
+        int threads = 8;
+        int updatesPerThread = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < updatesPerThread; i++) {
+                        String course = courses.get(i % courses.size());
+                        locks.run(course, () -> {
+                            long current;
+                            synchronized (stored) {
+                                current = stored.get(course);
+                            }
+                            Thread.onSpinWait();
+                            synchronized (stored) {
+                                stored.put(course, current + 1);
+                            }
+                        });
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long total = stored.values().stream().mapToLong(Long::longValue).sum();
+        assertThat(total).isEqualTo((long) threads * updatesPerThread);
+        for (int c = 0; c < courses.size(); c++) {
+            int index = c;
+            long expected = (long) threads * (updatesPerThread / courses.size() + (index < updatesPerThread % courses.size() ? 1 : 0));
+            assertThat(stored.get(courses.get(c))).as(courses.get(c)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void keysOnOtherStripesAreNotBlocked() throws Exception {
+        String held = "course-held";
+        String other = keyOnOtherStripe(held);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        CountDownLatch sameDone = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            pool.submit(() -> locks.run(held, () -> {
+                holding.countDown();
+                await(release);
+            }));
+            assertThat(holding.await(5, TimeUnit.SECONDS)).isTrue();
+            pool.submit(() -> locks.run(held, sameDone::countDown));
+            pool.submit(() -> locks.run(other, otherDone::countDown));
+
+            assertThat(otherDone.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(sameDone.await(100, TimeUnit.MILLISECONDS)).isFalse();
+            release.countDown();
+            assertThat(sameDone.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void nullKeyRunsWithoutALock() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch nullDone = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            // Holding every stripe leaves only the lock-free path for a null key
+            pool.submit(() -> holdAll(0, release));
+            pool.submit(() -> locks.run(null, nullDone::countDown));
+
+            assertThat(nullDone.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private void holdAll(int from, CountDownLatch release) {
+        if (from == 64) {
+            await(release);
+            return;
+        }
+        locks.run(keyOnStripe(from), () -> holdAll(from + 1, release));
+    }
+
+    private String keyOnOtherStripe(String key) {
+        for (int i = 0; ; i++) {
+            String candidate = "course-" + i;
+            if (locks.stripe(candidate) != locks.stripe(key)) {
+                return candidate;
+            }
+        }
+    }
+
+    private String keyOnStripe(int stripe) {
+        for (int i = 0; ; i++) {
+            String candidate = "course-" + i;
+            if (locks.stripe(candidate) == stripe) {
+                return candidate;
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+#!/usr/bin/env python3
+"""
+Compare two JMH JSON result files (java -jar target/benchmarks.jar -rf json -rff <file>).
+
+Prints every benchmark/parameter combination present in both files with its change.
+A change counts as a regression when it is worse by more than --threshold percent and
+larger than the two runs' error margins combined, so noisy benchmarks do not fail the
+comparison on their own. Exits 1 if any benchmark regressed.
+
+    git checkout main   && mvn -B -q package && java -jar target/benchmarks.jar -rf json -rff base.json
+    git checkout branch && mvn -B -q package && java -jar target/benchmarks.jar -rf json -rff head.json
+    python3 compare.py base.json head.json --threshold 10
+
+Requires: Python 3.8+ standard library only.
+"""
+
+import argparse
+import json
+import math
+import sys
+
+# Modes where a higher score is better; avgt, sample and ss are times per operation
+HIGHER_IS_BETTER = {"thrpt"}
+
+
+def load(path):
+    with open(path) as f:
+        results = {}
+        for entry in json.load(f):
+            params = ",".join(f"{k}={v}" for k, v in sorted(entry.get("params", {}).items()))
+            name = entry["benchmark"].rsplit(".", 2)
+            key = (".".join(name[-2:]), params, entry["mode"])
+            metric = entry["primaryMetric"]
+            results[key] = (float(metric["score"]), error(metric.get("scoreError")), metric["scoreUnit"])
+        return results
+
+
+def error(value):
+    try:
+        value = float(value)
+    except (TypeError, ValueError):
+        return 0.0
+    return 0.0 if math.isnan(value) else value
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("base", help="results of the baseline commit")
+    parser.add_argument("head", help="results of the commit under test")
+    parser.add_argument("--threshold", type=float, default=10.0, help="allowed slowdown in percent (default 10)")
+    args = parser.parse_args()
+
+    base = load(args.base)
+    head = load(args.head)
+    regressions = 0
+    print(f"{'benchmark':<50} {'params':<45} {'base':>12} {'head':>12} {'unit':<6} {'change':>8}")
+    for key in sorted(base.keys() & head.keys()):
+        benchmark, params, mode = key
+        base_score, base_error, unit = base[key]
+        head_score, head_error, _ = head[key]
+        change = (head_score - base_score) / base_score * 100 if base_score else 0.0
+        worse = -change if mode in HIGHER_IS_BETTER else change
+        beyond_noise = abs(head_score - base_score) > base_error + head_error
+        verdict = ""
+        if worse > args.threshold and beyond_noise:
+            verdict = "REGRESSION"
+            regressions += 1
+        elif -worse > args.threshold and beyond_noise:
+            verdict = "improved"
+        print(f"{benchmark:<50} {params:<45} {base_score:>12.3f} {head_score:>12.3f} {unit:<6} {change:>+7.1f}% {verdict}")
+    for key in sorted(base.keys() ^ head.keys()):
+        print(f"{key[0]:<50} {key[1]:<45} only in {'base' if key in base else 'head'}")
+    print(f"\n{regressions} regression(s) beyond {args.threshold:g}%")
+    sys.exit(1 if regressions else 0)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,90 @@
+package com.orbit.benchmarks;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import com.orbit.analytics.service.AnalyticsService;
+import com.orbit.benchmarks.redis.RedisStandIn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AnalyticsService#processEvent} end to end: window, active-user, funnel, trending and
+ * completion-time recording plus the counter writes, against {@link RedisStandIn}. Events cycle
+ * over {@code users} users and {@code courses} courses, each user starting then completing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyticsProcessEventBenchmark {
+
+    private static final int EVENT_POOL = 1 << 14;
+
+    /**
+     * json: stored JSON values; binary: stored {@code ValueCodec} binary values; hash: Redis hashes
+     * updated by the apply-event script.
+     */
+    @Param({"json", "binary", "hash"})
+    public String storage;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"100"})
+    public int courses;
+
+    private RedisStandIn redis;
+    private AnnotationConfigApplicationContext context;
+    private AnalyticsService analyticsService;
+    private LearningEvent[] events;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        redis = RedisStandIn.start();
+        context = ServiceContexts.analytics(redis, Map.of(
+                "analytics.storage.mode", storage.equals("hash") ? "hash" : "json",
+                "analytics.storage.value-codec", storage.equals("binary") ? "binary" : "json"));
+        analyticsService = context.getBean(AnalyticsService.class);
+        events = new LearningEvent[EVENT_POOL];
+        Instant now = Instant.now();
+        for (int i = 0; i < EVENT_POOL; i++) {
+            int user = (i / 2) % users;
+            int course = user % courses;
+            events[i] = new LearningEvent("event-" + i,
+                    i % 2 == 0 ? LearningEventType.LESSON_STARTED : LearningEventType.LESSON_COMPLETED,
+                    "user-" + user, "path-" + (course % 10), "course-" + course, "lesson-" + (i % 20),
+                    now.plusMillis(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        redis.close();
+    }
+
+    @Benchmark
+    public void processEvent() {
+        analyticsService.processEvent(events[next++ & (EVENT_POOL - 1)]);
+    }
+}
@@ -0,0 +1,120 @@
+package com.orbit.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orbit.analytics.config.RedisConfig;
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+import com.orbit.analytics.model.CourseAnalytics;
+import com.orbit.analytics.model.UserAnalytics;
+import com.orbit.analytics.service.AnalyticsValueCodecs;
+import com.orbit.common.service.ValueCodec;
+import com.orbit.progress.model.UserProgressSnapshot;
+import com.orbit.progress.service.ProgressValueCodecs;
+import com.orbit.recommendation.model.AnalyticsData;
+import com.orbit.recommendation.model.ProgressData;
+import com.orbit.recommendation.model.Recommendation;
+import com.orbit.recommendation.model.RecommendationType;
+import com.orbit.recommendation.model.RuleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-then-read round trips of the models that cross Kafka, Redis and HTTP, with the services'
+ * ObjectMapper setup (JavaTimeModule). The *Binary methods round-trip the same stored values
+ * through {@link ValueCodec} binary for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelRoundTripBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ValueCodec<UserAnalytics> userAnalyticsBinary;
+    private ValueCodec<UserProgressSnapshot> progressSnapshotBinary;
+
+    private LearningEvent learningEvent;
+    private UserAnalytics userAnalytics;
+    private CourseAnalytics courseAnalytics;
+    private UserProgressSnapshot progressSnapshot;
+    private AnalyticsData analyticsData;
+    private ProgressData progressData;
+    private Recommendation recommendation;
+
+    @Setup
+    public void createModels() {
+        objectMapper = new RedisConfig().objectMapper();
+        userAnalyticsBinary = AnalyticsValueCodecs.userAnalytics(ValueCodec.Format.BINARY, objectMapper);
+        progressSnapshotBinary = ProgressValueCodecs.progressSnapshot(ValueCodec.Format.BINARY, objectMapper);
+
+        Instant now = Instant.now();
+        learningEvent = new LearningEvent("4f1c2a9e-5b7d-4e21-9a0c-3d8e6f1b2c4a", LearningEventType.LESSON_COMPLETED,
+                "user-1234", "path-7", "course-42", "lesson-42-3", now);
+        userAnalytics = new UserAnalytics("user-1234", 57L, 41L, now);
+        courseAnalytics = new CourseAnalytics("course-42", 18_230L, 12_904L, 1_211L);
+        progressSnapshot = new UserProgressSnapshot("user-1234", "path-7", "course-42", 10, 7, 70.0, now);
+        analyticsData = new AnalyticsData("user-1234", 57L, 41L, now, "course-42", 18_230L, 12_904L, 1_211L);
+        progressData = new ProgressData("user-1234", "path-7", "course-42", 10, 7, 70.0, now);
+        recommendation = new Recommendation(RecommendationType.LESSON, "course-42-lesson-next", "Continue learning",
+                "Continue with the next lesson from your current learning path.", 0.4, RuleType.SAFE_DEFAULT);
+    }
+
+    @Benchmark
+    public LearningEvent learningEvent() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(learningEvent), LearningEvent.class);
+    }
+
+    @Benchmark
+    public UserAnalytics userAnalytics() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(userAnalytics), UserAnalytics.class);
+    }
+
+    @Benchmark
+    public UserAnalytics userAnalyticsBinary() throws IOException {
+        return userAnalyticsBinary.decode(userAnalyticsBinary.encode(userAnalytics));
+    }
+
+    @Benchmark
+    public CourseAnalytics courseAnalytics() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(courseAnalytics), CourseAnalytics.class);
+    }
+
+    @Benchmark
+    public UserProgressSnapshot progressSnapshot() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(progressSnapshot), UserProgressSnapshot.class);
+    }
+
+    @Benchmark
+    public UserProgressSnapshot progressSnapshotBinary() throws IOException {
+        return progressSnapshotBinary.decode(progressSnapshotBinary.encode(progressSnapshot));
+    }
+
+    @Benchmark
+    public AnalyticsData analyticsData() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(analyticsData), AnalyticsData.class);
+    }
+
+    @Benchmark
+    public ProgressData progressData() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(progressData), ProgressData.class);
+    }
+
+    @Benchmark
+    public Recommendation recommendation() throws IOException {
+        return objectMapper.readValue(objectMapper.writeValueAsString(recommendation), Recommendation.class);
+    }
+}
@@ -0,0 +1,83 @@
+package com.orbit.benchmarks;
+
+import com.orbit.benchmarks.redis.RedisStandIn;
+import com.orbit.progress.event.LearningEvent;
+import com.orbit.progress.event.LearningEventType;
+import com.orbit.progress.service.ProgressCalculationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProgressCalculationService#processEvent} end to end: read-modify-write of the course and
+ * path snapshots, L1 invalidation and the SSE push, against {@link RedisStandIn}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgressProcessEventBenchmark {
+
+    private static final int EVENT_POOL = 1 << 14;
+
+    @Param({"json", "binary"})
+    public String valueCodec;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"100"})
+    public int courses;
+
+    private RedisStandIn redis;
+    private AnnotationConfigApplicationContext context;
+    private ProgressCalculationService progressCalculationService;
+    private LearningEvent[] events;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        redis = RedisStandIn.start();
+        context = ServiceContexts.progress(redis, Map.of("progress.storage.value-codec", valueCodec));
+        progressCalculationService = context.getBean(ProgressCalculationService.class);
+        events = new LearningEvent[EVENT_POOL];
+        Instant now = Instant.now();
+        for (int i = 0; i < EVENT_POOL; i++) {
+            int user = (i / 2) % users;
+            int course = user % courses;
+            events[i] = new LearningEvent("event-" + i,
+                    i % 2 == 0 ? LearningEventType.LESSON_STARTED : LearningEventType.LESSON_COMPLETED,
+                    "user-" + user, "path-" + (course % 10), "course-" + course, "lesson-" + (i % 20),
+                    now.plusMillis(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        redis.close();
+    }
+
+    @Benchmark
+    public void processEvent() {
+        progressCalculationService.processEvent(events[next++ & (EVENT_POOL - 1)]);
+    }
+}
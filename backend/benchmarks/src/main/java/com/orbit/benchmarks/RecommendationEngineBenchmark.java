@@ -0,0 +1,76 @@
+package com.orbit.benchmarks;
+
+import com.orbit.recommendation.model.Recommendation;
+import com.orbit.recommendation.model.UserContext;
+import com.orbit.recommendation.service.RecommendationEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RecommendationEngine#generateRecommendation} for contexts matched by the first rule
+ * (resume), by the last rule (safeDefault) and by none (noMatch).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecommendationEngineBenchmark {
+
+    @Param({"resume", "safeDefault", "noMatch"})
+    public String scenario;
+
+    private final RecommendationEngine engine = new RecommendationEngine();
+    private UserContext context;
+
+    @Setup
+    public void createContext() {
+        context = switch (scenario) {
+            case "resume" -> activeUser()
+                    .startedButIncompleteLessons(List.of("lesson-4", "lesson-7"))
+                    .build();
+            case "safeDefault" -> activeUser()
+                    .startedButIncompleteLessons(List.of())
+                    .build();
+            case "noMatch" -> UserContext.builder()
+                    .userId("user-1")
+                    .build();
+            default -> throw new IllegalArgumentException("Unknown scenario " + scenario);
+        };
+    }
+
+    @Benchmark
+    public Optional<Recommendation> generateRecommendation() {
+        return engine.generateRecommendation(context);
+    }
+
+    private static UserContext.UserContextBuilder activeUser() {
+        return UserContext.builder()
+                .userId("user-1")
+                .activePathId("path-1")
+                .activeCourseId("course-1")
+                .completedLessons(List.of())
+                .completionPercentage(0.0)
+                .lastActiveAt(Instant.now())
+                .lessonsStartedCount(3L)
+                .lessonsCompletedCount(0L)
+                .courseDropOffCount(1L)
+                .courseTotalStarts(20L)
+                .courseDropOffRate(0.05);
+    }
+}
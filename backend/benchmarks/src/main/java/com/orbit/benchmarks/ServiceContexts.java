@@ -0,0 +1,75 @@
+package com.orbit.benchmarks;
+
+import com.orbit.benchmarks.redis.RedisStandIn;
+import io.lettuce.core.api.StatefulConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+
+import java.util.Map;
+
+/**
+ * Minimal Spring contexts holding one service's event path, wired as in the application but
+ * without web, Kafka and actuator, and with Redis pointed at a {@link RedisStandIn}. Properties
+ * not given keep their {@code @Value} defaults, i.e. the services' out-of-the-box behaviour.
+ */
+public final class ServiceContexts {
+
+    private ServiceContexts() {
+    }
+
+    public static AnnotationConfigApplicationContext analytics(RedisStandIn redis, Map<String, Object> properties) {
+        return start(redis, properties,
+                com.orbit.analytics.config.RedisConfig.class,
+                com.orbit.common.service.WriteFence.class,
+                com.orbit.common.service.HotPathMetrics.class,
+                com.orbit.analytics.service.PlatformCounterShards.class,
+                com.orbit.analytics.service.AnalyticsHashStore.class,
+                com.orbit.analytics.service.AnalyticsEventStreamService.class,
+                com.orbit.analytics.service.TimeWindowService.class,
+                com.orbit.analytics.service.ActiveUserService.class,
+                com.orbit.analytics.service.LessonFunnelService.class,
+                com.orbit.analytics.service.TrendingService.class,
+                com.orbit.analytics.service.CompletionTimeService.class,
+                com.orbit.analytics.service.RetentionService.class,
+                com.orbit.analytics.service.AnalyticsService.class);
+    }
+
+    public static AnnotationConfigApplicationContext progress(RedisStandIn redis, Map<String, Object> properties) {
+        return start(redis, properties,
+                com.orbit.progress.config.RedisConfig.class,
+                com.orbit.common.service.WriteFence.class,
+                com.orbit.common.service.HotPathMetrics.class,
+                com.orbit.progress.service.ProgressStorageService.class,
+                com.orbit.progress.service.ProgressEventStreamService.class,
+                com.orbit.progress.service.ProgressCalculationService.class);
+    }
+
+    /**
+     * The services' spring.data.redis.lettuce.pool settings.
+     */
+    private static LettucePoolingClientConfiguration pooling() {
+        GenericObjectPoolConfig<StatefulConnection<?, ?>> pool = new GenericObjectPoolConfig<>();
+        pool.setMaxTotal(16);
+        pool.setMaxIdle(16);
+        pool.setMinIdle(2);
+        return LettucePoolingClientConfiguration.builder().poolConfig(pool).build();
+    }
+
+    private static AnnotationConfigApplicationContext start(RedisStandIn redis, Map<String, Object> properties,
+                                                            Class<?>... componentClasses) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.registerBean(LettuceConnectionFactory.class,
+                () -> new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", redis.port()), pooling()));
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(componentClasses);
+        context.refresh();
+        return context;
+    }
+}
@@ -0,0 +1,152 @@
+package com.orbit.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orbit.analytics.config.RedisConfig;
+import com.orbit.analytics.model.UserAnalytics;
+import com.orbit.common.service.SseBroadcaster;
+import com.orbit.common.service.SseConnectionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SSE push path after a debounce flush: {@link SseBroadcaster#deliver} fanning a batch of
+ * updates out to the connections' queues, and the sender threads draining them into the emitters.
+ * One operation is one batch, complete once every connection's event has been sent. Emitters
+ * build each event and discard it, so servlet response writing is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SseFanOutBenchmark {
+
+    private static final long NEVER_MS = TimeUnit.HOURS.toMillis(1);
+    private static final SseBroadcaster.Message CONNECTED = new SseBroadcaster.Message(null, "connected", "analytics");
+
+    /**
+     * notify: analytics_updated notifications; data: analytics_data events with versioned ids and
+     * replay buffering.
+     */
+    @Param({"notify", "data"})
+    public String mode;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"2"})
+    public int connectionsPerUser;
+
+    @Param({"100"})
+    public int batchSize;
+
+    @Param({"4"})
+    public int senderThreads;
+
+    private final LongAdder sent = new LongAdder();
+    private ObjectMapper objectMapper;
+    private SseBroadcaster<UserAnalytics> broadcaster;
+    private Map<String, UserAnalytics>[] batches;
+    private long expected;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void start() throws InterruptedException {
+        objectMapper = new RedisConfig().objectMapper();
+        // Flushes and heartbeats never fire; the benchmark calls deliver itself
+        SseConnectionManager.Settings settings = new SseConnectionManager.Settings(16, senderThreads,
+                users * connectionsPerUser, connectionsPerUser, NEVER_MS, NEVER_MS, 100, false);
+        broadcaster = new SseBroadcaster<>("benchmark", NEVER_MS, settings, 32, NEVER_MS, users,
+                userId -> new SseBroadcaster.Message(null, "analytics_updated",
+                        "{\"type\":\"analytics_updated\",\"userId\":\"" + userId + "\"}"),
+                "analytics_data", (older, newer) -> newer, this::dataPayload);
+        boolean data = mode.equals("data");
+        for (int user = 0; user < users; user++) {
+            for (int i = 0; i < connectionsPerUser; i++) {
+                broadcaster.register("user-" + user, new DiscardingEmitter(sent), data, null, CONNECTED);
+            }
+        }
+        while (broadcaster.connections().queuedBytes() > 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        expected = sent.sum();
+
+        int batchCount = Math.max(1, users / batchSize);
+        batches = new Map[batchCount];
+        Instant now = Instant.now();
+        for (int b = 0; b < batchCount; b++) {
+            batches[b] = new LinkedHashMap<>();
+            for (int i = 0; i < batchSize; i++) {
+                String userId = "user-" + ((b * batchSize + i) % users);
+                batches[b].put(userId, data ? new UserAnalytics(userId, 12L + b, 9L + b, now) : null);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        broadcaster.close();
+    }
+
+    @Benchmark
+    public void deliverBatch() {
+        Map<String, UserAnalytics> batch = batches[next++ % batches.length];
+        broadcaster.deliver(batch);
+        expected += (long) batch.size() * connectionsPerUser;
+        while (sent.sum() < expected) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private String dataPayload(UserAnalytics analytics, long version) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "analytics_data");
+        payload.put("version", version);
+        payload.put("userId", analytics.getUserId());
+        payload.put("lessonsStartedCount", analytics.getLessonsStartedCount());
+        payload.put("lessonsCompletedCount", analytics.getLessonsCompletedCount());
+        payload.put("lastActiveAt", analytics.getLastActiveAt());
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class DiscardingEmitter extends SseEmitter {
+        private final LongAdder sent;
+
+        DiscardingEmitter(LongAdder sent) {
+            this.sent = sent;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            builder.build();
+            sent.increment();
+        }
+    }
+}
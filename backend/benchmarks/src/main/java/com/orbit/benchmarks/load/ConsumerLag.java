@@ -0,0 +1,83 @@
+package com.orbit.benchmarks.load;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ConsumerGroupDescription;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.ConsumerGroupState;
+import org.apache.kafka.common.TopicPartition;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Committed offsets of the service consumer groups against the topic's end offsets. Committed
+ * offsets trail processing by at most one poll (manual acks), which is the lag that matters
+ * for restarts and rebalances.
+ */
+final class ConsumerLag implements AutoCloseable {
+
+    /** Sum over partitions: end offsets and one group's committed offsets. */
+    record Offsets(long end, long committed) {
+        long lag() {
+            return Math.max(0, end - committed);
+        }
+    }
+
+    private final Admin admin;
+    private final List<TopicPartition> partitions;
+
+    ConsumerLag(String bootstrapServers, String topic, int partitions) {
+        this.admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers));
+        this.partitions = IntStream.range(0, partitions)
+                .mapToObj(partition -> new TopicPartition(topic, partition))
+                .toList();
+    }
+
+    Offsets offsets(String group) throws ExecutionException, InterruptedException {
+        Map<TopicPartition, OffsetSpec> latest = partitions.stream()
+                .collect(Collectors.toMap(Function.identity(), partition -> OffsetSpec.latest()));
+        long end = admin.listOffsets(latest).all().get().values().stream()
+                .mapToLong(info -> info.offset())
+                .sum();
+        Map<TopicPartition, OffsetAndMetadata> committed =
+                admin.listConsumerGroupOffsets(group).partitionsToOffsetAndMetadata().get();
+        long sum = partitions.stream()
+                .map(committed::get)
+                .mapToLong(offset -> offset != null ? offset.offset() : 0)
+                .sum();
+        return new Offsets(end, sum);
+    }
+
+    /** Wait until every group is stable with all partitions assigned. */
+    void awaitStable(List<String> groups, Duration timeout)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            Map<String, ConsumerGroupDescription> descriptions = admin.describeConsumerGroups(groups).all().get();
+            boolean stable = descriptions.values().stream().allMatch(description ->
+                    description.state() == ConsumerGroupState.STABLE
+                            && description.members().stream()
+                            .mapToInt(member -> member.assignment().topicPartitions().size())
+                            .sum() == partitions.size());
+            if (stable) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+        throw new TimeoutException("Consumer groups " + groups + " not stable after " + timeout);
+    }
+
+    @Override
+    public void close() {
+        admin.close(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,113 @@
+package com.orbit.benchmarks.load;
+
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.analytics.event.LearningEventType;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Skewed learning activity: users and courses are drawn from Zipf distributions (rank 0 is the
+ * most active user and the most popular course). A user starts one lesson at a time and completes
+ * it on their next event with probability {@code completeRatio}, otherwise abandons it for a new one.
+ * <p>
+ * {@link #next()} is called from the producer thread only. Readers pick recently written
+ * (user, course) pairs through {@link #recentTarget()}, so most reads hit existing keys.
+ */
+final class LearningEventStream {
+
+    static final int LESSONS_PER_COURSE = 10;
+    private static final int RECENT_SIZE = 4096;
+
+    /** A user and one of their courses, as read by the REST load. */
+    record Target(String userId, String courseId) {
+    }
+
+    private final Zipf userRanks;
+    private final Zipf courseRanks;
+    private final int paths;
+    private final double completeRatio;
+    private final SplittableRandom random;
+    // Per user: started but not completed course and lesson, -1 when none
+    private final int[] pendingCourse;
+    private final int[] pendingLesson;
+    private final AtomicReferenceArray<Target> recent = new AtomicReferenceArray<>(RECENT_SIZE);
+    private final AtomicLong written = new AtomicLong();
+
+    LearningEventStream(int users, int courses, int paths, double userSkew, double courseSkew,
+                        double completeRatio, long seed) {
+        this.userRanks = new Zipf(users, userSkew);
+        this.courseRanks = new Zipf(courses, courseSkew);
+        this.paths = paths;
+        this.completeRatio = completeRatio;
+        this.random = new SplittableRandom(seed);
+        this.pendingCourse = new int[users];
+        this.pendingLesson = new int[users];
+        Arrays.fill(pendingCourse, -1);
+    }
+
+    LearningEvent next() {
+        int user = userRanks.sample(random);
+        LearningEventType type;
+        if (pendingCourse[user] >= 0 && random.nextDouble() < completeRatio) {
+            type = LearningEventType.LESSON_COMPLETED;
+        } else {
+            type = LearningEventType.LESSON_STARTED;
+            pendingCourse[user] = courseRanks.sample(random);
+            pendingLesson[user] = random.nextInt(LESSONS_PER_COURSE) + 1;
+        }
+        int course = pendingCourse[user];
+        int lesson = pendingLesson[user];
+        if (type == LearningEventType.LESSON_COMPLETED) {
+            pendingCourse[user] = -1;
+        }
+
+        String userId = userId(user);
+        String courseId = "course-" + course;
+        recent.set((int) (written.getAndIncrement() % RECENT_SIZE), new Target(userId, courseId));
+        return new LearningEvent(UUID.randomUUID().toString(), type, userId, "path-" + (course % paths),
+                courseId, courseId + "-lesson-" + lesson, Instant.now());
+    }
+
+    /** A recently written pair, or the hottest user and course before anything was written. */
+    Target recentTarget() {
+        long count = written.get();
+        if (count == 0) {
+            return new Target(userId(0), "course-0");
+        }
+        int slot = ThreadLocalRandom.current().nextInt((int) Math.min(count, RECENT_SIZE));
+        Target target = recent.get(slot);
+        return target != null ? target : new Target(userId(0), "course-0");
+    }
+
+    static String userId(int rank) {
+        return "user-" + rank;
+    }
+
+    /** Inverse-CDF sampling of ranks 0..n-1 with P(k) proportional to 1 / (k + 1)^skew. */
+    static final class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double skew) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, skew);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cdf[k] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+        }
+    }
+}
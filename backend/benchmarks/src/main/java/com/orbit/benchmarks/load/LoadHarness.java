@@ -0,0 +1,447 @@
+package com.orbit.benchmarks.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.orbit.analytics.AnalyticsServiceApplication;
+import com.orbit.analytics.config.RedisConfig;
+import com.orbit.analytics.event.LearningEvent;
+import com.orbit.benchmarks.redis.RedisStandIn;
+import com.orbit.progress.ProgressServiceApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load harness: an embedded Kafka broker, the {@link RedisStandIn} (or the Redis server
+ * given as {@code --redis=host:port}) and both event consumers (analytics-service, progress-service)
+ * booted in this JVM with their own configuration.
+ * Skewed {@link LearningEvent}s are produced at each target rate in turn while {@link ReadLoad}
+ * reads both services over HTTP and holds SSE streams open.
+ * <p>
+ * Every step reports produced and consumed events/s, consumer lag, REST read p50/p99, SSE
+ * events/s and freshness p50/p99, the latter from the services' own {@code orbit.event.freshness}
+ * histograms. A step is sustained when the producer reached 95% of the target rate and both groups
+ * ended it less than {@code max-lag-seconds} of events behind. The run stops at the first step that
+ * is not and reports the highest sustained rate.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.orbit.benchmarks.load.LoadHarness --rates=250,500,1000 --step-seconds=30
+ * </pre>
+ *
+ * Options are {@code --name=value}; see {@link #DEFAULTS}. Any other dotted option is passed to the
+ * services as a Spring property: {@code analytics.*} and {@code cache.analytics.*} to analytics-service,
+ * {@code progress.*} and {@code cache.progress.*} to progress-service, everything else to both.
+ */
+public final class LoadHarness {
+
+    private static final String TOPIC = "learning-events";
+    private static final String ANALYTICS_GROUP = "analytics-service-group";
+    private static final String PROGRESS_GROUP = "progress-service-group";
+    private static final double SUSTAINED_PRODUCER_RATIO = 0.95;
+
+    private static final Map<String, String> DEFAULTS = defaults();
+
+    private static Map<String, String> defaults() {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("rates", "250,500,1000,2000");
+        defaults.put("step-seconds", "30");
+        defaults.put("warmup-seconds", "10");
+        defaults.put("drain-seconds", "30");
+        defaults.put("max-lag-seconds", "2");
+        defaults.put("partitions", "6");
+        defaults.put("users", "100000");
+        defaults.put("courses", "500");
+        defaults.put("paths", "50");
+        defaults.put("user-skew", "1.1");
+        defaults.put("course-skew", "1.0");
+        defaults.put("complete-ratio", "0.6");
+        defaults.put("read-concurrency", "8");
+        defaults.put("streams", "200");
+        defaults.put("sse-mode", "notify");
+        defaults.put("seed", "42");
+        defaults.put("redis", "");
+        defaults.put("out", "");
+        return defaults;
+    }
+
+    /** p50/p99 in milliseconds over {@code count} samples; NaN when there were none. */
+    record Latency(long count, double p50Ms, double p99Ms) {
+    }
+
+    /** One service's REST reads during a step. */
+    record Reads(Latency latency, long notFound, long errors) {
+    }
+
+    /** Committed offsets of one group during a step. */
+    record Consumption(double eventsPerSecond, long lagAtEnd, long maxLag) {
+    }
+
+    record StepResult(int targetRate, double producedPerSecond, Consumption analytics, Consumption progress,
+                      Reads analyticsReads, Reads progressReads, double sseEventsPerSecond,
+                      Latency analyticsFreshness, Latency progressFreshness, boolean sustained) {
+    }
+
+    private final Map<String, String> options;
+    private final ObjectMapper objectMapper = new RedisConfig().objectMapper();
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong sendErrors = new AtomicLong();
+    private final AtomicLong analyticsMaxLag = new AtomicLong();
+    private final AtomicLong progressMaxLag = new AtomicLong();
+
+    private LoadHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        List<String> analyticsArgs = new ArrayList<>();
+        List<String> progressArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--help")) {
+                usage(null);
+            }
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                usage("Expected --name=value: " + arg);
+            }
+            String name = arg.substring(2, equals);
+            if (DEFAULTS.containsKey(name)) {
+                options.put(name, arg.substring(equals + 1));
+            } else if (name.startsWith("analytics.") || name.startsWith("cache.analytics.")) {
+                analyticsArgs.add(arg);
+            } else if (name.startsWith("progress.") || name.startsWith("cache.progress.")) {
+                progressArgs.add(arg);
+            } else if (name.contains(".")) {
+                analyticsArgs.add(arg);
+                progressArgs.add(arg);
+            } else {
+                usage("Unknown option: " + name);
+            }
+        }
+        new LoadHarness(options).run(analyticsArgs, progressArgs);
+        // Listener containers and SSE streams keep non-daemon threads around after close
+        System.exit(0);
+    }
+
+    private static void usage(String problem) {
+        if (problem != null) {
+            System.err.println(problem);
+        }
+        System.err.println("Options (--name=value) and defaults:");
+        DEFAULTS.forEach((name, value) -> System.err.printf("  --%s=%s%n", name, value));
+        System.err.println("Dotted options are passed to the services as Spring properties.");
+        System.exit(2);
+    }
+
+    private void run(List<String> analyticsArgs, List<String> progressArgs) throws Exception {
+        int partitions = intOption("partitions");
+        int[] rates = Arrays.stream(options.get("rates").split(",")).mapToInt(rate -> Integer.parseInt(rate.trim())).toArray();
+        LearningEventStream events = new LearningEventStream(intOption("users"), intOption("courses"), intOption("paths"),
+                doubleOption("user-skew"), doubleOption("course-skew"), doubleOption("complete-ratio"), intOption("seed"));
+
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(1, partitions, TOPIC);
+        broker.afterPropertiesSet();
+        String bootstrapServers = broker.getBrokersAsString();
+        String externalRedis = options.get("redis");
+        try (RedisStandIn standIn = externalRedis.isBlank() ? RedisStandIn.start() : null) {
+            String redis = standIn != null ? "127.0.0.1:" + standIn.port() : externalRedis.trim();
+            System.out.printf("Kafka %s (%d partitions), Redis %s %s%n", bootstrapServers, partitions,
+                    standIn != null ? "stand-in" : "server", redis);
+            ConfigurableApplicationContext analytics = boot(AnalyticsServiceApplication.class, "analytics",
+                    "com.orbit.analytics", bootstrapServers, redis, analyticsArgs);
+            ConfigurableApplicationContext progress = boot(ProgressServiceApplication.class, "progress",
+                    "com.orbit.progress", bootstrapServers, redis, progressArgs);
+            try (ConsumerLag lag = new ConsumerLag(bootstrapServers, TOPIC, partitions);
+                 KafkaProducer<String, byte[]> producer = producer(bootstrapServers)) {
+                lag.awaitStable(List.of(ANALYTICS_GROUP, PROGRESS_GROUP), Duration.ofSeconds(60));
+                int analyticsPort = port(analytics);
+                int progressPort = port(progress);
+                System.out.printf("analytics-service :%d, progress-service :%d, consumer groups stable%n", analyticsPort, progressPort);
+
+                try (ReadLoad reads = new ReadLoad(analyticsPort, progressPort, events, intOption("read-concurrency"))) {
+                    int streams = intOption("streams");
+                    if (streams > 0) {
+                        int opened = reads.openStreams(streams, options.get("sse-mode"));
+                        System.out.printf("%d of %d SSE streams open%n", opened, streams * 2);
+                    }
+                    List<StepResult> results = runSteps(rates, events, producer, lag, reads,
+                            freshnessTimer(analytics), freshnessTimer(progress));
+                    report(results);
+                }
+            } finally {
+                progress.close();
+                analytics.close();
+            }
+        } finally {
+            broker.destroy();
+        }
+    }
+
+    private List<StepResult> runSteps(int[] rates, LearningEventStream events, KafkaProducer<String, byte[]> producer,
+                                      ConsumerLag lag, ReadLoad reads, Timer analyticsFreshness, Timer progressFreshness)
+            throws Exception {
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitor.scheduleAtFixedRate(new Monitor(lag), 1, 1, TimeUnit.SECONDS);
+        List<StepResult> results = new ArrayList<>();
+        try {
+            System.out.printf("%nWarm-up at %d events/s for %ds%n", rates[0], intOption("warmup-seconds"));
+            produce(producer, events, rates[0], intOption("warmup-seconds"));
+            drain(lag);
+            for (int rate : rates) {
+                System.out.printf("%nStep: %d events/s for %ds%n", rate, intOption("step-seconds"));
+                StepResult result = step(rate, events, producer, lag, reads, analyticsFreshness, progressFreshness);
+                results.add(result);
+                if (!result.sustained()) {
+                    System.out.printf("Not sustained at %d events/s, stopping%n", rate);
+                    break;
+                }
+                drain(lag);
+            }
+        } finally {
+            monitor.shutdownNow();
+        }
+        return results;
+    }
+
+    private StepResult step(int rate, LearningEventStream events, KafkaProducer<String, byte[]> producer, ConsumerLag lag,
+                            ReadLoad reads, Timer analyticsFreshness, Timer progressFreshness) throws Exception {
+        ConsumerLag.Offsets analyticsStart = lag.offsets(ANALYTICS_GROUP);
+        ConsumerLag.Offsets progressStart = lag.offsets(PROGRESS_GROUP);
+        CountAtBucket[] analyticsFreshnessStart = analyticsFreshness.takeSnapshot().histogramCounts();
+        CountAtBucket[] progressFreshnessStart = progressFreshness.takeSnapshot().histogramCounts();
+        reads.analyticsInterval();
+        reads.progressInterval();
+        reads.sseEventsInterval();
+        analyticsMaxLag.set(0);
+        progressMaxLag.set(0);
+        long ackedStart = acked.get();
+
+        long start = System.nanoTime();
+        produce(producer, events, rate, intOption("step-seconds"));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        ConsumerLag.Offsets analyticsEnd = lag.offsets(ANALYTICS_GROUP);
+        ConsumerLag.Offsets progressEnd = lag.offsets(PROGRESS_GROUP);
+        double produced = (acked.get() - ackedStart) / seconds;
+        Consumption analytics = new Consumption((analyticsEnd.committed() - analyticsStart.committed()) / seconds,
+                analyticsEnd.lag(), Math.max(analyticsMaxLag.get(), analyticsEnd.lag()));
+        Consumption progress = new Consumption((progressEnd.committed() - progressStart.committed()) / seconds,
+                progressEnd.lag(), Math.max(progressMaxLag.get(), progressEnd.lag()));
+        long allowedLag = (long) (rate * doubleOption("max-lag-seconds"));
+        boolean sustained = produced >= rate * SUSTAINED_PRODUCER_RATIO
+                && analytics.lagAtEnd() <= allowedLag && progress.lagAtEnd() <= allowedLag;
+
+        StepResult result = new StepResult(rate, produced, analytics, progress,
+                reads(reads.analyticsInterval()), reads(reads.progressInterval()), reads.sseEventsInterval() / seconds,
+                freshness(analyticsFreshnessStart, analyticsFreshness.takeSnapshot().histogramCounts()),
+                freshness(progressFreshnessStart, progressFreshness.takeSnapshot().histogramCounts()),
+                sustained);
+        System.out.printf("  produced %.0f/s, consumed analytics %.0f/s progress %.0f/s, end lag %d/%d%s%n",
+                produced, analytics.eventsPerSecond(), progress.eventsPerSecond(), analytics.lagAtEnd(), progress.lagAtEnd(),
+                sendErrors.get() > 0 ? ", " + sendErrors.get() + " send errors so far" : "");
+        return result;
+    }
+
+    /** Send at {@code rate} for {@code seconds}; a producer more than a second behind drops the backlog. */
+    private void produce(KafkaProducer<String, byte[]> producer, LearningEventStream events, int rate, int seconds)
+            throws Exception {
+        long interval = 1_000_000_000L / rate;
+        long now = System.nanoTime();
+        long end = now + TimeUnit.SECONDS.toNanos(seconds);
+        long next = now;
+        while ((now = System.nanoTime()) < end) {
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            LearningEvent event = events.next();
+            producer.send(new ProducerRecord<>(TOPIC, event.getUserId(), objectMapper.writeValueAsBytes(event)),
+                    (metadata, exception) -> {
+                        if (exception == null) {
+                            acked.incrementAndGet();
+                        } else {
+                            sendErrors.incrementAndGet();
+                        }
+                    });
+            next = Math.max(next + interval, now - TimeUnit.SECONDS.toNanos(1));
+        }
+        producer.flush();
+    }
+
+    /** Let both groups catch up so the next step starts from zero lag. */
+    private void drain(ConsumerLag lag) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(intOption("drain-seconds"));
+        while (System.nanoTime() < deadline) {
+            if (lag.offsets(ANALYTICS_GROUP).lag() == 0 && lag.offsets(PROGRESS_GROUP).lag() == 0) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+        System.out.printf("  lag not drained after %ds%n", intOption("drain-seconds"));
+    }
+
+    private void report(List<StepResult> results) throws Exception {
+        System.out.printf("%n%6s %9s %9s %9s %13s %19s %19s %8s %19s %19s %s%n", "rate", "produced", "analytics",
+                "progress", "end lag a/p", "a read p50/p99 ms", "p read p50/p99 ms", "sse/s",
+                "a fresh p50/p99 ms", "p fresh p50/p99 ms", "sustained");
+        int maxSustained = 0;
+        for (StepResult result : results) {
+            System.out.printf("%6d %9.0f %9.0f %9.0f %13s %19s %19s %8.0f %19s %19s %s%n", result.targetRate(),
+                    result.producedPerSecond(), result.analytics().eventsPerSecond(), result.progress().eventsPerSecond(),
+                    result.analytics().lagAtEnd() + "/" + result.progress().lagAtEnd(),
+                    percentiles(result.analyticsReads().latency()), percentiles(result.progressReads().latency()),
+                    result.sseEventsPerSecond(), percentiles(result.analyticsFreshness()),
+                    percentiles(result.progressFreshness()), result.sustained() ? "yes" : "NO");
+            if (result.sustained()) {
+                maxSustained = Math.max(maxSustained, result.targetRate());
+            }
+        }
+        System.out.printf("%nMax sustained rate: %s%n", maxSustained > 0 ? maxSustained + " events/s" : "none");
+
+        String out = options.get("out");
+        if (!out.isEmpty()) {
+            Map<String, Object> document = new LinkedHashMap<>();
+            document.put("options", options);
+            document.put("maxSustainedRate", maxSustained);
+            document.put("steps", results);
+            objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(out), document);
+            System.out.println("Results written to " + out);
+        }
+    }
+
+    private ConfigurableApplicationContext boot(Class<?> application, String service, String logPackage,
+                                                String bootstrapServers, String redis, List<String> extraArgs) {
+        int colon = redis.lastIndexOf(':');
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.config.location=classpath:/" + service + "/application.yaml",
+                "--spring.main.banner-mode=off",
+                "--server.port=0",
+                "--spring.kafka.bootstrap-servers=" + bootstrapServers,
+                "--spring.data.redis.host=" + redis.substring(0, colon),
+                "--spring.data.redis.port=" + redis.substring(colon + 1),
+                // The services' yaml enables DEBUG for their own packages, which would log every event
+                "--logging.level." + logPackage + "=WARN"));
+        args.addAll(extraArgs);
+        return new SpringApplicationBuilder(application).run(args.toArray(String[]::new));
+    }
+
+    private KafkaProducer<String, byte[]> producer(String bootstrapServers) {
+        return new KafkaProducer<>(Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                ProducerConfig.LINGER_MS_CONFIG, 5,
+                ProducerConfig.CLIENT_ID_CONFIG, "load-harness"),
+                new StringSerializer(), new ByteArraySerializer());
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    private static Timer freshnessTimer(ConfigurableApplicationContext context) {
+        return context.getBean(MeterRegistry.class).get("orbit.event.freshness").timer();
+    }
+
+    private static Reads reads(ReadLoad.Interval interval) {
+        Histogram histogram = interval.latencyMicros();
+        Latency latency = histogram.getTotalCount() == 0
+                ? new Latency(0, Double.NaN, Double.NaN)
+                : new Latency(histogram.getTotalCount(), histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0);
+        return new Reads(latency, interval.notFound(), interval.errors());
+    }
+
+    /**
+     * Percentiles of the values recorded between two snapshots of a cumulative histogram, as the
+     * upper bound of the bucket they fall in.
+     */
+    private static Latency freshness(CountAtBucket[] before, CountAtBucket[] after) {
+        double[] counts = new double[after.length];
+        for (int i = 0; i < after.length; i++) {
+            counts[i] = after[i].count() - (i < before.length ? before[i].count() : 0);
+        }
+        long total = (long) counts[counts.length - 1];
+        if (total == 0) {
+            return new Latency(0, Double.NaN, Double.NaN);
+        }
+        return new Latency(total, bucketAt(after, counts, total * 0.50), bucketAt(after, counts, total * 0.99));
+    }
+
+    private static double bucketAt(CountAtBucket[] buckets, double[] counts, double rank) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] >= rank) {
+                return buckets[i].bucket(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static String percentiles(Latency latency) {
+        return latency.count() == 0 ? "-" : String.format("%.1f/%.1f", latency.p50Ms(), latency.p99Ms());
+    }
+
+    private int intOption(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    private double doubleOption(String name) {
+        return Double.parseDouble(options.get(name));
+    }
+
+    /** Prints throughput and lag every second and tracks each group's maximum lag within a step. */
+    private final class Monitor implements Runnable {
+        private final ConsumerLag lag;
+        private long lastAcked;
+        private long lastAnalytics;
+        private long lastProgress;
+
+        Monitor(ConsumerLag lag) {
+            this.lag = lag;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ConsumerLag.Offsets analytics = lag.offsets(ANALYTICS_GROUP);
+                ConsumerLag.Offsets progress = lag.offsets(PROGRESS_GROUP);
+                long ackedNow = acked.get();
+                analyticsMaxLag.accumulateAndGet(analytics.lag(), Math::max);
+                progressMaxLag.accumulateAndGet(progress.lag(), Math::max);
+                System.out.printf("  produced %5d/s  analytics %5d/s lag %6d  progress %5d/s lag %6d%n",
+                        ackedNow - lastAcked, analytics.committed() - lastAnalytics, analytics.lag(),
+                        progress.committed() - lastProgress, progress.lag());
+                lastAcked = ackedNow;
+                lastAnalytics = analytics.committed();
+                lastProgress = progress.committed();
+            } catch (Exception e) {
+                System.out.println("  lag check failed: " + e);
+            }
+        }
+    }
+}
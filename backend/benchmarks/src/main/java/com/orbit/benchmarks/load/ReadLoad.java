@@ -0,0 +1,179 @@
+package com.orbit.benchmarks.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read traffic against both services while events are produced: closed-loop readers alternate
+ * {@code GET /analytics/users/{userId}} and {@code GET /progress/users/{userId}/courses/{courseId}}
+ * for recently written pairs, and SSE streams stay open for the hottest users on both services.
+ * Latencies are recorded per service in microseconds; 404s (read before the first write was
+ * processed) are counted apart from errors.
+ */
+final class ReadLoad implements AutoCloseable {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    /** One service's REST reads since the previous interval. */
+    record Interval(Histogram latencyMicros, long notFound, long errors) {
+    }
+
+    private final HttpClient client;
+    private final ExecutorService readers;
+    private final String analyticsBase;
+    private final String progressBase;
+    private final LearningEventStream events;
+    private final Recorder analyticsLatency = new Recorder(3);
+    private final Recorder progressLatency = new Recorder(3);
+    private final LongAdder[] notFound = {new LongAdder(), new LongAdder()};
+    private final LongAdder[] errors = {new LongAdder(), new LongAdder()};
+    private final LongAdder sseEvents = new LongAdder();
+    private final List<Flow.Subscription> streams = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    ReadLoad(int analyticsPort, int progressPort, LearningEventStream events, int concurrency) {
+        this.analyticsBase = "http://127.0.0.1:" + analyticsPort;
+        this.progressBase = "http://127.0.0.1:" + progressPort;
+        this.events = events;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build();
+        this.readers = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "load-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < concurrency; i++) {
+            readers.submit(this::readLoop);
+        }
+    }
+
+    /**
+     * Open {@code count} streams per service for users ranked 0..count-1 and count their update events.
+     * Returns the number of streams that answered 200.
+     */
+    int openStreams(int count, String mode) {
+        List<String> uris = new ArrayList<>();
+        for (int rank = 0; rank < count; rank++) {
+            String userId = LearningEventStream.userId(rank);
+            uris.add(analyticsBase + "/analytics/stream?userId=" + userId + "&mode=" + mode);
+            uris.add(progressBase + "/progress/stream?userId=" + userId + "&mode=" + mode);
+        }
+        int opened = 0;
+        for (String uri : uris) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(uri)).header("Accept", "text/event-stream").build();
+            // The response future completes only when the stream ends; the status is known once headers arrive
+            CompletableFuture<Integer> status = new CompletableFuture<>();
+            client.sendAsync(request, responseInfo -> {
+                status.complete(responseInfo.statusCode());
+                return HttpResponse.BodySubscribers.fromLineSubscriber(new EventCounter());
+            }).whenComplete((response, failure) -> {
+                if (failure != null) {
+                    status.completeExceptionally(failure);
+                }
+            });
+            try {
+                if (status.get(10, TimeUnit.SECONDS) == 200) {
+                    opened++;
+                }
+            } catch (Exception e) {
+                // Counted as not opened; the summary shows how many streams are open
+            }
+        }
+        return opened;
+    }
+
+    Interval analyticsInterval() {
+        return new Interval(analyticsLatency.getIntervalHistogram(), notFound[0].sumThenReset(), errors[0].sumThenReset());
+    }
+
+    Interval progressInterval() {
+        return new Interval(progressLatency.getIntervalHistogram(), notFound[1].sumThenReset(), errors[1].sumThenReset());
+    }
+
+    /** SSE update events received since the previous call, excluding "connected" and heartbeats. */
+    long sseEventsInterval() {
+        return sseEvents.sumThenReset();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        streams.forEach(Flow.Subscription::cancel);
+        readers.shutdownNow();
+        readers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void readLoop() {
+        boolean analytics = true;
+        while (running) {
+            LearningEventStream.Target target = events.recentTarget();
+            if (analytics) {
+                get(analyticsBase + "/analytics/users/" + target.userId(), analyticsLatency, 0);
+            } else {
+                get(progressBase + "/progress/users/" + target.userId() + "/courses/" + target.courseId(), progressLatency, 1);
+            }
+            analytics = !analytics;
+        }
+    }
+
+    private void get(String uri, Recorder latency, int service) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri)).timeout(REQUEST_TIMEOUT).build();
+        long start = System.nanoTime();
+        try {
+            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            latency.recordValue(Math.max(1, (System.nanoTime() - start) / 1000));
+            if (status == 404) {
+                notFound[service].increment();
+            } else if (status != 200) {
+                errors[service].increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        } catch (Exception e) {
+            if (running) {
+                errors[service].increment();
+            }
+        }
+    }
+
+    private final class EventCounter implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            streams.add(subscription);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("event:") && !line.substring(6).trim().equals("connected")) {
+                sseEvents.increment();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
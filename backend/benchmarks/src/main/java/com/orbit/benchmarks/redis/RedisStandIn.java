@@ -0,0 +1,866 @@
+package com.orbit.benchmarks.redis;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for Redis, so benchmarks and load runs need no server. It speaks RESP2 on a
+ * loopback port, so the services' Lettuce connections, pipelines and pub/sub run unchanged and the
+ * round trips stay in the measurement.
+ * <p>
+ * Only the commands the services use are implemented. Commands run one at a time under one lock,
+ * as in Redis, and keys expire lazily. HyperLogLogs are exact sets. Lua is not interpreted: EVAL
+ * and EVALSHA run Java ports of the services' scripts, looked up by the SHA1 of the script text
+ * (see {@link StandInScripts}), so an edited script without an updated port fails with NOSCRIPT.
+ */
+@Slf4j
+public class RedisStandIn implements AutoCloseable {
+
+    /**
+     * Java port of a Lua script; {@code redis.call} becomes {@link Calls#call}.
+     */
+    public interface Script {
+        Object run(Calls redis, List<String> keys, List<String> argv);
+    }
+
+    public interface Calls {
+        Object call(String... args);
+    }
+
+    record Status(String value) {
+    }
+
+    record Failure(String message) {
+    }
+
+    private static final class Hll {
+        private final Set<String> members = new HashSet<>();
+    }
+
+    private static final Status OK = new Status("OK");
+    private static final Status PONG = new Status("PONG");
+    private static final Failure WRONG_TYPE = new Failure("WRONGTYPE Operation against a key holding the wrong kind of value");
+    private static final Failure NOT_INTEGER = new Failure("ERR value is not an integer or out of range");
+    private static final Failure SYNTAX = new Failure("ERR syntax error");
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService clientThreads;
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final Object lock = new Object();
+    private final Map<String, Object> data = new HashMap<>();
+    private final Map<String, Long> expiresAt = new HashMap<>();
+    private final Map<String, Set<Client>> channelSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Set<Client>> patternSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Script> scripts = new ConcurrentHashMap<>();
+    private final Set<String> loadedScripts = ConcurrentHashMap.newKeySet();
+    private final LongAdder commands = new LongAdder();
+
+    private RedisStandIn(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.clientThreads = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "redis-stand-in-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Listen on an ephemeral loopback port with the services' script ports registered.
+     */
+    public static RedisStandIn start() throws IOException {
+        RedisStandIn redis = new RedisStandIn(new ServerSocket(0, 128, InetAddress.getLoopbackAddress()));
+        StandInScripts.registerAll(redis);
+        Thread acceptor = new Thread(redis::accept, "redis-stand-in-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Redis stand-in listening on 127.0.0.1:{}", redis.port());
+        return redis;
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Make {@code port} answer EVAL and EVALSHA for {@code scriptText}.
+     */
+    public void registerScript(String scriptText, Script port) {
+        scripts.put(sha1(scriptText.getBytes(StandardCharsets.UTF_8)), port);
+    }
+
+    /**
+     * Commands served since start, pub/sub included.
+     */
+    public long commandCount() {
+        return commands.sum();
+    }
+
+    public int keyCount() {
+        synchronized (lock) {
+            return data.size();
+        }
+    }
+
+    public void flushAll() {
+        synchronized (lock) {
+            data.clear();
+            expiresAt.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.debug("Redis stand-in socket close failed", e);
+        }
+        clients.forEach(Client::close);
+        clientThreads.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Client client = new Client(socket);
+                clients.add(client);
+                clientThreads.execute(() -> serve(client));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Redis stand-in accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Client client) {
+        try {
+            List<byte[]> args;
+            while ((args = readCommand(client.in)) != null) {
+                commands.increment();
+                String name = new String(args.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+                switch (name) {
+                    case "SUBSCRIBE", "PSUBSCRIBE" -> subscribe(client, name, args);
+                    case "UNSUBSCRIBE", "PUNSUBSCRIBE" -> unsubscribe(client, name, args);
+                    case "PUBLISH" -> client.reply(publish(string(args.get(1)), args.get(2)), true);
+                    case "PING" -> client.reply(client.subscribed()
+                            ? List.of(bytes("pong"), args.size() > 1 ? args.get(1) : new byte[0])
+                            : args.size() > 1 ? args.get(1) : PONG, true);
+                    case "QUIT" -> {
+                        client.reply(OK, true);
+                        return;
+                    }
+                    default -> {
+                        Object reply;
+                        synchronized (lock) {
+                            reply = execute(name, args);
+                        }
+                        // Answer a pipeline in one write
+                        client.reply(reply, client.in.available() == 0);
+                    }
+                }
+            }
+        } catch (SocketException | EOFException e) {
+            // Client went away
+        } catch (IOException | RuntimeException e) {
+            log.warn("Redis stand-in connection failed", e);
+        } finally {
+            unsubscribeAll(client);
+            clients.remove(client);
+            client.close();
+        }
+    }
+
+    private Object execute(String name, List<byte[]> args) {
+        try {
+            return switch (name) {
+                case "HELLO" -> new Failure("ERR unknown command 'HELLO'");
+                case "SELECT", "CLIENT" -> OK;
+                case "ECHO" -> args.get(1);
+                case "DBSIZE" -> (long) data.size();
+                case "FLUSHALL", "FLUSHDB" -> {
+                    data.clear();
+                    expiresAt.clear();
+                    yield OK;
+                }
+                case "GET" -> get(string(args.get(1)));
+                case "SET" -> set(args);
+                case "SETNX" -> set(string(args.get(1)), args.get(2), -1, true, false) == OK ? 1L : 0L;
+                case "SETEX" -> set(string(args.get(1)), args.get(3), Long.parseLong(string(args.get(2))) * 1000, false, false);
+                case "PSETEX" -> set(string(args.get(1)), args.get(3), Long.parseLong(string(args.get(2))), false, false);
+                case "INCR" -> increment(string(args.get(1)), 1);
+                case "SETBIT" -> setBit(string(args.get(1)), Long.parseLong(string(args.get(2))), string(args.get(3)).equals("1"));
+                case "MGET" -> {
+                    List<Object> values = new ArrayList<>(args.size() - 1);
+                    for (int i = 1; i < args.size(); i++) {
+                        Object value = lookup(string(args.get(i)));
+                        values.add(value instanceof byte[] ? value : null);
+                    }
+                    yield values;
+                }
+                case "DEL", "UNLINK" -> {
+                    long removed = 0;
+                    for (int i = 1; i < args.size(); i++) {
+                        removed += remove(string(args.get(i))) ? 1 : 0;
+                    }
+                    yield removed;
+                }
+                case "EXISTS" -> {
+                    long found = 0;
+                    for (int i = 1; i < args.size(); i++) {
+                        found += lookup(string(args.get(i))) != null ? 1 : 0;
+                    }
+                    yield found;
+                }
+                case "RENAME" -> rename(string(args.get(1)), string(args.get(2)));
+                case "EXPIRE" -> expire(string(args.get(1)), Long.parseLong(string(args.get(2))) * 1000);
+                case "PEXPIRE" -> expire(string(args.get(1)), Long.parseLong(string(args.get(2))));
+                case "TTL" -> ttl(string(args.get(1)), 1000);
+                case "PTTL" -> ttl(string(args.get(1)), 1);
+                case "HGET" -> {
+                    Map<String, byte[]> hash = hash(string(args.get(1)), false);
+                    yield hash == null ? null : hash.get(string(args.get(2)));
+                }
+                case "HMGET" -> {
+                    Map<String, byte[]> hash = hash(string(args.get(1)), false);
+                    List<Object> values = new ArrayList<>(args.size() - 2);
+                    for (int i = 2; i < args.size(); i++) {
+                        values.add(hash == null ? null : hash.get(string(args.get(i))));
+                    }
+                    yield values;
+                }
+                case "HSET", "HMSET" -> {
+                    if (args.size() < 4 || args.size() % 2 != 0) {
+                        yield new Failure("ERR wrong number of arguments for '" + name.toLowerCase(Locale.ROOT) + "' command");
+                    }
+                    Map<String, byte[]> hash = hash(string(args.get(1)), true);
+                    long added = 0;
+                    for (int i = 2; i < args.size(); i += 2) {
+                        added += hash.put(string(args.get(i)), args.get(i + 1)) == null ? 1 : 0;
+                    }
+                    yield name.equals("HMSET") ? OK : added;
+                }
+                case "HSETNX" -> {
+                    Map<String, byte[]> hash = hash(string(args.get(1)), true);
+                    yield hash.putIfAbsent(string(args.get(2)), args.get(3)) == null ? 1L : 0L;
+                }
+                case "HINCRBY" -> {
+                    Map<String, byte[]> hash = hash(string(args.get(1)), true);
+                    String field = string(args.get(2));
+                    byte[] current = hash.get(field);
+                    long value = (current == null ? 0 : Long.parseLong(string(current))) + Long.parseLong(string(args.get(3)));
+                    hash.put(field, bytes(Long.toString(value)));
+                    yield value;
+                }
+                case "HDEL" -> {
+                    String key = string(args.get(1));
+                    Map<String, byte[]> hash = hash(key, false);
+                    long removed = 0;
+                    for (int i = 2; hash != null && i < args.size(); i++) {
+                        removed += hash.remove(string(args.get(i))) != null ? 1 : 0;
+                    }
+                    if (hash != null && hash.isEmpty()) {
+                        remove(key);
+                    }
+                    yield removed;
+                }
+                case "HGETALL" -> {
+                    Map<String, byte[]> hash = hash(string(args.get(1)), false);
+                    List<Object> entries = new ArrayList<>();
+                    if (hash != null) {
+                        hash.forEach((field, value) -> {
+                            entries.add(field);
+                            entries.add(value);
+                        });
+                    }
+                    yield entries;
+                }
+                case "HLEN" -> {
+                    Map<String, byte[]> hash = hash(string(args.get(1)), false);
+                    yield hash == null ? 0L : (long) hash.size();
+                }
+                case "SADD" -> {
+                    Set<String> set = set(string(args.get(1)), true);
+                    long added = 0;
+                    for (int i = 2; i < args.size(); i++) {
+                        added += set.add(string(args.get(i))) ? 1 : 0;
+                    }
+                    yield added;
+                }
+                case "SREM" -> {
+                    String key = string(args.get(1));
+                    Set<String> set = set(key, false);
+                    long removed = 0;
+                    for (int i = 2; set != null && i < args.size(); i++) {
+                        removed += set.remove(string(args.get(i))) ? 1 : 0;
+                    }
+                    if (set != null && set.isEmpty()) {
+                        remove(key);
+                    }
+                    yield removed;
+                }
+                case "SMEMBERS" -> {
+                    Set<String> set = set(string(args.get(1)), false);
+                    yield set == null ? List.of() : new ArrayList<Object>(set);
+                }
+                case "SISMEMBER" -> {
+                    Set<String> set = set(string(args.get(1)), false);
+                    yield set != null && set.contains(string(args.get(2))) ? 1L : 0L;
+                }
+                case "SCARD" -> {
+                    Set<String> set = set(string(args.get(1)), false);
+                    yield set == null ? 0L : (long) set.size();
+                }
+                case "PFADD" -> {
+                    Hll hll = hll(string(args.get(1)), true);
+                    boolean changed = false;
+                    for (int i = 2; i < args.size(); i++) {
+                        changed |= hll.members.add(string(args.get(i)));
+                    }
+                    yield changed ? 1L : 0L;
+                }
+                case "PFCOUNT" -> {
+                    Set<String> union = new HashSet<>();
+                    for (int i = 1; i < args.size(); i++) {
+                        Hll hll = hll(string(args.get(i)), false);
+                        if (hll != null) {
+                            union.addAll(hll.members);
+                        }
+                    }
+                    yield (long) union.size();
+                }
+                case "SCAN" -> scan(args);
+                case "EVAL" -> eval(sha1(args.get(1)), args, true);
+                case "EVALSHA" -> eval(string(args.get(1)).toLowerCase(Locale.ROOT), args, false);
+                case "SCRIPT" -> script(args);
+                default -> new Failure("ERR unknown command '" + name + "'");
+            };
+        } catch (TypeMismatch e) {
+            return WRONG_TYPE;
+        } catch (NumberFormatException e) {
+            return NOT_INTEGER;
+        } catch (IndexOutOfBoundsException e) {
+            return new Failure("ERR wrong number of arguments for '" + name.toLowerCase(Locale.ROOT) + "' command");
+        }
+    }
+
+    private Object lookup(String key) {
+        if (!expiresAt.isEmpty()) {
+            Long at = expiresAt.get(key);
+            if (at != null && at <= System.currentTimeMillis()) {
+                remove(key);
+                return null;
+            }
+        }
+        return data.get(key);
+    }
+
+    private boolean remove(String key) {
+        expiresAt.remove(key);
+        return data.remove(key) != null;
+    }
+
+    private Object get(String key) {
+        Object value = lookup(key);
+        if (value != null && !(value instanceof byte[])) {
+            throw new TypeMismatch();
+        }
+        return value;
+    }
+
+    private Object set(List<byte[]> args) {
+        long ttlMs = -1;
+        boolean nx = false;
+        boolean xx = false;
+        boolean keepTtl = false;
+        for (int i = 3; i < args.size(); i++) {
+            switch (string(args.get(i)).toUpperCase(Locale.ROOT)) {
+                case "EX" -> ttlMs = Long.parseLong(string(args.get(++i))) * 1000;
+                case "PX" -> ttlMs = Long.parseLong(string(args.get(++i)));
+                case "NX" -> nx = true;
+                case "XX" -> xx = true;
+                case "KEEPTTL" -> keepTtl = true;
+                default -> {
+                    return SYNTAX;
+                }
+            }
+        }
+        String key = string(args.get(1));
+        Long keptExpiry = keepTtl ? expiresAt.get(key) : null;
+        Object reply = set(key, args.get(2), ttlMs, nx, xx);
+        if (keptExpiry != null && reply == OK) {
+            expiresAt.put(key, keptExpiry);
+        }
+        return reply;
+    }
+
+    private Object set(String key, byte[] value, long ttlMs, boolean nx, boolean xx) {
+        boolean exists = lookup(key) != null;
+        if ((nx && exists) || (xx && !exists)) {
+            return null;
+        }
+        data.put(key, value);
+        if (ttlMs >= 0) {
+            expiresAt.put(key, System.currentTimeMillis() + ttlMs);
+        } else {
+            expiresAt.remove(key);
+        }
+        return OK;
+    }
+
+    /** INCRBY; the key keeps its expiry. */
+    private long increment(String key, long by) {
+        byte[] current = (byte[]) get(key);
+        long value = (current == null ? 0 : Long.parseLong(string(current))) + by;
+        data.put(key, bytes(Long.toString(value)));
+        return value;
+    }
+
+    /** SETBIT; offset 0 is the high bit of the first byte, the key keeps its expiry. */
+    private long setBit(String key, long offset, boolean on) {
+        byte[] current = (byte[]) get(key);
+        int index = (int) (offset >>> 3);
+        byte[] value = current == null ? new byte[index + 1]
+                : current.length > index ? current.clone() : Arrays.copyOf(current, index + 1);
+        int mask = 0x80 >>> (offset & 7);
+        boolean was = (value[index] & mask) != 0;
+        value[index] = (byte) (on ? value[index] | mask : value[index] & ~mask);
+        data.put(key, value);
+        return was ? 1 : 0;
+    }
+
+    private Object rename(String key, String newKey) {
+        Object value = lookup(key);
+        if (value == null) {
+            return new Failure("ERR no such key");
+        }
+        Long at = expiresAt.get(key);
+        remove(key);
+        remove(newKey);
+        data.put(newKey, value);
+        if (at != null) {
+            expiresAt.put(newKey, at);
+        }
+        return OK;
+    }
+
+    private long expire(String key, long ttlMs) {
+        if (lookup(key) == null) {
+            return 0;
+        }
+        expiresAt.put(key, System.currentTimeMillis() + ttlMs);
+        return 1;
+    }
+
+    private long ttl(String key, long unitMs) {
+        if (lookup(key) == null) {
+            return -2;
+        }
+        Long at = expiresAt.get(key);
+        return at == null ? -1 : Math.max(0, at - System.currentTimeMillis()) / unitMs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, byte[]> hash(String key, boolean create) {
+        Object value = lookup(key);
+        if (value == null && create) {
+            value = new LinkedHashMap<String, byte[]>();
+            data.put(key, value);
+        }
+        if (value != null && !(value instanceof LinkedHashMap)) {
+            throw new TypeMismatch();
+        }
+        return (Map<String, byte[]>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(String key, boolean create) {
+        Object value = lookup(key);
+        if (value == null && create) {
+            value = new LinkedHashSet<String>();
+            data.put(key, value);
+        }
+        if (value != null && !(value instanceof LinkedHashSet)) {
+            throw new TypeMismatch();
+        }
+        return (Set<String>) value;
+    }
+
+    private Hll hll(String key, boolean create) {
+        Object value = lookup(key);
+        if (value == null && create) {
+            value = new Hll();
+            data.put(key, value);
+        }
+        if (value != null && !(value instanceof Hll)) {
+            throw new TypeMismatch();
+        }
+        return (Hll) value;
+    }
+
+    /**
+     * A single pass: the whole matching keyspace is returned with cursor 0.
+     */
+    private Object scan(List<byte[]> args) {
+        String pattern = "*";
+        for (int i = 2; i < args.size(); i++) {
+            switch (string(args.get(i)).toUpperCase(Locale.ROOT)) {
+                case "MATCH" -> pattern = string(args.get(++i));
+                case "COUNT", "TYPE" -> i++;
+                default -> {
+                    return SYNTAX;
+                }
+            }
+        }
+        List<Object> keys = new ArrayList<>();
+        for (String key : new ArrayList<>(data.keySet())) {
+            if (lookup(key) != null && globMatches(pattern, key)) {
+                keys.add(key);
+            }
+        }
+        return List.of(bytes("0"), keys);
+    }
+
+    private Object eval(String sha, List<byte[]> args, boolean withSource) {
+        Script script = scripts.get(sha);
+        if (script == null || (!withSource && !loadedScripts.contains(sha))) {
+            return new Failure("NOSCRIPT No matching script. Please use EVAL.");
+        }
+        loadedScripts.add(sha);
+        int keyCount = Integer.parseInt(string(args.get(2)));
+        List<String> keys = new ArrayList<>(keyCount);
+        for (int i = 3; i < 3 + keyCount; i++) {
+            keys.add(string(args.get(i)));
+        }
+        List<String> argv = new ArrayList<>(args.size() - 3 - keyCount);
+        for (int i = 3 + keyCount; i < args.size(); i++) {
+            argv.add(string(args.get(i)));
+        }
+        try {
+            return script.run(this::call, keys, argv);
+        } catch (ScriptCallFailed e) {
+            return new Failure("ERR Error running script: " + e.failure.message());
+        }
+    }
+
+    private Object script(List<byte[]> args) {
+        String subcommand = string(args.get(1)).toUpperCase(Locale.ROOT);
+        switch (subcommand) {
+            case "LOAD" -> {
+                String sha = sha1(args.get(2));
+                if (!scripts.containsKey(sha)) {
+                    return new Failure("ERR no Java port registered for script " + sha);
+                }
+                loadedScripts.add(sha);
+                return bytes(sha);
+            }
+            case "EXISTS" -> {
+                List<Object> found = new ArrayList<>();
+                for (int i = 2; i < args.size(); i++) {
+                    found.add(loadedScripts.contains(string(args.get(i)).toLowerCase(Locale.ROOT)) ? 1L : 0L);
+                }
+                return found;
+            }
+            case "FLUSH" -> {
+                loadedScripts.clear();
+                return OK;
+            }
+            default -> {
+                return new Failure("ERR unknown SCRIPT subcommand '" + subcommand + "'");
+            }
+        }
+    }
+
+    /**
+     * {@code redis.call} for script ports; runs under the lock already held by EVAL.
+     */
+    private Object call(String... args) {
+        List<byte[]> command = new ArrayList<>(args.length);
+        for (String arg : args) {
+            command.add(bytes(arg));
+        }
+        Object reply = execute(args[0].toUpperCase(Locale.ROOT), command);
+        if (reply instanceof Failure failure) {
+            throw new ScriptCallFailed(failure);
+        }
+        return reply instanceof byte[] value ? string(value) : reply;
+    }
+
+    private long publish(String channel, byte[] message) {
+        long receivers = 0;
+        for (Client client : channelSubscribers.getOrDefault(channel, Set.of())) {
+            receivers += client.push(List.of(bytes("message"), bytes(channel), message)) ? 1 : 0;
+        }
+        for (Map.Entry<String, Set<Client>> entry : patternSubscribers.entrySet()) {
+            if (globMatches(entry.getKey(), channel)) {
+                for (Client client : entry.getValue()) {
+                    receivers += client.push(List.of(bytes("pmessage"), bytes(entry.getKey()), bytes(channel), message)) ? 1 : 0;
+                }
+            }
+        }
+        return receivers;
+    }
+
+    private void subscribe(Client client, String name, List<byte[]> args) throws IOException {
+        boolean pattern = name.startsWith("P");
+        for (int i = 1; i < args.size(); i++) {
+            String target = string(args.get(i));
+            (pattern ? client.patterns : client.channels).add(target);
+            (pattern ? patternSubscribers : channelSubscribers).computeIfAbsent(target, t -> new CopyOnWriteArraySet<>()).add(client);
+            client.reply(List.of(bytes(name.toLowerCase(Locale.ROOT)), args.get(i), (long) client.subscriptionCount()),
+                    i == args.size() - 1);
+        }
+    }
+
+    private void unsubscribe(Client client, String name, List<byte[]> args) throws IOException {
+        boolean pattern = name.startsWith("P");
+        Set<String> subscribed = pattern ? client.patterns : client.channels;
+        List<String> targets = new ArrayList<>();
+        for (int i = 1; i < args.size(); i++) {
+            targets.add(string(args.get(i)));
+        }
+        if (targets.isEmpty()) {
+            targets.addAll(subscribed);
+        }
+        if (targets.isEmpty()) {
+            client.reply(Arrays.asList(bytes(name.toLowerCase(Locale.ROOT)), null, (long) client.subscriptionCount()), true);
+            return;
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            String target = targets.get(i);
+            subscribed.remove(target);
+            Set<Client> subscribers = (pattern ? patternSubscribers : channelSubscribers).get(target);
+            if (subscribers != null) {
+                subscribers.remove(client);
+            }
+            client.reply(List.of(bytes(name.toLowerCase(Locale.ROOT)), bytes(target), (long) client.subscriptionCount()),
+                    i == targets.size() - 1);
+        }
+    }
+
+    private void unsubscribeAll(Client client) {
+        client.channels.forEach(channel -> channelSubscribers.getOrDefault(channel, Set.of()).remove(client));
+        client.patterns.forEach(pattern -> patternSubscribers.getOrDefault(pattern, Set.of()).remove(client));
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Expected a RESP array, got '" + (char) type + "'");
+        }
+        int count = (int) readNumber(in);
+        List<byte[]> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a RESP bulk string");
+            }
+            int length = (int) readNumber(in);
+            byte[] arg = in.readNBytes(length);
+            if (arg.length < length || in.read() != '\r' || in.read() != '\n') {
+                throw new EOFException();
+            }
+            args.add(arg);
+        }
+        return args;
+    }
+
+    private static long readNumber(InputStream in) throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            if (b == '-') {
+                negative = true;
+            } else {
+                value = value * 10 + (b - '0');
+            }
+        }
+        in.read();
+        return negative ? -value : value;
+    }
+
+    private static void write(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write(bytes("$-1\r\n"));
+        } else if (reply instanceof Status status) {
+            out.write(bytes("+" + status.value() + "\r\n"));
+        } else if (reply instanceof Failure failure) {
+            out.write(bytes("-" + failure.message() + "\r\n"));
+        } else if (reply instanceof Long number) {
+            out.write(bytes(":" + number + "\r\n"));
+        } else if (reply instanceof String text) {
+            write(out, bytes(text));
+        } else if (reply instanceof byte[] value) {
+            out.write(bytes("$" + value.length + "\r\n"));
+            out.write(value);
+            out.write('\r');
+            out.write('\n');
+        } else if (reply instanceof List<?> values) {
+            out.write(bytes("*" + values.size() + "\r\n"));
+            for (Object value : values) {
+                write(out, value);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported reply " + reply.getClass());
+        }
+    }
+
+    /**
+     * Redis glob subset used by the services: {@code *}, {@code ?} and backslash escapes.
+     */
+    static boolean globMatches(String pattern, String value) {
+        return globMatches(pattern, 0, value, 0);
+    }
+
+    private static boolean globMatches(String pattern, int p, String value, int v) {
+        while (p < pattern.length()) {
+            char c = pattern.charAt(p);
+            if (c == '*') {
+                for (int i = v; i <= value.length(); i++) {
+                    if (globMatches(pattern, p + 1, value, i)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (v >= value.length()) {
+                return false;
+            }
+            if (c == '\\' && p + 1 < pattern.length()) {
+                c = pattern.charAt(++p);
+            } else if (c == '?') {
+                p++;
+                v++;
+                continue;
+            }
+            if (c != value.charAt(v)) {
+                return false;
+            }
+            p++;
+            v++;
+        }
+        return v == value.length();
+    }
+
+    /**
+     * Keys, fields and members are kept as ISO-8859-1 strings, which round-trip any byte sequence.
+     */
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String sha1(byte[] script) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(script));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class TypeMismatch extends RuntimeException {
+        TypeMismatch() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class ScriptCallFailed extends RuntimeException {
+        private final Failure failure;
+
+        ScriptCallFailed(Failure failure) {
+            super(failure.message(), null, false, false);
+            this.failure = failure;
+        }
+    }
+
+    private static final class Client {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+        private final Set<String> patterns = ConcurrentHashMap.newKeySet();
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+        }
+
+        boolean subscribed() {
+            return !channels.isEmpty() || !patterns.isEmpty();
+        }
+
+        int subscriptionCount() {
+            return channels.size() + patterns.size();
+        }
+
+        synchronized void reply(Object reply, boolean flush) throws IOException {
+            write(out, reply);
+            if (flush) {
+                out.flush();
+            }
+        }
+
+        /**
+         * Pub/sub message from another connection's thread.
+         */
+        boolean push(Object message) {
+            try {
+                reply(message, true);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
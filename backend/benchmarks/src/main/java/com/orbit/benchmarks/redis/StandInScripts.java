@@ -0,0 +1,190 @@
+package com.orbit.benchmarks.redis;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Java ports of the services' Lua scripts for {@link RedisStandIn}, registered under the text of
+ * the script files they mirror. Keep each port in step with its script: an edited script no longer
+ * matches its registration and fails loudly instead of running stale logic.
+ */
+final class StandInScripts {
+
+    private StandInScripts() {
+    }
+
+    static void registerAll(RedisStandIn redis) {
+        redis.registerScript(read("scripts/analytics-apply-event.lua"), StandInScripts::analyticsApplyEvent);
+        redis.registerScript(read("scripts/analytics-apply-batch.lua"), StandInScripts::analyticsApplyBatch);
+        redis.registerScript(read("scripts/analytics-window-increment.lua"), StandInScripts::analyticsWindowIncrement);
+        redis.registerScript(read("scripts/analytics-retention-allocate.lua"), StandInScripts::analyticsRetentionAllocate);
+        redis.registerScript(read("scripts/analytics-release-lock.lua"), StandInScripts::analyticsReleaseLock);
+    }
+
+    /**
+     * scripts/analytics-apply-event.lua
+     */
+    private static Object analyticsApplyEvent(RedisStandIn.Calls redis, List<String> keys, List<String> argv) {
+        String started = argv.get(0);
+        String completed = argv.get(1);
+
+        Object userStarted = redis.call("HINCRBY", keys.get(0), "lessonsStartedCount", started);
+        Object userCompleted = redis.call("HINCRBY", keys.get(0), "lessonsCompletedCount", completed);
+        touchLastActive(redis, keys.get(0), argv.get(2), argv.get(3));
+
+        redis.call("HINCRBY", keys.get(1), "totalEventsProcessed", "1");
+        redis.call("HINCRBY", keys.get(1), "totalLessonCompletions", completed);
+
+        redis.call("DEL", keys.get(2));
+
+        if (keys.size() >= 5) {
+            redis.call("HINCRBY", keys.get(3), "totalLessonStarts", started);
+            redis.call("HINCRBY", keys.get(3), "totalLessonCompletions", completed);
+            redis.call("DEL", keys.get(4));
+        }
+
+        return Arrays.asList(userStarted, userCompleted, redis.call("HGET", keys.get(0), "lastActiveAt"));
+    }
+
+    /**
+     * scripts/analytics-apply-batch.lua
+     */
+    private static Object analyticsApplyBatch(RedisStandIn.Calls redis, List<String> keys, List<String> argv) {
+        long sequence = Long.parseLong(argv.get(0));
+        int users = Integer.parseInt(argv.get(2));
+        int courses = Integer.parseInt(argv.get(3));
+        String platformKey = keys.get(1 + users + courses);
+
+        boolean apply = true;
+        if (sequence > 0) {
+            Object applied = redis.call("GET", keys.get(0));
+            if (applied != null && Long.parseLong((String) applied) >= sequence) {
+                apply = false;
+            } else {
+                redis.call("SET", keys.get(0), argv.get(0), "EX", argv.get(1));
+            }
+        }
+
+        if (apply) {
+            for (int i = 0; i < users; i++) {
+                String key = keys.get(1 + i);
+                int base = 6 + i * 4;
+                redis.call("HINCRBY", key, "lessonsStartedCount", argv.get(base));
+                redis.call("HINCRBY", key, "lessonsCompletedCount", argv.get(base + 1));
+                touchLastActive(redis, key, argv.get(base + 2), argv.get(base + 3));
+            }
+            for (int i = 0; i < courses; i++) {
+                String key = keys.get(1 + users + i);
+                int base = 6 + users * 4 + i * 2;
+                redis.call("HINCRBY", key, "totalLessonStarts", argv.get(base));
+                redis.call("HINCRBY", key, "totalLessonCompletions", argv.get(base + 1));
+            }
+            redis.call("HINCRBY", platformKey, "totalEventsProcessed", argv.get(4));
+            redis.call("HINCRBY", platformKey, "totalLessonCompletions", argv.get(5));
+        }
+
+        for (int i = 2 + users + courses; i < keys.size(); i++) {
+            redis.call("DEL", keys.get(i));
+        }
+
+        List<Object> result = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            result.add(redis.call("HMGET", keys.get(1 + i), "lessonsStartedCount", "lessonsCompletedCount", "lastActiveAt"));
+        }
+        return result;
+    }
+
+    /**
+     * scripts/analytics-window-increment.lua
+     */
+    private static Object analyticsWindowIncrement(RedisStandIn.Calls redis, List<String> keys, List<String> argv) {
+        long minuteSlots = Long.parseLong(argv.get(1));
+        long hourSlots = Long.parseLong(argv.get(2));
+        long daySlots = Long.parseLong(argv.get(3));
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            int base = 4 + i * 5;
+            long started = Long.parseLong(argv.get(base));
+            long completed = Long.parseLong(argv.get(base + 1));
+            bump(redis, key, "m", Long.parseLong(argv.get(base + 2)), minuteSlots, started, completed);
+            bump(redis, key, "h", Long.parseLong(argv.get(base + 3)), hourSlots, started, completed);
+            bump(redis, key, "d", Long.parseLong(argv.get(base + 4)), daySlots, started, completed);
+            redis.call("EXPIRE", key, argv.get(0));
+        }
+        return (long) keys.size();
+    }
+
+    /**
+     * scripts/analytics-retention-allocate.lua
+     */
+    private static Object analyticsRetentionAllocate(RedisStandIn.Calls redis, List<String> keys, List<String> argv) {
+        List<Object> ids = new ArrayList<>(argv.size() - 1);
+        for (int i = 1; i < argv.size(); i++) {
+            String user = argv.get(i);
+            Object id = redis.call("HGET", keys.get(0), user);
+            if (id == null) {
+                id = redis.call("INCR", keys.get(1)).toString();
+                redis.call("HSET", keys.get(0), user, (String) id);
+                redis.call("SETBIT", keys.get(1 + i), (String) id, "1");
+                redis.call("EXPIRE", keys.get(1 + i), argv.get(0));
+            }
+            ids.add(Long.parseLong(id.toString()));
+        }
+        return ids;
+    }
+
+    /**
+     * scripts/analytics-release-lock.lua
+     */
+    private static Object analyticsReleaseLock(RedisStandIn.Calls redis, List<String> keys, List<String> argv) {
+        if (argv.get(0).equals(redis.call("GET", keys.get(0)))) {
+            return redis.call("DEL", keys.get(0));
+        }
+        return 0L;
+    }
+
+    private static void touchLastActive(RedisStandIn.Calls redis, String key, String iso, String millis) {
+        if (millis.isEmpty()) {
+            return;
+        }
+        Object stored = redis.call("HGET", key, "lastActiveAtMs");
+        if (stored == null || Long.parseLong(millis) > Long.parseLong((String) stored)) {
+            redis.call("HSET", key, "lastActiveAt", iso, "lastActiveAtMs", millis);
+        }
+    }
+
+    private static void bump(RedisStandIn.Calls redis, String key, String res, long bucket, long slots,
+                             long started, long completed) {
+        String field = res + ":" + Math.floorMod(bucket, slots);
+        long starts = 0;
+        long completions = 0;
+        Object current = redis.call("HGET", key, field);
+        if (current != null) {
+            String[] parts = ((String) current).split(":");
+            long b = Long.parseLong(parts[0]);
+            if (b > bucket) {
+                return;
+            }
+            if (b == bucket) {
+                starts = Long.parseLong(parts[1]);
+                completions = Long.parseLong(parts[2]);
+            }
+        }
+        redis.call("HSET", key, field, bucket + ":" + (starts + started) + ":" + (completions + completed));
+    }
+
+    private static String read(String path) {
+        try {
+            return StreamUtils.copyToString(new ClassPathResource(path).getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + path, e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.orbit.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DedupStats {
+    private boolean enabled;
+    private long windowMs;
+    private int generations;
+    private long bloomBytes;
+    private long checks;
+    private long duplicatesDropped;
+    private long bloomPositives;
+    private long falsePositives;
+    private long idsPendingFlush;
+    private double avgCheckMicros;
+}
@@ -0,0 +1,21 @@
+package com.orbit.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearCacheStats {
+    private boolean enabled;
+    private long size;
+    private long maxSize;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private long invalidationsReceived;
+    private double avgL1HitMicros;
+    private double avgL2LoadMicros;
+}
@@ -0,0 +1,16 @@
+package com.orbit.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RebuildPartitionProgress {
+    private int partition;
+    private long fromOffset;
+    private long toOffset;
+    private long position;
+    private long eventsRead;
+}
@@ -0,0 +1,27 @@
+package com.orbit.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RebuildStatus {
+    // IDLE, READING, LOADING, CATCHING_UP, SWITCHING, DONE, FAILED or UNSUPPORTED (see error)
+    private String phase;
+    private long activeGeneration;
+    private long targetGeneration;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private long eventsRead;
+    // Records skipped because their eventId (or partition@offset) was already folded
+    private long duplicatesSkipped;
+    private double eventsPerSecond;
+    private long keysLoaded;
+    private String error;
+    private List<RebuildPartitionProgress> partitions;
+}
@@ -0,0 +1,41 @@
+package com.orbit.common.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SseStats {
+    private boolean crossInstance;
+    private int shards;
+    private int subscribedShards;
+    private int localUsers;
+    private int localConnections;
+    private long peakConnections;
+    private int maxConnections;
+    private long rejectedConnections;
+    private long evictedPerUserCap;
+    private long heartbeatsSent;
+    private long reapedStalled;
+    private long sendFailures;
+    private long bytesSent;
+    private long queuedBytes;
+    private long queuedBytesPerConnection;
+    // A constant, not a measurement; see SseConnectionManager.STATIC_ESTIMATE_CONNECTION_BYTES
+    private long staticEstimateBytesPerConnection;
+    private long updatesRequested;
+    private long relayMessagesPublished;
+    private long relayUsersPublished;
+    private long relayUsersUnlistened;
+    private long relayMessagesReceived;
+    private long relayUsersReceived;
+    private double avgRelayLagMs;
+    private long maxRelayLagMs;
+    private long usersDelivered;
+    private long eventsQueued;
+    private long eventsSkippedBackedUp;
+    private long eventsReplayed;
+    private long resyncs;
+}
@@ -0,0 +1,76 @@
+package com.orbit.common.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, thread-safe Bloom filter over strings. Bit count is rounded up to a power of two
+ * and the k probe positions come from double hashing of one 64-bit hash.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long mask;
+    private final int hashes;
+
+    /**
+     * @param expectedInsertions entries at which the false positive rate reaches {@code fpp}
+     */
+    BloomFilter(long expectedInsertions, double fpp) {
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        long size = Long.highestOneBit(Math.max(64, bits - 1)) << 1;
+        this.words = new AtomicLongArray((int) (size >>> 6));
+        this.mask = size - 1;
+        this.hashes = (int) Math.max(1, Math.min(16, Math.round((double) size / expectedInsertions * Math.log(2))));
+    }
+
+    void add(String value) {
+        long hash = hash(value);
+        long h1 = fmix64(hash);
+        long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            int word = (int) (bit >>> 6);
+            long bitMask = 1L << bit;
+            long current = words.get(word);
+            while ((current & bitMask) == 0 && !words.compareAndSet(word, current, current | bitMask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(String value) {
+        long hash = hash(value);
+        long h1 = fmix64(hash);
+        long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & mask;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long sizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    // FNV-1a over UTF-16 code units; fmix64 spreads it before probing
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53e1a1bL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
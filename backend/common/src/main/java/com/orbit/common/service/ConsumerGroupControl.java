@@ -0,0 +1,155 @@
+package com.orbit.common.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordination of a service's live {@code <name>-service-group} consumers for maintenance jobs
+ * (rebuilds, snapshots): pausing and resuming listeners on every instance via pub/sub, and
+ * reading or resetting the group's committed offsets.
+ */
+@Slf4j
+public class ConsumerGroupControl {
+
+    public static final String TOPIC = "learning-events";
+    private static final long ADMIN_TIMEOUT_SECONDS = 30;
+
+    private final KafkaAdmin kafkaAdmin;
+    private final KafkaListenerEndpointRegistry listenerEndpointRegistry;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectProvider<KeyOrderedLanes> consumerLanes;
+    private final String liveGroupId;
+    private final String controlChannel;
+    private final long laneDrainTimeoutMs;
+    private final Runnable flushPendingWrites;
+
+    /**
+     * @param flushPendingWrites run on pause after the lanes drain, for writes a service still buffers
+     */
+    public ConsumerGroupControl(String name, KafkaAdmin kafkaAdmin, KafkaListenerEndpointRegistry listenerEndpointRegistry,
+                                RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                                ObjectProvider<KeyOrderedLanes> consumerLanes, long laneDrainTimeoutMs, Runnable flushPendingWrites) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.listenerEndpointRegistry = listenerEndpointRegistry;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.consumerLanes = consumerLanes;
+        this.liveGroupId = name + "-service-group";
+        this.controlChannel = name + ":listeners:control";
+        this.laneDrainTimeoutMs = laneDrainTimeoutMs;
+        this.flushPendingWrites = flushPendingWrites;
+    }
+
+    @PostConstruct
+    void init() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onControl(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(controlChannel));
+    }
+
+    public void pauseAll() {
+        publish("pause");
+    }
+
+    public void resumeAll() {
+        publish("resume");
+    }
+
+    public List<TopicPartition> partitions() throws Exception {
+        try (AdminClient admin = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            return admin.describeTopics(List.of(TOPIC)).allTopicNames()
+                    .get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .get(TOPIC).partitions().stream()
+                    .map(info -> new TopicPartition(TOPIC, info.partition()))
+                    .toList();
+        }
+    }
+
+    /**
+     * Committed offsets of the live group; partitions without a commit report 0.
+     */
+    public Map<TopicPartition, Long> committedOffsets(List<TopicPartition> partitions) throws Exception {
+        try (AdminClient admin = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            Map<TopicPartition, OffsetAndMetadata> offsets = admin.listConsumerGroupOffsets(liveGroupId)
+                    .partitionsToOffsetAndMetadata()
+                    .get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Map<TopicPartition, Long> committed = new HashMap<>();
+            for (TopicPartition tp : partitions) {
+                OffsetAndMetadata offset = offsets.get(tp);
+                committed.put(tp, offset != null ? offset.offset() : 0L);
+            }
+            return committed;
+        }
+    }
+
+    /**
+     * Committed offsets once they stop moving after a pause (in-flight polls finish and commit first).
+     */
+    public Map<TopicPartition, Long> settledCommittedOffsets(List<TopicPartition> partitions, long settleMs) throws Exception {
+        Map<TopicPartition, Long> previous = committedOffsets(partitions);
+        while (true) {
+            Thread.sleep(settleMs);
+            Map<TopicPartition, Long> current = committedOffsets(partitions);
+            if (current.equals(previous)) {
+                return current;
+            }
+            previous = current;
+        }
+    }
+
+    /**
+     * Move the live group to {@code offsets}. Kafka only allows this while the group has no members,
+     * i.e. before any listener of any instance has joined.
+     */
+    public void resetCommittedOffsets(Map<TopicPartition, Long> offsets) throws Exception {
+        Map<TopicPartition, OffsetAndMetadata> target = new HashMap<>();
+        offsets.forEach((tp, offset) -> target.put(tp, new OffsetAndMetadata(offset)));
+        try (AdminClient admin = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            admin.alterConsumerGroupOffsets(liveGroupId, target).all().get(ADMIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        log.info("Reset {} committed offsets to {}", liveGroupId, offsets);
+    }
+
+    private void publish(String command) {
+        onControl(command);
+        redisTemplate.convertAndSend(controlChannel, command);
+    }
+
+    /**
+     * Pause or resume this instance's listeners; pausing also waits for parallel lanes and flushes
+     * buffered writes so they are persisted before the caller reads state or offsets.
+     */
+    private void onControl(String command) {
+        if ("pause".equals(command)) {
+            listenerEndpointRegistry.getListenerContainers().forEach(container -> {
+                if (!container.isPauseRequested()) {
+                    container.pause();
+                }
+            });
+            consumerLanes.ifAvailable(lanes -> lanes.awaitIdle(laneDrainTimeoutMs));
+            flushPendingWrites.run();
+        } else if ("resume".equals(command)) {
+            listenerEndpointRegistry.getListenerContainers().forEach(container -> {
+                if (container.isPauseRequested()) {
+                    container.resume();
+                }
+            });
+        }
+    }
+}
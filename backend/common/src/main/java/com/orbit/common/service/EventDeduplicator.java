@@ -0,0 +1,362 @@
+package com.orbit.common.service;
+
+import com.orbit.common.model.DedupStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops redelivered events before they are applied. Seen ids go into a ring of time-partitioned
+ * Bloom filters (one per {@code rotation-ms}, the oldest is replaced on rotation), so the common
+ * case - a new event - is answered in memory. Ids are also written asynchronously to small
+ * per-partition Redis sets with the same window; those confirm Bloom positives (so false
+ * positives do not drop events) and warm the filter when a partition is assigned after a
+ * rebalance, which is when redeliveries happen.
+ * <p>
+ * The id is the event's own id, or the record's partition and offset for producers that do not
+ * set one. Keys live under {@code <name>:dedup:p<partition>:<bucket>}.
+ * <p>
+ * Consumers that mark an event only once its writes are persisted (coalescing) {@link #claim} it
+ * first, so a copy arriving before that mark is dropped as well.
+ */
+@Slf4j
+public class EventDeduplicator implements ConsumerAwareRebalanceListener {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final String name;
+    private final String seenKeyPrefix;
+    private final boolean enabled;
+    private final long rotationMs;
+    private final int generations;
+    private final long expectedPerGeneration;
+    private final double fpp;
+    private final long flushIntervalMs;
+
+    private AtomicReferenceArray<BloomFilter> filters;
+    private volatile int current;
+    private ScheduledExecutorService scheduler;
+
+    // Ids recorded locally but not yet in Redis, by partition
+    private final Map<Integer, ConcurrentLinkedQueue<String>> pending = new ConcurrentHashMap<>();
+    private final Set<String> pendingIds = ConcurrentHashMap.newKeySet();
+    // Ids claimed and not yet marked or released; bounded by what the caller keeps unpersisted
+    private final Set<String> claimedIds = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder bloomPositives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder checkNanos = new LongAdder();
+
+    public EventDeduplicator(String name, RedisTemplate<String, String> redisTemplate, Settings settings) {
+        this.redisTemplate = redisTemplate;
+        this.name = name;
+        this.seenKeyPrefix = name + ":dedup:p";
+        this.enabled = settings.enabled();
+        this.rotationMs = settings.rotationMs();
+        this.generations = settings.generations();
+        this.expectedPerGeneration = settings.expectedPerGeneration();
+        this.fpp = settings.fpp();
+        this.flushIntervalMs = settings.flushIntervalMs();
+    }
+
+    /**
+     * @param rotationMs            lifetime of one filter generation
+     * @param generations           filters kept; the window is {@code generations x rotationMs}
+     * @param expectedPerGeneration ids one filter is sized for
+     * @param fpp                   target false positive probability per filter
+     * @param flushIntervalMs       how often locally recorded ids are written to Redis
+     */
+    public record Settings(boolean enabled, long rotationMs, int generations, long expectedPerGeneration,
+                           double fpp, long flushIntervalMs) {
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        filters = new AtomicReferenceArray<>(generations);
+        for (int i = 0; i < generations; i++) {
+            filters.set(i, new BloomFilter(expectedPerGeneration, fpp));
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-dedup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::rotate, rotationMs, rotationMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            flushQuietly();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static String idOf(String eventId, int partition, long offset) {
+        return eventId != null ? eventId : partition + "@" + offset;
+    }
+
+    /**
+     * True if {@code id} was already processed within the window. Only Bloom positives cost a
+     * Redis round trip.
+     */
+    public boolean isDuplicate(String id, int partition) {
+        if (!enabled) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            checks.increment();
+            if (!mightContain(id)) {
+                return false;
+            }
+            bloomPositives.increment();
+            if (pendingIds.contains(id) || seenInRedis(id, partition)) {
+                duplicates.increment();
+                return true;
+            }
+            falsePositives.increment();
+            return false;
+        } finally {
+            checkNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * False if {@code id} is a duplicate or already claimed; otherwise claims it until
+     * {@link #markProcessed} or {@link #release}. Unlike marking on acceptance, nothing reaches
+     * Redis before the event's writes do.
+     */
+    public boolean claim(String id, int partition) {
+        if (!enabled) {
+            return true;
+        }
+        if (!claimedIds.add(id)) {
+            duplicates.increment();
+            return false;
+        }
+        if (isDuplicate(id, partition)) {
+            claimedIds.remove(id);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Give up a claim whose event was not applied, so a redelivered copy is processed.
+     */
+    public void release(String id) {
+        claimedIds.remove(id);
+    }
+
+    /**
+     * Record {@code id} as processed; call after the event has been applied.
+     */
+    public void markProcessed(String id, int partition) {
+        if (!enabled) {
+            return;
+        }
+        filters.get(current).add(id);
+        pendingIds.add(id);
+        pending.computeIfAbsent(partition, p -> new ConcurrentLinkedQueue<>()).add(id);
+        claimedIds.remove(id);
+    }
+
+    public DedupStats getStats() {
+        if (!enabled) {
+            return new DedupStats(false, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        long checkCount = checks.sum();
+        return new DedupStats(true, rotationMs * generations, generations,
+                filters.get(0).sizeInBytes() * generations,
+                checkCount, duplicates.sum(), bloomPositives.sum(), falsePositives.sum(), pendingIds.size(),
+                checkCount == 0 ? 0 : checkNanos.sum() / 1000.0 / checkCount);
+    }
+
+    /**
+     * Hand our ids to Redis before the partitions move, so the next owner sees them.
+     */
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        flushQuietly();
+    }
+
+    /**
+     * Load the recent ids of newly assigned partitions into the local filter.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        try {
+            long bucket = System.currentTimeMillis() / rotationMs;
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public Object execute(RedisOperations operations) {
+                    for (TopicPartition tp : partitions) {
+                        for (int i = 0; i < generations; i++) {
+                            operations.opsForSet().members(seenKey(tp.partition(), bucket - i));
+                        }
+                    }
+                    return null;
+                }
+            });
+            BloomFilter filter = filters.get(current);
+            long loaded = 0;
+            for (Object members : results) {
+                for (String id : (Set<String>) members) {
+                    filter.add(id);
+                    loaded++;
+                }
+            }
+            log.info("Dedup filter warmed for partitions {}: {} ids", partitions, loaded);
+        } catch (Exception e) {
+            log.warn("Could not warm dedup filter for partitions {}", partitions, e);
+        }
+    }
+
+    private boolean mightContain(String id) {
+        for (int i = 0; i < generations; i++) {
+            if (filters.get(i).mightContain(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean seenInRedis(String id, int partition) {
+        long bucket = System.currentTimeMillis() / rotationMs;
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (int i = 0; i < generations; i++) {
+                    operations.opsForSet().isMember(seenKey(partition, bucket - i), id);
+                }
+                return null;
+            }
+        });
+        return results.stream().anyMatch(Boolean.TRUE::equals);
+    }
+
+    /**
+     * Drop the oldest filter and start a fresh one; the window slides by one generation.
+     */
+    private void rotate() {
+        int next = (current + 1) % generations;
+        filters.set(next, new BloomFilter(expectedPerGeneration, fpp));
+        current = next;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Failed to flush dedup ids to Redis", e);
+        }
+    }
+
+    /**
+     * Write locally recorded ids to Redis; returns once every id marked before the call is there.
+     * Synchronized so a caller never returns while another flush still holds some of those ids.
+     */
+    public synchronized void flush() {
+        Map<Integer, List<String>> batch = new HashMap<>();
+        pending.forEach((partition, queue) -> {
+            String id;
+            while ((id = queue.poll()) != null) {
+                batch.computeIfAbsent(partition, k -> new ArrayList<>()).add(id);
+            }
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            store(batch);
+        } catch (RuntimeException e) {
+            // Keep the ids for the next attempt
+            batch.forEach((partition, ids) -> pending.computeIfAbsent(partition, p -> new ConcurrentLinkedQueue<>()).addAll(ids));
+            throw e;
+        }
+        batch.values().forEach(pendingIds::removeAll);
+    }
+
+    /**
+     * Put ids recovered from a snapshot into the current bucket, so they stay visible for a full
+     * window from now however old the snapshot is.
+     */
+    public void restore(Map<Integer, List<String>> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        store(ids);
+    }
+
+    /**
+     * The partition a Redis key of this deduplicator belongs to, or null for any other key.
+     */
+    public Integer partitionOf(String key) {
+        if (!key.startsWith(seenKeyPrefix)) {
+            return null;
+        }
+        int end = key.indexOf(':', seenKeyPrefix.length());
+        try {
+            return Integer.parseInt(key.substring(seenKeyPrefix.length(), end < 0 ? key.length() : end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void store(Map<Integer, List<String>> batch) {
+        long bucket = System.currentTimeMillis() / rotationMs;
+        Duration ttl = Duration.ofMillis(rotationMs * (generations + 1));
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) {
+                batch.forEach((partition, ids) -> {
+                    String key = seenKey(partition, bucket);
+                    operations.opsForSet().add(key, ids.toArray());
+                    operations.expire(key, ttl);
+                });
+                return null;
+            }
+        });
+    }
+
+    private String seenKey(int partition, long bucket) {
+        return seenKeyPrefix + partition + ":" + bucket;
+    }
+}
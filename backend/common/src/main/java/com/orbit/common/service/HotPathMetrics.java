@@ -0,0 +1,110 @@
+package com.orbit.common.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for the event and read hot paths, scraped from {@code /actuator/prometheus}.
+ * Tags come from small fixed sets (processing path, Redis operation name, cache result); user,
+ * course, lesson and path ids never become tags. Meters only some services use (batch processing,
+ * the apicache) are registered on first use, so the others don't export empty series.
+ */
+public class HotPathMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer freshness;
+    private final Timer eventProcessing;
+    private final Timer sseFanOut;
+    private final Map<String, Timer> processingTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> redisTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> apicacheCounters = new ConcurrentHashMap<>();
+
+    public HotPathMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.freshness = Timer.builder("orbit.event.freshness")
+                .description("Event occurredAt to the update being readable (stored, L1 invalidated)")
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofSeconds(5))
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(registry);
+        this.eventProcessing = processingTimer("event");
+        this.sseFanOut = Timer.builder("orbit.sse.fanout")
+                .description("Fan-out of one flush of updates to this instance's SSE connections")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    /**
+     * Record how long after {@code occurredAt} an event became visible to readers. Call once its
+     * write and invalidation are done. Producer clocks ahead of ours count as zero lag.
+     */
+    public void recordFreshness(Instant occurredAt) {
+        if (occurredAt != null) {
+            freshness.record(Math.max(0, System.currentTimeMillis() - occurredAt.toEpochMilli()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Timer eventProcessing() {
+        return eventProcessing;
+    }
+
+    public Timer batchProcessing() {
+        return processingTimer("batch");
+    }
+
+    public Timer sseFanOut() {
+        return sseFanOut;
+    }
+
+    /**
+     * Time one Redis round trip (or pipeline) under a fixed operation name.
+     */
+    public <T> T redis(String operation, Supplier<T> call) {
+        return redisTimer(operation).record(call);
+    }
+
+    public void redis(String operation, Runnable call) {
+        redisTimer(operation).record(call);
+    }
+
+    /**
+     * Hash mode apicache lookups (json mode reads the stored values directly).
+     */
+    public void apicacheLookup(boolean hit) {
+        apicacheCounters.computeIfAbsent(hit ? "hit" : "miss", result -> Counter.builder("orbit.cache.requests")
+                .tag("cache", "apicache")
+                .tag("result", result)
+                .register(registry)).increment();
+    }
+
+    private Timer redisTimer(String operation) {
+        return redisTimers.computeIfAbsent(operation, op -> Timer.builder("orbit.redis.latency")
+                .description("Redis round-trip latency by operation")
+                .tag("operation", op)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry));
+    }
+
+    private Timer processingTimer(String path) {
+        return processingTimers.computeIfAbsent(path, p -> Timer.builder("orbit.event.processing")
+                .description("Applying consumed events to storage, caches and streams")
+                .tag("path", p)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry));
+    }
+}
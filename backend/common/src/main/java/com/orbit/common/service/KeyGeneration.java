@@ -0,0 +1,99 @@
+package com.orbit.common.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Active key-prefix generation of a service's rebuildable keyspace. Generation 0 is the original
+ * layout ({@code <prefix>user:...}); a rebuild loads generation n into {@code <prefix>g<n>:...}
+ * and then switches every instance over with one SET of {@code <prefix>generation} and a pub/sub
+ * notification, so readers and writers move to the new state atomically.
+ */
+@Slf4j
+public class KeyGeneration {
+
+    private final String name;
+    private final String keyPrefix;
+    private final String generationKey;
+    private final String generationChannel;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final NearCache nearCache;
+
+    private volatile long current;
+
+    /**
+     * @param keyPrefix prefix of generation 0, e.g. {@code analytics:hash:}
+     */
+    public KeyGeneration(String name, String keyPrefix, RedisTemplate<String, String> redisTemplate,
+                         RedisMessageListenerContainer listenerContainer, NearCache nearCache) {
+        this.name = name;
+        this.keyPrefix = keyPrefix;
+        this.generationKey = keyPrefix + "generation";
+        this.generationChannel = keyPrefix + "generation:changed";
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.nearCache = nearCache;
+    }
+
+    @PostConstruct
+    void init() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> adopt(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(generationChannel));
+        try {
+            current = stored();
+        } catch (Exception e) {
+            log.warn("Could not read {} key generation, assuming 0", name, e);
+        }
+    }
+
+    /**
+     * Re-read the active generation, e.g. after a snapshot restore replaced the keyspace.
+     */
+    public void reload() {
+        adopt(stored());
+    }
+
+    private long stored() {
+        String stored = redisTemplate.opsForValue().get(generationKey);
+        return stored != null ? Long.parseLong(stored) : 0L;
+    }
+
+    public long current() {
+        return current;
+    }
+
+    /**
+     * Key prefix of the active generation.
+     */
+    public String keyPrefix() {
+        return keyPrefix(current);
+    }
+
+    public String keyPrefix(long generation) {
+        return generation == 0 ? keyPrefix : keyPrefix + "g" + generation + ":";
+    }
+
+    /**
+     * Make {@code generation} active on every instance.
+     */
+    public void switchTo(long generation) {
+        redisTemplate.opsForValue().set(generationKey, Long.toString(generation));
+        adopt(generation);
+        redisTemplate.convertAndSend(generationChannel, Long.toString(generation));
+    }
+
+    private void adopt(long generation) {
+        if (generation != current) {
+            log.info("{} key generation switched: {} -> {}", name, current, generation);
+            current = generation;
+            nearCache.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.orbit.common.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs tasks on {@code laneCount} lanes in parallel while keeping tasks with the same key in
+ * submission order: a key always maps to the same lane, and a lane runs one task at a time.
+ * Lanes are drained by a shared executor (a fixed pool with one thread per lane, or virtual
+ * threads), so an idle lane holds no thread.
+ */
+@Slf4j
+public class KeyOrderedLanes implements AutoCloseable {
+
+    private static final long IDLE_POLL_MS = 5;
+
+    private final Lane[] lanes;
+    private final Executor executor;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public KeyOrderedLanes(String name, int laneCount, boolean virtualThreads) {
+        this.lanes = new Lane[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+        if (virtualThreads) {
+            this.executor = new VirtualThreadTaskExecutor(name + "-lane-");
+        } else {
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(lanes.length, r -> {
+                Thread thread = new Thread(r, name + "-lane-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Queue {@code task} behind earlier tasks of the same key. Exceptions are logged, never rethrown,
+     * so the task must settle its own outcome (e.g. acknowledge in a finally block).
+     */
+    public void submit(String key, Runnable task) {
+        Lane lane = lanes[key == null ? 0 : Math.floorMod(key.hashCode(), lanes.length)];
+        pending.incrementAndGet();
+        lane.tasks.add(task);
+        if (lane.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(lane));
+        }
+    }
+
+    /**
+     * Wait until every submitted task has finished, e.g. before offsets are committed on a rebalance.
+     *
+     * @return false if tasks were still running after {@code timeoutMs}
+     */
+    public boolean awaitIdle(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (pending.get() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(IDLE_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    public int pendingCount() {
+        return pending.get();
+    }
+
+    public long completedCount() {
+        return completed.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public void close() {
+        if (executor instanceof ExecutorService pool) {
+            pool.shutdown();
+        }
+    }
+
+    private void drain(Lane lane) {
+        try {
+            Runnable task;
+            while ((task = lane.tasks.poll()) != null) {
+                try {
+                    task.run();
+                    completed.increment();
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    log.error("Lane task failed", e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        } finally {
+            lane.draining.set(false);
+        }
+        // A submit may have landed between the last poll and clearing the flag
+        if (!lane.tasks.isEmpty() && lane.draining.compareAndSet(false, true)) {
+            executor.execute(() -> drain(lane));
+        }
+    }
+
+    private static final class Lane {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+    }
+}
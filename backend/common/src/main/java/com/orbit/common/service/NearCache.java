@@ -0,0 +1,172 @@
+package com.orbit.common.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.orbit.common.model.NearCacheStats;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * In-process L1 in front of the Redis apicache (L2). Entries are size-bounded (LRU-like eviction)
+ * and short-lived; writers publish the apicache keys they drop on a pub/sub channel so every
+ * instance evicts its L1 copy as well. Cached objects are shared: callers must not mutate them.
+ */
+@Slf4j
+public class NearCache {
+
+    private static final int STAMP_STRIPES = 1024;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final String invalidationChannel;
+    private final boolean enabled;
+    private final long maxSize;
+    private final long ttlSeconds;
+
+    private Cache<String, Object> cache;
+
+    // Per-stripe invalidation stamps: a load that raced with an invalidation is not cached
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(STAMP_STRIPES);
+    private final LongAdder invalidationsReceived = new LongAdder();
+    private final LongAdder l1HitNanos = new LongAdder();
+    private final LongAdder l1HitCount = new LongAdder();
+    private final LongAdder l2LoadNanos = new LongAdder();
+    private final LongAdder l2LoadCount = new LongAdder();
+
+    /**
+     * @param name prefix of the invalidation channel, {@code <name>:cache:invalidate}
+     */
+    public NearCache(String name, RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                     boolean enabled, long maxSize, long ttlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.invalidationChannel = name + ":cache:invalidate";
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        if (enabled) {
+            listenerContainer.addMessageListener(
+                    (message, pattern) -> onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(invalidationChannel));
+        }
+    }
+
+    /**
+     * Return the L1 copy of {@code key}, or run {@code loader} (the L2 path) and keep its result.
+     * Null results are not cached.
+     */
+    public <T> T get(String key, Class<T> type, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        long start = System.nanoTime();
+        Object local = cache.getIfPresent(key);
+        if (local != null) {
+            l1HitNanos.add(System.nanoTime() - start);
+            l1HitCount.increment();
+            return type.cast(local);
+        }
+        int stripe = stripe(key);
+        long stamp = invalidationStamps.get(stripe);
+        T loaded = loader.get();
+        l2LoadNanos.add(System.nanoTime() - start);
+        l2LoadCount.increment();
+        if (loaded != null && invalidationStamps.get(stripe) == stamp) {
+            cache.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * L1 copy of {@code key} if present, without loading.
+     */
+    public <T> T peek(String key, Class<T> type) {
+        if (!enabled) {
+            return null;
+        }
+        Object local = cache.getIfPresent(key);
+        return local != null ? type.cast(local) : null;
+    }
+
+    /**
+     * Drop {@code keys} locally and tell every other instance to do the same.
+     */
+    public void publishInvalidation(Collection<String> keys) {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(this::invalidateLocal);
+        redisTemplate.convertAndSend(invalidationChannel, String.join("\n", keys));
+    }
+
+    public void publishInvalidation(String... keys) {
+        publishInvalidation(List.of(keys));
+    }
+
+    /**
+     * Drop every local entry (e.g. after the keyspace generation changed).
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < STAMP_STRIPES; i++) {
+            invalidationStamps.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    public NearCacheStats getStats() {
+        CacheStats stats = cache.stats();
+        return new NearCacheStats(
+                enabled,
+                cache.estimatedSize(),
+                maxSize,
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.evictionCount(),
+                invalidationsReceived.sum(),
+                average(l1HitNanos, l1HitCount),
+                average(l2LoadNanos, l2LoadCount));
+    }
+
+    private void onInvalidation(String body) {
+        invalidationsReceived.increment();
+        for (String key : body.split("\n")) {
+            invalidateLocal(key);
+        }
+    }
+
+    private void invalidateLocal(String key) {
+        invalidationStamps.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    private static int stripe(String key) {
+        return Math.floorMod(key.hashCode(), STAMP_STRIPES);
+    }
+
+    private static double average(LongAdder totalNanos, LongAdder count) {
+        long n = count.sum();
+        return n == 0 ? 0.0 : totalNanos.sum() / (n * 1000.0);
+    }
+}
@@ -0,0 +1,617 @@
+package com.orbit.common.service;
+
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming reader of a Redis RDB file (versions 6 to 12, Redis 3.2 to 7.4): strings, lists, sets,
+ * sorted sets and hashes in every encoding (plain, ziplist, quicklist, intset, listpack), one key
+ * at a time. Streams, module values, functions and slot info are skipped; hashes with field TTLs
+ * (7.4) are rejected, no aggregate uses them.
+ * <p>
+ * Values come out as {@link SnapshotService} writes them: {@code byte[]} for strings,
+ * {@code Map<byte[], byte[]>} for hashes, {@code List<byte[]>} for lists and sets and
+ * {@code List<Tuple>} for sorted sets. Integer encodings are turned back into their decimal text.
+ */
+final class RdbReader implements Closeable {
+
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_LIST = 1;
+    private static final int TYPE_SET = 2;
+    private static final int TYPE_ZSET = 3;
+    private static final int TYPE_HASH = 4;
+    private static final int TYPE_ZSET_2 = 5;
+    private static final int TYPE_MODULE_2 = 7;
+    private static final int TYPE_LIST_ZIPLIST = 10;
+    private static final int TYPE_SET_INTSET = 11;
+    private static final int TYPE_ZSET_ZIPLIST = 12;
+    private static final int TYPE_HASH_ZIPLIST = 13;
+    private static final int TYPE_LIST_QUICKLIST = 14;
+    private static final int TYPE_STREAM_LISTPACKS = 15;
+    private static final int TYPE_HASH_LISTPACK = 16;
+    private static final int TYPE_ZSET_LISTPACK = 17;
+    private static final int TYPE_LIST_QUICKLIST_2 = 18;
+    private static final int TYPE_STREAM_LISTPACKS_2 = 19;
+    private static final int TYPE_SET_LISTPACK = 20;
+    private static final int TYPE_STREAM_LISTPACKS_3 = 21;
+
+    private static final int OPCODE_SLOT_INFO = 244;
+    private static final int OPCODE_FUNCTION2 = 245;
+    private static final int OPCODE_FUNCTION = 246;
+    private static final int OPCODE_MODULE_AUX = 247;
+    private static final int OPCODE_IDLE = 248;
+    private static final int OPCODE_FREQ = 249;
+    private static final int OPCODE_AUX = 250;
+    private static final int OPCODE_RESIZEDB = 251;
+    private static final int OPCODE_EXPIRETIME_MS = 252;
+    private static final int OPCODE_EXPIRETIME = 253;
+    private static final int OPCODE_SELECTDB = 254;
+    private static final int OPCODE_EOF = 255;
+
+    private static final int ENC_INT8 = 0;
+    private static final int ENC_INT16 = 1;
+    private static final int ENC_INT32 = 2;
+    private static final int ENC_LZF = 3;
+
+    private static final int MODULE_OPCODE_EOF = 0;
+    private static final int MODULE_OPCODE_SINT = 1;
+    private static final int MODULE_OPCODE_UINT = 2;
+    private static final int MODULE_OPCODE_FLOAT = 3;
+    private static final int MODULE_OPCODE_DOUBLE = 4;
+    private static final int MODULE_OPCODE_STRING = 5;
+
+    private static final int QUICKLIST_NODE_PLAIN = 1;
+    private static final int MIN_VERSION = 6;
+    private static final int MAX_VERSION = 12;
+
+    /**
+     * One key: {@code expireAtMs} is the absolute expiry, 0 for none.
+     */
+    record Entry(int db, DataType type, byte[] key, long expireAtMs, Object value) {
+    }
+
+    private final DataInputStream in;
+    private final int version;
+    private int db;
+    private boolean done;
+
+    RdbReader(InputStream stream) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        byte[] header = new byte[9];
+        in.readFully(header);
+        String magic = new String(header, StandardCharsets.US_ASCII);
+        if (!magic.startsWith("REDIS")) {
+            throw new IOException("Not an RDB file");
+        }
+        this.version = Integer.parseInt(magic.substring(5));
+        if (version < MIN_VERSION || version > MAX_VERSION) {
+            throw new IOException("Unsupported RDB version " + version);
+        }
+    }
+
+    /**
+     * @return the next key, or null after the last one
+     */
+    Entry next() throws IOException {
+        long expireAtMs = 0;
+        while (!done) {
+            int opcode = in.readUnsignedByte();
+            switch (opcode) {
+                case OPCODE_EOF -> {
+                    // The CRC64 trailer; the transfer itself is checked by its length
+                    in.readLong();
+                    done = true;
+                }
+                case OPCODE_SELECTDB -> db = (int) readLength();
+                case OPCODE_RESIZEDB -> {
+                    readLength();
+                    readLength();
+                }
+                case OPCODE_AUX -> {
+                    readString();
+                    readString();
+                }
+                case OPCODE_EXPIRETIME_MS -> expireAtMs = Long.reverseBytes(in.readLong());
+                case OPCODE_EXPIRETIME -> expireAtMs = (Integer.reverseBytes(in.readInt()) & 0xFFFFFFFFL) * 1000;
+                case OPCODE_IDLE -> readLength();
+                case OPCODE_FREQ -> in.readUnsignedByte();
+                case OPCODE_MODULE_AUX -> {
+                    readLength();
+                    readLength();
+                    skipModuleValue();
+                }
+                case OPCODE_FUNCTION2 -> readString();
+                case OPCODE_FUNCTION -> throw new IOException("RDB holds pre-release Redis functions; not supported");
+                case OPCODE_SLOT_INFO -> {
+                    readLength();
+                    readLength();
+                    readLength();
+                }
+                default -> {
+                    byte[] key = readString();
+                    Entry entry = readValue(opcode, key, expireAtMs);
+                    if (entry != null) {
+                        return entry;
+                    }
+                    expireAtMs = 0;
+                }
+            }
+        }
+        return null;
+    }
+
+    int version() {
+        return version;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return null for values that are skipped (streams, modules)
+     */
+    private Entry readValue(int type, byte[] key, long expireAtMs) throws IOException {
+        switch (type) {
+            case TYPE_STRING:
+                return new Entry(db, DataType.STRING, key, expireAtMs, readString());
+            case TYPE_LIST:
+            case TYPE_SET:
+                return new Entry(db, type == TYPE_LIST ? DataType.LIST : DataType.SET, key, expireAtMs, readStrings(readLength()));
+            case TYPE_ZSET:
+            case TYPE_ZSET_2: {
+                long count = readLength();
+                List<Tuple> members = new ArrayList<>((int) Math.min(count, 1 << 16));
+                for (long i = 0; i < count; i++) {
+                    byte[] member = readString();
+                    double score = type == TYPE_ZSET_2 ? Double.longBitsToDouble(Long.reverseBytes(in.readLong())) : readTextDouble();
+                    members.add(new DefaultTuple(member, score));
+                }
+                return new Entry(db, DataType.ZSET, key, expireAtMs, members);
+            }
+            case TYPE_HASH: {
+                long count = readLength();
+                Map<byte[], byte[]> fields = new LinkedHashMap<>();
+                for (long i = 0; i < count; i++) {
+                    fields.put(readString(), readString());
+                }
+                return new Entry(db, DataType.HASH, key, expireAtMs, fields);
+            }
+            case TYPE_LIST_ZIPLIST:
+                return new Entry(db, DataType.LIST, key, expireAtMs, ziplist(readString()));
+            case TYPE_SET_INTSET:
+                return new Entry(db, DataType.SET, key, expireAtMs, intset(readString()));
+            case TYPE_SET_LISTPACK:
+                return new Entry(db, DataType.SET, key, expireAtMs, listpack(readString()));
+            case TYPE_ZSET_ZIPLIST:
+                return new Entry(db, DataType.ZSET, key, expireAtMs, tuples(ziplist(readString())));
+            case TYPE_ZSET_LISTPACK:
+                return new Entry(db, DataType.ZSET, key, expireAtMs, tuples(listpack(readString())));
+            case TYPE_HASH_ZIPLIST:
+                return new Entry(db, DataType.HASH, key, expireAtMs, pairs(ziplist(readString())));
+            case TYPE_HASH_LISTPACK:
+                return new Entry(db, DataType.HASH, key, expireAtMs, pairs(listpack(readString())));
+            case TYPE_LIST_QUICKLIST:
+            case TYPE_LIST_QUICKLIST_2: {
+                long nodes = readLength();
+                List<byte[]> elements = new ArrayList<>();
+                for (long i = 0; i < nodes; i++) {
+                    if (type == TYPE_LIST_QUICKLIST) {
+                        elements.addAll(ziplist(readString()));
+                    } else if (readLength() == QUICKLIST_NODE_PLAIN) {
+                        elements.add(readString());
+                    } else {
+                        elements.addAll(listpack(readString()));
+                    }
+                }
+                return new Entry(db, DataType.LIST, key, expireAtMs, elements);
+            }
+            case TYPE_STREAM_LISTPACKS:
+            case TYPE_STREAM_LISTPACKS_2:
+            case TYPE_STREAM_LISTPACKS_3:
+                skipStream(type);
+                return null;
+            case TYPE_MODULE_2:
+                readLength();
+                skipModuleValue();
+                return null;
+            default:
+                throw new IOException("Unsupported RDB value type " + type + " (key " + new String(key, StandardCharsets.UTF_8) + ")");
+        }
+    }
+
+    private List<byte[]> readStrings(long count) throws IOException {
+        List<byte[]> values = new ArrayList<>((int) Math.min(count, 1 << 16));
+        for (long i = 0; i < count; i++) {
+            values.add(readString());
+        }
+        return values;
+    }
+
+    /**
+     * Length encoding: 6, 14, 32 or 64 bits by the top two bits of the first byte.
+     */
+    private long readLength() throws IOException {
+        int first = in.readUnsignedByte();
+        return switch (first >> 6) {
+            case 0 -> first & 0x3F;
+            case 1 -> ((first & 0x3F) << 8) | in.readUnsignedByte();
+            case 2 -> {
+                if (first == 0x80) {
+                    yield in.readInt() & 0xFFFFFFFFL;
+                }
+                if (first == 0x81) {
+                    yield in.readLong();
+                }
+                throw new IOException("Bad RDB length encoding " + first);
+            }
+            default -> throw new IOException("Unexpected RDB string encoding where a length belongs");
+        };
+    }
+
+    private byte[] readString() throws IOException {
+        int first = in.readUnsignedByte();
+        if (first >> 6 != 3) {
+            // Not special: put the byte back by decoding the length from it
+            long length = switch (first >> 6) {
+                case 0 -> first & 0x3F;
+                case 1 -> ((first & 0x3F) << 8) | in.readUnsignedByte();
+                default -> first == 0x80 ? in.readInt() & 0xFFFFFFFFL : in.readLong();
+            };
+            return readBytes(length);
+        }
+        return switch (first & 0x3F) {
+            case ENC_INT8 -> ascii(in.readByte());
+            case ENC_INT16 -> ascii(Short.reverseBytes(in.readShort()));
+            case ENC_INT32 -> ascii(Integer.reverseBytes(in.readInt()));
+            case ENC_LZF -> {
+                int compressed = (int) readLength();
+                int length = (int) readLength();
+                yield lzf(readBytes(compressed), length);
+            }
+            default -> throw new IOException("Unknown RDB string encoding " + (first & 0x3F));
+        };
+    }
+
+    private byte[] readBytes(long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("RDB string too long: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Old sorted-set scores: a length byte (253 NaN, 254 +inf, 255 -inf) then the decimal text.
+     */
+    private double readTextDouble() throws IOException {
+        int length = in.readUnsignedByte();
+        return switch (length) {
+            case 253 -> Double.NaN;
+            case 254 -> Double.POSITIVE_INFINITY;
+            case 255 -> Double.NEGATIVE_INFINITY;
+            default -> Double.parseDouble(new String(readBytes(length), StandardCharsets.US_ASCII));
+        };
+    }
+
+    private void skipModuleValue() throws IOException {
+        while (true) {
+            int opcode = (int) readLength();
+            switch (opcode) {
+                case MODULE_OPCODE_EOF -> {
+                    return;
+                }
+                case MODULE_OPCODE_SINT, MODULE_OPCODE_UINT -> readLength();
+                case MODULE_OPCODE_FLOAT -> in.readInt();
+                case MODULE_OPCODE_DOUBLE -> in.readLong();
+                case MODULE_OPCODE_STRING -> readString();
+                default -> throw new IOException("Unknown RDB module opcode " + opcode);
+            }
+        }
+    }
+
+    /**
+     * Streams only need to be stepped over: listpacks, metadata, then consumer groups with their
+     * pending entries and consumers.
+     */
+    private void skipStream(int type) throws IOException {
+        long listpacks = readLength();
+        for (long i = 0; i < listpacks; i++) {
+            readString();
+            readString();
+        }
+        readLength();
+        readLength();
+        readLength();
+        if (type >= TYPE_STREAM_LISTPACKS_2) {
+            readLength();
+            readLength();
+            readLength();
+            readLength();
+            readLength();
+        }
+        long groups = readLength();
+        for (long g = 0; g < groups; g++) {
+            readString();
+            readLength();
+            readLength();
+            if (type >= TYPE_STREAM_LISTPACKS_2) {
+                readLength();
+            }
+            long pending = readLength();
+            for (long p = 0; p < pending; p++) {
+                in.skipNBytes(16 + 8);
+                readLength();
+            }
+            long consumers = readLength();
+            for (long c = 0; c < consumers; c++) {
+                readString();
+                in.skipNBytes(type >= TYPE_STREAM_LISTPACKS_3 ? 16 : 8);
+                long owned = readLength();
+                in.skipNBytes(16 * owned);
+            }
+        }
+    }
+
+    static byte[] lzf(byte[] input, int length) throws IOException {
+        byte[] output = new byte[length];
+        int in = 0;
+        int out = 0;
+        try {
+            while (in < input.length) {
+                int control = input[in++] & 0xFF;
+                if (control < 32) {
+                    // Literal run of control + 1 bytes
+                    System.arraycopy(input, in, output, out, control + 1);
+                    in += control + 1;
+                    out += control + 1;
+                } else {
+                    int runLength = control >> 5;
+                    if (runLength == 7) {
+                        runLength += input[in++] & 0xFF;
+                    }
+                    int reference = out - ((control & 0x1F) << 8) - 1 - (input[in++] & 0xFF);
+                    // Back references may overlap the bytes they produce, so copy one at a time
+                    for (int i = 0; i < runLength + 2; i++) {
+                        output[out++] = output[reference++];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt LZF string in RDB", e);
+        }
+        if (out != length) {
+            throw new IOException("LZF string decompressed to " + out + " bytes, expected " + length);
+        }
+        return output;
+    }
+
+    /**
+     * Ziplist: header (bytes, tail offset, count), entries (previous length, encoding, data), 0xFF.
+     */
+    static List<byte[]> ziplist(byte[] blob) throws IOException {
+        List<byte[]> entries = new ArrayList<>();
+        int pos = 10;
+        try {
+            while ((blob[pos] & 0xFF) != 0xFF) {
+                pos += (blob[pos] & 0xFF) == 0xFE ? 5 : 1;
+                int encoding = blob[pos] & 0xFF;
+                switch (encoding >> 6) {
+                    case 0 -> {
+                        int length = encoding & 0x3F;
+                        entries.add(slice(blob, pos + 1, length));
+                        pos += 1 + length;
+                    }
+                    case 1 -> {
+                        int length = ((encoding & 0x3F) << 8) | (blob[pos + 1] & 0xFF);
+                        entries.add(slice(blob, pos + 2, length));
+                        pos += 2 + length;
+                    }
+                    case 2 -> {
+                        int length = bigEndianInt(blob, pos + 1);
+                        entries.add(slice(blob, pos + 5, length));
+                        pos += 5 + length;
+                    }
+                    default -> {
+                        pos++;
+                        switch (encoding) {
+                            case 0xC0 -> {
+                                entries.add(ascii(littleEndian(blob, pos, 2)));
+                                pos += 2;
+                            }
+                            case 0xD0 -> {
+                                entries.add(ascii(littleEndian(blob, pos, 4)));
+                                pos += 4;
+                            }
+                            case 0xE0 -> {
+                                entries.add(ascii(littleEndian(blob, pos, 8)));
+                                pos += 8;
+                            }
+                            case 0xF0 -> {
+                                entries.add(ascii(littleEndian(blob, pos, 3)));
+                                pos += 3;
+                            }
+                            case 0xFE -> {
+                                entries.add(ascii(blob[pos]));
+                                pos += 1;
+                            }
+                            default -> {
+                                if (encoding < 0xF1 || encoding > 0xFD) {
+                                    throw new IOException("Bad ziplist entry encoding " + encoding);
+                                }
+                                entries.add(ascii((encoding & 0x0F) - 1));
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated ziplist in RDB", e);
+        }
+        return entries;
+    }
+
+    /**
+     * Listpack: header (bytes, count), entries (encoding, data, back length), 0xFF.
+     */
+    static List<byte[]> listpack(byte[] blob) throws IOException {
+        List<byte[]> entries = new ArrayList<>();
+        int pos = 6;
+        try {
+            while ((blob[pos] & 0xFF) != 0xFF) {
+                int encoding = blob[pos] & 0xFF;
+                int entryLength;
+                if ((encoding & 0x80) == 0) {
+                    entries.add(ascii(encoding & 0x7F));
+                    entryLength = 1;
+                } else if ((encoding & 0xC0) == 0x80) {
+                    int length = encoding & 0x3F;
+                    entries.add(slice(blob, pos + 1, length));
+                    entryLength = 1 + length;
+                } else if ((encoding & 0xE0) == 0xC0) {
+                    entries.add(ascii(signed(((encoding & 0x1F) << 8) | (blob[pos + 1] & 0xFF), 13)));
+                    entryLength = 2;
+                } else if ((encoding & 0xF0) == 0xE0) {
+                    int length = ((encoding & 0x0F) << 8) | (blob[pos + 1] & 0xFF);
+                    entries.add(slice(blob, pos + 2, length));
+                    entryLength = 2 + length;
+                } else {
+                    switch (encoding) {
+                        case 0xF0 -> {
+                            int length = (int) littleEndian(blob, pos + 1, 4);
+                            entries.add(slice(blob, pos + 5, length));
+                            entryLength = 5 + length;
+                        }
+                        case 0xF1 -> {
+                            entries.add(ascii(littleEndian(blob, pos + 1, 2)));
+                            entryLength = 3;
+                        }
+                        case 0xF2 -> {
+                            entries.add(ascii(littleEndian(blob, pos + 1, 3)));
+                            entryLength = 4;
+                        }
+                        case 0xF3 -> {
+                            entries.add(ascii(littleEndian(blob, pos + 1, 4)));
+                            entryLength = 5;
+                        }
+                        case 0xF4 -> {
+                            entries.add(ascii(littleEndian(blob, pos + 1, 8)));
+                            entryLength = 9;
+                        }
+                        default -> throw new IOException("Bad listpack entry encoding " + encoding);
+                    }
+                }
+                pos += entryLength + backLengthSize(entryLength);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated listpack in RDB", e);
+        }
+        return entries;
+    }
+
+    static List<byte[]> intset(byte[] blob) throws IOException {
+        int width = (int) littleEndian(blob, 0, 4);
+        int count = (int) littleEndian(blob, 4, 4);
+        if (width != 2 && width != 4 && width != 8 || blob.length < 8 + width * count) {
+            throw new IOException("Corrupt intset in RDB");
+        }
+        List<byte[]> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            members.add(ascii(littleEndian(blob, 8 + i * width, width)));
+        }
+        return members;
+    }
+
+    private static int backLengthSize(int entryLength) {
+        if (entryLength <= 127) {
+            return 1;
+        }
+        if (entryLength < 16383) {
+            return 2;
+        }
+        if (entryLength < 2097151) {
+            return 3;
+        }
+        return entryLength < 268435455 ? 4 : 5;
+    }
+
+    private static List<Tuple> tuples(List<byte[]> flat) throws IOException {
+        if (flat.size() % 2 != 0) {
+            throw new IOException("Odd sorted-set entry count in RDB");
+        }
+        List<Tuple> members = new ArrayList<>(flat.size() / 2);
+        for (int i = 0; i < flat.size(); i += 2) {
+            members.add(new DefaultTuple(flat.get(i), score(new String(flat.get(i + 1), StandardCharsets.US_ASCII))));
+        }
+        return members;
+    }
+
+    /**
+     * Packed scores are Redis's own double text, which spells infinities {@code inf} / {@code -inf}.
+     */
+    private static double score(String text) {
+        return switch (text) {
+            case "inf" -> Double.POSITIVE_INFINITY;
+            case "-inf" -> Double.NEGATIVE_INFINITY;
+            default -> Double.parseDouble(text);
+        };
+    }
+
+    private static Map<byte[], byte[]> pairs(List<byte[]> flat) throws IOException {
+        if (flat.size() % 2 != 0) {
+            throw new IOException("Odd hash entry count in RDB");
+        }
+        Map<byte[], byte[]> fields = new LinkedHashMap<>(flat.size());
+        for (int i = 0; i < flat.size(); i += 2) {
+            fields.put(flat.get(i), flat.get(i + 1));
+        }
+        return fields;
+    }
+
+    /**
+     * Signed little-endian integer of {@code width} bytes.
+     */
+    private static long littleEndian(byte[] blob, int offset, int width) {
+        long value = 0;
+        for (int i = width - 1; i >= 0; i--) {
+            value = (value << 8) | (blob[offset + i] & 0xFF);
+        }
+        return width == 8 ? value : signed(value, width * 8);
+    }
+
+    private static long signed(long value, int bits) {
+        long sign = 1L << (bits - 1);
+        return (value & sign) != 0 ? value - (sign << 1) : value;
+    }
+
+    private static int bigEndianInt(byte[] blob, int offset) {
+        return ((blob[offset] & 0xFF) << 24) | ((blob[offset + 1] & 0xFF) << 16) | ((blob[offset + 2] & 0xFF) << 8) | (blob[offset + 3] & 0xFF);
+    }
+
+    private static byte[] slice(byte[] blob, int offset, int length) {
+        if (offset + length > blob.length) {
+            throw new IndexOutOfBoundsException(offset + length);
+        }
+        byte[] bytes = new byte[length];
+        System.arraycopy(blob, offset, bytes, 0, length);
+        return bytes;
+    }
+
+    private static byte[] ascii(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,177 @@
+package com.orbit.common.service;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A one-off full resync with a Redis primary, used as a point-in-time copy of its keyspace: the
+ * connection sends {@code PSYNC ? -1} like a new replica, the primary forks and answers
+ * {@code +FULLRESYNC <replid> <offset>}, and the RDB it then writes holds exactly the writes up to
+ * {@code offset}. The primary keeps serving everyone else while it writes the file.
+ * <p>
+ * No {@code REPLCONF capa eof} is sent, so the primary always saves to disk and sends a
+ * length-prefixed payload, and the fork happens before the {@code +FULLRESYNC} reply. The payload
+ * is spooled to a local file and the connection closed straight away, so the primary stops
+ * buffering the replication stream for it.
+ */
+final class RdbTransfer implements Closeable {
+
+    private final Socket socket;
+    private final InputStream in;
+    private final int database;
+
+    private RdbTransfer(Socket socket, int database) throws IOException {
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 1 << 16);
+        this.database = database;
+    }
+
+    /**
+     * Connect with the standalone settings of {@code connectionFactory} (host, port, credentials, TLS).
+     */
+    static RdbTransfer connect(RedisConnectionFactory connectionFactory, long timeoutMs) throws IOException {
+        if (!(connectionFactory instanceof LettuceConnectionFactory lettuce)
+                || lettuce.isClusterAware() || lettuce.isRedisSentinelAware()) {
+            throw new IllegalStateException("Snapshots read the RDB of a standalone Redis primary; got " + connectionFactory);
+        }
+        RedisStandaloneConfiguration config = lettuce.getStandaloneConfiguration();
+        Socket socket = lettuce.getClientConfiguration().isUseSsl() ? SSLSocketFactory.getDefault().createSocket() : new Socket();
+        try {
+            socket.connect(new InetSocketAddress(config.getHostName(), config.getPort()), (int) timeoutMs);
+            RdbTransfer transfer = new RdbTransfer(socket, config.getDatabase());
+            if (config.getPassword().isPresent()) {
+                String password = new String(config.getPassword().get());
+                if (config.getUsername() != null) {
+                    transfer.command("AUTH", config.getUsername(), password);
+                } else {
+                    transfer.command("AUTH", password);
+                }
+                transfer.expectOk(timeoutMs);
+            }
+            return transfer;
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Ask for a full resync and wait until the primary has forked.
+     *
+     * @return the replication offset the RDB is consistent with
+     */
+    long fullResync(long timeoutMs) throws IOException {
+        command("PSYNC", "?", "-1");
+        String reply = readReply(timeoutMs);
+        if (!reply.startsWith("+FULLRESYNC ")) {
+            throw new IOException("Redis refused the snapshot resync: " + reply);
+        }
+        String[] parts = reply.split(" ");
+        return Long.parseLong(parts[2]);
+    }
+
+    /**
+     * Copy the RDB payload into a new file in {@code directory} and close the connection.
+     *
+     * @param timeoutMs longest wait for the primary to finish its save and for each read after it
+     */
+    Path spool(Path directory, long timeoutMs) throws IOException {
+        String header = readReply(timeoutMs);
+        if (!header.startsWith("$") || header.startsWith("$EOF:")) {
+            throw new IOException("Unexpected RDB transfer header: " + header);
+        }
+        long remaining = Long.parseLong(header.substring(1));
+        Path file = Files.createTempFile(directory, "transfer-", ".rdb");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            socket.setSoTimeout((int) timeoutMs);
+            byte[] buffer = new byte[1 << 16];
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Redis closed the connection with " + remaining + " RDB bytes to go");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        } finally {
+            close();
+        }
+        return file;
+    }
+
+    /**
+     * The database the application uses; the RDB holds all of them.
+     */
+    int database() {
+        return database;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void command(String... args) throws IOException {
+        StringBuilder request = new StringBuilder("*").append(args.length).append("\r\n");
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            request.append('$').append(bytes.length).append("\r\n").append(arg).append("\r\n");
+        }
+        socket.getOutputStream().write(request.toString().getBytes(StandardCharsets.UTF_8));
+        socket.getOutputStream().flush();
+    }
+
+    private void expectOk(long timeoutMs) throws IOException {
+        String reply = readReply(timeoutMs);
+        if (!reply.equals("+OK")) {
+            throw new IOException("Redis refused the snapshot connection: " + reply);
+        }
+    }
+
+    /**
+     * The next reply line. While a save is running the primary sends bare newlines to keep the
+     * connection alive; those are skipped.
+     */
+    private String readReply(long timeoutMs) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            socket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+            int next;
+            try {
+                next = in.read();
+            } catch (SocketTimeoutException e) {
+                throw new IOException("No reply from Redis within " + timeoutMs + " ms", e);
+            }
+            if (next < 0) {
+                throw new EOFException("Redis closed the snapshot connection");
+            }
+            if (next == '\n') {
+                if (line.size() > 0) {
+                    return line.toString(StandardCharsets.UTF_8);
+                }
+            } else if (next != '\r') {
+                line.write(next);
+            }
+        }
+    }
+}
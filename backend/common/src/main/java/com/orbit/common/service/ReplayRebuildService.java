@@ -0,0 +1,388 @@
+package com.orbit.common.service;
+
+import com.orbit.common.model.RebuildPartitionProgress;
+import com.orbit.common.model.RebuildStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordDeserializationException;
+import org.springframework.kafka.core.ConsumerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Rebuilds a service's stored state from {@code learning-events} without going through the
+ * per-record Redis path:
+ * <ol>
+ *   <li>READING: snapshot end offsets, then read every partition from the beginning in parallel
+ *       (one consumer per partition, no group membership) and fold into in-memory state.</li>
+ *   <li>LOADING: bulk-load the folded state into the next key generation in pipelined chunks.</li>
+ *   <li>CATCHING_UP: wait for the live consumer group to pass the snapshot offsets, pause the
+ *       listeners on every instance, fold the remaining gap into the new generation.</li>
+ *   <li>SWITCHING: flip the active generation, resume listeners, drop the old generation.</li>
+ * </ol>
+ * Records are folded once per {@code eventId} (or {@code partition@offset} when it is missing)
+ * among the last {@code dedupWindow} records of their partition, across every phase of the rebuild,
+ * so producer retries (same key, same partition, a few records apart) count once as they do on the
+ * live path. Memory is bounded by partitions x window, however long the topic.
+ * <p>
+ * What is folded and how it is stored is the service's {@link Target}.
+ *
+ * @param <E> the service's event type
+ * @param <S> the in-memory state events are folded into
+ */
+@Slf4j
+public class ReplayRebuildService<E, S> {
+
+    private static final String TOPIC = ConsumerGroupControl.TOPIC;
+    private static final String UNSUPPORTED_PHASE = "UNSUPPORTED";
+
+    /**
+     * How a service folds events and writes the folded state into a key generation.
+     */
+    public interface Target<E, S> {
+
+        /**
+         * @return why a rebuild cannot run in the current configuration, or null when it can
+         */
+        default String unsupportedReason() {
+            return null;
+        }
+
+        S newState();
+
+        void add(S state, E event);
+
+        /**
+         * Add {@code other} into {@code state}; {@code other} is not used afterwards.
+         */
+        void merge(S state, S other);
+
+        /**
+         * @return keys written
+         */
+        long load(S state, String prefix, int batchSize) throws IOException;
+
+        /**
+         * Write a gap folded after {@link #load} on top of generation {@code prefix}. {@code state}
+         * is everything folded before the gap, for targets that rewrite whole values.
+         */
+        void applyGap(S state, S gap, String prefix, int batchSize) throws IOException;
+
+        /**
+         * @return keys removed
+         */
+        long deleteGeneration(String prefix);
+
+        /**
+         * Drop API responses cached from the old generation.
+         */
+        void purgeApiCache();
+    }
+
+    /**
+     * @param dedupWindow records per partition whose ids a retried copy is checked against
+     */
+    public record Settings(int parallelism, int loadBatchSize, long pauseSettleMs, long catchUpTimeoutMs, int dedupWindow) {
+    }
+
+    private final String name;
+    private final ConsumerFactory<String, E> consumerFactory;
+    private final ConsumerGroupControl consumerGroupControl;
+    private final KeyGeneration keyGeneration;
+    private final Target<E, S> target;
+    private final Function<E, String> eventId;
+    private final Settings settings;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile String phase = "IDLE";
+    private volatile long targetGeneration;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile long keysLoaded;
+    private volatile String error;
+    private volatile List<PartitionCursor> cursors = List.of();
+    private final AtomicLong eventsRead = new AtomicLong();
+    private final AtomicLong duplicatesSkipped = new AtomicLong();
+    // One reader per partition at a time; phases hand them over through the fold's futures
+    private final Map<Integer, RecentIds> recentIds = new ConcurrentHashMap<>();
+
+    /**
+     * @param eventId the producer-assigned id of an event, null if it has none
+     */
+    public ReplayRebuildService(String name, ConsumerFactory<String, E> consumerFactory, ConsumerGroupControl consumerGroupControl,
+                                KeyGeneration keyGeneration, Target<E, S> target, Function<E, String> eventId, Settings settings) {
+        this.name = name;
+        this.consumerFactory = consumerFactory;
+        this.consumerGroupControl = consumerGroupControl;
+        this.keyGeneration = keyGeneration;
+        this.target = target;
+        this.eventId = eventId;
+        this.settings = settings;
+    }
+
+    /**
+     * Start a rebuild on a background thread.
+     *
+     * @return false when a rebuild is already running or the target does not support one
+     */
+    public boolean start() {
+        String unsupported = target.unsupportedReason();
+        if (unsupported != null) {
+            log.warn("{} rebuild rejected: {}", name, unsupported);
+            return false;
+        }
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        phase = "READING";
+        targetGeneration = keyGeneration.current() + 1;
+        startedAt = Instant.now();
+        finishedAt = null;
+        keysLoaded = 0;
+        error = null;
+        cursors = List.of();
+        eventsRead.set(0);
+        duplicatesSkipped.set(0);
+        recentIds.clear();
+        Thread thread = new Thread(this::rebuild, name + "-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Phase {@code UNSUPPORTED} with the reason in {@code error} when the target does not support a rebuild.
+     */
+    public RebuildStatus getStatus() {
+        String unsupported = target.unsupportedReason();
+        if (unsupported != null) {
+            return new RebuildStatus(UNSUPPORTED_PHASE, keyGeneration.current(), 0, null, null, 0, 0, 0, 0,
+                    unsupported, List.of());
+        }
+        List<PartitionCursor> current = cursors;
+        long read = eventsRead.get();
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        double seconds = startedAt != null ? Math.max(1, Duration.between(startedAt, end).toMillis()) / 1000.0 : 0;
+        return new RebuildStatus(phase, keyGeneration.current(), targetGeneration, startedAt, finishedAt,
+                read, duplicatesSkipped.get(), seconds > 0 ? read / seconds : 0, keysLoaded, error,
+                current.stream().map(PartitionCursor::toProgress).toList());
+    }
+
+    private void rebuild() {
+        String targetPrefix = keyGeneration.keyPrefix(targetGeneration);
+        boolean paused = false;
+        try (Consumer<String, E> probe = createConsumer("probe")) {
+            List<TopicPartition> partitions = probe.partitionsFor(TOPIC).stream()
+                    .map(info -> new TopicPartition(TOPIC, info.partition()))
+                    .toList();
+            Map<TopicPartition, Long> snapshot = probe.endOffsets(partitions);
+            log.info("{} rebuild started: generation={}, partitions={}, endOffsets={}",
+                    name, targetGeneration, partitions.size(), snapshot);
+
+            S state = fold(probe.beginningOffsets(partitions), snapshot);
+            phase = "LOADING";
+            target.deleteGeneration(targetPrefix);
+            keysLoaded = target.load(state, targetPrefix, settings.loadBatchSize());
+            log.info("{} rebuild loaded {} keys into generation {}", name, keysLoaded, targetGeneration);
+
+            phase = "CATCHING_UP";
+            Map<TopicPartition, Long> from = awaitCommitted(snapshot);
+            // Fold what the live consumer processed meanwhile while it keeps running, then pause for the rest
+            applyGap(state, snapshot, from, targetPrefix);
+            consumerGroupControl.pauseAll();
+            paused = true;
+            Map<TopicPartition, Long> to = consumerGroupControl.settledCommittedOffsets(partitions, settings.pauseSettleMs());
+            applyGap(state, from, to, targetPrefix);
+
+            phase = "SWITCHING";
+            long previous = keyGeneration.current();
+            keyGeneration.switchTo(targetGeneration);
+            target.purgeApiCache();
+            consumerGroupControl.resumeAll();
+            paused = false;
+            long removed = target.deleteGeneration(keyGeneration.keyPrefix(previous));
+            phase = "DONE";
+            log.info("{} rebuild finished: generation={}, events={}, duplicatesSkipped={}, oldKeysRemoved={}",
+                    name, targetGeneration, eventsRead.get(), duplicatesSkipped.get(), removed);
+        } catch (Exception e) {
+            log.error("{} rebuild failed", name, e);
+            phase = "FAILED";
+            error = e.getMessage();
+            if (paused) {
+                consumerGroupControl.resumeAll();
+            }
+            if (keyGeneration.current() != targetGeneration) {
+                target.deleteGeneration(targetPrefix);
+            }
+        } finally {
+            finishedAt = Instant.now();
+            recentIds.clear();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Read [from, to) on every partition in parallel and merge the per-partition states.
+     */
+    private S fold(Map<TopicPartition, Long> from, Map<TopicPartition, Long> to) throws Exception {
+        List<PartitionCursor> partitionCursors = new ArrayList<>();
+        to.forEach((tp, end) -> partitionCursors.add(new PartitionCursor(tp, from.getOrDefault(tp, 0L), end)));
+        cursors = partitionCursors;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(settings.parallelism(), partitionCursors.size())));
+        try {
+            List<Future<S>> futures = new ArrayList<>();
+            for (PartitionCursor cursor : partitionCursors) {
+                futures.add(executor.submit(() -> readPartition(cursor)));
+            }
+            S merged = target.newState();
+            for (Future<S> future : futures) {
+                target.merge(merged, future.get());
+            }
+            return merged;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private S readPartition(PartitionCursor cursor) {
+        S state = target.newState();
+        if (cursor.from >= cursor.to) {
+            return state;
+        }
+        RecentIds seen = recentIds.computeIfAbsent(cursor.partition.partition(), p -> new RecentIds(settings.dedupWindow()));
+        try (Consumer<String, E> consumer = createConsumer("p" + cursor.partition.partition())) {
+            consumer.assign(List.of(cursor.partition));
+            consumer.seek(cursor.partition, cursor.from);
+            while (cursor.position.get() < cursor.to) {
+                try {
+                    for (ConsumerRecord<String, E> record : consumer.poll(Duration.ofMillis(500))) {
+                        if (record.offset() >= cursor.to) {
+                            break;
+                        }
+                        if (record.value() != null) {
+                            String id = EventDeduplicator.idOf(eventId.apply(record.value()), record.partition(), record.offset());
+                            if (seen.add(id)) {
+                                target.add(state, record.value());
+                            } else {
+                                duplicatesSkipped.incrementAndGet();
+                            }
+                        }
+                        cursor.position.set(record.offset() + 1);
+                        cursor.eventsRead.incrementAndGet();
+                        eventsRead.incrementAndGet();
+                    }
+                } catch (RecordDeserializationException e) {
+                    log.warn("Skipping undeserializable record: partition={}, offset={}", e.topicPartition(), e.offset());
+                    consumer.seek(e.topicPartition(), e.offset() + 1);
+                    cursor.position.set(e.offset() + 1);
+                }
+                // Compacted or deleted records leave gaps; the consumer position is authoritative
+                cursor.position.set(Math.max(cursor.position.get(), consumer.position(cursor.partition)));
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Fold [from, to) and write it on top of the new generation.
+     */
+    private void applyGap(S state, Map<TopicPartition, Long> from, Map<TopicPartition, Long> to, String prefix) throws Exception {
+        long before = eventsRead.get();
+        S gap = fold(from, to);
+        target.applyGap(state, gap, prefix, settings.loadBatchSize());
+        log.info("{} rebuild caught up {} events into generation {}", name, eventsRead.get() - before, targetGeneration);
+    }
+
+    /**
+     * Wait until the live group has committed at least {@code snapshot} on every partition, so
+     * nothing folded into the snapshot will be applied again after the switch.
+     */
+    private Map<TopicPartition, Long> awaitCommitted(Map<TopicPartition, Long> snapshot) throws Exception {
+        long deadline = System.currentTimeMillis() + settings.catchUpTimeoutMs();
+        while (true) {
+            Map<TopicPartition, Long> committed = consumerGroupControl.committedOffsets(new ArrayList<>(snapshot.keySet()));
+            if (snapshot.entrySet().stream().allMatch(e -> committed.get(e.getKey()) >= e.getValue())) {
+                return committed;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Live consumer group did not reach the rebuild snapshot offsets in time");
+            }
+            Thread.sleep(settings.pauseSettleMs());
+        }
+    }
+
+    private Consumer<String, E> createConsumer(String suffix) {
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "2000");
+        return consumerFactory.createConsumer(name + "-service-rebuild", name + "-rebuild-", suffix, overrides);
+    }
+
+    /**
+     * The ids of a partition's last {@code capacity} records, oldest evicted first.
+     */
+    private static final class RecentIds {
+        private final int capacity;
+        private final ArrayDeque<String> order;
+        private final Set<String> ids;
+
+        private RecentIds(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.order = new ArrayDeque<>(this.capacity);
+            this.ids = new HashSet<>();
+        }
+
+        /**
+         * @return false if {@code id} is in the window
+         */
+        private boolean add(String id) {
+            if (!ids.add(id)) {
+                return false;
+            }
+            order.addLast(id);
+            if (order.size() > capacity) {
+                ids.remove(order.removeFirst());
+            }
+            return true;
+        }
+    }
+
+    private static final class PartitionCursor {
+        private final TopicPartition partition;
+        private final long from;
+        private final long to;
+        private final AtomicLong position;
+        private final AtomicLong eventsRead = new AtomicLong();
+
+        private PartitionCursor(TopicPartition partition, long from, long to) {
+            this.partition = partition;
+            this.from = from;
+            this.to = to;
+            this.position = new AtomicLong(from);
+        }
+
+        private RebuildPartitionProgress toProgress() {
+            return new RebuildPartitionProgress(partition.partition(), from, to, position.get(), eventsRead.get());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.orbit.common.service;
+
+import com.orbit.common.model.SseStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meter binders over the counters the services already keep for their {@code /internal}
+ * endpoints. They are read at scrape time, so nothing is added to the hot path. Each service
+ * declares them as beans next to its own service-specific binders.
+ */
+public final class ServiceMetrics {
+
+    private ServiceMetrics() {
+    }
+
+    public static MeterBinder nearCache(NearCache nearCache) {
+        return registry -> {
+            FunctionCounter.builder("orbit.cache.requests", nearCache, cache -> cache.getStats().getHits())
+                    .tag("cache", "l1").tag("result", "hit").register(registry);
+            FunctionCounter.builder("orbit.cache.requests", nearCache, cache -> cache.getStats().getMisses())
+                    .tag("cache", "l1").tag("result", "miss").register(registry);
+            FunctionCounter.builder("orbit.cache.evictions", nearCache, cache -> cache.getStats().getEvictions())
+                    .tag("cache", "l1").register(registry);
+            Gauge.builder("orbit.cache.size", nearCache, cache -> cache.getStats().getSize())
+                    .tag("cache", "l1").register(registry);
+        };
+    }
+
+    public static MeterBinder sse(Supplier<SseStats> stats) {
+        return registry -> {
+            sseGauge(registry, stats, "orbit.sse.connections", SseStats::getLocalConnections);
+            sseGauge(registry, stats, "orbit.sse.users", SseStats::getLocalUsers);
+            sseGauge(registry, stats, "orbit.sse.queued.bytes", SseStats::getQueuedBytes);
+            sseCounter(registry, stats, "orbit.sse.connections.rejected", SseStats::getRejectedConnections);
+            sseCounter(registry, stats, "orbit.sse.heartbeats", SseStats::getHeartbeatsSent);
+            sseCounter(registry, stats, "orbit.sse.send.failures", SseStats::getSendFailures);
+            sseCounter(registry, stats, "orbit.sse.sent.bytes", SseStats::getBytesSent);
+            sseCounter(registry, stats, "orbit.sse.events.queued", SseStats::getEventsQueued);
+            sseCounter(registry, stats, "orbit.sse.events.skipped", SseStats::getEventsSkippedBackedUp);
+        };
+    }
+
+    /**
+     * @param consumerLanes null when events are processed on the listener threads
+     */
+    public static MeterBinder consumer(EventDeduplicator eventDeduplicator, Supplier<KeyOrderedLanes> consumerLanes) {
+        return registry -> {
+            FunctionCounter.builder("orbit.dedup.checks", eventDeduplicator, dedup -> dedup.getStats().getChecks())
+                    .register(registry);
+            FunctionCounter.builder("orbit.dedup.duplicates", eventDeduplicator, dedup -> dedup.getStats().getDuplicatesDropped())
+                    .register(registry);
+            FunctionCounter.builder("orbit.dedup.false.positives", eventDeduplicator, dedup -> dedup.getStats().getFalsePositives())
+                    .register(registry);
+            KeyOrderedLanes lanes = consumerLanes.get();
+            if (lanes != null) {
+                Gauge.builder("orbit.consumer.lanes.pending", lanes, KeyOrderedLanes::pendingCount).register(registry);
+                FunctionCounter.builder("orbit.consumer.lanes.completed", lanes, KeyOrderedLanes::completedCount).register(registry);
+                FunctionCounter.builder("orbit.consumer.lanes.failed", lanes, KeyOrderedLanes::failedCount).register(registry);
+            }
+        };
+    }
+
+    // Meters hold their object weakly; the binder bean capturing the supplier keeps it reachable
+    private static void sseGauge(MeterRegistry registry, Supplier<SseStats> stats, String name,
+                                 ToDoubleFunction<SseStats> value) {
+        Gauge.builder(name, stats, supplier -> value.applyAsDouble(supplier.get())).register(registry);
+    }
+
+    private static void sseCounter(MeterRegistry registry, Supplier<SseStats> stats, String name,
+                                   ToDoubleFunction<SseStats> value) {
+        FunctionCounter.builder(name, stats, supplier -> value.applyAsDouble(supplier.get())).register(registry);
+    }
+}
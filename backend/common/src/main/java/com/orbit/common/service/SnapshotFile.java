@@ -0,0 +1,280 @@
+package com.orbit.common.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * On-disk snapshot layout:
+ * <pre>
+ * int magic, byte version, long createdAtMillis,
+ * int partitionCount, (int partition, long nextOffset) x partitionCount,
+ * body (written by the caller),
+ * long crc32 of everything before it
+ * </pre>
+ * Files are written to a temp file, fsynced and atomically renamed to
+ * {@code snapshot-<createdAtMillis>.bin}; only the newest {@code retain} are kept.
+ * In the body, counts are unsigned varints, strings a varint of their UTF-8 length + 1 (0 for null)
+ * followed by the bytes and byte arrays a varint length followed by the bytes. Files are streamed
+ * both ways, so their size is bounded only by the disk.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x4F534E50; // "OSNP"
+    private static final byte VERSION = 3;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private SnapshotFile() {
+    }
+
+    public interface BodyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public static Path write(Path directory, int retain, long createdAtMillis, Map<Integer, Long> offsets, BodyWriter body) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, FILE_PREFIX, TEMP_SUFFIX);
+        Path target = directory.resolve(FILE_PREFIX + createdAtMillis + FILE_SUFFIX);
+        boolean moved = false;
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), BUFFER_SIZE));
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(createdAtMillis);
+                out.writeInt(offsets.size());
+                for (Map.Entry<Integer, Long> offset : offsets.entrySet()) {
+                    out.writeInt(offset.getKey());
+                    out.writeLong(offset.getValue());
+                }
+                body.write(out);
+                out.flush();
+                // The checksum itself is not part of the checked stream
+                new DataOutputStream(file).writeLong(crc.getValue());
+                file.getChannel().force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            // Whatever stopped the body (I/O, an abandoned export, a Redis error), never leave the temp file
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        prune(directory, retain);
+        return target;
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    public static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        writeVarLong(out, value.length);
+        out.write(value);
+    }
+
+    /**
+     * Unsigned LEB128; negative values take ten bytes, so keep them out.
+     */
+    public static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static Optional<Path> latest(Path directory) throws IOException {
+        List<Path> files = list(directory);
+        return files.isEmpty() ? Optional.empty() : Optional.of(files.get(files.size() - 1));
+    }
+
+    private static void prune(Path directory, int retain) throws IOException {
+        List<Path> files = list(directory);
+        for (int i = 0; i < files.size() - Math.max(1, retain); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * Snapshot files oldest first (the timestamp in the name sorts numerically).
+     */
+    private static List<Path> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(SnapshotFile::createdAtFromName))
+                    .toList();
+        }
+    }
+
+    private static long createdAtFromName(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Streaming reader. The whole file is checksummed in a first pass before any field is handed
+     * out, then read sequentially in a second one; close it when done.
+     */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private final long createdAtMillis;
+        private final Map<Integer, Long> offsets = new LinkedHashMap<>();
+
+        public Reader(Path file) throws IOException {
+            long bodyLength = Files.size(file) - Long.BYTES;
+            if (bodyLength < 0) {
+                throw new IOException("Snapshot truncated: " + file);
+            }
+            verify(file, bodyLength);
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a snapshot file: " + file);
+                }
+                byte version = in.readByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot version " + version + ": " + file);
+                }
+                createdAtMillis = in.readLong();
+                int partitions = in.readInt();
+                for (int i = 0; i < partitions; i++) {
+                    offsets.put(in.readInt(), in.readLong());
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        private static void verify(Path file, long bodyLength) throws IOException {
+            CRC32 crc = new CRC32();
+            try (InputStream raw = Files.newInputStream(file)) {
+                DataInputStream body = new DataInputStream(new CheckedInputStream(raw, crc));
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = bodyLength;
+                while (remaining > 0) {
+                    int read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new EOFException("Snapshot truncated: " + file);
+                    }
+                    remaining -= read;
+                }
+                // The checksum itself is not part of the checked stream
+                if (crc.getValue() != new DataInputStream(raw).readLong()) {
+                    throw new IOException("Snapshot checksum mismatch: " + file);
+                }
+            }
+        }
+
+        public long createdAtMillis() {
+            return createdAtMillis;
+        }
+
+        public Map<Integer, Long> offsets() {
+            return offsets;
+        }
+
+        public byte readByte() throws IOException {
+            return in.readByte();
+        }
+
+        public int readInt() throws IOException {
+            return in.readInt();
+        }
+
+        public long readLong() throws IOException {
+            return in.readLong();
+        }
+
+        public double readDouble() throws IOException {
+            return in.readDouble();
+        }
+
+        public String readString() throws IOException {
+            int length = readLength();
+            if (length == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length - 1];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public byte[] readBytes() throws IOException {
+            byte[] bytes = new byte[readLength()];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        public long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = in.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in snapshot");
+        }
+
+        /**
+         * A varint count or length that must fit an array.
+         */
+        public int readLength() throws IOException {
+            long length = readVarLong();
+            if (length < 0 || length > Integer.MAX_VALUE - 8) {
+                throw new IOException("Corrupt snapshot length " + length);
+            }
+            return (int) length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,677 @@
+package com.orbit.common.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Periodic snapshots of a service's aggregate state on local disk, each tagged with the consumer
+ * group offsets it covers. The state is every {@code <name>:*} key outside the excluded prefixes
+ * (API caches, per-instance state), whatever its type, so every aggregate family is included. On
+ * startup, if the keyspace is empty (Redis was lost or flushed), the newest snapshot is loaded and
+ * the group is moved back to its offsets, so only the tail of the log is replayed.
+ * <p>
+ * Consumers are not paused, and writes only stop for the cut. All instances write the same
+ * keyspace, so the snapshot writer asks every one of them to hold its {@link WriteFence}, reads the
+ * committed offsets and has the Redis primary fork a point-in-time RDB ({@link RdbTransfer}, a
+ * {@code PSYNC} full resync), then releases the fence: a few milliseconds plus the fork. The RDB
+ * is spooled next to the snapshots and converted into the file afterwards ({@link RdbReader})
+ * while writes go on. Offsets can trail the cut by acks not yet committed; the dedup ids flushed
+ * inside the fence cover exactly those events, so a replay after a restore skips what the cut
+ * already counts. A cut that takes longer than {@code fenceTimeoutMs} is abandoned.
+ * <p>
+ * The primary must accept {@code PSYNC} from the service's user (ACL {@code +psync +replconf};
+ * some managed offerings refuse it) and have room to write its RDB to disk.
+ * <p>
+ * File body ({@link SnapshotFile} encoding, keys without the {@code <name>:} prefix, ttl the
+ * remaining milliseconds or 0):
+ * <pre>
+ * (STRING, key, ttl, value) | (HASH, key, ttl, count, (field, value) x count)
+ * | (SET, key, ttl, count, member x count) | (ZSET, key, ttl, count, (member, double score) x count)
+ * | (LIST, key, ttl, count, element x count) | (DEDUP, partition, count, id x count)
+ * </pre>
+ * then {@code END}.
+ */
+@Slf4j
+public class SnapshotService {
+
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_STRING = 1;
+    private static final byte RECORD_HASH = 2;
+    private static final byte RECORD_SET = 3;
+    private static final byte RECORD_ZSET = 4;
+    private static final byte RECORD_LIST = 5;
+    private static final byte RECORD_DEDUP = 6;
+    private static final String HOLD = "hold ";
+    private static final String RELEASE = "release ";
+    private static final int SCAN_COUNT = 1000;
+    private static final long POLL_MS = 10;
+    private static final long RESTORE_RETRY_MS = 1000;
+
+    private final String name;
+    private final String keyPrefix;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ConsumerGroupControl consumerGroupControl;
+    private final EventDeduplicator eventDeduplicator;
+    private final WriteFence writeFence;
+    private final Settings settings;
+    private final List<String> excludedPrefixes;
+    private final Runnable afterRestore;
+    private final String lockKey;
+    private final String restoringKey;
+    private final String fencedKeyPrefix;
+    private final String fenceChannel;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // Fences this instance holds, by id, released by the snapshot writer's message
+    private final Map<String, CountDownLatch> heldFences = new ConcurrentHashMap<>();
+    private ExecutorService fenceHolder;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param excludedPrefixes key prefixes that are not aggregate state (API caches, per-instance
+     *                         state); {@code <name>:snapshot:*} is always excluded
+     * @param afterRestore     run after a restore, for state an instance caches from Redis at startup
+     */
+    public SnapshotService(String name, RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                           ConsumerGroupControl consumerGroupControl, EventDeduplicator eventDeduplicator, WriteFence writeFence,
+                           Settings settings, List<String> excludedPrefixes, Runnable afterRestore) {
+        this.name = name;
+        this.keyPrefix = name + ":";
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.consumerGroupControl = consumerGroupControl;
+        this.eventDeduplicator = eventDeduplicator;
+        this.writeFence = writeFence;
+        this.settings = settings;
+        this.excludedPrefixes = excludedPrefixes;
+        this.afterRestore = afterRestore;
+        this.lockKey = name + ":snapshot:lock";
+        this.restoringKey = name + ":snapshot:restoring";
+        this.fencedKeyPrefix = name + ":snapshot:fenced:";
+        this.fenceChannel = name + ":snapshot:fence";
+    }
+
+    /**
+     * @param fenceTimeoutMs    longest time writes stay fenced on any instance; a snapshot whose
+     *                          cut (offsets read, primary forked) does not finish within it is abandoned
+     * @param transferTimeoutMs longest wait for the primary to finish saving the RDB, and for each
+     *                          read of it after that
+     * @param restoreTimeoutMs  how long a restore retries moving the group back to the snapshot
+     *                          offsets (Kafka refuses while the group has members) before startup fails
+     * @param batchSize         keys per restore pipeline
+     */
+    public record Settings(boolean enabled, String directory, long intervalMs, int retain, boolean restoreOnStartup,
+                           long fenceTimeoutMs, long transferTimeoutMs, long restoreTimeoutMs, int batchSize) {
+
+        /**
+         * The {@code <name>.snapshot.*} properties, with the defaults of a service's application.yaml.
+         */
+        public static Settings from(PropertyResolver properties, String name) {
+            String prefix = name + ".snapshot.";
+            return new Settings(
+                    properties.getProperty(prefix + "enabled", Boolean.class, false),
+                    properties.getProperty(prefix + "directory", "./snapshots/" + name),
+                    properties.getProperty(prefix + "interval-ms", Long.class, 600_000L),
+                    properties.getProperty(prefix + "retain", Integer.class, 3),
+                    properties.getProperty(prefix + "restore-on-startup", Boolean.class, true),
+                    properties.getProperty(prefix + "fence-timeout-ms", Long.class, 5_000L),
+                    properties.getProperty(prefix + "transfer-timeout-ms", Long.class, 300_000L),
+                    properties.getProperty(prefix + "restore-timeout-ms", Long.class, 120_000L),
+                    properties.getProperty(prefix + "batch-size", Integer.class, 1_000));
+        }
+    }
+
+    /**
+     * One key as read from the RDB, or as decoded for a restore. {@code value} is a
+     * {@code byte[]}, a {@code Map<byte[], byte[]>}, a {@code Set<byte[]>}, a {@code Set<Tuple>}
+     * or a {@code List<byte[]>} by {@code type}.
+     */
+    private record KeyRecord(byte type, String key, long ttlMs, Object value) {
+    }
+
+    /**
+     * Runs before the listener containers start, so a restore is in place before the first poll.
+     * A restore that fails fails startup: consuming on top of a partial keyspace, or from offsets
+     * that do not match it, would silently corrupt the aggregates.
+     */
+    @PostConstruct
+    void init() throws Exception {
+        if (!settings.enabled()) {
+            return;
+        }
+        if (!eventDeduplicator.isEnabled()) {
+            log.warn("{} snapshots need {}.dedup.enabled=true to replay exactly from their offsets; snapshots disabled", name, name);
+            return;
+        }
+        if (settings.restoreOnStartup()) {
+            restore();
+        }
+        fenceHolder = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name + "-snapshot-fence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onFence(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(fenceChannel));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshotQuietly, settings.intervalMs(), settings.intervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (fenceHolder != null) {
+            heldFences.values().forEach(CountDownLatch::countDown);
+            fenceHolder.shutdownNow();
+        }
+    }
+
+    /**
+     * Write one snapshot. Only one instance per interval takes the Redis lock and writes.
+     *
+     * @return the written file, or empty when another instance holds the lock
+     */
+    public Optional<Path> snapshot() throws Exception {
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, "1", Duration.ofMillis(settings.intervalMs()));
+        if (!Boolean.TRUE.equals(locked)) {
+            return Optional.empty();
+        }
+        long started = System.currentTimeMillis();
+        Path directory = Path.of(settings.directory());
+        Files.createDirectories(directory);
+        Cut cut;
+        Path rdb;
+        int database;
+        try (RdbTransfer transfer = RdbTransfer.connect(redisTemplate.getConnectionFactory(), settings.fenceTimeoutMs())) {
+            database = transfer.database();
+            cut = cut(transfer, started + settings.fenceTimeoutMs());
+            rdb = transfer.spool(directory, settings.transferTimeoutMs());
+        }
+        long[] exported = new long[2];
+        Path file;
+        try {
+            file = SnapshotFile.write(directory, settings.retain(), cut.createdAtMillis(), byPartition(cut.offsets()),
+                    out -> exportKeyspace(rdb, database, out, cut.serverTimeMillis(), exported));
+        } finally {
+            Files.deleteIfExists(rdb);
+        }
+        log.info("{} snapshot written: file={}, keys={}, dedupIds={}, bytes={}, offsets={}, replicationOffset={}, fencedMs={}, tookMs={}",
+                name, file, exported[0], exported[1], Files.size(file), cut.offsets(), cut.replicationOffset(), cut.fencedMs(),
+                System.currentTimeMillis() - started);
+        return Optional.of(file);
+    }
+
+    /**
+     * The point the snapshot stands for: committed offsets, and the primary's replication offset
+     * and clock, all taken while every instance holds its fence.
+     *
+     * @param createdAtMillis this instance's clock at the cut, which a restore ages TTLs by
+     */
+    private record Cut(Map<TopicPartition, Long> offsets, long replicationOffset, long serverTimeMillis, long createdAtMillis,
+                       long fencedMs) {
+    }
+
+    /**
+     * Fence writes on every instance just long enough to read the offsets and have the primary
+     * fork. The fork must not be older than the fence: a primary already saving for another
+     * replica hands that save out instead of starting one, and it may predate writes the offsets cover.
+     */
+    private Cut cut(RdbTransfer transfer, long deadline) throws Exception {
+        List<TopicPartition> partitions = consumerGroupControl.partitions();
+        String fenceId = UUID.randomUUID().toString();
+        long started = System.currentTimeMillis();
+        try {
+            Map<TopicPartition, Long> offsets = fenceAll(fenceId, partitions, deadline);
+            long fencedOffset = replicationOffset();
+            long serverTimeMillis = redisTemplate.execute((RedisCallback<Long>) connection -> connection.serverCommands().time(TimeUnit.MILLISECONDS));
+            long createdAtMillis = System.currentTimeMillis();
+            long forkOffset = transfer.fullResync(Math.max(1, deadline - createdAtMillis));
+            if (forkOffset < fencedOffset) {
+                throw new IllegalStateException(name + " snapshot abandoned: Redis served a save from replication offset " + forkOffset
+                        + ", before the fence at " + fencedOffset + "; retried at the next interval");
+            }
+            return new Cut(offsets, forkOffset, serverTimeMillis, createdAtMillis, System.currentTimeMillis() - started);
+        } finally {
+            release(fenceId);
+        }
+    }
+
+    private long replicationOffset() {
+        Properties info = redisTemplate.execute((RedisCallback<Properties>) connection -> connection.serverCommands().info("replication"));
+        if (info == null || !"master".equals(info.getProperty("role"))) {
+            throw new IllegalStateException(name + " snapshots read the RDB of the Redis primary; the configured Redis is "
+                    + (info != null ? info.getProperty("role") : "unknown"));
+        }
+        return Long.parseLong(info.getProperty("master_repl_offset"));
+    }
+
+    /**
+     * Fence writes on every instance and read the committed offsets. The number of instances is
+     * the receiver count of the fence message itself.
+     */
+    private Map<TopicPartition, Long> fenceAll(String fenceId, List<TopicPartition> partitions, long deadline) throws Exception {
+        String fencedKey = fencedKeyPrefix + fenceId;
+        Long receivers = redisTemplate.convertAndSend(fenceChannel, HOLD + fenceId);
+        long instances = receivers != null ? receivers : 0;
+        while (fencedInstances(fencedKey) < instances) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(name + " snapshot abandoned: fence timeout of " + settings.fenceTimeoutMs()
+                        + " ms exceeded while fencing writes on " + instances + " instances");
+            }
+            Thread.sleep(POLL_MS);
+        }
+        return consumerGroupControl.committedOffsets(partitions);
+    }
+
+    /**
+     * Idempotent: instances that already resumed ignore the message.
+     */
+    private void release(String fenceId) {
+        redisTemplate.convertAndSend(fenceChannel, RELEASE + fenceId);
+        redisTemplate.delete(fencedKeyPrefix + fenceId);
+    }
+
+    private long fencedInstances(String fencedKey) {
+        Long size = redisTemplate.opsForSet().size(fencedKey);
+        return size != null ? size : 0;
+    }
+
+    /**
+     * Convert the spooled RDB into snapshot records: this service's keys in its database, TTLs
+     * made relative to the primary's clock at the cut. Dedup sets are stored by id rather than as
+     * keys: their buckets are time-based, so a restore files the ids into the current bucket.
+     *
+     * @param exported keys and dedup ids written, updated as the export goes
+     */
+    private void exportKeyspace(Path rdb, int database, DataOutputStream out, long serverTimeMillis, long[] exported) throws IOException {
+        try (RdbReader reader = new RdbReader(Files.newInputStream(rdb))) {
+            RdbReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                String key = new String(entry.key(), StandardCharsets.UTF_8);
+                if (entry.db() != database || !key.startsWith(keyPrefix) || isExcluded(key)) {
+                    continue;
+                }
+                long ttlMs = 0;
+                if (entry.expireAtMs() > 0) {
+                    ttlMs = entry.expireAtMs() - serverTimeMillis;
+                    if (ttlMs <= 0) {
+                        // Expired before the cut; the primary had not evicted it yet
+                        continue;
+                    }
+                }
+                byte type = recordType(key, entry.type());
+                if (type == RECORD_DEDUP) {
+                    exported[1] += writeDedup(out, eventDeduplicator.partitionOf(key), entry.value());
+                } else if (type != RECORD_END) {
+                    writeRecord(out, new KeyRecord(type, key.substring(keyPrefix.length()), ttlMs, entry.value()));
+                    exported[0]++;
+                }
+            }
+        }
+        out.writeByte(RECORD_END);
+    }
+
+    private byte recordType(String key, DataType type) {
+        if (eventDeduplicator.partitionOf(key) != null) {
+            return RECORD_DEDUP;
+        }
+        if (type == null) {
+            return RECORD_END;
+        }
+        return switch (type) {
+            case STRING -> RECORD_STRING;
+            case HASH -> RECORD_HASH;
+            case SET -> RECORD_SET;
+            case ZSET -> RECORD_ZSET;
+            case LIST -> RECORD_LIST;
+            default -> RECORD_END;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeRecord(DataOutputStream out, KeyRecord record) throws IOException {
+        out.writeByte(record.type());
+        SnapshotFile.writeString(out, record.key());
+        SnapshotFile.writeVarLong(out, record.ttlMs());
+        switch (record.type()) {
+            case RECORD_STRING -> SnapshotFile.writeBytes(out, (byte[]) record.value());
+            case RECORD_HASH -> {
+                Map<byte[], byte[]> fields = (Map<byte[], byte[]>) record.value();
+                SnapshotFile.writeVarLong(out, fields.size());
+                for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+                    SnapshotFile.writeBytes(out, field.getKey());
+                    SnapshotFile.writeBytes(out, field.getValue());
+                }
+            }
+            case RECORD_ZSET -> {
+                Collection<Tuple> members = (Collection<Tuple>) record.value();
+                SnapshotFile.writeVarLong(out, members.size());
+                for (Tuple member : members) {
+                    SnapshotFile.writeBytes(out, member.getValue());
+                    out.writeDouble(member.getScore());
+                }
+            }
+            default -> {
+                Collection<byte[]> members = (Collection<byte[]>) record.value();
+                SnapshotFile.writeVarLong(out, members.size());
+                for (byte[] member : members) {
+                    SnapshotFile.writeBytes(out, member);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int writeDedup(DataOutputStream out, int partition, Object value) throws IOException {
+        Collection<byte[]> ids = (Collection<byte[]>) value;
+        out.writeByte(RECORD_DEDUP);
+        SnapshotFile.writeVarLong(out, partition);
+        SnapshotFile.writeVarLong(out, ids.size());
+        for (byte[] id : ids) {
+            SnapshotFile.writeBytes(out, id);
+        }
+        return ids.size();
+    }
+
+    private void onFence(String message) {
+        if (message.startsWith(HOLD)) {
+            String fenceId = message.substring(HOLD.length());
+            CountDownLatch released = heldFences.computeIfAbsent(fenceId, id -> new CountDownLatch(1));
+            fenceHolder.execute(() -> hold(fenceId, released));
+        } else if (message.startsWith(RELEASE)) {
+            CountDownLatch released = heldFences.get(message.substring(RELEASE.length()));
+            if (released != null) {
+                released.countDown();
+            }
+        }
+    }
+
+    /**
+     * Keep this instance's writes out until the snapshot writer releases the fence or it times
+     * out. Dedup ids are flushed first, so the cut holds the id of every event whose writes it holds.
+     */
+    private void hold(String fenceId, CountDownLatch released) {
+        try {
+            writeFence.hold(() -> {
+                eventDeduplicator.flush();
+                String fencedKey = fencedKeyPrefix + fenceId;
+                redisTemplate.opsForSet().add(fencedKey, instanceId);
+                redisTemplate.expire(fencedKey, Duration.ofMillis(settings.fenceTimeoutMs() * 2));
+                try {
+                    if (!released.await(settings.fenceTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                        log.warn("{} snapshot fence {} not released within {} ms; resuming writes", name, fenceId, settings.fenceTimeoutMs());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not fence {} writes for snapshot {}", name, fenceId, e);
+        } finally {
+            heldFences.remove(fenceId);
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("{} snapshot failed", name, e);
+        }
+    }
+
+    /**
+     * Load the newest snapshot into an empty keyspace. A marker key makes an interrupted restore
+     * start over on the next startup instead of treating the partial keyspace as live state.
+     */
+    private void restore() throws Exception {
+        Optional<Path> latest = SnapshotFile.latest(Path.of(settings.directory()));
+        if (latest.isEmpty()) {
+            return;
+        }
+        String interrupted = redisTemplate.opsForValue().get(restoringKey);
+        if (interrupted == null && !keyspaceEmpty()) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try (SnapshotFile.Reader reader = new SnapshotFile.Reader(latest.get())) {
+            // Offsets first: if they cannot be moved the keyspace is left untouched
+            resetOffsets(reader.offsets());
+            redisTemplate.opsForValue().set(restoringKey, latest.get().getFileName().toString());
+            long[] loaded = loadKeyspace(reader);
+            afterRestore.run();
+            redisTemplate.delete(restoringKey);
+            log.info("{} restored from snapshot: file={}, createdAt={}, keys={}, expiredKeys={}, dedupIds={}, resumedInterrupted={}, tookMs={}",
+                    name, latest.get(), Instant.ofEpochMilli(reader.createdAtMillis()), loaded[0], loaded[1], loaded[2],
+                    interrupted != null, System.currentTimeMillis() - started);
+        }
+    }
+
+    /**
+     * Kafka only moves a group's offsets while it has no members, so retry while instances that
+     * are still running (or a previous run's session) leave the group.
+     */
+    private void resetOffsets(Map<Integer, Long> byPartition) throws Exception {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        byPartition.forEach((partition, offset) -> offsets.put(new TopicPartition(ConsumerGroupControl.TOPIC, partition), offset));
+        long deadline = System.currentTimeMillis() + settings.restoreTimeoutMs();
+        while (true) {
+            try {
+                consumerGroupControl.resetCommittedOffsets(offsets);
+                return;
+            } catch (Exception e) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw new IllegalStateException("Could not move the " + name + " consumer group back to the snapshot offsets within "
+                            + settings.restoreTimeoutMs() + " ms; stop every instance of the service and start again", e);
+                }
+                log.warn("Could not reset {} consumer offsets for restore, retrying: {}", name, e.getMessage());
+                Thread.sleep(RESTORE_RETRY_MS);
+            }
+        }
+    }
+
+    /**
+     * @return keys restored, keys skipped because their TTL ran out since the snapshot, dedup ids restored
+     */
+    private long[] loadKeyspace(SnapshotFile.Reader reader) throws IOException {
+        long age = System.currentTimeMillis() - reader.createdAtMillis();
+        long[] loaded = new long[3];
+        List<KeyRecord> batch = new ArrayList<>(settings.batchSize());
+        byte type;
+        while ((type = reader.readByte()) != RECORD_END) {
+            if (type == RECORD_DEDUP) {
+                int partition = reader.readLength();
+                int count = reader.readLength();
+                List<String> ids = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    ids.add(new String(reader.readBytes(), StandardCharsets.UTF_8));
+                }
+                eventDeduplicator.restore(Map.of(partition, ids));
+                loaded[2] += count;
+                continue;
+            }
+            KeyRecord record = readRecord(reader, type);
+            long ttlMs = 0;
+            if (record.ttlMs() > 0) {
+                ttlMs = record.ttlMs() - age;
+                if (ttlMs <= 0) {
+                    loaded[1]++;
+                    continue;
+                }
+            }
+            batch.add(new KeyRecord(type, keyPrefix + record.key(), ttlMs, record.value()));
+            if (batch.size() >= settings.batchSize()) {
+                restoreBatch(batch);
+                loaded[0] += batch.size();
+                batch.clear();
+            }
+        }
+        restoreBatch(batch);
+        loaded[0] += batch.size();
+        return loaded;
+    }
+
+    private static KeyRecord readRecord(SnapshotFile.Reader reader, byte type) throws IOException {
+        String key = reader.readString();
+        long ttlMs = reader.readVarLong();
+        Object value;
+        switch (type) {
+            case RECORD_STRING -> value = reader.readBytes();
+            case RECORD_HASH -> {
+                int count = reader.readLength();
+                Map<byte[], byte[]> fields = new LinkedHashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    fields.put(reader.readBytes(), reader.readBytes());
+                }
+                value = fields;
+            }
+            case RECORD_ZSET -> {
+                int count = reader.readLength();
+                Set<Tuple> members = new LinkedHashSet<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    members.add(new DefaultTuple(reader.readBytes(), reader.readDouble()));
+                }
+                value = members;
+            }
+            case RECORD_SET, RECORD_LIST -> {
+                int count = reader.readLength();
+                List<byte[]> members = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    members.add(reader.readBytes());
+                }
+                value = members;
+            }
+            default -> throw new IOException("Unknown snapshot record type " + type);
+        }
+        return new KeyRecord(type, key, ttlMs, value);
+    }
+
+    /**
+     * One pipeline per batch. Each key is unlinked first, so an interrupted restore that runs
+     * again does not append to lists or keep members the snapshot does not have.
+     */
+    @SuppressWarnings("unchecked")
+    private void restoreBatch(List<KeyRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        pipelined(connection -> {
+            for (KeyRecord record : batch) {
+                byte[] raw = raw(record.key());
+                connection.keyCommands().unlink(raw);
+                switch (record.type()) {
+                    case RECORD_STRING -> connection.stringCommands().set(raw, (byte[]) record.value());
+                    case RECORD_HASH -> connection.hashCommands().hMSet(raw, (Map<byte[], byte[]>) record.value());
+                    case RECORD_SET -> connection.setCommands().sAdd(raw, ((List<byte[]>) record.value()).toArray(byte[][]::new));
+                    case RECORD_ZSET -> connection.zSetCommands().zAdd(raw, (Set<Tuple>) record.value());
+                    case RECORD_LIST -> connection.listCommands().rPush(raw, ((List<byte[]>) record.value()).toArray(byte[][]::new));
+                    default -> throw new IllegalStateException("Unexpected record type " + record.type());
+                }
+                if (record.ttlMs() > 0) {
+                    connection.keyCommands().pExpire(raw, record.ttlMs());
+                }
+            }
+        });
+    }
+
+    /**
+     * Raw pipeline results (no template serializers: hash fields, HLLs and bitmaps are binary).
+     */
+    private List<Object> pipelined(Consumer<RedisConnection> commands) {
+        return redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            try {
+                commands.accept(connection);
+            } catch (RuntimeException e) {
+                connection.closePipeline();
+                throw e;
+            }
+            return connection.closePipeline();
+        });
+    }
+
+    /**
+     * True if no key worth restoring exists; dedup sets and excluded keys do not count.
+     */
+    private boolean keyspaceEmpty() {
+        try (Cursor<String> keys = redisTemplate.scan(ScanOptions.scanOptions().match(keyPrefix + "*").count(SCAN_COUNT).build())) {
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (!isExcluded(key) && eventDeduplicator.partitionOf(key) == null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isExcluded(String key) {
+        if (key.startsWith(name + ":snapshot:")) {
+            return true;
+        }
+        for (String prefix : excludedPrefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] raw(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<Integer, Long> byPartition(Map<TopicPartition, Long> offsets) {
+        Map<Integer, Long> byPartition = new TreeMap<>();
+        offsets.forEach((tp, offset) -> byPartition.put(tp.partition(), offset));
+        return byPartition;
+    }
+}
@@ -0,0 +1,459 @@
+package com.orbit.common.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.orbit.common.model.SseStats;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Off-thread SSE fan-out. Callers only mark a user dirty; every {@code debounceMs} the dirty users
+ * are drained and one event per user is queued on each of that user's connections, so a burst of
+ * updates becomes a single notification. Connections, their bounded queues, heartbeats and
+ * reaping are handled by {@link SseConnectionManager}; a connection whose queue is full is backed
+ * up and the new event is skipped.
+ * <p>
+ * Connections opened in data mode get the merged update itself instead of a notification. Data
+ * events carry an id {@code <epoch>:<version>} with a per-user version, and the last
+ * {@code replaySize} of them are kept so a client reconnecting with {@code Last-Event-ID} is sent
+ * only what it missed. When that is not possible (buffer overrun, another instance or restart,
+ * or the connection was backed up) the client gets a {@code resync} event and should reload via REST.
+ * A user's buffer is dropped {@code replayTtlMs} after their last local connection closes.
+ * <p>
+ * With a {@link Relay} the flushed updates are handed to it instead of being delivered directly;
+ * the relay brings them to every instance holding a connection, which calls {@link #deliver}.
+ *
+ * @param <T> update carried by data events
+ */
+@Slf4j
+public class SseBroadcaster<T> implements AutoCloseable {
+
+    static final String RESYNC_EVENT = "resync";
+    private static final String RESYNC_DATA = "{\"type\":\"resync\"}";
+
+    private final SseConnectionManager connections;
+    private final Set<String> dirtyUserIds = ConcurrentHashMap.newKeySet();
+    private final Map<String, T> pendingUpdates = new ConcurrentHashMap<>();
+    private final Cache<String, ReplayBuffer> replayBuffers;
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36);
+
+    private volatile Relay<T> relay;
+    private volatile Timer fanOutTimer;
+
+    private final Function<String, Message> notificationFor;
+    private final String dataEventName;
+    private final BinaryOperator<T> mergeUpdates;
+    private final BiFunction<T, Long, String> dataFor;
+    private final int replaySize;
+    private final long replayTtlMs;
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder requested = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder skippedBackedUp = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder deliveredUsers = new LongAdder();
+
+    /**
+     * @param notificationFor notify-mode event for a user
+     * @param dataEventName   event name of data-mode events
+     * @param mergeUpdates    folds updates marked within one debounce window
+     * @param dataFor         data-mode payload for the merged update and its version
+     */
+    public SseBroadcaster(String name, long debounceMs, SseConnectionManager.Settings connectionSettings,
+                   int replaySize, long replayTtlMs, long replayMaxUsers,
+                   Function<String, Message> notificationFor, String dataEventName,
+                   BinaryOperator<T> mergeUpdates, BiFunction<T, Long, String> dataFor) {
+        this.notificationFor = notificationFor;
+        this.dataEventName = dataEventName;
+        this.mergeUpdates = mergeUpdates;
+        this.dataFor = dataFor;
+        this.replaySize = replaySize;
+        this.replayTtlMs = replayTtlMs;
+        this.replayBuffers = Caffeine.newBuilder()
+                .maximumSize(replayMaxUsers)
+                .<String, ReplayBuffer>removalListener((userId, buffer, cause) -> releaseShard(userId))
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-sse-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.connections = new SseConnectionManager(name, connectionSettings, this::holdShard, this::releaseShard);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, debounceMs, debounceMs, TimeUnit.MILLISECONDS);
+        long sweepMs = Math.max(1000, replayTtlMs / 4);
+        scheduler.scheduleWithFixedDelay(this::sweepReplayBuffers, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cross-instance delivery of flushed updates. {@code hold}/{@code release} are paired per local
+     * connection and per replay buffer, so the relay knows which users this instance serves.
+     */
+    public interface Relay<T> {
+        void publish(Map<String, T> updates);
+
+        void hold(String userId);
+
+        void release(String userId);
+    }
+
+    /**
+     * Route flushed updates through {@code relay}; call before the first {@link #register}.
+     */
+    public void relayThrough(Relay<T> relay) {
+        this.relay = relay;
+    }
+
+    /**
+     * Record the duration of each {@link #deliver} call on {@code timer}.
+     */
+    public void timeFanOutWith(Timer timer) {
+        this.fanOutTimer = timer;
+    }
+
+    /**
+     * Add a connection and queue {@code connected} on it. A data connection is first sent the
+     * buffered events after {@code lastEventId}, or a resync event when they are not available;
+     * both happen under the user's buffer lock so no live event can overtake them.
+     *
+     * @return false when the instance is at its connection limit; the emitter is left untouched
+     */
+    public boolean register(String userId, SseEmitter emitter, boolean data, String lastEventId, Message connected) {
+        if (!data) {
+            SseConnectionManager.Connection connection = connections.open(userId, emitter, false);
+            if (connection == null) {
+                return false;
+            }
+            offer(connection, connected);
+            return true;
+        }
+        ReplayBuffer buffer = bufferFor(userId);
+        buffer.lock.lock();
+        try {
+            SseConnectionManager.Connection connection = connections.open(userId, emitter, true);
+            if (connection == null) {
+                return false;
+            }
+            List<Message> missed = buffer.since(lastEventId);
+            if (missed == null) {
+                resyncs.increment();
+                offer(connection, connected);
+                offer(connection, buffer.resync());
+                return true;
+            }
+            // The id must not run ahead of the replay, or a drop mid-replay would skip events
+            String connectedId = missed.isEmpty() ? buffer.currentId() : lastEventId;
+            offer(connection, new Message(connectedId, connected.name(), connected.data()));
+            replayed.add(missed.size());
+            missed.forEach(message -> offer(connection, message));
+            return true;
+        } finally {
+            buffer.lock.unlock();
+        }
+    }
+
+    /**
+     * Non-blocking: coalesced with other updates for the same user until the next flush.
+     *
+     * @param update data-mode update, or null when there is nothing to send to data connections
+     */
+    public void markDirty(String userId, T update) {
+        requested.increment();
+        if (relay != null) {
+            // Connections may be on any instance
+            if (update != null) {
+                pendingUpdates.merge(userId, update, mergeUpdates);
+            }
+            dirtyUserIds.add(userId);
+            return;
+        }
+        boolean connected = connections.hasConnections(userId);
+        boolean buffered = update != null
+                && (hasDataConnection(userId) || replayBuffers.getIfPresent(userId) != null);
+        if (!buffered && !connected) {
+            return;
+        }
+        if (buffered) {
+            pendingUpdates.merge(userId, update, mergeUpdates);
+        }
+        dirtyUserIds.add(userId);
+    }
+
+    public long requestedCount() {
+        return requested.sum();
+    }
+
+    public long queuedCount() {
+        return queued.sum();
+    }
+
+    public long skippedBackedUpCount() {
+        return skippedBackedUp.sum();
+    }
+
+    public long replayedCount() {
+        return replayed.sum();
+    }
+
+    public long resyncCount() {
+        return resyncs.sum();
+    }
+
+    public long deliveredUserCount() {
+        return deliveredUsers.sum();
+    }
+
+    public SseConnectionManager connections() {
+        return connections;
+    }
+
+    /**
+     * Connection and delivery counters of this instance; relay counters are added by {@link SseRelay#addStats}.
+     */
+    public SseStats stats() {
+        SseStats stats = new SseStats();
+        stats.setLocalUsers(connections.userCount());
+        stats.setLocalConnections(connections.connectionCount());
+        stats.setPeakConnections(connections.peakConnectionCount());
+        stats.setMaxConnections(connections.maxConnections());
+        stats.setRejectedConnections(connections.rejectedCount());
+        stats.setEvictedPerUserCap(connections.evictedPerUserCount());
+        stats.setHeartbeatsSent(connections.heartbeatCount());
+        stats.setReapedStalled(connections.reapedStalledCount());
+        stats.setSendFailures(connections.sendFailureCount());
+        stats.setBytesSent(connections.bytesSent());
+        stats.setQueuedBytes(connections.queuedBytes());
+        stats.setQueuedBytesPerConnection(connections.queuedBytesPerConnection());
+        stats.setStaticEstimateBytesPerConnection(connections.staticEstimateBytesPerConnection());
+        stats.setUpdatesRequested(requestedCount());
+        stats.setUsersDelivered(deliveredUserCount());
+        stats.setEventsQueued(queuedCount());
+        stats.setEventsSkippedBackedUp(skippedBackedUpCount());
+        stats.setEventsReplayed(replayedCount());
+        stats.setResyncs(resyncCount());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        connections.close();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("SSE flush failed", e);
+        }
+    }
+
+    private void flush() {
+        if (dirtyUserIds.isEmpty()) {
+            return;
+        }
+        List<String> userIds = new ArrayList<>(dirtyUserIds);
+        userIds.forEach(dirtyUserIds::remove);
+        Map<String, T> updates = new LinkedHashMap<>();
+        userIds.forEach(userId -> updates.put(userId, pendingUpdates.remove(userId)));
+        Relay<T> current = relay;
+        if (current == null) {
+            deliver(updates);
+            return;
+        }
+        try {
+            current.publish(updates);
+        } catch (RuntimeException e) {
+            // Local subscribers still get their updates while the relay is unavailable
+            log.warn("SSE relay publish failed, delivering locally only", e);
+            deliver(updates);
+        }
+    }
+
+    /**
+     * Fan flushed updates (null for notify-only) out to this instance's connections.
+     */
+    public void deliver(Map<String, T> updates) {
+        Timer timer = fanOutTimer;
+        long started = timer != null ? System.nanoTime() : 0;
+        for (Map.Entry<String, T> entry : updates.entrySet()) {
+            String userId = entry.getKey();
+            T update = entry.getValue();
+            Collection<SseConnectionManager.Connection> userConnections = connections.connections(userId);
+            if (!userConnections.isEmpty()) {
+                deliveredUsers.increment();
+            }
+            if (userConnections.stream().anyMatch(connection -> !connection.isData())) {
+                Message notification = notificationFor.apply(userId);
+                userConnections.stream().filter(connection -> !connection.isData()).forEach(connection -> offer(connection, notification));
+            }
+            if (update == null) {
+                continue;
+            }
+            // Recreated if it was evicted while the user was connected; stale Last-Event-IDs then resync
+            ReplayBuffer buffer = hasDataConnection(userId) ? bufferFor(userId) : replayBuffers.getIfPresent(userId);
+            if (buffer == null) {
+                continue;
+            }
+            buffer.lock.lock();
+            try {
+                Message message = buffer.append(update);
+                userConnections.stream().filter(SseConnectionManager.Connection::isData).forEach(connection -> offer(connection, message));
+            } finally {
+                buffer.lock.unlock();
+            }
+        }
+        if (timer != null) {
+            timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ReplayBuffer bufferFor(String userId) {
+        ReplayBuffer existing = replayBuffers.getIfPresent(userId);
+        if (existing != null) {
+            return existing;
+        }
+        ReplayBuffer created = new ReplayBuffer();
+        ReplayBuffer raced = replayBuffers.asMap().putIfAbsent(userId, created);
+        if (raced != null) {
+            return raced;
+        }
+        holdShard(userId);
+        return created;
+    }
+
+    /**
+     * Drop replay buffers of users without a local connection for longer than {@code replayTtlMs}.
+     */
+    private void sweepReplayBuffers() {
+        long now = System.currentTimeMillis();
+        replayBuffers.asMap().forEach((userId, buffer) -> {
+            if (connections.hasConnections(userId)) {
+                buffer.idleSince = 0;
+            } else if (buffer.idleSince == 0) {
+                buffer.idleSince = now;
+            } else if (now - buffer.idleSince > replayTtlMs) {
+                replayBuffers.asMap().remove(userId, buffer);
+            }
+        });
+    }
+
+    private void holdShard(String userId) {
+        Relay<T> current = relay;
+        if (current != null) {
+            current.hold(userId);
+        }
+    }
+
+    private void releaseShard(String userId) {
+        Relay<T> current = relay;
+        if (current != null && userId != null) {
+            current.release(userId);
+        }
+    }
+
+    private boolean hasDataConnection(String userId) {
+        return connections.connections(userId).stream().anyMatch(SseConnectionManager.Connection::isData);
+    }
+
+    private void offer(SseConnectionManager.Connection connection, Message message) {
+        if (connections.offer(connection, message)) {
+            queued.increment();
+            return;
+        }
+        skippedBackedUp.increment();
+        if (connection.isData()) {
+            // A skipped data event would leave the client silently stale; make it reload instead
+            resyncs.increment();
+            ReplayBuffer buffer = replayBuffers.getIfPresent(connection.userId());
+            connections.replaceQueued(connection, buffer != null ? buffer.resync() : new Message(null, RESYNC_EVENT, RESYNC_DATA));
+        }
+    }
+
+    /**
+     * Immutable event; a fresh {@link SseEmitter.SseEventBuilder} is built per send because builders
+     * are not reusable across emitters.
+     */
+    public record Message(String id, String name, String data) {
+    }
+
+    /**
+     * Per-user version counter and the most recent data events; guarded by its {@code lock}.
+     */
+    private final class ReplayBuffer {
+        // Not synchronized: opening a connection may subscribe to the relay, which must not pin a virtual thread
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<Message> messages = new ArrayDeque<>();
+        private long version;
+        // Set by the sweep only
+        private volatile long idleSince;
+
+        private Message append(T update) {
+            version++;
+            Message message = new Message(currentId(), dataEventName, dataFor.apply(update, version));
+            if (replaySize > 0) {
+                if (messages.size() == replaySize) {
+                    messages.removeFirst();
+                }
+                messages.addLast(message);
+            }
+            return message;
+        }
+
+        private String currentId() {
+            return epoch + ":" + version;
+        }
+
+        private Message resync() {
+            return new Message(currentId(), RESYNC_EVENT, RESYNC_DATA);
+        }
+
+        /**
+         * Events after {@code lastEventId}; empty for a fresh client, null when they cannot be replayed.
+         */
+        private List<Message> since(String lastEventId) {
+            if (lastEventId == null || lastEventId.isBlank()) {
+                return List.of();
+            }
+            int separator = lastEventId.lastIndexOf(':');
+            if (separator < 0 || !epoch.equals(lastEventId.substring(0, separator))) {
+                return null;
+            }
+            long seen;
+            try {
+                seen = Long.parseLong(lastEventId.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (seen > version) {
+                return null;
+            }
+            long missed = version - seen;
+            if (missed > messages.size()) {
+                return null;
+            }
+            List<Message> replay = new ArrayList<>(messages);
+            return replay.subList(replay.size() - (int) missed, replay.size());
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.orbit.common.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Open SSE connections of one instance and the threads that write to them.
+ * <ul>
+ *   <li>Connections are kept in concurrent hash sets per user, so opening and closing is O(1)
+ *       without copying.</li>
+ *   <li>Each connection has a bounded queue (lazily allocated nodes plus a size counter, no
+ *       preallocated array or lock) drained by a small sender pool, or by one virtual thread per
+ *       drain with {@code virtualThreads}, so a slow client blocks only its own writer.</li>
+ *   <li>A hashed timer wheel with {@code heartbeatIntervalMs / tickMs} buckets visits every
+ *       connection once per heartbeat interval, spreading the work evenly over ticks. A visit
+ *       sends an SSE comment if nothing was written for a full interval (keeps proxies from
+ *       dropping the stream and surfaces dead peers as write errors) and closes connections whose
+ *       queue has not moved for {@code stallTimeoutMs}. A connection is only ever dropped for a
+ *       failed or stalled write, never for having had no events: a quiet user's stream stays open
+ *       as long as its heartbeats go through.</li>
+ *   <li>At most {@code maxConnections} per instance (further opens are rejected) and
+ *       {@code maxConnectionsPerUser} per user (the oldest is closed).</li>
+ * </ul>
+ */
+@Slf4j
+public class SseConnectionManager implements AutoCloseable {
+
+    /**
+     * Static estimate, not measured at runtime: the summed object layouts (64-bit JVM, compressed
+     * oops) of one idle connection's bookkeeping (connection, queue, counters, set and wheel
+     * entries) and its emitter with handlers. The servlet request, async context and socket
+     * buffers are not included.
+     */
+    static final int STATIC_ESTIMATE_CONNECTION_BYTES = 900;
+
+    private static final SseBroadcaster.Message HEARTBEAT = new SseBroadcaster.Message(null, null, null);
+
+    public record Settings(int queueCapacity, int senderThreads, int maxConnections, int maxConnectionsPerUser,
+                    long heartbeatIntervalMs, long stallTimeoutMs, long tickMs,
+                    boolean virtualThreads) {
+    }
+
+    private final Settings settings;
+    private final Consumer<String> onOpen;
+    private final Consumer<String> onClose;
+
+    private final Map<String, Set<Connection>> connectionsByUserId = new ConcurrentHashMap<>();
+    private final Set<Connection>[] wheel;
+    private final AtomicLong tick = new AtomicLong();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAccumulator peak = new LongAccumulator(Math::max, 0);
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private final Executor senders;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictedPerUser = new LongAdder();
+    private final LongAdder heartbeats = new LongAdder();
+    private final LongAdder reapedStalled = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     * @param onOpen  called with the user id after a connection is added
+     * @param onClose called once with the user id after a connection is removed
+     */
+    @SuppressWarnings("unchecked")
+    SseConnectionManager(String name, Settings settings, Consumer<String> onOpen, Consumer<String> onClose) {
+        this.settings = settings;
+        this.onOpen = onOpen;
+        this.onClose = onClose;
+        int buckets = (int) Math.max(1, settings.heartbeatIntervalMs() / settings.tickMs());
+        this.wheel = new Set[buckets];
+        for (int i = 0; i < buckets; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-sse-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.virtualThreads()) {
+            this.senders = new VirtualThreadTaskExecutor(name + "-sse-send-");
+        } else {
+            AtomicInteger senderIndex = new AtomicInteger();
+            this.senders = Executors.newFixedThreadPool(settings.senderThreads(), r -> {
+                Thread thread = new Thread(r, name + "-sse-send-" + senderIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduler.scheduleAtFixedRate(this::advanceQuietly, settings.tickMs(), settings.tickMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Track a new emitter.
+     *
+     * @return the connection, or null when the instance is at {@code maxConnections}
+     */
+    Connection open(String userId, SseEmitter emitter, boolean data) {
+        if (open.incrementAndGet() > settings.maxConnections()) {
+            open.decrementAndGet();
+            rejected.increment();
+            return null;
+        }
+        peak.accumulate(open.get());
+        // Random slot, so a reconnect storm is still spread over the whole interval
+        int bucket = ThreadLocalRandom.current().nextInt(wheel.length);
+        Connection connection = new Connection(userId, emitter, data, bucket);
+        emitter.onCompletion(() -> remove(connection));
+        emitter.onTimeout(() -> remove(connection));
+        emitter.onError(e -> remove(connection));
+        Set<Connection> userConnections = connectionsByUserId.compute(userId, (k, set) -> {
+            Set<Connection> connections = set != null ? set : ConcurrentHashMap.newKeySet(2);
+            connections.add(connection);
+            return connections;
+        });
+        wheel[bucket].add(connection);
+        onOpen.accept(userId);
+        if (userConnections.size() > settings.maxConnectionsPerUser()) {
+            userConnections.stream()
+                    .filter(other -> other != connection)
+                    .min(Comparator.comparingLong(other -> other.openedAt))
+                    .ifPresent(oldest -> {
+                        evictedPerUser.increment();
+                        close(oldest);
+                    });
+        }
+        return connection;
+    }
+
+    Collection<Connection> connections(String userId) {
+        Set<Connection> connections = connectionsByUserId.get(userId);
+        return connections != null ? connections : List.of();
+    }
+
+    boolean hasConnections(String userId) {
+        return connectionsByUserId.containsKey(userId);
+    }
+
+    /**
+     * Queue {@code message} on the connection.
+     *
+     * @return false when the connection is backed up (its queue is full) and the message was dropped
+     */
+    boolean offer(Connection connection, SseBroadcaster.Message message) {
+        if (connection.removed.get()) {
+            return true;
+        }
+        if (connection.queued.incrementAndGet() > settings.queueCapacity()) {
+            connection.queued.decrementAndGet();
+            return false;
+        }
+        enqueue(connection, message);
+        return true;
+    }
+
+    /**
+     * Drop everything queued on the connection and queue {@code message} instead.
+     */
+    void replaceQueued(Connection connection, SseBroadcaster.Message message) {
+        SseBroadcaster.Message dropped;
+        while ((dropped = connection.queue.poll()) != null) {
+            connection.queued.decrementAndGet();
+            queuedBytes.addAndGet(-sizeOf(dropped));
+        }
+        connection.queued.incrementAndGet();
+        enqueue(connection, message);
+    }
+
+    public int userCount() {
+        return connectionsByUserId.size();
+    }
+
+    public int connectionCount() {
+        return open.get();
+    }
+
+    public long peakConnectionCount() {
+        return peak.get();
+    }
+
+    public int maxConnections() {
+        return settings.maxConnections();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long evictedPerUserCount() {
+        return evictedPerUser.sum();
+    }
+
+    public long heartbeatCount() {
+        return heartbeats.sum();
+    }
+
+    public long reapedStalledCount() {
+        return reapedStalled.sum();
+    }
+
+    public long sendFailureCount() {
+        return sendFailures.sum();
+    }
+
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long queuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * Measured: queued event data divided by open connections.
+     */
+    public long queuedBytesPerConnection() {
+        int connections = open.get();
+        return connections == 0 ? 0 : queuedBytes.get() / connections;
+    }
+
+    /**
+     * The constant {@link #STATIC_ESTIMATE_CONNECTION_BYTES}; reported next to the measured
+     * figures so it is not mistaken for one.
+     */
+    public long staticEstimateBytesPerConnection() {
+        return STATIC_ESTIMATE_CONNECTION_BYTES;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (senders instanceof ExecutorService pool) {
+            pool.shutdownNow();
+        }
+    }
+
+    private void enqueue(Connection connection, SseBroadcaster.Message message) {
+        connection.queue.add(message);
+        queuedBytes.addAndGet(sizeOf(message));
+        if (connection.queued.get() == 1) {
+            connection.progressAt = System.currentTimeMillis();
+        }
+        if (connection.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(connection));
+        }
+    }
+
+    private void drain(Connection connection) {
+        try {
+            SseBroadcaster.Message message;
+            while ((message = connection.queue.poll()) != null) {
+                connection.queued.decrementAndGet();
+                int size = sizeOf(message);
+                queuedBytes.addAndGet(-size);
+                if (message == HEARTBEAT) {
+                    connection.emitter.send(SseEmitter.event().comment("hb"));
+                } else {
+                    SseEmitter.SseEventBuilder event = SseEmitter.event().name(message.name()).data(message.data());
+                    if (message.id() != null) {
+                        event.id(message.id());
+                    }
+                    connection.emitter.send(event);
+                }
+                long now = System.currentTimeMillis();
+                connection.lastSendAt = now;
+                connection.progressAt = now;
+                bytesSent.add(size);
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("SSE send failed, dropping connection for userId={}", connection.userId);
+            sendFailures.increment();
+            remove(connection);
+            return;
+        } finally {
+            connection.draining.set(false);
+        }
+        // An offer may have landed between the last poll and clearing the flag
+        if (!connection.queue.isEmpty() && connection.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(connection));
+        }
+    }
+
+    private void advanceQuietly() {
+        try {
+            advance();
+        } catch (Exception e) {
+            log.warn("SSE timer wheel tick failed", e);
+        }
+    }
+
+    /**
+     * Visit one wheel bucket; every connection comes round once per heartbeat interval.
+     */
+    private void advance() {
+        Set<Connection> bucket = wheel[(int) (tick.getAndIncrement() % wheel.length)];
+        long now = System.currentTimeMillis();
+        for (Connection connection : bucket) {
+            if (connection.queued.get() > 0 && now - connection.progressAt > settings.stallTimeoutMs()) {
+                reapedStalled.increment();
+                connection.emitter.completeWithError(new IOException("SSE connection stalled"));
+                remove(connection);
+            } else if (connection.queued.get() == 0 && now - connection.lastSendAt >= settings.heartbeatIntervalMs()) {
+                heartbeats.increment();
+                connection.queued.incrementAndGet();
+                enqueue(connection, HEARTBEAT);
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        connection.emitter.complete();
+        remove(connection);
+    }
+
+    private void remove(Connection connection) {
+        // Completion, timeout, error and our own reaping can all get here for one connection
+        if (!connection.removed.compareAndSet(false, true)) {
+            return;
+        }
+        SseBroadcaster.Message dropped;
+        while ((dropped = connection.queue.poll()) != null) {
+            queuedBytes.addAndGet(-sizeOf(dropped));
+        }
+        connection.queued.set(0);
+        wheel[connection.bucket].remove(connection);
+        connectionsByUserId.computeIfPresent(connection.userId, (userId, set) -> {
+            set.remove(connection);
+            return set.isEmpty() ? null : set;
+        });
+        open.decrementAndGet();
+        onClose.accept(connection.userId);
+    }
+
+    private static int sizeOf(SseBroadcaster.Message message) {
+        return message.data() != null ? message.data().length() : 0;
+    }
+
+    static final class Connection {
+        private final String userId;
+        private final SseEmitter emitter;
+        private final boolean data;
+        private final int bucket;
+        private final long openedAt = System.currentTimeMillis();
+        private final ConcurrentLinkedQueue<SseBroadcaster.Message> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean removed = new AtomicBoolean();
+        private volatile long lastSendAt = openedAt;
+        private volatile long progressAt = openedAt;
+
+        private Connection(String userId, SseEmitter emitter, boolean data, int bucket) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.data = data;
+            this.bucket = bucket;
+        }
+
+        String userId() {
+            return userId;
+        }
+
+        boolean isData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.orbit.common.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orbit.common.model.SseStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Cross-instance delivery for {@link SseBroadcaster}. Users are spread over {@code shards}
+ * channels by hash; an instance subscribes to a shard only while it holds a connection or replay
+ * buffer for one of its users, and advertises that with a short-lived
+ * {@code <prefix>listening:<shard>} key. A flush is published as one message per listened-to shard,
+ * in one pipeline; every subscriber delivers it to its own connections. Lag is publish-to-receive
+ * wall-clock time, so it includes clock skew between instances.
+ */
+@Slf4j
+public class SseRelay<T> implements SseBroadcaster.Relay<T>, AutoCloseable {
+
+    private static final long LISTENING_TTL_MS = 30_000;
+    private static final long LISTENING_REFRESH_MS = 10_000;
+
+    private final String channelPrefix;
+    private final int shards;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final Class<T> updateType;
+    private final Consumer<Map<String, T>> deliver;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by lock; not synchronized, since (un)subscribing does I/O and must not pin a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int[] holds;
+    private final Map<Integer, MessageListener> listeners = new HashMap<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder publishedUsers = new LongAdder();
+    private final LongAdder unlistenedUsers = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder receivedUsers = new LongAdder();
+    private final LongAdder lagMillis = new LongAdder();
+    private final LongAccumulator maxLagMillis = new LongAccumulator(Math::max, 0);
+
+    public SseRelay(String channelPrefix, int shards, RedisTemplate<String, String> redisTemplate,
+             RedisMessageListenerContainer listenerContainer, ObjectMapper objectMapper,
+             Class<T> updateType, Consumer<Map<String, T>> deliver) {
+        this.channelPrefix = channelPrefix;
+        this.shards = shards;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.updateType = updateType;
+        this.deliver = deliver;
+        this.holds = new int[shards];
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, channelPrefix + "relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshListening,
+                LISTENING_REFRESH_MS, LISTENING_REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void publish(Map<String, T> updates) {
+        Map<Integer, Map<String, T>> byShard = new TreeMap<>();
+        updates.forEach((userId, update) ->
+                byShard.computeIfAbsent(shardOf(userId), k -> new LinkedHashMap<>()).put(userId, update));
+
+        List<String> listeningKeys = byShard.keySet().stream().map(this::listeningKey).toList();
+        List<String> listening = redisTemplate.opsForValue().multiGet(listeningKeys);
+        Iterator<Map.Entry<Integer, Map<String, T>>> shardIterator = byShard.entrySet().iterator();
+        for (int i = 0; shardIterator.hasNext(); i++) {
+            Map.Entry<Integer, Map<String, T>> shard = shardIterator.next();
+            if (listening == null || listening.get(i) == null) {
+                unlistenedUsers.add(shard.getValue().size());
+                shardIterator.remove();
+            }
+        }
+        if (byShard.isEmpty()) {
+            return;
+        }
+
+        long sentAt = System.currentTimeMillis();
+        List<String[]> messages = new ArrayList<>(byShard.size());
+        for (Map.Entry<Integer, Map<String, T>> shard : byShard.entrySet()) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("sentAt", sentAt);
+            body.put("updates", shard.getValue());
+            try {
+                messages.add(new String[]{channel(shard.getKey()), objectMapper.writeValueAsString(body)});
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not serialize SSE relay message", e);
+            }
+            publishedUsers.add(shard.getValue().size());
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (String[] message : messages) {
+                    operations.convertAndSend(message[0], message[1]);
+                }
+                return null;
+            }
+        });
+        published.add(messages.size());
+    }
+
+    @Override
+    public void hold(String userId) {
+        int shard = shardOf(userId);
+        lock.lock();
+        try {
+            if (holds[shard]++ > 0) {
+                return;
+            }
+            MessageListener listener = this::onMessage;
+            listeners.put(shard, listener);
+            listenerContainer.addMessageListener(listener, new ChannelTopic(channel(shard)));
+            markListening(shard);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release(String userId) {
+        int shard = shardOf(userId);
+        lock.lock();
+        try {
+            if (--holds[shard] > 0) {
+                return;
+            }
+            holds[shard] = 0;
+            MessageListener listener = listeners.remove(shard);
+            if (listener != null) {
+                listenerContainer.removeMessageListener(listener);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int subscribedShardCount() {
+        lock.lock();
+        try {
+            return listeners.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int shardCount() {
+        return shards;
+    }
+
+    public long publishedCount() {
+        return published.sum();
+    }
+
+    public long publishedUserCount() {
+        return publishedUsers.sum();
+    }
+
+    public long unlistenedUserCount() {
+        return unlistenedUsers.sum();
+    }
+
+    public long receivedCount() {
+        return received.sum();
+    }
+
+    public long receivedUserCount() {
+        return receivedUsers.sum();
+    }
+
+    public double avgLagMillis() {
+        long count = received.sum();
+        return count == 0 ? 0 : (double) lagMillis.sum() / count;
+    }
+
+    public long maxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    public void addStats(SseStats stats) {
+        stats.setCrossInstance(true);
+        stats.setShards(shardCount());
+        stats.setSubscribedShards(subscribedShardCount());
+        stats.setRelayMessagesPublished(publishedCount());
+        stats.setRelayUsersPublished(publishedUserCount());
+        stats.setRelayUsersUnlistened(unlistenedUserCount());
+        stats.setRelayMessagesReceived(receivedCount());
+        stats.setRelayUsersReceived(receivedUserCount());
+        stats.setAvgRelayLagMs(avgLagMillis());
+        stats.setMaxRelayLagMs(maxLagMillis());
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode body = objectMapper.readTree(message.getBody());
+            long lag = Math.max(0, System.currentTimeMillis() - body.path("sentAt").asLong());
+            Map<String, T> updates = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonNode> field : body.path("updates").properties()) {
+                updates.put(field.getKey(), objectMapper.treeToValue(field.getValue(), updateType));
+            }
+            received.increment();
+            receivedUsers.add(updates.size());
+            lagMillis.add(lag);
+            maxLagMillis.accumulate(lag);
+            deliver.accept(updates);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Dropping unreadable SSE relay message", e);
+        }
+    }
+
+    private void refreshListening() {
+        List<Integer> subscribed;
+        lock.lock();
+        try {
+            subscribed = new ArrayList<>(listeners.keySet());
+        } finally {
+            lock.unlock();
+        }
+        subscribed.forEach(this::markListening);
+    }
+
+    /**
+     * Best effort: on failure publishers skip the shard until the next refresh.
+     */
+    private void markListening(int shard) {
+        try {
+            redisTemplate.opsForValue().set(listeningKey(shard), "1", Duration.ofMillis(LISTENING_TTL_MS));
+        } catch (RuntimeException e) {
+            log.warn("Failed to advertise SSE relay shard {}", shard, e);
+        }
+    }
+
+    private int shardOf(String userId) {
+        return Math.floorMod(userId.hashCode(), shards);
+    }
+
+    private String channel(int shard) {
+        return channelPrefix + shard;
+    }
+
+    private String listeningKey(int shard) {
+        return channelPrefix + "listening:" + shard;
+    }
+}
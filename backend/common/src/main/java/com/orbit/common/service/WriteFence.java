@@ -0,0 +1,32 @@
+package com.orbit.common.service;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-instance fence between a service's state writes and a snapshot cut. Write paths run each
+ * write together with what must be recorded alongside it (dedup marks) in {@link #write}; any
+ * number of those run concurrently. {@link #hold} waits for the ones in progress and keeps new
+ * ones out until it returns, so the keyspace it observes never has a write without its mark.
+ */
+public class WriteFence {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void write(Runnable write) {
+        lock.readLock().lock();
+        try {
+            write.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void hold(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.orbit.common.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventDeduplicatorTest {
+
+    // Only Bloom positives reach Redis, and these ids are never marked before the checks below
+    private final EventDeduplicator deduplicator = new EventDeduplicator("test", null,
+            new EventDeduplicator.Settings(true, 60_000, 2, 1_000, 0.01, 60_000));
+
+    @BeforeEach
+    void start() {
+        deduplicator.init();
+    }
+
+    @AfterEach
+    void stop() {
+        deduplicator.shutdown();
+    }
+
+    /**
+     * With coalescing the mark waits for the flush; a copy redelivered before it must not be
+     * applied a second time.
+     */
+    @Test
+    void aClaimedEventIsADuplicateBeforeItIsMarked() {
+        assertThat(deduplicator.claim("event-1", 0)).isTrue();
+        assertThat(deduplicator.claim("event-1", 0)).isFalse();
+        assertThat(deduplicator.getStats().getDuplicatesDropped()).isEqualTo(1);
+    }
+
+    @Test
+    void aReleasedClaimLetsTheRedeliveryThrough() {
+        assertThat(deduplicator.claim("event-1", 0)).isTrue();
+        deduplicator.release("event-1");
+        assertThat(deduplicator.claim("event-1", 0)).isTrue();
+    }
+}
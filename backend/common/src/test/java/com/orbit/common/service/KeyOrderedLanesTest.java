@@ -0,0 +1,138 @@
+package com.orbit.common.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyOrderedLanesTest {
+
+    private static final int LANES = 8;
+
+    private final KeyOrderedLanes lanes = new KeyOrderedLanes("test", LANES, false);
+
+    @AfterEach
+    void close() {
+        lanes.close();
+    }
+
+    @Test
+    void keepsSubmissionOrderPerKey() {
+        int keys = 64;
+        int perKey = 2_000;
+        Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+        for (int i = 0; i < perKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                String key = "user-" + k;
+                int sequence = i;
+                // Lists are only touched by their key's lane, one task at a time
+                lanes.submit(key, () -> seen.computeIfAbsent(key, x -> new ArrayList<>()).add(sequence));
+            }
+        }
+
+        assertThat(lanes.awaitIdle(30_000)).isTrue();
+        assertThat(seen).hasSize(keys);
+        seen.forEach((key, sequence) -> {
+            assertThat(sequence).hasSize(perKey);
+            for (int i = 0; i < perKey; i++) {
+                assertThat(sequence.get(i)).as("position %d of %s", i, key).isEqualTo(i);
+            }
+        });
+        assertThat(lanes.completedCount()).isEqualTo((long) keys * perKey);
+        assertThat(lanes.pendingCount()).isZero();
+    }
+
+    @Test
+    void runsOneTaskAtATimePerKey() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            lanes.submit("same-user", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(1);
+                running.decrementAndGet();
+            });
+        }
+
+        assertThat(lanes.awaitIdle(30_000)).isTrue();
+        assertThat(maxRunning.get()).isEqualTo(1);
+    }
+
+    @Test
+    void blockedKeyDoesNotHoldBackOtherLanes() throws InterruptedException {
+        String blockedKey = "blocked";
+        String otherKey = keyOnOtherLane(blockedKey);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        lanes.submit(blockedKey, () -> await(release));
+        lanes.submit(otherKey, otherDone::countDown);
+
+        assertThat(otherDone.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(lanes.awaitIdle(100)).isFalse();
+        assertThat(lanes.pendingCount()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(lanes.awaitIdle(5_000)).isTrue();
+    }
+
+    @Test
+    void failedTaskIsCountedAndLaneKeepsGoing() {
+        List<String> ran = new ArrayList<>();
+        lanes.submit("user", () -> ran.add("before"));
+        lanes.submit("user", () -> {
+            throw new IllegalStateException("boom");
+        });
+        lanes.submit("user", () -> ran.add("after"));
+
+        assertThat(lanes.awaitIdle(5_000)).isTrue();
+        assertThat(ran).containsExactly("before", "after");
+        assertThat(lanes.failedCount()).isEqualTo(1);
+        assertThat(lanes.completedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void nullKeyRunsOnOneLane() {
+        List<Integer> seen = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int sequence = i;
+            lanes.submit(null, () -> seen.add(sequence));
+        }
+
+        assertThat(lanes.awaitIdle(5_000)).isTrue();
+        assertThat(seen).hasSize(100).isSorted();
+    }
+
+    private static String keyOnOtherLane(String key) {
+        int lane = Math.floorMod(key.hashCode(), LANES);
+        for (int i = 0; ; i++) {
+            String candidate = "other-" + i;
+            if (Math.floorMod(candidate.hashCode(), LANES) != lane) {
+                return candidate;
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.orbit.common.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.zset.Tuple;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RdbReaderTest {
+
+    /**
+     * Saved by Redis 6.2 with rdbcompression on: plain, integer and LZF strings, ziplist and
+     * hashtable hashes, intset and hashtable sets, ziplist and skiplist sorted sets, quicklists,
+     * an expiry and a key in database 1.
+     */
+    @Test
+    void readsEveryEncodingOfARedisSave() throws IOException {
+        Map<String, RdbReader.Entry> entries = new HashMap<>();
+        try (InputStream rdb = getClass().getResourceAsStream("/rdb/redis-6.2.rdb"); RdbReader reader = new RdbReader(rdb)) {
+            assertThat(reader.version()).isEqualTo(9);
+            RdbReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                entries.put(text(entry.key()), entry);
+            }
+        }
+
+        assertThat(entries).hasSize(16);
+        assertThat(string(entries.get("t:plain"))).isEqualTo("hello");
+        assertThat(string(entries.get("t:int8"))).isEqualTo("-7");
+        assertThat(string(entries.get("t:int16"))).isEqualTo("300");
+        assertThat(string(entries.get("t:int32"))).isEqualTo("70000");
+        assertThat(string(entries.get("t:lzf"))).isEqualTo("abcabcabc".repeat(20));
+        assertThat(entries.get("t:ttl").expireAtMs()).isEqualTo(4102444800000L);
+        assertThat(entries.get("t:plain").expireAtMs()).isZero();
+        assertThat(entries.get("t:other").db()).isEqualTo(1);
+        assertThat(entries.get("t:plain").db()).isZero();
+
+        assertThat(hash(entries.get("t:hash:small"))).containsExactlyInAnyOrderEntriesOf(Map.of("a", "1", "b", "-2", "c", "long".repeat(10)));
+        Map<String, String> bigHash = hash(entries.get("t:hash:big"));
+        assertThat(bigHash).hasSize(200).containsEntry("f0", "v0").containsEntry("f199", "v199");
+
+        assertThat(members(entries.get("t:set:ints"))).containsExactlyInAnyOrder("1", "-5", "100000", "4294967296");
+        assertThat(members(entries.get("t:set:strs"))).containsExactlyInAnyOrder("x", "y", "z");
+        assertThat(members(entries.get("t:set:big"))).hasSize(200).contains("m0", "m199");
+
+        assertThat(scores(entries.get("t:zset:small")))
+                .containsExactlyInAnyOrderEntriesOf(Map.of("a", 1.5, "b", -2.0, "c", Double.POSITIVE_INFINITY));
+        Map<String, Double> bigZset = scores(entries.get("t:zset:big"));
+        assertThat(bigZset).hasSize(200).containsEntry("z0", 0.0).containsEntry("z199", 49.75);
+
+        assertThat(entries.get("t:list").type()).isEqualTo(DataType.LIST);
+        assertThat(members(entries.get("t:list"))).containsExactly("a", "12", "-3", "x".repeat(100), "70000", "5000000000");
+        List<String> bigList = members(entries.get("t:list:big"));
+        assertThat(bigList).hasSize(1000);
+        assertThat(bigList.get(0)).isEqualTo("e0");
+        assertThat(bigList.get(999)).isEqualTo("e999");
+    }
+
+    /**
+     * Redis 7 packs small hashes, sorted sets, sets and list nodes as listpacks; built by hand
+     * here with every entry encoding.
+     */
+    @Test
+    void decodesListpackEntries() throws IOException {
+        byte[] longString = "y".repeat(70).getBytes(StandardCharsets.US_ASCII);
+        byte[] body = concat(
+                bytes(0x05, 0x01),                              // 7-bit uint 5
+                bytes(0x83, 'a', 'b', 'c', 0x04),               // 6-bit string
+                bytes(0xDF, 0xFF, 0x02),                        // 13-bit int -1
+                bytes(0xE0, 70), longString, bytes(0x48),       // 12-bit string
+                bytes(0xF1, 0x18, 0xFC, 0x03),                  // 16-bit int -1000
+                bytes(0xF2, 0x40, 0x42, 0x0F, 0x04),            // 24-bit int 1000000
+                bytes(0xF3, 0x00, 0xCA, 0x9A, 0x3B, 0x05),      // 32-bit int 1000000000
+                bytes(0xF4, 0x00, 0xF2, 0x05, 0x2A, 0x01, 0x00, 0x00, 0x00, 0x09), // 64-bit int 5000000000
+                bytes(0xFF));
+        byte[] listpack = concat(bytes(body.length + 6, 0, 0, 0, 8, 0), body);
+
+        assertThat(RdbReader.listpack(listpack)).extracting(RdbReaderTest::text)
+                .containsExactly("5", "abc", "-1", "y".repeat(70), "-1000", "1000000", "1000000000", "5000000000");
+    }
+
+    @Test
+    void rejectsAFileThatIsNotAnRdb() {
+        byte[] notRdb = "SNAPSHOT0".getBytes(StandardCharsets.US_ASCII);
+        assertThatThrownBy(() -> new RdbReader(new ByteArrayInputStream(notRdb))).isInstanceOf(IOException.class);
+    }
+
+    private static String string(RdbReader.Entry entry) {
+        assertThat(entry.type()).isEqualTo(DataType.STRING);
+        return text((byte[]) entry.value());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> hash(RdbReader.Entry entry) {
+        assertThat(entry.type()).isEqualTo(DataType.HASH);
+        Map<String, String> fields = new HashMap<>();
+        ((Map<byte[], byte[]>) entry.value()).forEach((field, value) -> fields.put(text(field), text(value)));
+        return fields;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> members(RdbReader.Entry entry) {
+        List<String> members = new ArrayList<>();
+        ((List<byte[]>) entry.value()).forEach(member -> members.add(text(member)));
+        return members;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Double> scores(RdbReader.Entry entry) {
+        assertThat(entry.type()).isEqualTo(DataType.ZSET);
+        Map<String, Double> scores = new HashMap<>();
+        ((List<Tuple>) entry.value()).forEach(member -> scores.put(text(member.getValue()), member.getScore()));
+        return scores;
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] joined = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, joined, offset, part.length);
+            offset += part.length;
+        }
+        return joined;
+    }
+}
@@ -0,0 +1,91 @@
+package com.orbit.common.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsOffsetsAndBody() throws IOException {
+        Map<Integer, Long> offsets = new TreeMap<>(Map.of(0, 42L, 5, Long.MAX_VALUE));
+        byte[] binary = {0, (byte) 0xFF, (byte) 0x80, 1};
+        Path file = SnapshotFile.write(directory, 3, 1000, offsets, out -> {
+            SnapshotFile.writeString(out, "ü-" + "x".repeat(300));
+            SnapshotFile.writeString(out, null);
+            SnapshotFile.writeString(out, "");
+            SnapshotFile.writeBytes(out, binary);
+            SnapshotFile.writeBytes(out, new byte[0]);
+            SnapshotFile.writeVarLong(out, 0);
+            SnapshotFile.writeVarLong(out, 127);
+            SnapshotFile.writeVarLong(out, 128);
+            SnapshotFile.writeVarLong(out, Long.MAX_VALUE);
+            out.writeDouble(-0.5);
+        });
+
+        try (SnapshotFile.Reader reader = new SnapshotFile.Reader(file)) {
+            assertThat(reader.createdAtMillis()).isEqualTo(1000);
+            assertThat(reader.offsets()).isEqualTo(offsets);
+            assertThat(reader.readString()).isEqualTo("ü-" + "x".repeat(300));
+            assertThat(reader.readString()).isNull();
+            assertThat(reader.readString()).isEmpty();
+            assertThat(reader.readBytes()).isEqualTo(binary);
+            assertThat(reader.readBytes()).isEmpty();
+            assertThat(reader.readVarLong()).isZero();
+            assertThat(reader.readVarLong()).isEqualTo(127);
+            assertThat(reader.readVarLong()).isEqualTo(128);
+            assertThat(reader.readVarLong()).isEqualTo(Long.MAX_VALUE);
+            assertThat(reader.readDouble()).isEqualTo(-0.5);
+        }
+    }
+
+    @Test
+    void rejectsACorruptFileBeforeReadingIt() throws IOException {
+        Path file = SnapshotFile.write(directory, 3, 1000, Map.of(0, 1L), out -> SnapshotFile.writeString(out, "value"));
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(raw.length() - Long.BYTES - 1);
+            raw.write('X');
+        }
+
+        assertThatThrownBy(() -> new SnapshotFile.Reader(file))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("checksum mismatch");
+    }
+
+    @Test
+    void removesTheTempFileWhenTheBodyFails() throws IOException {
+        assertThatThrownBy(() -> SnapshotFile.write(directory, 3, 1000, Map.of(0, 1L), out -> {
+            SnapshotFile.writeString(out, "partial");
+            throw new IllegalStateException("export abandoned");
+        })).isInstanceOf(IllegalStateException.class);
+
+        try (var files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void keepsOnlyTheNewestFiles() throws IOException {
+        for (long createdAt = 1; createdAt <= 5; createdAt++) {
+            SnapshotFile.write(directory, 2, createdAt, Map.of(), out -> SnapshotFile.writeVarLong(out, 0));
+        }
+
+        assertThat(SnapshotFile.latest(directory)).contains(directory.resolve("snapshot-5.bin"));
+        try (var files = Files.list(directory)) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                    .containsExactlyInAnyOrder("snapshot-4.bin", "snapshot-5.bin");
+        }
+    }
+}
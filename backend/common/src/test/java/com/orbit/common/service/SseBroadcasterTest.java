@@ -0,0 +1,147 @@
+package com.orbit.common.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseBroadcasterTest {
+
+    private static final String USER = "user-1";
+    private static final int UPDATES = 5_000;
+
+    private final SseBroadcaster<Integer> broadcaster = new SseBroadcaster<>("test", 60_000,
+            new SseConnectionManager.Settings(UPDATES * 2, 4, 1_000, 1_000, 60_000, 600_000, 1_000, false),
+            UPDATES, 60_000, 100,
+            userId -> new SseBroadcaster.Message(null, "update", "{}"), "data",
+            (older, newer) -> newer, (update, version) -> Long.toString(version));
+
+    @AfterEach
+    void close() {
+        broadcaster.close();
+    }
+
+    @Test
+    void connectionsOpenedDuringDeliveryGetEveryLaterEventInOrder() throws Exception {
+        RecordingEmitter first = new RecordingEmitter();
+        assertThat(broadcaster.register(USER, first, true, null, connected())).isTrue();
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread deliverer = new Thread(() -> {
+            await(start);
+            for (int i = 1; i <= UPDATES; i++) {
+                broadcaster.deliver(Map.of(USER, i));
+            }
+        });
+        deliverer.start();
+
+        // Fresh connections and reconnects resuming from an id the first connection has seen,
+        // all racing the deliverer for the user's replay buffer
+        List<RecordingEmitter> emitters = new ArrayList<>();
+        start.countDown();
+        for (int i = 0; i < 200; i++) {
+            RecordingEmitter emitter = new RecordingEmitter();
+            String lastEventId = i % 2 == 0 ? null : first.lastId();
+            assertThat(broadcaster.register(USER, emitter, true, lastEventId, connected())).isTrue();
+            emitters.add(emitter);
+        }
+        deliverer.join(30_000);
+
+        emitters.add(first);
+        for (RecordingEmitter emitter : emitters) {
+            emitter.awaitVersion(UPDATES);
+            assertThat(emitter.names).doesNotContain(SseBroadcaster.RESYNC_EVENT);
+            List<Long> versions = emitter.versions();
+            for (int i = 1; i < versions.size(); i++) {
+                assertThat(versions.get(i)).as("event %d", i).isEqualTo(versions.get(i - 1) + 1);
+            }
+        }
+        assertThat(broadcaster.resyncCount()).isZero();
+    }
+
+    @Test
+    void staleLastEventIdGetsResync() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+        broadcaster.register(USER, emitter, true, "other-epoch:3", connected());
+
+        emitter.awaitEvents(2);
+        assertThat(emitter.names).containsExactly("connected", SseBroadcaster.RESYNC_EVENT);
+        assertThat(broadcaster.resyncCount()).isEqualTo(1);
+    }
+
+    private static SseBroadcaster.Message connected() {
+        return new SseBroadcaster.Message(null, "connected", "{}");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records the name and id of each event as the sender writes it.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> names = new CopyOnWriteArrayList<>();
+        private final List<String> ids = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            StringBuilder text = new StringBuilder();
+            builder.build().forEach(part -> text.append(part.getData()));
+            String id = null;
+            for (String line : text.toString().split("\n")) {
+                if (line.startsWith("event:")) {
+                    names.add(line.substring("event:".length()));
+                } else if (line.startsWith("id:")) {
+                    id = line.substring("id:".length());
+                }
+            }
+            ids.add(id);
+        }
+
+        private String lastId() {
+            synchronized (ids) {
+                return ids.isEmpty() ? null : ids.get(ids.size() - 1);
+            }
+        }
+
+        private List<Long> versions() {
+            synchronized (ids) {
+                return ids.stream().map(id -> Long.parseLong(id.substring(id.lastIndexOf(':') + 1))).toList();
+            }
+        }
+
+        private void awaitVersion(long version) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!Long.valueOf(version).equals(lastVersion()) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(lastVersion()).isEqualTo(version);
+        }
+
+        private void awaitEvents(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (names.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        private Long lastVersion() {
+            List<Long> versions = versions();
+            return versions.isEmpty() ? null : versions.get(versions.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.orbit.common.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SseConnectionManagerTest {
+
+    private static final long HEARTBEAT_MS = 100;
+
+    private final SseConnectionManager connections = new SseConnectionManager("test",
+            new SseConnectionManager.Settings(16, 1, 10, 10, HEARTBEAT_MS, 10_000, 10, false),
+            userId -> { }, userId -> { });
+
+    @AfterEach
+    void close() {
+        connections.close();
+    }
+
+    @Test
+    void quietConnectionStaysOpenWhileHeartbeatsGoThrough() throws Exception {
+        CountingEmitter emitter = new CountingEmitter();
+        connections.open("user-1", emitter, false);
+
+        // Many heartbeat intervals without a single event
+        Thread.sleep(HEARTBEAT_MS * 10);
+
+        assertThat(connections.hasConnections("user-1")).isTrue();
+        assertThat(emitter.sends.get()).isGreaterThanOrEqualTo(5);
+        assertThat(connections.heartbeatCount()).isGreaterThanOrEqualTo(5);
+        assertThat(connections.sendFailureCount()).isZero();
+    }
+
+    @Test
+    void failedHeartbeatDropsTheConnection() throws Exception {
+        CountingEmitter emitter = new CountingEmitter();
+        connections.open("user-1", emitter, false);
+        emitter.failing.set(true);
+
+        long deadline = System.currentTimeMillis() + HEARTBEAT_MS * 20;
+        while (connections.hasConnections("user-1") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(connections.hasConnections("user-1")).isFalse();
+        assertThat(connections.sendFailureCount()).isEqualTo(1);
+        assertThat(connections.connectionCount()).isZero();
+    }
+
+    private static final class CountingEmitter extends SseEmitter {
+        private final AtomicInteger sends = new AtomicInteger();
+        private final AtomicBoolean failing = new AtomicBoolean();
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing.get()) {
+                throw new IOException("Broken pipe");
+            }
+            sends.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.orbit.common.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ValueCodecTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private static final ValueCodec.Layout<Sample> LAYOUT = new ValueCodec.Layout<>() {
+        @Override
+        public void write(Sample value, ValueCodec.Writer out) {
+            out.presence(value.id(), value.count(), value.at());
+            out.string(value.id());
+            out.varLong(value.count());
+            out.fixedDouble(value.ratio());
+            out.instant(value.at());
+        }
+
+        @Override
+        public Sample read(ValueCodec.Reader in) throws IOException {
+            int present = in.presence();
+            return new Sample(
+                    (present & 1) != 0 ? in.string() : null,
+                    (present & 2) != 0 ? in.varLong() : null,
+                    in.fixedDouble(),
+                    (present & 4) != 0 ? in.instant() : null);
+        }
+    };
+
+    private final ValueCodec<Sample> binary = ValueCodec.of(Sample.class, LAYOUT, ValueCodec.Format.BINARY, OBJECT_MAPPER);
+    private final ValueCodec<Sample> json = ValueCodec.of(Sample.class, LAYOUT, ValueCodec.Format.JSON, OBJECT_MAPPER);
+
+    @Test
+    void binaryRoundTripsEdgeValuesAndNulls() throws IOException {
+        for (Sample sample : new Sample[] {
+                new Sample("ü-" + "x".repeat(200), Long.MIN_VALUE, -0.5, Instant.ofEpochSecond(-1, 999_999_999)),
+                new Sample("", Long.MAX_VALUE, Double.NaN, Instant.parse("2026-10-17T12:00:00.123Z")),
+                new Sample(null, -1L, 0, null),
+                new Sample(null, null, 1e300, null)}) {
+            assertThat(binary.decode(binary.encode(sample))).isEqualTo(sample);
+        }
+    }
+
+    @Test
+    void decodesJsonWhateverTheConfiguredFormat() throws IOException {
+        Sample sample = new Sample("user-1", 42L, 0.25, Instant.parse("2026-10-17T12:00:00Z"));
+
+        assertThat(binary.decode(json.encode(sample))).isEqualTo(sample);
+        assertThat(json.decode(binary.encode(sample))).isEqualTo(sample);
+        assertThat(binary.encode(sample).length).isLessThan(json.encode(sample).length / 2);
+    }
+
+    @Test
+    void rejectsUnknownVersionsAndTruncatedValues() throws IOException {
+        byte[] encoded = binary.encode(new Sample("user-1", 42L, 0.25, null));
+
+        assertThatThrownBy(() -> binary.decode(new byte[] {2, 0})).hasMessageContaining("version 2");
+        assertThatThrownBy(() -> binary.decode(Arrays.copyOf(encoded, encoded.length - 1)))
+                .isInstanceOf(EOFException.class);
+    }
+
+    record Sample(String id, Long count, double ratio, Instant at) {
+    }
+}
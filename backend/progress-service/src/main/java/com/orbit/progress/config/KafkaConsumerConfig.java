@@ -1,17 +1,39 @@
 package com.orbit.progress.config;
 
+import com.orbit.common.service.ConsumerGroupControl;
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.KeyGeneration;
+import com.orbit.common.service.KeyOrderedLanes;
+import com.orbit.common.service.ReplayRebuildService;
 import com.orbit.progress.event.LearningEvent;
+import com.orbit.progress.service.ProgressRebuildTarget;
+import com.orbit.progress.service.ProgressReplayState;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.MicrometerConsumerListener;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,8 +43,32 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${progress.consumer.parallel.lanes:8}")
+    private int parallelLanes;
+
+    @Value("${progress.consumer.parallel.drain-timeout-ms:10000}")
+    private long parallelDrainTimeoutMs;
+
+    @Value("${progress.dedup.enabled:true}")
+    private boolean dedupEnabled;
+
+    @Value("${progress.dedup.rotation-ms:300000}")
+    private long dedupRotationMs;
+
+    @Value("${progress.dedup.generations:3}")
+    private int dedupGenerations;
+
+    @Value("${progress.dedup.expected-per-generation:1000000}")
+    private long dedupExpectedPerGeneration;
+
+    @Value("${progress.dedup.fpp:0.01}")
+    private double dedupFpp;
+
+    @Value("${progress.dedup.flush-interval-ms:100}")
+    private long dedupFlushIntervalMs;
+
     @Bean
-    public ConsumerFactory<String, LearningEvent> consumerFactory() {
+    public ConsumerFactory<String, LearningEvent> consumerFactory(MeterRegistry meterRegistry) {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ConsumerConfig.GROUP_ID_CONFIG, "progress-service-group");
@@ -33,15 +79,105 @@ public class KafkaConsumerConfig {
         configProps.put(JsonDeserializer.VALUE_DEFAULT_TYPE, LearningEvent.class.getName());
         configProps.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 30000);
         configProps.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 10000);
-        return new DefaultKafkaConsumerFactory<>(configProps, new StringDeserializer(), new JsonDeserializer<>(LearningEvent.class));
+        return newConsumerFactory(configProps, meterRegistry);
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, LearningEvent> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, LearningEvent> kafkaListenerContainerFactory(EventDeduplicator eventDeduplicator,
+            Environment environment, MeterRegistry meterRegistry) {
         ConcurrentKafkaListenerContainerFactory<String, LearningEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(consumerFactory());
+        factory.setConsumerFactory(consumerFactory(meterRegistry));
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+        factory.getContainerProperties().setConsumerRebalanceListener(eventDeduplicator);
+        useVirtualThreads(factory, environment);
+        return factory;
+    }
+
+    /**
+     * Consumer factory that publishes the Kafka client metrics (records-lag-max, fetch latency, ...)
+     * to Micrometer, tagged by client id, topic and partition.
+     */
+    private static ConsumerFactory<String, LearningEvent> newConsumerFactory(Map<String, Object> configProps, MeterRegistry meterRegistry) {
+        DefaultKafkaConsumerFactory<String, LearningEvent> factory = new DefaultKafkaConsumerFactory<>(configProps,
+                new StringDeserializer(), new JsonDeserializer<>(LearningEvent.class));
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
         return factory;
     }
-}
 
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "progress.consumer.parallel.enabled", havingValue = "true")
+    public KeyOrderedLanes consumerLanes(Environment environment) {
+        return new KeyOrderedLanes("progress-consumer", parallelLanes, Threading.VIRTUAL.isActive(environment));
+    }
+
+    @Bean
+    public EventDeduplicator eventDeduplicator(RedisTemplate<String, String> redisTemplate) {
+        return new EventDeduplicator("progress", redisTemplate, new EventDeduplicator.Settings(dedupEnabled, dedupRotationMs,
+                dedupGenerations, dedupExpectedPerGeneration, dedupFpp, dedupFlushIntervalMs));
+    }
+
+    @Bean
+    public ConsumerGroupControl consumerGroupControl(KafkaAdmin kafkaAdmin, KafkaListenerEndpointRegistry listenerEndpointRegistry,
+            RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+            ObjectProvider<KeyOrderedLanes> consumerLanes) {
+        return new ConsumerGroupControl("progress", kafkaAdmin, listenerEndpointRegistry, redisTemplate, listenerContainer,
+                consumerLanes, parallelDrainTimeoutMs, () -> { });
+    }
+
+    /**
+     * Replay rebuild (POST /progress/internal/rebuild) into a new key generation.
+     */
+    @Bean
+    public ReplayRebuildService<LearningEvent, ProgressReplayState> replayRebuildService(ConsumerFactory<String, LearningEvent> consumerFactory,
+            ConsumerGroupControl consumerGroupControl, KeyGeneration keyGeneration, ProgressRebuildTarget rebuildTarget,
+            @Value("${progress.rebuild.parallelism:8}") int parallelism,
+            @Value("${progress.rebuild.load-batch-size:1000}") int loadBatchSize,
+            @Value("${progress.rebuild.pause-settle-ms:2000}") long pauseSettleMs,
+            @Value("${progress.rebuild.catch-up-timeout-ms:300000}") long catchUpTimeoutMs,
+            @Value("${progress.rebuild.dedup-window:10000}") int dedupWindow) {
+        return new ReplayRebuildService<>("progress", consumerFactory, consumerGroupControl, keyGeneration, rebuildTarget,
+                LearningEvent::getEventId, new ReplayRebuildService.Settings(parallelism, loadBatchSize, pauseSettleMs, catchUpTimeoutMs,
+                dedupWindow));
+    }
+
+    /**
+     * Parallel listener: records are handed to {@link KeyOrderedLanes} and acknowledged out of order
+     * as they finish. The container commits only up to the lowest offset below which every record is
+     * acknowledged, and holds back the next poll until the current one is fully acknowledged.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "progress.consumer.parallel.enabled", havingValue = "true")
+    public ConcurrentKafkaListenerContainerFactory<String, LearningEvent> parallelKafkaListenerContainerFactory(
+            EventDeduplicator eventDeduplicator, KeyOrderedLanes consumerLanes, Environment environment,
+            MeterRegistry meterRegistry) {
+        ConcurrentKafkaListenerContainerFactory<String, LearningEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory(meterRegistry));
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                // Let in-flight records finish and acknowledge, so their offsets and ids are handed over
+                consumerLanes.awaitIdle(parallelDrainTimeoutMs);
+                eventDeduplicator.onPartitionsRevokedBeforeCommit(consumer, partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                eventDeduplicator.onPartitionsAssigned(consumer, partitions);
+            }
+        });
+        useVirtualThreads(factory, environment);
+        return factory;
+    }
+
+    /**
+     * With spring.threads.virtual.enabled on JDK 21+, run listener containers on virtual threads
+     * (Boot only does this for the factory it auto-configures).
+     */
+    private static void useVirtualThreads(ConcurrentKafkaListenerContainerFactory<?, ?> factory, Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            factory.getContainerProperties().setListenerTaskExecutor(new VirtualThreadTaskExecutor("progress-kafka-"));
+        }
+    }
+}
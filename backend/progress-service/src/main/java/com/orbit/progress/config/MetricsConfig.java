@@ -0,0 +1,41 @@
+package com.orbit.progress.config;
+
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.HotPathMetrics;
+import com.orbit.common.service.KeyOrderedLanes;
+import com.orbit.common.service.NearCache;
+import com.orbit.common.service.ServiceMetrics;
+import com.orbit.progress.service.ProgressEventStreamService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hot path meters, and the counters the services already keep for their {@code /internal}
+ * endpoints exposed as meters (see {@link ServiceMetrics}).
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public HotPathMetrics hotPathMetrics(MeterRegistry registry) {
+        return new HotPathMetrics(registry);
+    }
+
+    @Bean
+    public MeterBinder nearCacheMetrics(NearCache nearCache) {
+        return ServiceMetrics.nearCache(nearCache);
+    }
+
+    @Bean
+    public MeterBinder sseMetrics(ProgressEventStreamService streamService) {
+        return ServiceMetrics.sse(streamService::getStats);
+    }
+
+    @Bean
+    public MeterBinder consumerMetrics(EventDeduplicator eventDeduplicator, ObjectProvider<KeyOrderedLanes> consumerLanes) {
+        return ServiceMetrics.consumer(eventDeduplicator, consumerLanes::getIfAvailable);
+    }
+}
@@ -2,10 +2,18 @@ package com.orbit.progress.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.orbit.common.service.KeyGeneration;
+import com.orbit.common.service.NearCache;
+import com.orbit.common.service.ValueCodec;
+import com.orbit.progress.model.UserProgressSnapshot;
+import com.orbit.progress.service.ProgressValueCodecs;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -20,6 +28,48 @@ public class RedisConfig {
         return template;
     }
 
+    /**
+     * Raw byte values, for stored progress snapshots (see {@link ValueCodec}).
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> binaryRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    @Bean
+    public ValueCodec<UserProgressSnapshot> progressSnapshotCodec(@Value("${progress.storage.value-codec:json}") String format,
+                                                                  ObjectMapper objectMapper) {
+        return ProgressValueCodecs.progressSnapshot(ValueCodec.Format.of(format), objectMapper);
+    }
+
+    @Bean
+    public NearCache nearCache(RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                               @Value("${cache.progress.l1.enabled:true}") boolean enabled,
+                               @Value("${cache.progress.l1.max-size:10000}") long maxSize,
+                               @Value("${cache.progress.l1.ttl-seconds:30}") long ttlSeconds) {
+        return new NearCache("progress", redisTemplate, listenerContainer, enabled, maxSize, ttlSeconds);
+    }
+
+    /**
+     * Generation of the progress snapshot keys ({@code progress:}, see {@link KeyGeneration}).
+     */
+    @Bean
+    public KeyGeneration keyGeneration(RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer,
+                                       NearCache nearCache) {
+        return new KeyGeneration("progress", "progress:", redisTemplate, listenerContainer, nearCache);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
     @Bean
     public ObjectMapper objectMapper() {
         ObjectMapper mapper = new ObjectMapper();
@@ -1,25 +1,38 @@
 package com.orbit.progress.consumer;
 
+import com.orbit.common.service.EventDeduplicator;
 import com.orbit.progress.event.LearningEvent;
 import com.orbit.progress.service.ProgressCalculationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 @Component
+@ConditionalOnProperty(name = "progress.consumer.parallel.enabled", havingValue = "false", matchIfMissing = true)
 @RequiredArgsConstructor
 @Slf4j
 public class LearningEventConsumer {
 
     private final ProgressCalculationService progressCalculationService;
+    private final EventDeduplicator eventDeduplicator;
     private static final String TOPIC = "learning-events";
 
     @KafkaListener(topics = TOPIC, groupId = "progress-service-group", containerFactory = "kafkaListenerContainerFactory")
-    public void consumeLearningEvent(LearningEvent event) {
+    public void consumeLearningEvent(LearningEvent event,
+                                     @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                                     @Header(KafkaHeaders.OFFSET) long offset) {
         try {
             log.debug("Consumed learning event: {}", event);
-            progressCalculationService.processEvent(event);
+            String eventId = EventDeduplicator.idOf(event.getEventId(), partition, offset);
+            if (eventDeduplicator.isDuplicate(eventId, partition)) {
+                log.debug("Skipping redelivered event: eventId={}", eventId);
+                return;
+            }
+            progressCalculationService.processEvent(event, () -> eventDeduplicator.markProcessed(eventId, partition));
         } catch (Exception e) {
             log.error("Failed to process learning event: {}", event, e);
             // Don't throw - allow processing to continue for other events
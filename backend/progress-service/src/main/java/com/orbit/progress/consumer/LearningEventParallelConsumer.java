@@ -0,0 +1,56 @@
+package com.orbit.progress.consumer;
+
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.KeyOrderedLanes;
+import com.orbit.progress.event.LearningEvent;
+import com.orbit.progress.service.ProgressCalculationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+/**
+ * Parallel variant of {@link LearningEventConsumer}: records of one partition are spread over
+ * {@link KeyOrderedLanes} by userId. All progress state is per user, so one user's events stay in
+ * order while unrelated users are processed concurrently. Each record is acknowledged when its
+ * lane finishes it.
+ */
+@Component
+@ConditionalOnProperty(name = "progress.consumer.parallel.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class LearningEventParallelConsumer {
+
+    private final ProgressCalculationService progressCalculationService;
+    private final EventDeduplicator eventDeduplicator;
+    private final KeyOrderedLanes consumerLanes;
+    private static final String TOPIC = "learning-events";
+
+    @KafkaListener(topics = TOPIC, groupId = "progress-service-group", containerFactory = "parallelKafkaListenerContainerFactory")
+    public void consumeLearningEvent(LearningEvent event,
+                                     @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                                     @Header(KafkaHeaders.OFFSET) long offset,
+                                     Acknowledgment acknowledgment) {
+        consumerLanes.submit(event.getUserId(), () -> {
+            try {
+                log.debug("Consumed learning event: {}", event);
+                // Checked in the lane, so a redelivered copy in the same poll sees the first one marked
+                String eventId = EventDeduplicator.idOf(event.getEventId(), partition, offset);
+                if (eventDeduplicator.isDuplicate(eventId, partition)) {
+                    log.debug("Skipping redelivered event: eventId={}", eventId);
+                    return;
+                }
+                progressCalculationService.processEvent(event, () -> eventDeduplicator.markProcessed(eventId, partition));
+            } catch (Exception e) {
+                log.error("Failed to process learning event: {}", event, e);
+                // Don't throw - allow processing to continue for other events
+            } finally {
+                acknowledgment.acknowledge();
+            }
+        });
+    }
+}
@@ -1,12 +1,21 @@
 package com.orbit.progress.controller;
 
+import com.orbit.common.model.DedupStats;
+import com.orbit.common.model.NearCacheStats;
+import com.orbit.common.model.RebuildStatus;
+import com.orbit.common.model.SseStats;
+import com.orbit.common.service.EventDeduplicator;
+import com.orbit.common.service.ReplayRebuildService;
 import com.orbit.progress.model.UserProgressSnapshot;
 import com.orbit.progress.service.ProgressEventStreamService;
 import com.orbit.progress.service.ProgressStorageService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -21,14 +30,68 @@ public class ProgressController {
 
     private final ProgressStorageService progressStorageService;
     private final ProgressEventStreamService progressEventStreamService;
+    private final ReplayRebuildService<?, ?> replayRebuildService;
+    private final EventDeduplicator eventDeduplicator;
 
     /**
      * Server-Sent Events stream for progress updates. Read-only; REST remains source of truth.
-     * Client should refetch from REST when progress_updated is received.
+     * mode=notify (default): client should refetch from REST when progress_updated is received.
+     * mode=data: progress_data events carry the changed course/path snapshots and a version id; on
+     * reconnect the browser's Last-Event-ID replays missed events, and a resync event means reload from REST.
+     * 503 when this instance is at its connection limit.
      */
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamProgress(@RequestParam String userId) {
-        return progressEventStreamService.subscribe(userId);
+    public ResponseEntity<SseEmitter> streamProgress(@RequestParam String userId,
+                                                     @RequestParam(defaultValue = "notify") String mode,
+                                                     @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = progressEventStreamService.subscribe(userId, "data".equalsIgnoreCase(mode), lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * In-process L1 cache state: size, hit rate, evictions and L1/L2 latencies.
+     */
+    @GetMapping("/internal/cache")
+    public ResponseEntity<NearCacheStats> getCacheStats() {
+        return ResponseEntity.ok(progressStorageService.getNearCacheStats());
+    }
+
+    /**
+     * Redelivery filter state: checks, dropped duplicates, Bloom false positives and average check time.
+     */
+    @GetMapping("/internal/dedup")
+    public ResponseEntity<DedupStats> getDedupStats() {
+        return ResponseEntity.ok(eventDeduplicator.getStats());
+    }
+
+    /**
+     * This instance's SSE fan-out: local connections, relay traffic and lag, delivery and replay counts.
+     */
+    @GetMapping("/internal/sse")
+    public ResponseEntity<SseStats> getSseStats() {
+        return ResponseEntity.ok(progressEventStreamService.getStats());
+    }
+
+    /**
+     * Start rebuilding progress from the full event log (409 if one is running). Poll GET for progress.
+     */
+    @PostMapping("/internal/rebuild")
+    public ResponseEntity<RebuildStatus> startRebuild() {
+        if (!replayRebuildService.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(replayRebuildService.getStatus());
+        }
+        return ResponseEntity.accepted().body(replayRebuildService.getStatus());
+    }
+
+    /**
+     * Rebuild phase, per-partition offsets, events read and throughput.
+     */
+    @GetMapping("/internal/rebuild")
+    public ResponseEntity<RebuildStatus> getRebuildStatus() {
+        return ResponseEntity.ok(replayRebuildService.getStatus());
     }
 
     @GetMapping("/users/{userId}/courses/{courseId}")
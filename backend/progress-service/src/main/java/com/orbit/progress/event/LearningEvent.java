@@ -11,6 +11,8 @@ import java.time.Instant;
 @AllArgsConstructor
 public class LearningEvent {
 
+    // Producer-assigned unique id, used to drop redeliveries; may be absent on older events
+    private String eventId;
     private LearningEventType eventType;
     private String userId;
     private String pathId;
@@ -1,5 +1,7 @@
 package com.orbit.progress.service;
 
+import com.orbit.common.service.HotPathMetrics;
+import com.orbit.common.service.WriteFence;
 import com.orbit.progress.event.LearningEvent;
 import com.orbit.progress.event.LearningEventType;
 import com.orbit.progress.model.UserProgressSnapshot;
@@ -16,82 +18,85 @@ public class ProgressCalculationService {
 
     private final ProgressStorageService progressStorageService;
     private final ProgressEventStreamService progressEventStreamService;
+    private final HotPathMetrics metrics;
+    private final WriteFence writeFence;
     private static final int DEFAULT_TOTAL_LESSONS = 10; // Stubbed - should come from config or external service
 
     public void processEvent(LearningEvent event) {
-        if (event.getEventType() == LearningEventType.LESSON_STARTED) {
-            handleLessonStarted(event);
-        } else if (event.getEventType() == LearningEventType.LESSON_COMPLETED) {
-            handleLessonCompleted(event);
-        }
+        processEvent(event, () -> { });
+    }
+
+    /**
+     * Apply one event, then run {@code onPersisted} (the dedup mark) inside the same
+     * {@link WriteFence} section, so a snapshot never holds the writes without the mark.
+     */
+    public void processEvent(LearningEvent event, Runnable onPersisted) {
+        writeFence.write(() -> {
+            if (event.getEventType() == LearningEventType.LESSON_STARTED
+                    || event.getEventType() == LearningEventType.LESSON_COMPLETED) {
+                metrics.eventProcessing().record(() -> handleLessonEvent(event));
+            }
+            onPersisted.run();
+        });
     }
 
-    private void handleLessonStarted(LearningEvent event) {
+    private void handleLessonEvent(LearningEvent event) {
         UserProgressSnapshot courseProgress = getOrCreateCourseProgress(event);
-        courseProgress.setLastUpdatedAt(event.getOccurredAt());
+        applyEvent(courseProgress, event);
         progressStorageService.saveCourseProgress(courseProgress);
         progressStorageService.invalidateCourseProgressCache(event.getUserId(), event.getCourseId());
 
         UserProgressSnapshot pathProgress = getOrCreatePathProgress(event);
-        pathProgress.setLastUpdatedAt(event.getOccurredAt());
+        applyEvent(pathProgress, event);
         progressStorageService.savePathProgress(pathProgress);
         progressStorageService.invalidatePathProgressCache(event.getUserId(), event.getPathId());
+        metrics.recordFreshness(event.getOccurredAt());
 
-        progressEventStreamService.pushProgressUpdated(event.getUserId());
+        progressEventStreamService.pushProgressUpdated(courseProgress, pathProgress);
     }
 
-    private void handleLessonCompleted(LearningEvent event) {
-        UserProgressSnapshot courseProgress = getOrCreateCourseProgress(event);
-        courseProgress.setCompletedLessonsCount(courseProgress.getCompletedLessonsCount() + 1);
-        courseProgress.setCompletionPercentage(calculatePercentage(courseProgress.getCompletedLessonsCount(), courseProgress.getTotalLessons()));
-        courseProgress.setLastUpdatedAt(event.getOccurredAt());
-        progressStorageService.saveCourseProgress(courseProgress);
-        progressStorageService.invalidateCourseProgressCache(event.getUserId(), event.getCourseId());
+    /**
+     * Fold one event into a course or path snapshot. Shared by the live path and replay rebuilds.
+     */
+    static void applyEvent(UserProgressSnapshot progress, LearningEvent event) {
+        if (event.getEventType() == LearningEventType.LESSON_COMPLETED) {
+            progress.setCompletedLessonsCount(progress.getCompletedLessonsCount() + 1);
+            progress.setCompletionPercentage(calculatePercentage(progress.getCompletedLessonsCount(), progress.getTotalLessons()));
+        }
+        progress.setLastUpdatedAt(event.getOccurredAt());
+    }
 
-        UserProgressSnapshot pathProgress = getOrCreatePathProgress(event);
-        pathProgress.setCompletedLessonsCount(pathProgress.getCompletedLessonsCount() + 1);
-        pathProgress.setCompletionPercentage(calculatePercentage(pathProgress.getCompletedLessonsCount(), pathProgress.getTotalLessons()));
-        pathProgress.setLastUpdatedAt(event.getOccurredAt());
-        progressStorageService.savePathProgress(pathProgress);
-        progressStorageService.invalidatePathProgressCache(event.getUserId(), event.getPathId());
+    static UserProgressSnapshot newCourseProgress(LearningEvent event) {
+        UserProgressSnapshot progress = newPathProgress(event);
+        progress.setCourseId(event.getCourseId());
+        return progress;
+    }
 
-        progressEventStreamService.pushProgressUpdated(event.getUserId());
+    static UserProgressSnapshot newPathProgress(LearningEvent event) {
+        UserProgressSnapshot progress = new UserProgressSnapshot();
+        progress.setUserId(event.getUserId());
+        progress.setPathId(event.getPathId());
+        progress.setTotalLessons(DEFAULT_TOTAL_LESSONS);
+        progress.setCompletedLessonsCount(0);
+        progress.setCompletionPercentage(0.0);
+        progress.setLastUpdatedAt(Instant.now());
+        return progress;
     }
 
     private UserProgressSnapshot getOrCreateCourseProgress(LearningEvent event) {
-        UserProgressSnapshot progress = progressStorageService.getCourseProgress(event.getUserId(), event.getCourseId());
-        if (progress == null) {
-            progress = new UserProgressSnapshot();
-            progress.setUserId(event.getUserId());
-            progress.setCourseId(event.getCourseId());
-            progress.setPathId(event.getPathId());
-            progress.setTotalLessons(DEFAULT_TOTAL_LESSONS);
-            progress.setCompletedLessonsCount(0);
-            progress.setCompletionPercentage(0.0);
-            progress.setLastUpdatedAt(Instant.now());
-        }
-        return progress;
+        UserProgressSnapshot progress = progressStorageService.getCourseProgressForUpdate(event.getUserId(), event.getCourseId());
+        return progress != null ? progress : newCourseProgress(event);
     }
 
     private UserProgressSnapshot getOrCreatePathProgress(LearningEvent event) {
-        UserProgressSnapshot progress = progressStorageService.getPathProgress(event.getUserId(), event.getPathId());
-        if (progress == null) {
-            progress = new UserProgressSnapshot();
-            progress.setUserId(event.getUserId());
-            progress.setPathId(event.getPathId());
-            progress.setTotalLessons(DEFAULT_TOTAL_LESSONS);
-            progress.setCompletedLessonsCount(0);
-            progress.setCompletionPercentage(0.0);
-            progress.setLastUpdatedAt(Instant.now());
-        }
-        return progress;
+        UserProgressSnapshot progress = progressStorageService.getPathProgressForUpdate(event.getUserId(), event.getPathId());
+        return progress != null ? progress : newPathProgress(event);
     }
 
-    private double calculatePercentage(int completed, int total) {
+    static double calculatePercentage(int completed, int total) {
         if (total == 0) {
             return 0.0;
         }
         return (completed * 100.0) / total;
     }
 }
-
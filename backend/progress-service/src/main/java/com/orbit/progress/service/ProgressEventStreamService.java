@@ -1,66 +1,209 @@
 package com.orbit.progress.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orbit.common.model.SseStats;
+import com.orbit.common.service.HotPathMetrics;
+import com.orbit.common.service.SseBroadcaster;
+import com.orbit.common.service.SseConnectionManager;
+import com.orbit.common.service.SseRelay;
+import com.orbit.progress.model.UserProgressSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Server-Sent Events for progress updates. Read-only stream; REST remains source of truth.
  * Notifies subscribers when progress for a user has changed (after event consumption).
+ * Notifications are debounced per user and sent off the consumer thread by {@link SseBroadcaster}.
+ * <p>
+ * In data mode the stream carries only the course and path snapshots that changed, with a
+ * version id, so clients need no REST refetch; see {@link SseBroadcaster} for Last-Event-ID replay.
+ * <p>
+ * With the relay enabled, updates reach subscribers connected to any instance, whichever
+ * instance consumed the event; see {@link SseRelay}.
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class ProgressEventStreamService {
 
-    private static final long SSE_TIMEOUT_MS = 5 * 60 * 1000; // 5 minutes
+    private static final SseBroadcaster.Message CONNECTED = new SseBroadcaster.Message(null, "connected", "progress");
 
-    private final Map<String, CopyOnWriteArrayList<SseEmitter>> emittersByUserId = new ConcurrentHashMap<>();
+    private static final String RELAY_CHANNEL_PREFIX = "progress:sse:";
 
-    public SseEmitter subscribe(String userId) {
-        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MS);
-        emittersByUserId.computeIfAbsent(userId, k -> new CopyOnWriteArrayList<>()).add(emitter);
+    private final ObjectMapper objectMapper;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Environment environment;
+    private final HotPathMetrics metrics;
 
-        emitter.onCompletion(() -> remove(userId, emitter));
-        emitter.onTimeout(() -> remove(userId, emitter));
-        emitter.onError((e) -> remove(userId, emitter));
+    @Value("${progress.sse.debounce-ms:250}")
+    private long debounceMs;
 
-        try {
-            emitter.send(SseEmitter.event().name("connected").data("progress"));
-        } catch (IOException e) {
-            log.debug("Failed to send initial SSE event", e);
-            remove(userId, emitter);
+    @Value("${progress.sse.queue-capacity:16}")
+    private int queueCapacity;
+
+    @Value("${progress.sse.sender-threads:4}")
+    private int senderThreads;
+
+    /**
+     * Maximum stream lifetime; clients reconnect (with Last-Event-ID in data mode).
+     */
+    @Value("${progress.sse.timeout-ms:3600000}")
+    private long timeoutMs;
+
+    @Value("${progress.sse.max-connections:100000}")
+    private int maxConnections;
+
+    @Value("${progress.sse.max-connections-per-user:8}")
+    private int maxConnectionsPerUser;
+
+    @Value("${progress.sse.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${progress.sse.stall-timeout-ms:30000}")
+    private long stallTimeoutMs;
+
+    @Value("${progress.sse.wheel-tick-ms:100}")
+    private long wheelTickMs;
+
+    @Value("${progress.sse.replay-size:32}")
+    private int replaySize;
+
+    @Value("${progress.sse.replay-ttl-ms:300000}")
+    private long replayTtlMs;
+
+    @Value("${progress.sse.replay-max-users:100000}")
+    private long replayMaxUsers;
+
+    @Value("${progress.sse.relay.enabled:true}")
+    private boolean relayEnabled;
+
+    @Value("${progress.sse.relay.shards:64}")
+    private int relayShards;
+
+    private SseBroadcaster<ProgressChanges> broadcaster;
+    private SseRelay<ProgressChanges> relay;
+
+    @PostConstruct
+    void init() {
+        SseConnectionManager.Settings connectionSettings = new SseConnectionManager.Settings(queueCapacity, senderThreads,
+                maxConnections, maxConnectionsPerUser, heartbeatIntervalMs, stallTimeoutMs, wheelTickMs,
+                Threading.VIRTUAL.isActive(environment));
+        broadcaster = new SseBroadcaster<>("progress", debounceMs, connectionSettings,
+                replaySize, replayTtlMs, replayMaxUsers,
+                userId -> new SseBroadcaster.Message(null, "progress_updated",
+                        "{\"type\":\"progress_updated\",\"userId\":\"" + userId + "\"}"),
+                "progress_data", ProgressChanges::merge, this::dataPayload);
+        broadcaster.timeFanOutWith(metrics.sseFanOut());
+        if (relayEnabled) {
+            relay = new SseRelay<>(RELAY_CHANNEL_PREFIX, relayShards, redisTemplate, listenerContainer,
+                    objectMapper, ProgressChanges.class, broadcaster::deliver);
+            broadcaster.relayThrough(relay);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        log.info("Progress SSE: requested={}, queued={}, skippedBackedUp={}, replayed={}, resyncs={}",
+                broadcaster.requestedCount(), broadcaster.queuedCount(), broadcaster.skippedBackedUpCount(),
+                broadcaster.replayedCount(), broadcaster.resyncCount());
+        broadcaster.close();
+        if (relay != null) {
+            relay.close();
         }
-        return emitter;
+    }
+
+    public SseEmitter subscribe(String userId) {
+        return subscribe(userId, false, null);
+    }
+
+    /**
+     * @param data        stream {@code progress_data} events with changed snapshots instead of notifications
+     * @param lastEventId the client's {@code Last-Event-ID} header on reconnect, if any
+     * @return the stream, or null when this instance is at {@code progress.sse.max-connections}
+     */
+    public SseEmitter subscribe(String userId, boolean data, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        return broadcaster.register(userId, emitter, data, lastEventId, CONNECTED) ? emitter : null;
     }
 
     /**
      * Notify subscribers that progress for this user was updated (call after event processing).
+     * Never blocks: repeated calls within the debounce window become one event.
+     *
+     * @param courseProgress the course snapshot as just written
+     * @param pathProgress   the path snapshot as just written
      */
-    public void pushProgressUpdated(String userId) {
-        CopyOnWriteArrayList<SseEmitter> emitters = emittersByUserId.get(userId);
-        if (emitters == null || emitters.isEmpty()) return;
-        String payload = "{\"type\":\"progress_updated\",\"userId\":\"" + userId + "\"}";
-        emitters.forEach(emitter -> {
-            try {
-                emitter.send(SseEmitter.event().name("progress_updated").data(payload));
-            } catch (IOException e) {
-                remove(userId, emitter);
-            }
-        });
+    public void pushProgressUpdated(UserProgressSnapshot courseProgress, UserProgressSnapshot pathProgress) {
+        ProgressChanges changes = new ProgressChanges();
+        changes.getCourses().put(courseProgress.getCourseId(), courseProgress);
+        changes.getPaths().put(pathProgress.getPathId(), pathProgress);
+        broadcaster.markDirty(courseProgress.getUserId(), changes);
+    }
+
+    public SseStats getStats() {
+        SseStats stats = broadcaster.stats();
+        if (relay != null) {
+            relay.addStats(stats);
+        }
+        return stats;
+    }
+
+    private String dataPayload(ProgressChanges changes, long version) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "progress_data");
+        payload.put("version", version);
+        payload.put("userId", changes.userId());
+        payload.put("courses", List.copyOf(changes.getCourses().values()));
+        payload.put("paths", List.copyOf(changes.getPaths().values()));
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private void remove(String userId, SseEmitter emitter) {
-        CopyOnWriteArrayList<SseEmitter> list = emittersByUserId.get(userId);
-        if (list != null) {
-            list.remove(emitter);
-            if (list.isEmpty()) {
-                emittersByUserId.remove(userId);
-            }
+    /**
+     * Latest course and path snapshots touched within one debounce window, by course/path id.
+     * Serialized as is when relayed to other instances.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class ProgressChanges {
+        private Map<String, UserProgressSnapshot> courses = new LinkedHashMap<>();
+        private Map<String, UserProgressSnapshot> paths = new LinkedHashMap<>();
+
+        static ProgressChanges merge(ProgressChanges older, ProgressChanges newer) {
+            ProgressChanges merged = new ProgressChanges();
+            merged.courses.putAll(older.courses);
+            merged.courses.putAll(newer.courses);
+            merged.paths.putAll(older.paths);
+            merged.paths.putAll(newer.paths);
+            return merged;
+        }
+
+        private String userId() {
+            return courses.values().stream().findFirst()
+                    .or(() -> paths.values().stream().findFirst())
+                    .map(UserProgressSnapshot::getUserId)
+                    .orElse(null);
         }
     }
 }
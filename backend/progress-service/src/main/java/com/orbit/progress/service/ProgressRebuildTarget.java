@@ -0,0 +1,62 @@
+package com.orbit.progress.service;
+
+import com.orbit.common.service.ReplayRebuildService;
+import com.orbit.progress.event.LearningEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Replay rebuild of course and path progress: events are folded into in-memory snapshots that
+ * replace the stored ones, instead of the per-record read-modify-write path.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProgressRebuildTarget implements ReplayRebuildService.Target<LearningEvent, ProgressReplayState> {
+
+    private final ProgressStorageService progressStorageService;
+
+    @Override
+    public ProgressReplayState newState() {
+        return new ProgressReplayState();
+    }
+
+    @Override
+    public void add(ProgressReplayState state, LearningEvent event) {
+        state.add(event);
+    }
+
+    @Override
+    public void merge(ProgressReplayState state, ProgressReplayState other) {
+        state.merge(other);
+    }
+
+    @Override
+    public long load(ProgressReplayState state, String prefix, int batchSize) throws IOException {
+        return progressStorageService.loadSnapshots(state.getCourses().values(), state.getPaths().values(), prefix, batchSize);
+    }
+
+    /**
+     * Snapshots are absolute, so the gap is merged into the folded state and only the snapshots it
+     * touched are rewritten.
+     */
+    @Override
+    public void applyGap(ProgressReplayState state, ProgressReplayState gap, String prefix, int batchSize) throws IOException {
+        state.merge(gap);
+        progressStorageService.loadSnapshots(
+                gap.getCourses().keySet().stream().map(state.getCourses()::get).toList(),
+                gap.getPaths().keySet().stream().map(state.getPaths()::get).toList(),
+                prefix, batchSize);
+    }
+
+    @Override
+    public long deleteGeneration(String prefix) {
+        return progressStorageService.deleteGeneration(prefix);
+    }
+
+    @Override
+    public void purgeApiCache() {
+        progressStorageService.purgeApiCache();
+    }
+}
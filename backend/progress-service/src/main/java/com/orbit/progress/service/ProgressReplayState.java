@@ -0,0 +1,66 @@
+package com.orbit.progress.service;
+
+import com.orbit.progress.event.LearningEvent;
+import com.orbit.progress.event.LearningEventType;
+import com.orbit.progress.model.UserProgressSnapshot;
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Course and path snapshots held in memory, keyed by {@code userId|courseId} and {@code userId|pathId}:
+ * folded from a range of the event log during a rebuild, or read from Redis for a disk snapshot.
+ */
+@Getter
+public class ProgressReplayState {
+
+    private final Map<String, UserProgressSnapshot> courses = new HashMap<>();
+    private final Map<String, UserProgressSnapshot> paths = new HashMap<>();
+    private long events;
+
+    void add(LearningEvent event) {
+        if (event.getEventType() != LearningEventType.LESSON_STARTED
+                && event.getEventType() != LearningEventType.LESSON_COMPLETED) {
+            return;
+        }
+        ProgressCalculationService.applyEvent(
+                courses.computeIfAbsent(event.getUserId() + "|" + event.getCourseId(),
+                        k -> ProgressCalculationService.newCourseProgress(event)),
+                event);
+        ProgressCalculationService.applyEvent(
+                paths.computeIfAbsent(event.getUserId() + "|" + event.getPathId(),
+                        k -> ProgressCalculationService.newPathProgress(event)),
+                event);
+        events++;
+    }
+
+    void putCourse(UserProgressSnapshot snapshot) {
+        courses.put(snapshot.getUserId() + "|" + snapshot.getCourseId(), snapshot);
+    }
+
+    void putPath(UserProgressSnapshot snapshot) {
+        paths.put(snapshot.getUserId() + "|" + snapshot.getPathId(), snapshot);
+    }
+
+    /**
+     * Add another state into this one: completion counts are summed and the later update time wins.
+     * Snapshots of {@code other} may be taken over as-is, so it must not be used afterwards.
+     */
+    void merge(ProgressReplayState other) {
+        other.courses.forEach((key, snapshot) -> courses.merge(key, snapshot, ProgressReplayState::combine));
+        other.paths.forEach((key, snapshot) -> paths.merge(key, snapshot, ProgressReplayState::combine));
+        events += other.events;
+    }
+
+    private static UserProgressSnapshot combine(UserProgressSnapshot current, UserProgressSnapshot added) {
+        current.setCompletedLessonsCount(current.getCompletedLessonsCount() + added.getCompletedLessonsCount());
+        current.setCompletionPercentage(ProgressCalculationService.calculatePercentage(
+                current.getCompletedLessonsCount(), current.getTotalLessons()));
+        if (current.getLastUpdatedAt() == null
+                || (added.getLastUpdatedAt() != null && added.getLastUpdatedAt().isAfter(current.getLastUpdatedAt()))) {
+            current.setLastUpdatedAt(added.getLastUpdatedAt());
+        }
+        return current;
+    }
+}
@@ -1,15 +1,25 @@
 package com.orbit.progress.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orbit.common.model.NearCacheStats;
+import com.orbit.common.service.HotPathMetrics;
+import com.orbit.common.service.KeyGeneration;
+import com.orbit.common.service.NearCache;
+import com.orbit.common.service.ValueCodec;
 import com.orbit.progress.model.UserProgressSnapshot;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -17,15 +27,19 @@ import java.util.concurrent.TimeUnit;
 public class ProgressStorageService {
 
     private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final RedisTemplate<String, byte[]> binaryRedisTemplate;
+    private final ValueCodec<UserProgressSnapshot> progressSnapshotCodec;
+    private final NearCache nearCache;
+    private final KeyGeneration keyGeneration;
+    private final HotPathMetrics metrics;
 
-    @Value("${cache.progress.ttl-seconds:60}")
-    private long cacheTtlSeconds;
-
-    private static final String COURSE_PROGRESS_KEY_PREFIX = "progress:user:";
+    // Appended to the active generation's prefix ("progress:" for generation 0), see KeyGeneration
+    private static final String COURSE_PROGRESS_KEY_PREFIX = "user:";
     private static final String COURSE_PROGRESS_KEY_SUFFIX = ":course:";
-    private static final String PATH_PROGRESS_KEY_PREFIX = "progress:user:";
+    private static final String PATH_PROGRESS_KEY_PREFIX = "user:";
     private static final String PATH_PROGRESS_KEY_SUFFIX = ":path:";
+    private static final String APICACHE_PATTERN = "progress:apicache:*";
+    private static final int SCAN_COUNT = 500;
     private static final String CACHE_PREFIX_COURSE = "progress:apicache:user:";
     private static final String CACHE_SUFFIX_COURSE = ":course:";
     private static final String CACHE_PREFIX_PATH = "progress:apicache:user:";
@@ -33,90 +47,159 @@ public class ProgressStorageService {
 
     public void saveCourseProgress(UserProgressSnapshot progress) {
         try {
-            String key = COURSE_PROGRESS_KEY_PREFIX + progress.getUserId() + COURSE_PROGRESS_KEY_SUFFIX + progress.getCourseId();
-            String value = objectMapper.writeValueAsString(progress);
-            redisTemplate.opsForValue().set(key, value);
+            String key = courseKey(keyGeneration.keyPrefix(), progress.getUserId(), progress.getCourseId());
+            byte[] value = progressSnapshotCodec.encode(progress);
+            metrics.redis("course.set", () -> binaryRedisTemplate.opsForValue().set(key, value));
             log.debug("Saved course progress: {}", key);
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Failed to save course progress: {}", progress, e);
         }
     }
 
     public void savePathProgress(UserProgressSnapshot progress) {
         try {
-            String key = PATH_PROGRESS_KEY_PREFIX + progress.getUserId() + PATH_PROGRESS_KEY_SUFFIX + progress.getPathId();
-            String value = objectMapper.writeValueAsString(progress);
-            redisTemplate.opsForValue().set(key, value);
+            String key = pathKey(keyGeneration.keyPrefix(), progress.getUserId(), progress.getPathId());
+            byte[] value = progressSnapshotCodec.encode(progress);
+            metrics.redis("path.set", () -> binaryRedisTemplate.opsForValue().set(key, value));
             log.debug("Saved path progress: {}", key);
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Failed to save path progress: {}", progress, e);
         }
     }
 
     /**
-     * Invalidate read-through cache for course progress (call after event updates).
+     * Invalidate the in-process caches for course progress (call after event updates). Reads below L1
+     * go to the stored snapshot, so there is no Redis copy to drop.
      */
     public void invalidateCourseProgressCache(String userId, String courseId) {
-        String cacheKey = CACHE_PREFIX_COURSE + userId + CACHE_SUFFIX_COURSE + courseId;
-        Boolean removed = redisTemplate.delete(cacheKey);
-        if (Boolean.TRUE.equals(removed)) {
-            log.debug("Invalidated progress cache: {}", cacheKey);
-        }
+        nearCache.publishInvalidation(CACHE_PREFIX_COURSE + userId + CACHE_SUFFIX_COURSE + courseId);
     }
 
     /**
-     * Invalidate read-through cache for path progress (call after event updates).
+     * Invalidate the in-process caches for path progress (call after event updates). Reads below L1
+     * go to the stored snapshot, so there is no Redis copy to drop.
      */
     public void invalidatePathProgressCache(String userId, String pathId) {
-        String cacheKey = CACHE_PREFIX_PATH + userId + CACHE_SUFFIX_PATH + pathId;
-        Boolean removed = redisTemplate.delete(cacheKey);
-        if (Boolean.TRUE.equals(removed)) {
-            log.debug("Invalidated progress cache: {}", cacheKey);
-        }
+        nearCache.publishInvalidation(CACHE_PREFIX_PATH + userId + CACHE_SUFFIX_PATH + pathId);
     }
 
+    /**
+     * Read path: in-process L1, then the stored snapshot (L2). Do not mutate the result.
+     */
     public UserProgressSnapshot getCourseProgress(String userId, String courseId) {
+        return nearCache.get(CACHE_PREFIX_COURSE + userId + CACHE_SUFFIX_COURSE + courseId, UserProgressSnapshot.class,
+                () -> getCourseProgressForUpdate(userId, courseId));
+    }
+
+    /**
+     * Read path: in-process L1, then the stored snapshot (L2). Do not mutate the result.
+     */
+    public UserProgressSnapshot getPathProgress(String userId, String pathId) {
+        return nearCache.get(CACHE_PREFIX_PATH + userId + CACHE_SUFFIX_PATH + pathId, UserProgressSnapshot.class,
+                () -> getPathProgressForUpdate(userId, pathId));
+    }
+
+    public NearCacheStats getNearCacheStats() {
+        return nearCache.getStats();
+    }
+
+    /**
+     * L2-only read returning a private copy that the write path may modify.
+     */
+    public UserProgressSnapshot getCourseProgressForUpdate(String userId, String courseId) {
         try {
-            String cacheKey = CACHE_PREFIX_COURSE + userId + CACHE_SUFFIX_COURSE + courseId;
-            String cached = redisTemplate.opsForValue().get(cacheKey);
-            if (cached != null) {
-                log.debug("Progress cache hit: {}", cacheKey);
-                return objectMapper.readValue(cached, UserProgressSnapshot.class);
-            }
-            String key = COURSE_PROGRESS_KEY_PREFIX + userId + COURSE_PROGRESS_KEY_SUFFIX + courseId;
-            String value = redisTemplate.opsForValue().get(key);
-            if (value == null) {
-                return null;
-            }
-            UserProgressSnapshot snapshot = objectMapper.readValue(value, UserProgressSnapshot.class);
-            redisTemplate.opsForValue().set(cacheKey, value, cacheTtlSeconds, TimeUnit.SECONDS);
-            return snapshot;
-        } catch (JsonProcessingException e) {
+            String key = courseKey(keyGeneration.keyPrefix(), userId, courseId);
+            return progressSnapshotCodec.decode(metrics.redis("course.get", () -> binaryRedisTemplate.opsForValue().get(key)));
+        } catch (IOException e) {
             log.error("Failed to get course progress for userId: {}, courseId: {}", userId, courseId, e);
             return null;
         }
     }
 
-    public UserProgressSnapshot getPathProgress(String userId, String pathId) {
+    /**
+     * L2-only read returning a private copy that the write path may modify.
+     */
+    public UserProgressSnapshot getPathProgressForUpdate(String userId, String pathId) {
         try {
-            String cacheKey = CACHE_PREFIX_PATH + userId + CACHE_SUFFIX_PATH + pathId;
-            String cached = redisTemplate.opsForValue().get(cacheKey);
-            if (cached != null) {
-                log.debug("Progress cache hit: {}", cacheKey);
-                return objectMapper.readValue(cached, UserProgressSnapshot.class);
-            }
-            String key = PATH_PROGRESS_KEY_PREFIX + userId + PATH_PROGRESS_KEY_SUFFIX + pathId;
-            String value = redisTemplate.opsForValue().get(key);
-            if (value == null) {
-                return null;
-            }
-            UserProgressSnapshot snapshot = objectMapper.readValue(value, UserProgressSnapshot.class);
-            redisTemplate.opsForValue().set(cacheKey, value, cacheTtlSeconds, TimeUnit.SECONDS);
-            return snapshot;
-        } catch (JsonProcessingException e) {
+            String key = pathKey(keyGeneration.keyPrefix(), userId, pathId);
+            return progressSnapshotCodec.decode(metrics.redis("path.get", () -> binaryRedisTemplate.opsForValue().get(key)));
+        } catch (IOException e) {
             log.error("Failed to get path progress for userId: {}, pathId: {}", userId, pathId, e);
             return null;
         }
     }
-}
 
+    /**
+     * Write rebuilt snapshots into the generation with {@code prefix}, {@code chunkSize} keys per pipeline.
+     *
+     * @return number of keys written
+     */
+    public int loadSnapshots(Collection<UserProgressSnapshot> courses, Collection<UserProgressSnapshot> paths,
+                             String prefix, int chunkSize) throws IOException {
+        List<Map.Entry<String, byte[]>> rows = new ArrayList<>(courses.size() + paths.size());
+        for (UserProgressSnapshot course : courses) {
+            rows.add(Map.entry(courseKey(prefix, course.getUserId(), course.getCourseId()), progressSnapshotCodec.encode(course)));
+        }
+        for (UserProgressSnapshot path : paths) {
+            rows.add(Map.entry(pathKey(prefix, path.getUserId(), path.getPathId()), progressSnapshotCodec.encode(path)));
+        }
+        for (int from = 0; from < rows.size(); from += chunkSize) {
+            List<Map.Entry<String, byte[]>> chunk = rows.subList(from, Math.min(rows.size(), from + chunkSize));
+            binaryRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    chunk.forEach(row -> operations.opsForValue().set(row.getKey(), row.getValue()));
+                    return null;
+                }
+            });
+        }
+        return rows.size();
+    }
+
+    /**
+     * Remove every progress key of a generation (SCAN + UNLINK, never KEYS).
+     */
+    public long deleteGeneration(String prefix) {
+        return unlinkMatching(prefix + COURSE_PROGRESS_KEY_PREFIX + "*");
+    }
+
+    /**
+     * Drop all Redis apicache entries, e.g. after switching generations. Only entries written before
+     * reads went straight to the stored snapshots remain.
+     */
+    public long purgeApiCache() {
+        return unlinkMatching(APICACHE_PATTERN);
+    }
+
+    private long unlinkMatching(String pattern) {
+        long removed = 0;
+        List<String> chunk = new ArrayList<>(SCAN_COUNT);
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build())) {
+            while (cursor.hasNext()) {
+                chunk.add(cursor.next());
+                if (chunk.size() == SCAN_COUNT) {
+                    removed += unlink(chunk);
+                }
+            }
+        }
+        return removed + unlink(chunk);
+    }
+
+    private long unlink(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        Long removed = redisTemplate.unlink(keys);
+        keys.clear();
+        return removed != null ? removed : 0;
+    }
+
+    private static String courseKey(String prefix, String userId, String courseId) {
+        return prefix + COURSE_PROGRESS_KEY_PREFIX + userId + COURSE_PROGRESS_KEY_SUFFIX + courseId;
+    }
+
+    private static String pathKey(String prefix, String userId, String pathId) {
+        return prefix + PATH_PROGRESS_KEY_PREFIX + userId + PATH_PROGRESS_KEY_SUFFIX + pathId;
+    }
+}
@@ -0,0 +1,47 @@
+package com.orbit.progress.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orbit.common.service.ValueCodec;
+import com.orbit.progress.model.UserProgressSnapshot;
+
+import java.io.IOException;
+
+/**
+ * {@link ValueCodec} layout of the stored progress snapshots ({@code progress.storage.value-codec}).
+ */
+public final class ProgressValueCodecs {
+
+    private ProgressValueCodecs() {
+    }
+
+    public static ValueCodec<UserProgressSnapshot> progressSnapshot(ValueCodec.Format format, ObjectMapper objectMapper) {
+        return ValueCodec.of(UserProgressSnapshot.class, PROGRESS_SNAPSHOT, format, objectMapper);
+    }
+
+    private static final ValueCodec.Layout<UserProgressSnapshot> PROGRESS_SNAPSHOT = new ValueCodec.Layout<>() {
+        @Override
+        public void write(UserProgressSnapshot value, ValueCodec.Writer out) {
+            out.presence(value.getUserId(), value.getPathId(), value.getCourseId(), value.getLastUpdatedAt());
+            out.string(value.getUserId());
+            out.string(value.getPathId());
+            out.string(value.getCourseId());
+            out.varLong((long) value.getTotalLessons());
+            out.varLong((long) value.getCompletedLessonsCount());
+            out.fixedDouble(value.getCompletionPercentage());
+            out.instant(value.getLastUpdatedAt());
+        }
+
+        @Override
+        public UserProgressSnapshot read(ValueCodec.Reader in) throws IOException {
+            int present = in.presence();
+            return new UserProgressSnapshot(
+                    (present & 1) != 0 ? in.string() : null,
+                    (present & 2) != 0 ? in.string() : null,
+                    (present & 4) != 0 ? in.string() : null,
+                    (int) in.varLong(),
+                    (int) in.varLong(),
+                    in.fixedDouble(),
+                    (present & 8) != 0 ? in.instant() : null);
+        }
+    };
+}
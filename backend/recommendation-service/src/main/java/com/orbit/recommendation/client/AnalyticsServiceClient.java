@@ -1,6 +1,7 @@
 package com.orbit.recommendation.client;
 
 import com.orbit.recommendation.model.AnalyticsData;
+import com.orbit.recommendation.service.RecommendationMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,6 +15,7 @@ import reactor.core.publisher.Mono;
 public class AnalyticsServiceClient {
 
     private final WebClient.Builder webClientBuilder;
+    private final RecommendationMetrics metrics;
     
     @Value("${services.analytics.base-url}")
     private String analyticsServiceUrl;
@@ -21,10 +23,10 @@ public class AnalyticsServiceClient {
     public Mono<AnalyticsData> getUserAnalytics(String userId) {
         WebClient webClient = webClientBuilder.baseUrl(analyticsServiceUrl).build();
         
-        return webClient.get()
-                .uri("/analytics/users/{userId}", userId)
-                .retrieve()
-                .bodyToMono(AnalyticsData.class)
+        return metrics.timeDownstream("analytics", "user", webClient.get()
+                        .uri("/analytics/users/{userId}", userId)
+                        .retrieve()
+                        .bodyToMono(AnalyticsData.class))
                 .doOnError(error -> log.debug("Failed to fetch user analytics for userId: {} - {}", userId, error.getMessage()))
                 .onErrorResume(error -> {
                     log.debug("User analytics not found for userId: {}, using empty analytics", userId);
@@ -35,10 +37,10 @@ public class AnalyticsServiceClient {
     public Mono<AnalyticsData> getCourseAnalytics(String courseId) {
         WebClient webClient = webClientBuilder.baseUrl(analyticsServiceUrl).build();
         
-        return webClient.get()
-                .uri("/analytics/courses/{courseId}", courseId)
-                .retrieve()
-                .bodyToMono(AnalyticsData.class)
+        return metrics.timeDownstream("analytics", "course", webClient.get()
+                        .uri("/analytics/courses/{courseId}", courseId)
+                        .retrieve()
+                        .bodyToMono(AnalyticsData.class))
                 .doOnError(error -> log.debug("Failed to fetch course analytics for courseId: {} - {}", courseId, error.getMessage()))
                 .onErrorResume(error -> {
                     log.debug("Course analytics not found for courseId: {}, using empty analytics", courseId);
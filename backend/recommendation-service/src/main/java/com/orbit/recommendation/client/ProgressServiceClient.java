@@ -1,6 +1,7 @@
 package com.orbit.recommendation.client;
 
 import com.orbit.recommendation.model.ProgressData;
+import com.orbit.recommendation.service.RecommendationMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,6 +18,7 @@ import java.util.List;
 public class ProgressServiceClient {
 
     private final WebClient.Builder webClientBuilder;
+    private final RecommendationMetrics metrics;
     
     @Value("${services.progress.base-url}")
     private String progressServiceUrl;
@@ -24,10 +26,10 @@ public class ProgressServiceClient {
     public Mono<ProgressData> getCourseProgress(String userId, String courseId) {
         WebClient webClient = webClientBuilder.baseUrl(progressServiceUrl).build();
         
-        return webClient.get()
-                .uri("/progress/users/{userId}/courses/{courseId}", userId, courseId)
-                .retrieve()
-                .bodyToMono(ProgressData.class)
+        return metrics.timeDownstream("progress", "course", webClient.get()
+                        .uri("/progress/users/{userId}/courses/{courseId}", userId, courseId)
+                        .retrieve()
+                        .bodyToMono(ProgressData.class))
                 .doOnError(error -> log.debug("Failed to fetch course progress for userId: {}, courseId: {} - {}", userId, courseId, error.getMessage()))
                 .onErrorResume(error -> {
                     log.debug("Course progress not found for userId: {}, courseId: {}", userId, courseId);
@@ -38,10 +40,10 @@ public class ProgressServiceClient {
     public Mono<ProgressData> getPathProgress(String userId, String pathId) {
         WebClient webClient = webClientBuilder.baseUrl(progressServiceUrl).build();
         
-        return webClient.get()
-                .uri("/progress/users/{userId}/paths/{pathId}", userId, pathId)
-                .retrieve()
-                .bodyToMono(ProgressData.class)
+        return metrics.timeDownstream("progress", "path", webClient.get()
+                        .uri("/progress/users/{userId}/paths/{pathId}", userId, pathId)
+                        .retrieve()
+                        .bodyToMono(ProgressData.class))
                 .doOnError(error -> log.debug("Failed to fetch path progress for userId: {}, pathId: {} - {}", userId, pathId, error.getMessage()))
                 .onErrorResume(error -> {
                     log.debug("Path progress not found for userId: {}, pathId: {}", userId, pathId);
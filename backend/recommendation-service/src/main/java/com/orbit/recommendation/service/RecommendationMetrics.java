@@ -0,0 +1,76 @@
+package com.orbit.recommendation.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for the recommendation hot path, scraped from {@code /actuator/prometheus}.
+ * Tags come from small fixed sets (downstream service, operation, outcome); user, course and path
+ * ids never become tags. Downstream timers are registered on first use and reused after that.
+ */
+@Component
+public class RecommendationMetrics {
+
+    private final MeterRegistry registry;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Map<String, Timer> downstreamTimers = new ConcurrentHashMap<>();
+
+    public RecommendationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.cacheHits = cacheCounter("hit");
+        this.cacheMisses = cacheCounter("miss");
+    }
+
+    /**
+     * Time {@code call} from subscription to its terminal signal. Apply before any fallback, so
+     * failures are recorded as {@code outcome=error} rather than as fast successes.
+     */
+    public <T> Mono<T> timeDownstream(String service, String operation, Mono<T> call) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return call.doFinally(signal -> downstreamTimer(service, operation, outcome(signal))
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    public void cacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    private static String outcome(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            default -> "cancelled";
+        };
+    }
+
+    private Timer downstreamTimer(String service, String operation, String outcome) {
+        return downstreamTimers.computeIfAbsent(service + "|" + operation + "|" + outcome, key -> Timer.builder("orbit.downstream.latency")
+                .description("Calls from recommendation-service to analytics and progress")
+                .tag("service", service)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry));
+    }
+
+    private Counter cacheCounter(String result) {
+        return Counter.builder("orbit.cache.requests")
+                .tag("cache", "apicache")
+                .tag("result", result)
+                .register(registry);
+    }
+}
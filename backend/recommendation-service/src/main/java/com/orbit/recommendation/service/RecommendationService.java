@@ -28,6 +28,7 @@ public class RecommendationService {
     private final RecommendationEngine recommendationEngine;
     private final ReactiveRedisTemplate<String, String> reactiveRedisTemplate;
     private final ObjectMapper objectMapper;
+    private final RecommendationMetrics metrics;
 
     @Value("${cache.recommendation.ttl-seconds:30}")
     private long cacheTtlSeconds;
@@ -42,6 +43,7 @@ public class RecommendationService {
                     try {
                         Recommendation rec = objectMapper.readValue(cached, Recommendation.class);
                         log.debug("Recommendation cache hit: {}", cacheKey);
+                        metrics.cacheLookup(true);
                         return Mono.just(rec);
                     } catch (JsonProcessingException e) {
                         log.warn("Failed to deserialize cached recommendation, recomputing", e);
@@ -49,8 +51,11 @@ public class RecommendationService {
                                 .flatMap(rec -> setCache(cacheKey, rec).thenReturn(rec));
                     }
                 })
-                .switchIfEmpty(computeNextRecommendation(userId)
-                        .flatMap(rec -> setCache(cacheKey, rec).thenReturn(rec)));
+                .switchIfEmpty(Mono.defer(() -> {
+                    metrics.cacheLookup(false);
+                    return computeNextRecommendation(userId)
+                            .flatMap(rec -> setCache(cacheKey, rec).thenReturn(rec));
+                }));
     }
 
     private Mono<Recommendation> computeNextRecommendation(String userId) {